@@ -0,0 +1,345 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads large numbers of rows into the database from files, for example a synthetic dataset for load testing
+ * or the data of another app being migrated. Each file holds the rows of one table, as CSV or JSON Lines
+ * (see ImportRows); the columns of the file are matched to the columns of the table by name.
+ * The rows are read on the calling thread and saved by a number of writer threads, each saving a batch of
+ * rows at a time with one multi-row INSERT in its own transaction. Rows whose key is already in the table
+ * are skipped, so an interrupted import can be run again.
+ * Unless told to keep them, the secondary indexes of a table are dropped while its rows are loaded and built
+ * again at the end, which is much faster than updating them row by row. Queries on the table are slow
+ * meanwhile, so this is meant for a database the app is not using yet.
+ */
+public class BulkImporter {
+    /**
+     * The tables rows can be imported into, in the order they are imported in, so that rows are loaded
+     * after the rows they refer to.
+     */
+    public static final List<String> TABLES = Collections.unmodifiableList(Arrays.asList("user_info", "follows",
+            "recipes", "recipes_steps", "recipe_ingredients", "posts", "likes", "comments"));
+    private static final Set<String> COUNTED_TABLES = new HashSet<>(Arrays.asList("posts", "likes", "comments"));
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+    private static final int DEFAULT_WRITERS = 4;
+    private static final long PROGRESS_INTERVAL_SECONDS = 5;
+
+    private final ConnectionPool connectionPool;
+    private final int batchSize;
+    private final int writers;
+    private final boolean keepIndexes;
+    private final PrintStream progress;
+
+    /**
+     * Construct a BulkImporter.
+     * @param connectionPool The pool the writers borrow their connections from. The schema must be up to date.
+     * @param batchSize The number of rows saved by each INSERT.
+     * @param writers The number of batches saved at the same time.
+     * @param keepIndexes Whether to update the indexes of a table as its rows are saved, rather than
+     *                    dropping them and building them again at the end.
+     * @param progress Where the progress of the import is printed.
+     */
+    public BulkImporter(ConnectionPool connectionPool, int batchSize, int writers, boolean keepIndexes,
+                        PrintStream progress) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        }
+        if (writers < 1) {
+            throw new IllegalArgumentException("Invalid number of writers: " + writers);
+        }
+        this.connectionPool = connectionPool;
+        this.batchSize = batchSize;
+        this.writers = writers;
+        this.keepIndexes = keepIndexes;
+        this.progress = progress;
+    }
+
+    /**
+     * Imports the rows of several tables, in the order of TABLES. If posts, likes or comments are imported,
+     * the like and comment counts of every post are corrected at the end, as the counts of posts imported
+     * after their likes and comments would not include them.
+     * @param files The file to import into each table.
+     * @return the number of rows read from the file of each table, in the order they were imported.
+     * @throws IOException if a file cannot be read or is malformed.
+     * @throws SQLException if rows cannot be saved. The tables imported before stay imported.
+     * @throws InterruptedException if the import is interrupted.
+     */
+    public Map<String, Long> importTables(Map<String, Path> files)
+            throws IOException, SQLException, InterruptedException {
+        for (String table : files.keySet()) {
+            checkTable(table);
+        }
+        Map<String, Long> imported = new LinkedHashMap<>();
+        for (String table : TABLES) {
+            if (files.containsKey(table)) {
+                imported.put(table, this.importTable(table, files.get(table)));
+            }
+        }
+        if (!Collections.disjoint(imported.keySet(), COUNTED_TABLES)) {
+            this.progress.println("Correcting the like and comment counts of the posts");
+            try (PostCounterReconciler reconciler = new PostCounterReconciler(this.connectionPool, 0)) {
+                this.progress.println("Corrected the counts of " + reconciler.reconcile() + " posts");
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Imports the rows of one table.
+     * @param table The table to import into, one of TABLES.
+     * @param file The file holding the rows.
+     * @return the number of rows read from the file, including rows that were skipped as already saved.
+     * @throws IOException if the file cannot be read or is malformed.
+     * @throws SQLException if rows cannot be saved. The batches saved before stay saved.
+     * @throws InterruptedException if the import is interrupted.
+     */
+    public long importTable(String table, Path file) throws IOException, SQLException, InterruptedException {
+        checkTable(table);
+        try (ImportRows rows = ImportRows.open(file)) {
+            this.checkColumns(table, rows.getColumns());
+            LinkedHashMap<String, String> indexes = this.keepIndexes ? new LinkedHashMap<>()
+                    : this.readSecondaryIndexes(table);
+            if (indexes.isEmpty()) {
+                return this.load(table, rows);
+            }
+            String restoreQuery = "ALTER TABLE `" + table + "` ADD " + String.join(", ADD ", indexes.values());
+            this.progress.println("Dropping the indexes of " + table + "; if the import stops, restore them with: " +
+                    restoreQuery);
+            this.execute("ALTER TABLE `" + table + "` DROP KEY `" + String.join("`, DROP KEY `", indexes.keySet())
+                    + "`");
+            try {
+                return this.load(table, rows);
+            } finally {
+                long start = System.nanoTime();
+                this.execute(restoreQuery);
+                this.progress.printf("Rebuilt the indexes of %s in %.1f s%n", table,
+                        (System.nanoTime() - start) / 1e9);
+            }
+        }
+    }
+
+    private static void checkTable(String table) {
+        if (!TABLES.contains(table)) {
+            throw new IllegalArgumentException("Cannot import into table " + table + "; expected one of " + TABLES);
+        }
+    }
+
+    private void checkColumns(String table, List<String> columns) throws SQLException {
+        Set<String> tableColumns = new HashSet<>();
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement("SELECT `column_name` FROM " +
+                     "`information_schema`.`columns` WHERE `table_schema` = DATABASE() AND `table_name` = ?")) {
+            preparedStmt.setString(1, table);
+            try (ResultSet columnsResult = preparedStmt.executeQuery()) {
+                while (columnsResult.next()) {
+                    tableColumns.add(columnsResult.getString(1));
+                }
+            }
+        }
+        for (String column : columns) {
+            if (!tableColumns.contains(column)) {
+                throw new IllegalArgumentException("Table " + table + " has no column " + column);
+            }
+        }
+    }
+
+    /**
+     * Reads the definitions of the indexes of a table that can be dropped while rows are loaded: every index
+     * but the primary key, unique indexes (which would no longer stop duplicates) and indexes that are not
+     * B-trees.
+     * @return the definition of each index, as written after ADD in an ALTER TABLE, by index name.
+     */
+    private LinkedHashMap<String, String> readSecondaryIndexes(String table) throws SQLException {
+        LinkedHashMap<String, List<String>> indexColumns = new LinkedHashMap<>();
+        String query = "SELECT `index_name`, `column_name`, `sub_part` FROM `information_schema`.`statistics` " +
+                "WHERE `table_schema` = DATABASE() AND `table_name` = ? AND `index_name` <> 'PRIMARY' " +
+                "AND `non_unique` = 1 AND `index_type` = 'BTREE' ORDER BY `index_name`, `seq_in_index`";
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, table);
+            try (ResultSet indexesResult = preparedStmt.executeQuery()) {
+                while (indexesResult.next()) {
+                    String column = "`" + indexesResult.getString("column_name") + "`";
+                    if (indexesResult.getObject("sub_part") != null) {
+                        column += "(" + indexesResult.getInt("sub_part") + ")";
+                    }
+                    indexColumns.computeIfAbsent(indexesResult.getString("index_name"), name -> new ArrayList<>())
+                            .add(column);
+                }
+            }
+        }
+        LinkedHashMap<String, String> indexes = new LinkedHashMap<>();
+        indexColumns.forEach((name, columns) -> indexes.put(name,
+                "KEY `" + name + "` (" + String.join(", ", columns) + ")"));
+        return indexes;
+    }
+
+    private void execute(String query) throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(query);
+        }
+    }
+
+    /**
+     * Reads batches of rows and hands them to the writers, while printing how many rows have been saved.
+     * At most two batches per writer wait to be saved, so the rows read ahead of the writers fit in memory.
+     * @return the number of rows read.
+     */
+    private long load(String table, ImportRows rows) throws IOException, SQLException, InterruptedException {
+        List<String> columns = rows.getColumns();
+        String query = "INSERT IGNORE INTO `" + table + "` (`" + String.join("`, `", columns) + "`) VALUES (" +
+                String.join(",", Collections.nCopies(columns.size(), "?")) + ")";
+        AtomicInteger writerCount = new AtomicInteger();
+        ExecutorService writerPool = Executors.newFixedThreadPool(this.writers, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-writer-" + writerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore waitingBatches = new Semaphore(this.writers * 2);
+        AtomicLong saved = new AtomicLong();
+        AtomicReference<SQLException> failure = new AtomicReference<>();
+        long start = System.nanoTime();
+        reporter.scheduleAtFixedRate(() -> this.reportProgress(table, saved.get(), start),
+                PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        long read = 0;
+        try {
+            List<String[]> batch = new ArrayList<>(this.batchSize);
+            String[] row;
+            while (failure.get() == null && (row = rows.next()) != null) {
+                batch.add(row);
+                read++;
+                if (batch.size() == this.batchSize) {
+                    this.submit(writerPool, waitingBatches, query, batch, saved, failure);
+                    batch = new ArrayList<>(this.batchSize);
+                }
+            }
+            if (!batch.isEmpty() && failure.get() == null) {
+                this.submit(writerPool, waitingBatches, query, batch, saved, failure);
+            }
+            writerPool.shutdown();
+            while (!writerPool.awaitTermination(PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+                // Keep waiting for the last batches
+            }
+        } finally {
+            writerPool.shutdownNow();
+            reporter.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        this.progress.printf("%s: imported %d rows in %.1f s (%.0f rows/s)%n", table, read, seconds,
+                read / Math.max(seconds, 1e-3));
+        return read;
+    }
+
+    private void submit(ExecutorService writerPool, Semaphore waitingBatches, String query, List<String[]> batch,
+                        AtomicLong saved, AtomicReference<SQLException> failure) throws InterruptedException {
+        waitingBatches.acquire();
+        writerPool.execute(() -> {
+            try {
+                if (failure.get() == null) {
+                    this.save(query, batch);
+                    saved.addAndGet(batch.size());
+                }
+            } catch (SQLException e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                waitingBatches.release();
+            }
+        });
+    }
+
+    /**
+     * Saves a batch of rows in one transaction. The driver sends the batch as a single multi-row INSERT.
+     */
+    private void save(String query, List<String[]> batch) throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            connection.setAutoCommit(false);
+            for (String[] row : batch) {
+                for (int i = 0; i < row.length; i++) {
+                    preparedStmt.setString(i + 1, row[i]);
+                }
+                preparedStmt.addBatch();
+            }
+            preparedStmt.executeBatch();
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void reportProgress(String table, long saved, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        this.progress.printf("%s: %d rows saved, %.0f rows/s%n", table, saved, saved / seconds);
+    }
+
+    /**
+     * Imports rows into the default database, migrating its schema first.
+     * Usage: BulkImporter [--batchSize=N] [--writers=N] [--keepIndexes] table=file ...
+     * where each file is a .csv file with a header line, or a .jsonl file with one JSON object per line.
+     */
+    public static void main(String[] args) {
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int writers = DEFAULT_WRITERS;
+        boolean keepIndexes = false;
+        Map<String, Path> files = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--batchSize=")) {
+                batchSize = Integer.parseInt(arg.substring("--batchSize=".length()));
+            } else if (arg.startsWith("--writers=")) {
+                writers = Integer.parseInt(arg.substring("--writers=".length()));
+            } else if (arg.equals("--keepIndexes")) {
+                keepIndexes = true;
+            } else if (arg.indexOf('=') > 0) {
+                files.put(arg.substring(0, arg.indexOf('=')), Paths.get(arg.substring(arg.indexOf('=') + 1)));
+            } else {
+                files.clear();
+                break;
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: BulkImporter [--batchSize=N] [--writers=N] [--keepIndexes] table=file ...");
+            System.err.println("Tables: " + TABLES);
+            return;
+        }
+        try {
+            BulkImporter importer = new BulkImporter(new MySQLController().getConnectionPool(), batchSize, writers,
+                    keepIndexes, System.out);
+            importer.importTables(files);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
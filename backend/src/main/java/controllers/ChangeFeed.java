@@ -0,0 +1,368 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the change_log table in order and passes the changes on to subscribers in the app, so that caches and
+ * precomputed feeds can be updated with what changed instead of reading everything again.
+ * The change_log rows are written by triggers, in the same transaction as the change they record, so every
+ * committed write is in the feed whichever code path made it, and no rolled back write ever is. Likes and
+ * comments saved by an InteractionWriter appear once they are flushed.
+ * Each subscriber has its own position in the feed and is given every change after it exactly once, in order,
+ * on the feed's background thread.
+ * Changes are numbered when their transaction starts writing them but can commit in a different order, so a
+ * missing number can mean a transaction has not committed yet. Missing numbers are looked up again without
+ * waiting for commits (READ UNCOMMITTED): those still not found were never used, as when a trigger's
+ * INSERT ... SELECT takes more numbers than it inserts rows, and are skipped. The changes after a number that is
+ * being written are held back until it commits, or until maxGapMillis have passed, after which it is taken to
+ * belong to a rolled back transaction.
+ */
+public class ChangeFeed implements AutoCloseable {
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * One change recorded in the change_log table.
+     */
+    public static final class Change {
+        private final long sequence;
+        private final String entity;
+        private final String entityId;
+        private final String sourceTable;
+        private final String operation;
+        private final LocalDateTime changedTime;
+
+        /**
+         * Construct a Change.
+         * @param sequence The position of the change in the feed.
+         * @param entity What changed: "user", "post" or "recipe".
+         * @param entityId The ID of the user, post or recipe that changed.
+         * @param sourceTable The table the change was made to, such as "likes" for a like of a post, or an
+         *                    empty string for changes recorded before the table was.
+         * @param operation "insert", "update" or "delete", or an empty string if it was not recorded.
+         * @param changedTime When the change was made, in database time.
+         */
+        public Change(long sequence, String entity, String entityId, String sourceTable, String operation,
+                      LocalDateTime changedTime) {
+            this.sequence = sequence;
+            this.entity = entity;
+            this.entityId = entityId;
+            this.sourceTable = sourceTable;
+            this.operation = operation;
+            this.changedTime = changedTime;
+        }
+
+        /**
+         * @return the position of the change in the feed.
+         */
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        /**
+         * @return what changed: "user", "post" or "recipe".
+         */
+        public String getEntity() {
+            return this.entity;
+        }
+
+        /**
+         * @return the ID of the user, post or recipe that changed.
+         */
+        public String getEntityId() {
+            return this.entityId;
+        }
+
+        /**
+         * @return the table the change was made to, or an empty string if it was not recorded.
+         */
+        public String getSourceTable() {
+            return this.sourceTable;
+        }
+
+        /**
+         * @return "insert", "update" or "delete", or an empty string if it was not recorded.
+         */
+        public String getOperation() {
+            return this.operation;
+        }
+
+        /**
+         * @return when the change was made, in database time.
+         */
+        public LocalDateTime getChangedTime() {
+            return this.changedTime;
+        }
+
+        @Override
+        public String toString() {
+            return this.sequence + ": " + this.operation + " " + this.sourceTable + " (" + this.entity + " "
+                    + this.entityId + ")";
+        }
+    }
+
+    /**
+     * Is given the changes of a ChangeFeed it subscribed to.
+     */
+    public interface Listener {
+        /**
+         * Called on the feed's background thread with the next changes after the last ones it was given.
+         * @param changes The changes, in order. Never empty.
+         */
+        void onChanges(List<Change> changes);
+    }
+
+    private final ConnectionPool connectionPool;
+    private final long maxGapMillis;
+    private final ScheduledExecutorService poller;
+    // The position of each subscriber: the sequence of the last change it was given
+    private final Map<Listener, Long> positions = new ConcurrentHashMap<>();
+
+    // Only used on the poller thread. The first missing sequence waited for, and since when.
+    private long gapSequence = -1;
+    private long gapSeenMillis;
+
+    /**
+     * Construct a ChangeFeed.
+     * @param connectionPool The pool to borrow connections from. The schema must be up to date.
+     * @param pollMillis How often to look for new changes, or 0 to only look when poll is called.
+     * @param maxGapMillis How long to wait for a missing change to be committed before skipping it.
+     */
+    public ChangeFeed(ConnectionPool connectionPool, long pollMillis, long maxGapMillis) {
+        this.connectionPool = connectionPool;
+        this.maxGapMillis = maxGapMillis;
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (pollMillis > 0) {
+            this.poller.scheduleWithFixedDelay(this::pollInBackground, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the sequence of the last change recorded so far, or 0 if there is none.
+     * @throws SQLException if it could not be read.
+     */
+    public long getLastSequence() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet sequenceResult = statement.executeQuery(
+                     "SELECT COALESCE(MAX(`change_seq`), 0) FROM `change_log`")) {
+            sequenceResult.next();
+            return sequenceResult.getLong(1);
+        }
+    }
+
+    /**
+     * Reads the changes committed so far after a given one. Changes that commit later may still come before
+     * the last one read.
+     * @param sequence The sequence of the last change already read, or 0 to read from the first change kept.
+     * @param limit The most changes to read.
+     * @return the changes after the given one, in order.
+     * @throws SQLException if they could not be read.
+     */
+    public List<Change> getChangesSince(long sequence, int limit) throws SQLException {
+        String query = "SELECT `change_seq`, `entity`, `entity_id`, `source_table`, `operation`, `changed_time` " +
+                "FROM `change_log` WHERE `change_seq` > ? ORDER BY `change_seq` LIMIT ?";
+        List<Change> changes = new ArrayList<>();
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setLong(1, sequence);
+            preparedStmt.setInt(2, limit);
+            try (ResultSet changesResult = preparedStmt.executeQuery()) {
+                while (changesResult.next()) {
+                    changes.add(new Change(changesResult.getLong("change_seq"), changesResult.getString("entity"),
+                            changesResult.getString("entity_id"), changesResult.getString("source_table"),
+                            changesResult.getString("operation"),
+                            changesResult.getTimestamp("changed_time").toLocalDateTime()));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Gives a listener every change made from now on.
+     * @param listener The listener to give the changes to.
+     * @return the sequence of the last change before the ones the listener is given, for example to read
+     * what a cache starts with as of that change.
+     * @throws SQLException if the last change could not be read.
+     */
+    public long subscribe(Listener listener) throws SQLException {
+        long sequence = this.getLastSequence();
+        this.subscribe(listener, sequence);
+        return sequence;
+    }
+
+    /**
+     * Gives a listener every change after a given one, starting with those already recorded. Changes older
+     * than the change_log keeps (7 days, see ChangeLogPruner) cannot be given.
+     * @param listener The listener to give the changes to.
+     * @param sequence The sequence of the last change the listener already knows about.
+     */
+    public void subscribe(Listener listener, long sequence) {
+        this.positions.put(listener, sequence);
+    }
+
+    /**
+     * Stops giving a listener changes. Changes being given to it when this is called may still be.
+     * @param listener The listener to stop giving changes to.
+     */
+    public void unsubscribe(Listener listener) {
+        this.positions.remove(listener);
+    }
+
+    /**
+     * Gives every subscriber the changes committed since the last ones it was given, on the feed's background
+     * thread, and waits for them to be given.
+     * @throws SQLException if the changes could not be read.
+     */
+    public void poll() throws SQLException {
+        try {
+            this.poller.submit(() -> {
+                this.pollChanges();
+                return null;
+            }).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void pollInBackground() {
+        try {
+            this.pollChanges();
+        } catch (SQLException e) {
+            // Try again at the next poll
+            e.printStackTrace();
+        }
+    }
+
+    private void pollChanges() throws SQLException {
+        while (!this.positions.isEmpty()) {
+            long from = Long.MAX_VALUE;
+            for (long position : this.positions.values()) {
+                from = Math.min(from, position);
+            }
+            List<Change> changes = this.getChangesSince(from, BATCH_SIZE);
+            List<Change> ready = this.takeUntilGap(from, changes, this.getUncommittedSequences(from, changes));
+            if (ready.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<Listener, Long> subscriber : this.positions.entrySet()) {
+                this.deliver(subscriber.getKey(), subscriber.getValue(), ready);
+            }
+            if (ready.size() < BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the sequences missing from changes that are being written by transactions that have not committed
+     * yet. The changes were read before, so a change committed since then is also found, and waited for too.
+     * @param from The sequence the changes were read after.
+     * @param changes The changes read after it, in order.
+     * @return the missing sequences that were found.
+     */
+    private Set<Long> getUncommittedSequences(long from, List<Change> changes) throws SQLException {
+        Set<Long> uncommitted = new HashSet<>();
+        if (changes.isEmpty() || changes.get(changes.size() - 1).getSequence() - from == changes.size()) {
+            return uncommitted;
+        }
+        String query = "SELECT `change_seq` FROM `change_log` WHERE `change_seq` > ? AND `change_seq` < ?";
+        try (Connection connection = this.connectionPool.getConnection()) {
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_READ_UNCOMMITTED);
+            try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+                preparedStmt.setLong(1, from);
+                preparedStmt.setLong(2, changes.get(changes.size() - 1).getSequence());
+                try (ResultSet sequenceResult = preparedStmt.executeQuery()) {
+                    while (sequenceResult.next()) {
+                        uncommitted.add(sequenceResult.getLong(1));
+                    }
+                }
+            } finally {
+                connection.setTransactionIsolation(isolation);
+            }
+        }
+        for (Change change : changes) {
+            uncommitted.remove(change.getSequence());
+        }
+        return uncommitted;
+    }
+
+    /**
+     * @return the changes up to the first missing sequence that is being written and not old enough to skip yet.
+     */
+    private List<Change> takeUntilGap(long from, List<Change> changes, Set<Long> uncommitted) {
+        List<Change> ready = new ArrayList<>();
+        // Changes deleted from change_log for being too old are also missing, and are skipped the same way
+        long expected = from + 1;
+        for (Change change : changes) {
+            while (expected < change.getSequence() && !uncommitted.contains(expected)) {
+                expected++;
+            }
+            if (change.getSequence() != expected) {
+                long now = System.currentTimeMillis();
+                if (this.gapSequence != expected) {
+                    this.gapSequence = expected;
+                    this.gapSeenMillis = now;
+                }
+                if (now - this.gapSeenMillis < this.maxGapMillis) {
+                    break;
+                }
+            }
+            ready.add(change);
+            expected = change.getSequence() + 1;
+        }
+        return ready;
+    }
+
+    private void deliver(Listener listener, long position, List<Change> changes) {
+        List<Change> newChanges = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.getSequence() > position) {
+                newChanges.add(change);
+            }
+        }
+        if (newChanges.isEmpty()) {
+            return;
+        }
+        // Moved on first, so that a listener that throws is not given the same changes again and again
+        this.positions.replace(listener, position, newChanges.get(newChanges.size() - 1).getSequence());
+        try {
+            listener.onChanges(newChanges);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops looking for changes in the background.
+     */
+    @Override
+    public void close() {
+        this.poller.shutdownNow();
+    }
+}
@@ -0,0 +1,97 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the rows of the change_log table that are older than RETENTION_DAYS. The triggers add a row to
+ * change_log for every write, whether or not anything reads it, so without this the table would grow forever.
+ * Snapshots older than that are read again in full, and a ChangeFeed cannot be subscribed from before it.
+ * The rows are deleted in batches of BATCH_SIZE, so that writes waiting on the same rows are not held up for long.
+ */
+public class ChangeLogPruner implements AutoCloseable {
+    /**
+     * How many days the rows of change_log are kept.
+     */
+    public static final long RETENTION_DAYS = 7;
+    private static final int BATCH_SIZE = 10_000;
+
+    private final ConnectionPool connectionPool;
+    private final ScheduledExecutorService pruner;
+
+    // Guarded by this
+    private long deletedCount;
+
+    /**
+     * Construct a ChangeLogPruner.
+     * @param connectionPool The pool to borrow connections from. The schema must be up to date.
+     * @param intervalSeconds How often old rows are deleted in the background,
+     *                        or 0 to only delete them when prune is called.
+     */
+    public ChangeLogPruner(ConnectionPool connectionPool, long intervalSeconds) {
+        this.connectionPool = connectionPool;
+        if (intervalSeconds > 0) {
+            this.pruner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "change-log-pruner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // The first run catches up with the rows left while the app was stopped
+            this.pruner.scheduleWithFixedDelay(this::pruneInBackground, 0, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.pruner = null;
+        }
+    }
+
+    /**
+     * Deletes the rows of change_log older than RETENTION_DAYS.
+     * @return the number of rows deleted.
+     * @throws SQLException if the rows could not be deleted. The batches before stay deleted.
+     */
+    public synchronized int prune() throws SQLException {
+        String query = "DELETE FROM `change_log` WHERE `changed_time` < NOW() - INTERVAL " + RETENTION_DAYS +
+                " DAY LIMIT " + BATCH_SIZE;
+        int deleted = 0;
+        try (Connection connection = this.connectionPool.getConnection();
+             Statement statement = connection.createStatement()) {
+            int batch;
+            do {
+                batch = statement.executeUpdate(query);
+                deleted += batch;
+                this.deletedCount += batch;
+                Thread.yield();
+            } while (batch == BATCH_SIZE);
+        }
+        return deleted;
+    }
+
+    /**
+     * @return how many rows were deleted from change_log, in total.
+     */
+    public synchronized long getDeletedCount() {
+        return this.deletedCount;
+    }
+
+    private void pruneInBackground() {
+        try {
+            this.prune();
+        } catch (SQLException e) {
+            // Try again at the next interval
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops deleting old rows in the background.
+     */
+    @Override
+    public void close() {
+        if (this.pruner != null) {
+            this.pruner.shutdownNow();
+        }
+    }
+}
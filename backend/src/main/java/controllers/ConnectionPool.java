@@ -0,0 +1,859 @@
+package controllers;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections to a single database.
+ * Connections handed out by the pool are validated before they are borrowed and go back
+ * to the pool when they are closed. Connections that sit idle for too long are evicted
+ * down to the minimum size, and statements or ResultSets left open by a borrower are
+ * reported and closed when its connection is returned.
+ * Each connection keeps a cache of its prepared statements keyed by their SQL, so preparing
+ * the same query again on the same connection reuses the statement instead of creating a new one.
+ * Every query run on a borrowed connection is timed, and the rows and bytes it reads counted, in the
+ * pool's QueryMetrics.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "connection-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 50;
+    private static final long DEFAULT_SLOW_QUERY_MILLIS = 200;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutNanos;
+    private final int statementCacheSize;
+    private final QueryMetrics queryMetrics;
+
+    // Most recently returned connections are kept at the head so that cold ones collect at the tail
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Semaphore leases;
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong leakedStatementCount = new AtomicLong();
+    private final AtomicLong leakedResultSetCount = new AtomicLong();
+    private final AtomicInteger openStatementCount = new AtomicInteger();
+    private final AtomicLong statementCacheHitCount = new AtomicLong();
+    private final AtomicLong statementCacheMissCount = new AtomicLong();
+    private final ScheduledFuture<?> evictionTask;
+    // Guarded by itself. Run once, when the pool is closed.
+    private final List<Runnable> closeListeners = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Construct a ConnectionPool and open its minimum number of connections.
+     * @param url The JDBC url of the database.
+     * @param username The username used to log into the database.
+     * @param password The password used to log into the database.
+     * @param minSize The number of connections kept open even when idle.
+     * @param maxSize The maximum number of connections open at the same time.
+     * @param maxWaitMillis How long a borrower waits for a free connection before giving up.
+     * @param idleTimeoutMillis How long a connection may stay idle before it is evicted.
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long maxWaitMillis, long idleTimeoutMillis) {
+        this(url, username, password, minSize, maxSize, maxWaitMillis, idleTimeoutMillis,
+                DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * Construct a ConnectionPool and open its minimum number of connections.
+     * @param url The JDBC url of the database.
+     * @param username The username used to log into the database.
+     * @param password The password used to log into the database.
+     * @param minSize The number of connections kept open even when idle.
+     * @param maxSize The maximum number of connections open at the same time.
+     * @param maxWaitMillis How long a borrower waits for a free connection before giving up.
+     * @param idleTimeoutMillis How long a connection may stay idle before it is evicted.
+     * @param statementCacheSize The number of prepared statements each connection keeps for reuse,
+     *                           or 0 to close every statement when its borrower closes it.
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long maxWaitMillis, long idleTimeoutMillis, int statementCacheSize) {
+        this(url, username, password, minSize, maxSize, maxWaitMillis, idleTimeoutMillis, statementCacheSize,
+                new QueryMetrics(DEFAULT_SLOW_QUERY_MILLIS, System.err));
+    }
+
+    /**
+     * Construct a ConnectionPool and open its minimum number of connections.
+     * @param url The JDBC url of the database.
+     * @param username The username used to log into the database.
+     * @param password The password used to log into the database.
+     * @param minSize The number of connections kept open even when idle.
+     * @param maxSize The maximum number of connections open at the same time.
+     * @param maxWaitMillis How long a borrower waits for a free connection before giving up.
+     * @param idleTimeoutMillis How long a connection may stay idle before it is evicted.
+     * @param statementCacheSize The number of prepared statements each connection keeps for reuse,
+     *                           or 0 to close every statement when its borrower closes it.
+     * @param queryMetrics Where the queries run on the pool's connections are counted, possibly shared
+     *                     with other pools.
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+                          long maxWaitMillis, long idleTimeoutMillis, int statementCacheSize,
+                          QueryMetrics queryMetrics) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.statementCacheSize = statementCacheSize;
+        this.queryMetrics = queryMetrics;
+        this.leases = new Semaphore(maxSize, true);
+
+        this.fillToMinimum();
+        long evictionInterval = Math.max(1000, idleTimeoutMillis / 2);
+        this.evictionTask = EVICTOR.scheduleWithFixedDelay(this::evictIdleConnections,
+                evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool, waiting for one to be returned if all of them are in use.
+     * Closing the returned connection gives it back to the pool.
+     * @return a valid connection to the database.
+     * @throws SQLException if no connection became available in time or a new one could not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        if (this.closed) {
+            throw new SQLException("The connection pool has been closed.");
+        }
+        long start = System.nanoTime();
+        this.acquireLease();
+        try {
+            PooledConnection pooled = this.takeConnection(start);
+            this.recordWait(System.nanoTime() - start);
+            this.activeCount.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            this.leases.release();
+            throw e;
+        }
+    }
+
+    private void acquireLease() throws SQLException {
+        try {
+            if (!this.leases.tryAcquire(this.maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                this.timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + this.maxWaitMillis +
+                        " ms waiting for a database connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+    }
+
+    /**
+     * Take a validated idle connection, or open a new one if the pool has not reached its maximum size.
+     * @param start The time the borrower started waiting, in nanoseconds.
+     * @return a valid connection that is not used by anyone else.
+     * @throws SQLException if no connection could be obtained.
+     */
+    private PooledConnection takeConnection(long start) throws SQLException {
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.maxWaitMillis);
+        while (true) {
+            PooledConnection pooled = this.idleConnections.pollFirst();
+            if (pooled == null) {
+                PooledConnection opened = this.tryOpenConnection();
+                if (opened != null) {
+                    return opened;
+                }
+                // The evictor reserved the last slot to refill the pool, so wait for its connection
+                try {
+                    pooled = this.idleConnections.pollFirst(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a database connection.", e);
+                }
+                if (pooled == null) {
+                    this.timeoutCount.incrementAndGet();
+                    throw new SQLTimeoutException("Timed out after " + this.maxWaitMillis +
+                            " ms waiting for a database connection.");
+                }
+            }
+            if (this.isValid(pooled)) {
+                return pooled;
+            }
+            this.discard(pooled);
+        }
+    }
+
+    /**
+     * Open a new physical connection if the pool has room for one.
+     * @return the new connection, or null if the pool is already at its maximum size.
+     * @throws SQLException if the database refused the connection.
+     */
+    private PooledConnection tryOpenConnection() throws SQLException {
+        if (this.totalCount.incrementAndGet() > this.maxSize) {
+            this.totalCount.decrementAndGet();
+            return null;
+        }
+        try {
+            return new PooledConnection(DriverManager.getConnection(this.url, this.username, this.password));
+        } catch (SQLException | RuntimeException e) {
+            this.totalCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        this.borrowCount.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waitNanos);
+        this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    /**
+     * Return a borrowed connection to the pool, cleaning up anything its borrower left behind.
+     * @param pooled The connection that was returned.
+     */
+    private void release(PooledConnection pooled) {
+        pooled.closeLeakedResources();
+        boolean reusable = pooled.reset();
+        this.activeCount.decrementAndGet();
+        if (this.closed || !reusable) {
+            this.discard(pooled);
+        } else {
+            pooled.lastUsedNanos = System.nanoTime();
+            this.idleConnections.offerFirst(pooled);
+        }
+        this.leases.release();
+    }
+
+    private void discard(PooledConnection pooled) {
+        this.totalCount.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Close connections that have been idle longer than the idle timeout, without going
+     * under the minimum size, then reopen connections until the minimum size is reached again.
+     */
+    private void evictIdleConnections() {
+        long now = System.nanoTime();
+        Iterator<PooledConnection> oldestFirst = this.idleConnections.descendingIterator();
+        while (oldestFirst.hasNext() && this.totalCount.get() > this.minSize) {
+            PooledConnection pooled = oldestFirst.next();
+            if (now - pooled.lastUsedNanos >= this.idleTimeoutNanos
+                    && this.idleConnections.removeLastOccurrence(pooled)) {
+                this.discard(pooled);
+            }
+        }
+        this.fillToMinimum();
+    }
+
+    private void fillToMinimum() {
+        try {
+            while (!this.closed && this.totalCount.get() < this.minSize) {
+                PooledConnection opened = this.tryOpenConnection();
+                if (opened == null) {
+                    return;
+                }
+                this.idleConnections.offerLast(opened);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Close every idle connection and stop handing out new ones. Connections that are
+     * currently borrowed are closed as soon as they are returned.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.evictionTask.cancel(false);
+        PooledConnection pooled;
+        while ((pooled = this.idleConnections.pollFirst()) != null) {
+            this.discard(pooled);
+        }
+        List<Runnable> listeners;
+        synchronized (this.closeListeners) {
+            listeners = new ArrayList<>(this.closeListeners);
+            this.closeListeners.clear();
+        }
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Runs the given listener when the pool is closed, such as to stop what was started in the background for
+     * the pool, or right away if the pool is already closed.
+     * @param listener What to run when the pool is closed.
+     */
+    void addCloseListener(Runnable listener) {
+        synchronized (this.closeListeners) {
+            if (!this.closed) {
+                this.closeListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * @return where the queries run on the pool's connections are counted.
+     */
+    public QueryMetrics getQueryMetrics() {
+        return this.queryMetrics;
+    }
+
+    /**
+     * @return the maximum number of connections open at the same time.
+     */
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return this.activeCount.get();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool.
+     */
+    public int getIdleCount() {
+        return this.idleConnections.size();
+    }
+
+    /**
+     * @return the number of physical connections currently open.
+     */
+    public int getTotalCount() {
+        return this.totalCount.get();
+    }
+
+    /**
+     * @return the number of connections borrowed since the pool was created.
+     */
+    public long getBorrowCount() {
+        return this.borrowCount.get();
+    }
+
+    /**
+     * @return the average time a borrower waited for a connection, in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        long borrows = this.borrowCount.get();
+        return borrows == 0 ? 0 : this.totalWaitNanos.get() / (borrows * 1_000_000.0);
+    }
+
+    /**
+     * @return the longest time a borrower waited for a connection, in milliseconds.
+     */
+    public double getMaxWaitMillis() {
+        return this.maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * @return the number of borrowers that gave up waiting for a connection.
+     */
+    public long getTimeoutCount() {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * @return the number of statements that were still open when their connection was returned.
+     */
+    public long getLeakedStatementCount() {
+        return this.leakedStatementCount.get();
+    }
+
+    /**
+     * @return the number of ResultSets that were still open when their connection was returned.
+     */
+    public long getLeakedResultSetCount() {
+        return this.leakedResultSetCount.get();
+    }
+
+    /**
+     * @return the number of statements borrowers have opened and not closed yet.
+     */
+    public int getOpenStatementCount() {
+        return this.openStatementCount.get();
+    }
+
+    /**
+     * @return the number of prepared statements that were reused from a connection's statement cache.
+     */
+    public long getStatementCacheHitCount() {
+        return this.statementCacheHitCount.get();
+    }
+
+    /**
+     * @return the number of prepared statements that had to be created because they were not cached.
+     */
+    public long getStatementCacheMissCount() {
+        return this.statementCacheMissCount.get();
+    }
+
+    /**
+     * Invoke a JDBC method on its real target, rethrowing whatever the target threw.
+     */
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool, along with its statement cache and the
+     * statements and ResultSets opened on it by its current borrower.
+     */
+    private final class PooledConnection {
+        private final Connection physical;
+        private final ArrayList<StatementHandle> openStatements = new ArrayList<>();
+        private final ArrayList<ResultSet> openResultSets = new ArrayList<>();
+        // Least recently used first, so the eldest entry is the one to evict
+        private final LinkedHashMap<String, CachedStatement> statementCache =
+                new LinkedHashMap<>(16, 0.75f, true);
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new ConnectionHandle(this));
+        }
+
+        /**
+         * Prepare a statement through the cache: a cached statement that is not in use is reused,
+         * otherwise a new one is prepared and cached.
+         * @param key The SQL of the statement, along with any result set options.
+         * @param method The prepareStatement method that was called.
+         * @param args The arguments it was called with.
+         * @return the cached statement, marked as in use.
+         */
+        private synchronized CachedStatement prepareCached(String key, Method method, Object[] args)
+                throws Throwable {
+            CachedStatement cached = this.statementCache.get(key);
+            if (cached != null && !cached.inUse) {
+                statementCacheHitCount.incrementAndGet();
+                cached.inUse = true;
+                return cached;
+            }
+            statementCacheMissCount.incrementAndGet();
+            PreparedStatement statement = (PreparedStatement) invokeOn(this.physical, method, args);
+            if (cached != null) {
+                // The same SQL is already in use by this borrower, so this copy is not cached
+                return new CachedStatement(statement, null);
+            }
+            cached = new CachedStatement(statement, key);
+            cached.inUse = true;
+            this.statementCache.put(key, cached);
+            this.evictCachedStatements();
+            return cached;
+        }
+
+        private void evictCachedStatements() {
+            Iterator<CachedStatement> eldestFirst = this.statementCache.values().iterator();
+            while (this.statementCache.size() > statementCacheSize && eldestFirst.hasNext()) {
+                CachedStatement cached = eldestFirst.next();
+                if (!cached.inUse) {
+                    eldestFirst.remove();
+                    closeQuietly(cached.statement);
+                }
+            }
+        }
+
+        /**
+         * Make a cached statement available to the next prepareStatement call with the same SQL,
+         * clearing everything its last user set on it.
+         */
+        private synchronized void returnToCache(CachedStatement cached) {
+            try {
+                cached.statement.clearParameters();
+                cached.statement.clearBatch();
+                cached.statement.setFetchSize(0);
+                cached.statement.setMaxRows(0);
+                cached.statement.setQueryTimeout(0);
+                cached.inUse = false;
+            } catch (SQLException e) {
+                this.removeFromCache(cached);
+                return;
+            }
+            this.evictCachedStatements();
+        }
+
+        private synchronized void removeFromCache(CachedStatement cached) {
+            this.statementCache.remove(cached.key);
+            closeQuietly(cached.statement);
+        }
+
+        private synchronized Statement track(Statement statement, Class<?> statementType, String sql,
+                                             CachedStatement cached, Connection owner) {
+            StatementHandle handle = new StatementHandle(this, statement, sql, cached, owner, queryMetrics);
+            this.openStatements.add(handle);
+            openStatementCount.incrementAndGet();
+            return (Statement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{statementType}, handle);
+        }
+
+        private synchronized void untrack(StatementHandle handle) {
+            if (this.openStatements.remove(handle)) {
+                openStatementCount.decrementAndGet();
+            }
+        }
+
+        private synchronized void track(ResultSet resultSet) {
+            this.openResultSets.add(resultSet);
+        }
+
+        /**
+         * Close the ResultSets and statements the borrower forgot about and report them.
+         */
+        private synchronized void closeLeakedResources() {
+            for (ResultSet resultSet : this.openResultSets) {
+                try {
+                    if (!resultSet.isClosed()) {
+                        leakedResultSetCount.incrementAndGet();
+                        resultSet.close();
+                    }
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            this.openResultSets.clear();
+            for (StatementHandle handle : new ArrayList<>(this.openStatements)) {
+                leakedStatementCount.incrementAndGet();
+                System.err.println("ConnectionPool: closing a statement that was never closed: " + handle.sql);
+                try {
+                    handle.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Undo any session state the borrower changed so the next borrower gets a clean connection.
+         * @return true if the connection can be handed out again.
+         */
+        private boolean reset() {
+            try {
+                if (!this.physical.getAutoCommit()) {
+                    this.physical.rollback();
+                    this.physical.setAutoCommit(true);
+                }
+                if (this.physical.isReadOnly()) {
+                    this.physical.setReadOnly(false);
+                }
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open by a connection for reuse.
+     */
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        // null if the statement is not in the cache and is closed once its borrower is done with it
+        private final String key;
+        private boolean inUse;
+
+        private CachedStatement(PreparedStatement statement, String key) {
+            this.statement = statement;
+            this.key = key;
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The Connection seen by a borrower. Closing it returns the physical connection to the pool.
+     */
+    private final class ConnectionHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+
+        private ConnectionHandle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!this.released) {
+                        this.released = true;
+                        release(this.pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return this.released || this.pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + this.pooled.physical;
+                default:
+                    break;
+            }
+            if (this.released) {
+                throw new SQLException("This connection has already been returned to the pool.");
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            String cacheKey = this.cacheKey(method, args);
+            if (cacheKey != null) {
+                CachedStatement cached = this.pooled.prepareCached(cacheKey, method, args);
+                return this.pooled.track(cached.statement, method.getReturnType(), sql, cached, (Connection) proxy);
+            }
+            Object result = invokeOn(this.pooled.physical, method, args);
+            if (result instanceof Statement) {
+                return this.pooled.track((Statement) result, method.getReturnType(), sql, null, (Connection) proxy);
+            }
+            return result;
+        }
+
+        /**
+         * @return the key of the statement in the statement cache, or null if the statement is not cached.
+         * Only prepareStatement(sql) and prepareStatement(sql, resultSetType, resultSetConcurrency) are cached.
+         */
+        private String cacheKey(Method method, Object[] args) {
+            if (statementCacheSize == 0 || !method.getName().equals("prepareStatement")) {
+                return null;
+            }
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length == 1 && parameterTypes[0] == String.class) {
+                return (String) args[0];
+            }
+            if (parameterTypes.length == 3 && parameterTypes[0] == String.class
+                    && parameterTypes[1] == int.class && parameterTypes[2] == int.class) {
+                return args[1] + "," + args[2] + ":" + args[0];
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A Statement opened through a pooled connection, tracked so that leaks can be detected.
+     * Closing it closes its ResultSets, and returns it to the statement cache if it came from there.
+     * Its queries are timed, along with the values bound to their parameters for the slow query log,
+     * and its ResultSets count the rows and bytes read from them.
+     */
+    private static final class StatementHandle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Statement statement;
+        private final String sql;
+        private final CachedStatement cached;
+        private final Connection owner;
+        private final QueryMetrics queryMetrics;
+        private final ArrayList<ResultSet> resultSets = new ArrayList<>();
+        private final HashMap<Integer, Object> parameters = new HashMap<>();
+        // What is counted for the last query run, which the ResultSets it returns add their rows to
+        private QueryMetrics.Stats lastStats;
+        private boolean closed;
+
+        private StatementHandle(PooledConnection pooled, Statement statement, String sql,
+                                CachedStatement cached, Connection owner, QueryMetrics queryMetrics) {
+            this.pooled = pooled;
+            this.statement = statement;
+            this.sql = sql;
+            this.cached = cached;
+            this.owner = owner;
+            this.queryMetrics = queryMetrics;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    this.close();
+                    return null;
+                case "isClosed":
+                    return this.closed || this.statement.isClosed();
+                case "getConnection":
+                    return this.owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (this.closed) {
+                throw new SQLException("This statement has already been closed.");
+            }
+            Object result = method.getName().startsWith("execute") ? this.execute(method, args)
+                    : invokeOn(this.statement, method, args);
+            if (args != null && args.length == 2 && args[0] instanceof Integer
+                    && method.getName().startsWith("set") && proxy instanceof PreparedStatement) {
+                // setString(1, "..."), setNull(2, Types.VARCHAR) and the like
+                this.parameters.put((Integer) args[0], method.getName().equals("setNull") ? null : args[1]);
+            } else if (method.getName().equals("clearParameters")) {
+                this.parameters.clear();
+            }
+            if (result instanceof ResultSet) {
+                this.resultSets.add((ResultSet) result);
+                this.pooled.track((ResultSet) result);
+                if (this.lastStats != null) {
+                    return Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                            new Class<?>[]{ResultSet.class},
+                            new ResultSetHandle((ResultSet) result, (Statement) proxy, this.lastStats));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Runs a query, timing it and counting the rows it changed.
+         */
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String query = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : this.sql;
+            if (query == null) {
+                return invokeOn(this.statement, method, args);
+            }
+            QueryMetrics.Stats stats = this.queryMetrics.statement(query);
+            this.lastStats = stats;
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                Object result = invokeOn(this.statement, method, args);
+                failed = false;
+                if (result instanceof Integer || result instanceof Long) {
+                    stats.addRows(Math.max(0, ((Number) result).longValue()));
+                } else if (result instanceof int[]) {
+                    for (int updated : (int[]) result) {
+                        stats.addRows(Math.max(0, updated));
+                    }
+                } else if (result instanceof long[]) {
+                    for (long updated : (long[]) result) {
+                        stats.addRows(Math.max(0, updated));
+                    }
+                }
+                return result;
+            } finally {
+                this.queryMetrics.recordStatement(stats, query, this.parameters, System.nanoTime() - start, failed);
+            }
+        }
+
+        private void close() throws SQLException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            try {
+                if (this.cached != null && this.cached.key != null) {
+                    try {
+                        for (ResultSet resultSet : this.resultSets) {
+                            resultSet.close();
+                        }
+                    } catch (SQLException e) {
+                        this.pooled.removeFromCache(this.cached);
+                        throw e;
+                    }
+                    this.pooled.returnToCache(this.cached);
+                } else {
+                    this.statement.close();
+                }
+            } finally {
+                this.resultSets.clear();
+                this.pooled.untrack(this);
+            }
+        }
+    }
+
+    /**
+     * A ResultSet returned by a query run on a pooled connection, counting the rows and bytes read from it.
+     */
+    private static final class ResultSetHandle implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final Statement owner;
+        private final QueryMetrics.Stats stats;
+
+        private ResultSetHandle(ResultSet resultSet, Statement owner, QueryMetrics.Stats stats) {
+            this.resultSet = resultSet;
+            this.owner = owner;
+            this.stats = stats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getStatement":
+                    return this.owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            Object result = invokeOn(this.resultSet, method, args);
+            if (result instanceof String) {
+                this.stats.addBytes(((String) result).length());
+            } else if (result instanceof byte[]) {
+                this.stats.addBytes(((byte[]) result).length);
+            } else if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                this.stats.addRows(1);
+            }
+            return result;
+        }
+    }
+}
@@ -2,21 +2,28 @@ package controllers;
 
 import entities.*;
 import use_cases.DatabaseManager;
+import use_cases.FeedCursor;
 import use_cases.FeedManager;
 import use_cases.LoginManager;
-import use_cases.UserManager;
+import use_cases.Filters.Filter;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 
 public class FeedController {
+    // The filters display at most this many posts, so every post of a page can be displayed before the next
+    private static final int FEED_PAGE_SIZE = Filter.NUM_POSTS_LIMIT;
+    // How many pages in a row with no post the filter accepts are read before giving up
+    private static final int MAX_EMPTY_PAGES = 10;
+    private static final int LOAD_MORE = 98;
+    private static final int FILTER_BY_LIKES = 2;
     private final LoginManager loginManager;
     private final PostController postController;
     private final InOut inOut;
     private final DatabaseManager databaseManager;
-    private final UserManager userManager;
     private HashMap<Integer, Post> postsActionMap = new HashMap<>();
+    private FeedCursor nextCursor;
 
     /**
      * Construct a FeedController
@@ -32,7 +39,6 @@ public class FeedController {
         this.loginManager = loginManager;
         this.postController = postController;
         this.databaseManager = dbManager;
-        this.userManager = new UserManager(this.databaseManager);
     }
 
     /**
@@ -47,24 +53,60 @@ public class FeedController {
     }
 
     /**
-     * Run to allow the user to browse the Feed.
+     * Run to allow the user to browse the Feed, one page at a time, until they select a post or go back to
+     * the main menu.
      */
     private void runBrowseFeed() {
-        Post[] posts = this.databaseManager.getAllPosts();
-        Feed currUserFeed = new Feed(new ArrayList<>(Arrays.asList(posts)));
-        FeedManager feedManager = new FeedManager(this.loginManager.getCurrUser(), currUserFeed);
         // Ask for a filter option for the feed
         ArrayList<Integer> filterInput = this.getFilterInput();
-        if (filterInput.get(0) == 99) {
-            this.inOut.setOutput("Returning to main menu.");
-        } else {
-            feedManager.setFeedFilter(filterInput);
-            Feed feed = feedManager.getCurrentUsersFeed();
-
-            // Generate the posts and ask to select one to like/comment or go back
-            String postsString = this.generateDisplayedPosts(feed.getDisplayedPosts());
-            this.selectOnePost(postsString, feed.getDisplayedPosts().size());
+        FeedCursor cursor = null;
+        while (filterInput.get(0) != 99) {
+            ArrayList<Post> displayedPosts = this.browseFeedPage(filterInput, cursor);
+            int postNumber = this.selectOnePost(displayedPosts, this.nextCursor);
+            if (postNumber == LOAD_MORE) {
+                cursor = this.nextCursor;
+            } else if (postNumber == 99) {
+                filterInput = this.getFilterInput();
+                cursor = null;
+            } else {
+                this.postController.browsePost(this.postsActionMap.get(postNumber));
+                return;
+            }
         }
+        this.inOut.setOutput("Returning to main menu.");
+    }
+
+    /**
+     * Read the posts of one page of the Feed, filtered with the chosen filter. Pages with no post the filter
+     * accepts are skipped, up to MAX_EMPTY_PAGES of them. The position to load more posts from is kept in
+     * nextCursor.
+     *
+     * @param filterInput The choice of filter and the type of cuisine (if filtering by cuisine).
+     * @param cursor      The position of the last post of the previous page, or null for the first page.
+     * @return the posts of the page to display, which are none if every page read was skipped.
+     */
+    private ArrayList<Post> browseFeedPage(ArrayList<Integer> filterInput, FeedCursor cursor) {
+        Feed feed;
+        this.nextCursor = cursor;
+        int emptyPages = 0;
+        do {
+            Post[] posts;
+            if (filterInput.get(0) == FILTER_BY_LIKES) {
+                // The most liked posts are found by their like counts, without reading their likes,
+                // so there is only one page of them
+                posts = this.databaseManager.getMostLikedPosts(FEED_PAGE_SIZE);
+                this.nextCursor = null;
+            } else {
+                posts = this.databaseManager.getPostsPage(this.nextCursor, FEED_PAGE_SIZE);
+                this.nextCursor = posts.length == FEED_PAGE_SIZE ? FeedCursor.after(posts[posts.length - 1]) : null;
+            }
+            Feed currUserFeed = new Feed(new ArrayList<>(Arrays.asList(posts)));
+            FeedManager feedManager = new FeedManager(this.loginManager.getCurrUser(), currUserFeed);
+            feedManager.setFeedFilter(filterInput);
+            feed = feedManager.getCurrentUsersFeed();
+            emptyPages++;
+        } while (feed.getDisplayedPosts().isEmpty() && this.nextCursor != null && emptyPages < MAX_EMPTY_PAGES);
+        return feed.getDisplayedPosts();
     }
 
     /**
@@ -81,39 +123,61 @@ public class FeedController {
         if (posts.size() == 0) {
             postsString = new StringBuilder("There aren't any posts suitable for the chosen filter. Pick a different filter.");
         } else {
+            // The usernames of the authors are read with the titles, in one query for the whole list
+            HashMap<String, FeedCard> cards = new HashMap<>();
+            for (FeedCard card : this.databaseManager.getFeedCards(this.getPostIds(posts))) {
+                cards.put(card.getPostId(), card);
+            }
             for (int i = 0; i < posts.size(); i++) {
                 this.postsActionMap.put(i, posts.get(i));
                 postsString.append("\n");
                 postsString.append(i).append(" ");
-                User user = this.userManager.getUserById(posts.get(i).getAuthorId());
-                if (user != null) {
-                    postsString.append(user.getUsername()).append("'s ");
+                FeedCard card = cards.get(posts.get(i).getId());
+                if (card == null) {
+                    postsString.append(posts.get(i).getRecipeTitle());
+                } else {
+                    if (card.getAuthorUsername() != null) {
+                        postsString.append(card.getAuthorUsername()).append("'s ");
+                    }
+                    postsString.append(card.getRecipeTitle());
                 }
-                postsString.append(posts.get(i).getRecipe().getTitle());
             }
         }
         return postsString.toString();
     }
 
+    private ArrayList<String> getPostIds(ArrayList<Post> posts) {
+        ArrayList<String> postIds = new ArrayList<>();
+        for (Post post : posts) {
+            postIds.add(post.getId());
+        }
+        return postIds;
+    }
+
     /**
-     * Allow the user to act on a post selected.
+     * Generate the displayed posts and ask the user to select one to act on, to load more posts or to go back.
      *
-     * @param postsString         The String representing the selection of displayed Posts' titles generated.
-     * @param numOfDisplayedPosts The number of displayed Posts on a Feed.
+     * @param displayedPosts The Posts displayed on the Feed.
+     * @param nextCursor     The position to load more posts from, or null if there are no more posts.
+     * @return the number of the Post that the user selects, 98 to load more posts or 99 to choose a different
+     * filter.
      */
-    private void selectOnePost(String postsString, int numOfDisplayedPosts) {
-        if (numOfDisplayedPosts == 0) {
-            this.inOut.setOutput(postsString);
-            this.runBrowseFeed();
-        } else {
-            int postNumber = this.getSelectedPostInput(postsString, numOfDisplayedPosts);
-            if (postNumber == 99) {
-                this.runBrowseFeed();
-            } else {
-                Post selectedPost = this.postsActionMap.get(postNumber);
-                this.postController.browsePost(selectedPost);
+    private int selectOnePost(ArrayList<Post> displayedPosts, FeedCursor nextCursor) {
+        boolean canLoadMore = nextCursor != null;
+        String postsString = this.generateDisplayedPosts(displayedPosts);
+        if (displayedPosts.isEmpty()) {
+            if (!canLoadMore) {
+                this.inOut.setOutput(postsString);
+                return 99;
             }
+            // None of the last MAX_EMPTY_PAGES pages had a post to display, but there are more posts
+            postsString = "No posts suitable for the chosen filter were found yet. " +
+                    "Enter 99 to choose a different feed filter: ";
+        }
+        if (canLoadMore) {
+            postsString += "\n" + LOAD_MORE + " Load more posts";
         }
+        return this.getSelectedPostInput(postsString, displayedPosts.size(), canLoadMore);
     }
 
     /**
@@ -124,9 +188,22 @@ public class FeedController {
      * @return an int representing the Post that the user selects.
      */
     public int getSelectedPostInput(String postsString, int numOfDisplayedPosts) {
+        return this.getSelectedPostInput(postsString, numOfDisplayedPosts, false);
+    }
+
+    /**
+     * Get the user to select a post to act on, or to load more posts.
+     *
+     * @param postsString         The String representing the selection of displayed Posts' titles generated.
+     * @param numOfDisplayedPosts The number of displayed Posts on a Feed.
+     * @param canLoadMore         Whether the user can enter 98 to load more posts.
+     * @return an int representing the Post that the user selects, 98 to load more posts or 99 to go back.
+     */
+    public int getSelectedPostInput(String postsString, int numOfDisplayedPosts, boolean canLoadMore) {
         int postNumber = -1;
 
-        while (postNumber < 0 || (postNumber > numOfDisplayedPosts - 1 && postNumber != 99)) {
+        while (postNumber < 0 || (postNumber > numOfDisplayedPosts - 1 && postNumber != 99 &&
+                !(canLoadMore && postNumber == LOAD_MORE))) {
             try {
                 String postSelection = this.inOut.getInput(postsString);
                 postNumber = Integer.parseInt(postSelection);
@@ -158,7 +235,8 @@ public class FeedController {
                 if (filterInput == 1) {
                     cuisineInput = this.getCuisineInput();
                     if (cuisineInput == 99) {
-                        this.runBrowseFeed();
+                        // Ask for a filter again
+                        filterInput = -1;
                     }
                 }
             } catch (NumberFormatException nfe) {
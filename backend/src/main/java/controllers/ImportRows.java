@@ -0,0 +1,307 @@
+package controllers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the rows of one table from a file to import, one row at a time. A file ending in .csv has a header line
+ * naming the columns, then one line per row; an unquoted empty value is NULL and "" is an empty string.
+ * Any other file is JSON Lines: one flat JSON object per line, whose keys are the columns. Every object should
+ * have the same keys as the first one; missing keys are NULL and extra keys are an error.
+ */
+abstract class ImportRows implements AutoCloseable {
+    protected final BufferedReader reader;
+    protected final Path file;
+    protected long lineNumber;
+    private List<String> columns;
+
+    private ImportRows(Path file) throws IOException {
+        this.file = file;
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens a file of rows, as CSV or JSON Lines depending on its name.
+     * @param file The file to read.
+     * @return the rows of the file.
+     * @throws IOException if the file cannot be opened, or its columns cannot be read.
+     */
+    static ImportRows open(Path file) throws IOException {
+        ImportRows rows = file.getFileName().toString().toLowerCase().endsWith(".csv")
+                ? new CsvRows(file) : new JsonLinesRows(file);
+        try {
+            rows.columns = rows.readColumns();
+        } catch (IOException e) {
+            rows.close();
+            throw e;
+        }
+        return rows;
+    }
+
+    /**
+     * @return the names of the columns of the rows, in the order of the values of each row.
+     */
+    List<String> getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * @return the values of the next row, with null for NULL, or null if there are no more rows.
+     * @throws IOException if the file cannot be read or the row is malformed.
+     */
+    abstract String[] next() throws IOException;
+
+    abstract List<String> readColumns() throws IOException;
+
+    protected IOException malformed(String problem) {
+        return new IOException(this.file + " line " + this.lineNumber + ": " + problem);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    private static class CsvRows extends ImportRows {
+        CsvRows(Path file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        List<String> readColumns() throws IOException {
+            List<String> header = this.readRecord();
+            if (header == null) {
+                throw this.malformed("there is no header line");
+            }
+            return header;
+        }
+
+        @Override
+        String[] next() throws IOException {
+            List<String> record = this.readRecord();
+            if (record == null) {
+                return null;
+            }
+            if (record.size() != this.getColumns().size()) {
+                throw this.malformed("expected " + this.getColumns().size() + " values but found " + record.size());
+            }
+            return record.toArray(new String[0]);
+        }
+
+        /**
+         * Reads the values of one record, which may span several lines if a quoted value contains a line break.
+         * @return the values, or null at the end of the file.
+         */
+        private List<String> readRecord() throws IOException {
+            String line = this.reader.readLine();
+            this.lineNumber++;
+            while (line != null && line.isEmpty()) {
+                line = this.reader.readLine();
+                this.lineNumber++;
+            }
+            if (line == null) {
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            boolean wasQuoted = false;
+            int i = 0;
+            while (true) {
+                if (i == line.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    // A quoted value goes on to the next line
+                    line = this.reader.readLine();
+                    this.lineNumber++;
+                    if (line == null) {
+                        throw this.malformed("a quoted value is not closed");
+                    }
+                    value.append('\n');
+                    i = 0;
+                    continue;
+                }
+                char c = line.charAt(i++);
+                if (quoted) {
+                    if (c != '"') {
+                        value.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        value.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                    wasQuoted = true;
+                } else if (c == ',') {
+                    values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+                    value.setLength(0);
+                    wasQuoted = false;
+                } else {
+                    value.append(c);
+                }
+            }
+            values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+            return values;
+        }
+    }
+
+    private static class JsonLinesRows extends ImportRows {
+        // The first row is read to find the columns, and returned by the first call to next
+        private Map<String, String> firstRow;
+
+        JsonLinesRows(Path file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        List<String> readColumns() throws IOException {
+            this.firstRow = this.readObject();
+            if (this.firstRow == null) {
+                throw this.malformed("there are no rows");
+            }
+            return new ArrayList<>(this.firstRow.keySet());
+        }
+
+        @Override
+        String[] next() throws IOException {
+            Map<String, String> object = this.firstRow != null ? this.firstRow : this.readObject();
+            this.firstRow = null;
+            if (object == null) {
+                return null;
+            }
+            List<String> columns = this.getColumns();
+            String[] row = new String[columns.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = object.remove(columns.get(i));
+            }
+            if (!object.isEmpty()) {
+                throw this.malformed("unexpected keys " + object.keySet());
+            }
+            return row;
+        }
+
+        /**
+         * @return the keys and values of the object on the next line that is not blank, or null at the end
+         * of the file. Numbers and booleans are kept as they are written.
+         */
+        private Map<String, String> readObject() throws IOException {
+            String line;
+            do {
+                line = this.reader.readLine();
+                this.lineNumber++;
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            Map<String, String> object = new LinkedHashMap<>();
+            int[] position = {this.skipSpaces(line, 0)};
+            this.expect(line, position, '{');
+            if (this.peek(line, position) == '}') {
+                position[0]++;
+                return object;
+            }
+            while (true) {
+                String key = this.readString(line, position);
+                this.expect(line, position, ':');
+                object.put(key, this.readValue(line, position));
+                char c = this.peek(line, position);
+                position[0]++;
+                if (c == '}') {
+                    break;
+                } else if (c != ',') {
+                    throw this.malformed("expected , or } at column " + position[0]);
+                }
+            }
+            if (this.skipSpaces(line, position[0]) != line.length()) {
+                throw this.malformed("unexpected text after the object");
+            }
+            return object;
+        }
+
+        private String readValue(String line, int[] position) throws IOException {
+            char c = this.peek(line, position);
+            if (c == '"') {
+                return this.readString(line, position);
+            }
+            int start = position[0];
+            int end = start;
+            while (end < line.length() && ",} \t".indexOf(line.charAt(end)) < 0) {
+                end++;
+            }
+            String literal = line.substring(start, end);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                throw this.malformed("expected a string, number, boolean or null at column " + start);
+            }
+            position[0] = end;
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String readString(String line, int[] position) throws IOException {
+            this.expect(line, position, '"');
+            StringBuilder value = new StringBuilder();
+            int i = position[0];
+            while (i < line.length()) {
+                char c = line.charAt(i++);
+                if (c == '"') {
+                    position[0] = i;
+                    return value.toString();
+                } else if (c != '\\') {
+                    value.append(c);
+                } else if (i < line.length()) {
+                    char escaped = line.charAt(i++);
+                    switch (escaped) {
+                        case 'n': value.append('\n'); break;
+                        case 't': value.append('\t'); break;
+                        case 'r': value.append('\r'); break;
+                        case 'b': value.append('\b'); break;
+                        case 'f': value.append('\f'); break;
+                        case 'u':
+                            if (i + 4 > line.length()) {
+                                throw this.malformed("incomplete \\u escape");
+                            }
+                            value.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                            i += 4;
+                            break;
+                        default: value.append(escaped);
+                    }
+                }
+            }
+            throw this.malformed("a string is not closed");
+        }
+
+        private void expect(String line, int[] position, char expected) throws IOException {
+            if (this.peek(line, position) != expected) {
+                throw this.malformed("expected " + expected + " at column " + position[0]);
+            }
+            position[0]++;
+        }
+
+        /**
+         * Skips spaces and returns the next character, without moving past it.
+         */
+        private char peek(String line, int[] position) throws IOException {
+            position[0] = this.skipSpaces(line, position[0]);
+            if (position[0] >= line.length()) {
+                throw this.malformed("the object is not closed");
+            }
+            return line.charAt(position[0]);
+        }
+
+        private int skipSpaces(String line, int position) {
+            while (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package controllers;
+
+import entities.*;
+import use_cases.DatabaseManager;
+import use_cases.DatabaseSnapshot;
+import use_cases.FeedCursor;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A DatabaseManager that keeps every row in memory instead of in MySQL. It stores the same rows as the
+ * MySQL tables and reads them back the way MySQLController does, so it can stand in for it in load tests
+ * and in front of it as a cache. Nothing is kept once the app stops.
+ * Rows are indexed by post id, user id, username and author, and posts are also kept in feed order,
+ * from the most recently posted, for getPostsPage. Every method can be called from many threads.
+ */
+public class InMemoryDatabaseManager extends DatabaseManager {
+    // Posts in the order of getPostsPage: the most recently posted first, then by ID
+    private static final Comparator<PostRow> FEED_ORDER = Comparator.comparing((PostRow post) -> post.postedTime,
+            Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(post -> post.id).reversed();
+
+    // Adding or removing posts and users takes the write lock, so that all the indexes change together.
+    // Likes, comments and reads take the read lock: each like or comment is a single entry in a concurrent
+    // map, so they run in parallel with each other and with reads.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ConcurrentHashMap<String, UserRow> usersById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> userIdsByUsername = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PostRow> postsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> postIdsByAuthor = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<PostRow> feed = new ConcurrentSkipListSet<>(FEED_ORDER);
+    private final ConcurrentHashMap<String, Recipe> recipesById = new ConcurrentHashMap<>();
+    // likes by post ID, then by the ID of the user who liked the post
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LikeRow>> likesByPost =
+            new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> likedPostIdsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CommentRow> commentsById = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> commentIdsByPost = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> commentIdsByAuthor = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> followerIdsByUser = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> followedIdsByFollower = new ConcurrentHashMap<>();
+
+    /**
+     * Save a new post to the database. Like MySQLController, either all of the post is saved or none of it.
+     * @param newPost The Post to save to the database.
+     */
+    public void addNewPost(Post newPost) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.postsById.containsKey(newPost.getId())) {
+                throw new DatabaseException("A post with the ID " + newPost.getId() + " is already saved.");
+            }
+            for (Comment comment : newPost.getComments()) {
+                this.checkComment(comment);
+            }
+            this.insertPost(newPost, newPost.getAuthorId());
+            for (Comment comment : newPost.getComments()) {
+                this.insertComment(newPost.getId(), comment);
+            }
+            for (UserRef user : newPost.getLikedUsers()) {
+                this.insertLike(newPost, user);
+            }
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Edit the Post saved in the Database
+     * @param newPost The Post to save to the database.
+     */
+    public void editPost(Post newPost) {
+        this.lock.writeLock().lock();
+        try {
+            PostRow storedPost = this.postsById.get(newPost.getId());
+            if (storedPost == null) {
+                throw new DatabaseException("The given Post with ID " + newPost.getId() +
+                        " was not found in the Database.");
+            }
+            this.removePostRow(storedPost);
+            this.insertPost(newPost, newPost.getAuthorId());
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the like in the database on a given post
+     * @param post post object which is being given a like
+     * @param user user object that is giving the like
+     */
+    public void likePost(Post post, User user) {
+        this.lock.readLock().lock();
+        try {
+            this.insertLike(post, user);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the comment in the database of a given post
+     * @param post post object which is being commented on
+     * @param comment comment that stores the information about it
+     */
+    public void commentPost(Post post, Comment comment) {
+        this.lock.readLock().lock();
+        try {
+            this.checkComment(comment);
+            this.insertComment(post.getId(), comment);
+        } catch (DatabaseException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete a Post in the database, with its likes and comments. Its recipe is kept.
+     * @param postId The ID of the Post to delete.
+     */
+    public void deletePost(String postId) {
+        this.lock.writeLock().lock();
+        try {
+            PostRow post = this.postsById.get(postId);
+            if (post != null) {
+                this.removePostRow(post);
+            }
+            ConcurrentHashMap<String, LikeRow> likes = this.likesByPost.remove(postId);
+            if (likes != null) {
+                for (String userId : likes.keySet()) {
+                    removeFromIndex(this.likedPostIdsByUser, userId, postId);
+                }
+            }
+            Set<String> commentIds = this.commentIdsByPost.remove(postId);
+            if (commentIds != null) {
+                for (String commentId : commentIds) {
+                    CommentRow comment = this.commentsById.remove(commentId);
+                    removeFromIndex(this.commentIdsByAuthor, comment.authorId, commentId);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Check if the given post ID exists in the database.
+     * @param postId the ID of the Post to check for in the database.
+     * @return a boolean which is true if the Post exists.
+     */
+    public boolean postExistsInDB(String postId) {
+        return this.postsById.containsKey(postId);
+    }
+
+    /**
+     * Save a new user to the database.
+     * @param newUser The new User to save to the database.
+     * @return A boolean which is true if the user was successfully
+     * added (there was no user with the same username). False if
+     * unsuccessful.
+     */
+    public boolean addNewUser(User newUser) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.usersById.containsKey(newUser.getId()) ||
+                    this.userIdsByUsername.containsKey(newUser.getUsername())) {
+                return false;
+            }
+            return this.updateUser(newUser, true);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the attributes of the user to the new attributes
+     * given the parameter, and replaces their posts, followers and
+     * the users they follow with the ones of the given user.
+     * @param updatedUser user object with the updated values
+     * @return true if the attributes were changed, false if another
+     * user already has the new username
+     */
+    public boolean updateUser(User updatedUser) {
+        this.lock.writeLock().lock();
+        try {
+            return this.updateUser(updatedUser, false);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private boolean updateUser(User user, boolean isNew) {
+        String usernameOwner = this.userIdsByUsername.get(user.getUsername());
+        if (usernameOwner != null && !usernameOwner.equals(user.getId())) {
+            return false;
+        }
+        UserRow storedUser = this.usersById.get(user.getId());
+        if (storedUser != null) {
+            this.userIdsByUsername.remove(storedUser.username, storedUser.id);
+        }
+        if (storedUser != null || isNew) {
+            this.usersById.put(user.getId(), new UserRow(user));
+            this.userIdsByUsername.put(user.getUsername(), user.getId());
+        }
+
+        // Like MySQLController, the posts are saved again without touching their likes and comments
+        this.removePostsOfAuthor(user.getId());
+        for (Post post : user.getPosts()) {
+            this.insertPost(post, user.getId());
+        }
+
+        this.removeFollows(user.getId());
+        for (UserRef follower : user.getFollowers()) {
+            this.insertFollow(user.getId(), follower.getId());
+        }
+        for (UserRef followed : user.getFollowing()) {
+            this.insertFollow(followed.getId(), user.getId());
+        }
+        return true;
+    }
+
+    /**
+     * deletes all the information except for recipes related
+     * to the given user in the database
+     * @param user user object that contains information about
+     *             the user
+     * @return true if it could delete all the information related
+     * to the user
+     */
+    public boolean deleteUser(User user) {
+        this.lock.writeLock().lock();
+        try {
+            UserRow storedUser = this.usersById.remove(user.getId());
+            if (storedUser != null) {
+                this.userIdsByUsername.remove(storedUser.username, storedUser.id);
+            }
+            this.removePostsOfAuthor(user.getId());
+            Set<String> commentIds = this.commentIdsByAuthor.remove(user.getId());
+            if (commentIds != null) {
+                for (String commentId : commentIds) {
+                    CommentRow comment = this.commentsById.remove(commentId);
+                    removeFromIndex(this.commentIdsByPost, comment.postId, commentId);
+                }
+            }
+            this.removeFollows(user.getId());
+            Set<String> likedPostIds = this.likedPostIdsByUser.remove(user.getId());
+            if (likedPostIds != null) {
+                for (String postId : likedPostIds) {
+                    this.likesByPost.computeIfPresent(postId, (id, likes) -> {
+                        likes.remove(user.getId());
+                        return likes.isEmpty() ? null : likes;
+                    });
+                }
+            }
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the user with the given username, without their posts, followers and the users they follow.
+     * @param username The username to look for.
+     * @return the User with the given username, or null if there is none.
+     */
+    public User getUserByUsername(String username) {
+        String userId = this.userIdsByUsername.get(username);
+        UserRow user = userId == null ? null : this.usersById.get(userId);
+        return user == null ? null : user.toUser();
+    }
+
+    /**
+     * Gets all the posts stored in the database.
+     * @return an Array of all the posts stored in the database.
+     */
+    public Post[] getAllPosts() {
+        this.lock.readLock().lock();
+        try {
+            UserIdentityMap likers = new UserIdentityMap();
+            ArrayList<Post> posts = new ArrayList<>();
+            for (PostRow post : this.postsById.values()) {
+                posts.add(this.assemblePost(post, likers));
+            }
+            return posts.toArray(new Post[0]);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the posts of a user.
+     * @param authorId The ID of the user.
+     * @return an Array of the posts of the user, from the most recently posted.
+     */
+    public Post[] getPostsByAuthor(String authorId) {
+        this.lock.readLock().lock();
+        try {
+            ArrayList<PostRow> rows = new ArrayList<>();
+            for (String postId : this.postIdsByAuthor.getOrDefault(authorId, Collections.emptySet())) {
+                rows.add(this.postsById.get(postId));
+            }
+            rows.sort(FEED_ORDER);
+            UserIdentityMap likers = new UserIdentityMap();
+            ArrayList<Post> posts = new ArrayList<>();
+            for (PostRow post : rows) {
+                posts.add(this.assemblePost(post, likers));
+            }
+            return posts.toArray(new Post[0]);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a page of posts ordered from the most recently posted to the least recently posted.
+     * @param cursor The position of the last post of the previous page, or null to get the first page.
+     * @param limit The maximum number of posts in the page.
+     * @return an Array of at most limit posts that come after the cursor, in order.
+     */
+    public Post[] getPostsPage(FeedCursor cursor, int limit) {
+        this.lock.readLock().lock();
+        try {
+            NavigableSet<PostRow> page = this.feed;
+            if (cursor != null) {
+                page = this.feed.tailSet(new PostRow(cursor.getLastPostId(), null, null, null,
+                        cursor.getLastPostedTime().withNano(0)), false);
+            }
+            UserIdentityMap likers = new UserIdentityMap();
+            ArrayList<Post> posts = new ArrayList<>();
+            for (PostRow post : page) {
+                if (posts.size() >= limit) {
+                    break;
+                }
+                posts.add(this.assemblePost(post, likers));
+            }
+            return posts.toArray(new Post[0]);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets an array of all the Users saved in the database.
+     * @return an Array of all the Users registered in the app.
+     */
+    public User[] getAllUsers() {
+        return this.loadSnapshot().getUsers();
+    }
+
+    /**
+     * Reads every user and post while no post or user is being added or removed.
+     * @return the users and posts linked into a single graph, as MySQLController.loadSnapshot does.
+     */
+    public DatabaseSnapshot loadSnapshot() {
+        this.lock.readLock().lock();
+        try {
+            LinkedHashMap<String, User> usersById = new LinkedHashMap<>();
+            for (UserRow user : this.usersById.values()) {
+                usersById.put(user.id, user.toUser());
+            }
+            for (User user : usersById.values()) {
+                for (String followerId : this.followerIdsByUser.getOrDefault(user.getId(), Collections.emptySet())) {
+                    User follower = usersById.get(followerId);
+                    if (follower != null) {
+                        user.addFollower(follower);
+                        follower.addFollowing(user);
+                    }
+                }
+            }
+
+            LinkedHashMap<String, Post> postsById = new LinkedHashMap<>();
+            for (PostRow row : this.postsById.values()) {
+                Post post = new Post(row.authorId, row.postedTime, copyOf(this.recipesById.get(row.recipeId)),
+                        row.category, row.id);
+                this.addComments(post);
+                postsById.put(post.getId(), post);
+                User author = usersById.get(post.getAuthorId());
+                if (author != null) {
+                    author.addPost(post);
+                }
+            }
+            for (Map.Entry<String, ConcurrentHashMap<String, LikeRow>> likes : this.likesByPost.entrySet()) {
+                Post post = postsById.get(likes.getKey());
+                for (LikeRow like : likes.getValue().values()) {
+                    // Likes of users that no longer exist are left out, as in getAllPosts
+                    User user = usersById.get(like.userId);
+                    if (user != null) {
+                        user.setLike(like.category);
+                        if (post != null) {
+                            post.addLike(user);
+                        }
+                    }
+                }
+            }
+            return new DatabaseSnapshot(usersById, postsById);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates the Post stored in the given row, with the comments and likes of users that still exist.
+     */
+    private Post assemblePost(PostRow row, UserIdentityMap likers) {
+        Post post = new Post(row.authorId, row.postedTime, copyOf(this.recipesById.get(row.recipeId)),
+                row.category, row.id);
+        this.addComments(post);
+        for (LikeRow like : this.likesByPost.getOrDefault(row.id, new ConcurrentHashMap<>()).values()) {
+            UserRow user = this.usersById.get(like.userId);
+            if (user != null) {
+                post.addLike(likers.getUserRef(user.id, user.username));
+            }
+        }
+        return post;
+    }
+
+    private void addComments(Post post) {
+        ArrayList<CommentRow> comments = new ArrayList<>();
+        for (String commentId : this.commentIdsByPost.getOrDefault(post.getId(), Collections.emptySet())) {
+            CommentRow comment = this.commentsById.get(commentId);
+            if (comment != null && this.usersById.containsKey(comment.authorId)) {
+                comments.add(comment);
+            }
+        }
+        comments.sort(Comparator.comparing((CommentRow comment) -> comment.time)
+                .thenComparing(comment -> comment.id));
+        for (CommentRow comment : comments) {
+            post.addComment(new Comment(comment.text, comment.authorId, comment.time, comment.id));
+        }
+    }
+
+    /**
+     * Saves the posts row of a post and its recipe, replacing the recipe if it is already saved.
+     */
+    private void insertPost(Post post, String authorId) {
+        PostRow row = new PostRow(post.getId(), authorId, post.getRecipe().getId(), post.getCategory(),
+                post.getTime() == null ? null : post.getTime().withNano(0));
+        this.recipesById.put(row.recipeId, copyOf(post.getRecipe()));
+        this.postsById.put(row.id, row);
+        addToIndex(this.postIdsByAuthor, row.authorId, row.id);
+        if (row.postedTime != null) {
+            this.feed.add(row);
+        }
+    }
+
+    private void removePostRow(PostRow post) {
+        this.postsById.remove(post.id);
+        removeFromIndex(this.postIdsByAuthor, post.authorId, post.id);
+        if (post.postedTime != null) {
+            this.feed.remove(post);
+        }
+    }
+
+    private void removePostsOfAuthor(String authorId) {
+        Set<String> postIds = this.postIdsByAuthor.get(authorId);
+        if (postIds != null) {
+            for (String postId : new ArrayList<>(postIds)) {
+                this.removePostRow(this.postsById.get(postId));
+            }
+        }
+    }
+
+    /**
+     * Saves a like, unless the user already liked the post.
+     */
+    private void insertLike(Post post, UserRef user) {
+        ConcurrentHashMap<String, LikeRow> likes = this.likesByPost.computeIfAbsent(post.getId(),
+                postId -> new ConcurrentHashMap<>());
+        if (likes.putIfAbsent(user.getId(), new LikeRow(user.getId(), post.getCategory())) == null) {
+            addToIndex(this.likedPostIdsByUser, user.getId(), post.getId());
+        }
+    }
+
+    /**
+     * @throws DatabaseException if the comment could not be saved in the comments table.
+     */
+    private void checkComment(Comment comment) throws DatabaseException {
+        if (comment.getCommentText() == null) {
+            throw new DatabaseException("The comment " + comment.getId() + " has no text.");
+        }
+        if (this.commentsById.containsKey(comment.getId())) {
+            throw new DatabaseException("A comment with the ID " + comment.getId() + " is already saved.");
+        }
+    }
+
+    private void insertComment(String postId, Comment comment) {
+        CommentRow row = new CommentRow(comment.getId(), postId, comment.getAuthorId(), comment.getCommentText(),
+                comment.getCreatedTime().withNano(0));
+        if (this.commentsById.putIfAbsent(row.id, row) == null) {
+            addToIndex(this.commentIdsByPost, postId, row.id);
+            addToIndex(this.commentIdsByAuthor, row.authorId, row.id);
+        }
+    }
+
+    private void insertFollow(String userId, String followerId) {
+        addToIndex(this.followerIdsByUser, userId, followerId);
+        addToIndex(this.followedIdsByFollower, followerId, userId);
+    }
+
+    /**
+     * Removes every follow of or by the given user.
+     */
+    private void removeFollows(String userId) {
+        Set<String> followerIds = this.followerIdsByUser.remove(userId);
+        if (followerIds != null) {
+            for (String followerId : followerIds) {
+                removeFromIndex(this.followedIdsByFollower, followerId, userId);
+            }
+        }
+        Set<String> followedIds = this.followedIdsByFollower.remove(userId);
+        if (followedIds != null) {
+            for (String followedId : followedIds) {
+                removeFromIndex(this.followerIdsByUser, followedId, userId);
+            }
+        }
+    }
+
+    private static void addToIndex(ConcurrentHashMap<String, Set<String>> index, String key, String value) {
+        index.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(value);
+    }
+
+    /**
+     * Removes a value from an index, and its key once it has no values left. Only called while holding the
+     * write lock, so that no value is added to a set that is being removed.
+     */
+    private static void removeFromIndex(ConcurrentHashMap<String, Set<String>> index, String key, String value) {
+        index.computeIfPresent(key, (k, values) -> {
+            values.remove(value);
+            return values.isEmpty() ? null : values;
+        });
+    }
+
+    /**
+     * Copies a recipe so that the saved recipe is not changed through the posts that are read or written.
+     * Ingredients that are neither countable nor measurable are not saved, as in MySQLController.
+     */
+    private static Recipe copyOf(Recipe recipe) {
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        for (Ingredient ingredient : recipe.getIngredients()) {
+            if (ingredient instanceof CountableIngredient) {
+                ingredients.add(new CountableIngredient(ingredient.getIngredientName(),
+                        ((CountableIngredient) ingredient).getIngredientNumber()));
+            } else if (ingredient instanceof MeasurableIngredient) {
+                MeasurableIngredient measurable = (MeasurableIngredient) ingredient;
+                ingredients.add(new MeasurableIngredient(measurable.getIngredientName(),
+                        measurable.getIngredientAmount(), measurable.getIngredientMeasurementType()));
+            }
+        }
+        return new Recipe(recipe.getTitle(), ingredients, new ArrayList<>(recipe.getSteps()), recipe.getId());
+    }
+
+    private static class UserRow {
+        final String id, username, password, bio;
+
+        UserRow(User user) {
+            this.id = user.getId();
+            this.username = user.getUsername();
+            this.password = user.getPassword();
+            this.bio = user.getBio();
+        }
+
+        User toUser() {
+            return new User(this.username, this.password, this.bio, this.id);
+        }
+    }
+
+    private static class PostRow {
+        final String id, authorId, recipeId, category;
+        final LocalDateTime postedTime;
+
+        PostRow(String id, String authorId, String recipeId, String category, LocalDateTime postedTime) {
+            this.id = id;
+            this.authorId = authorId;
+            this.recipeId = recipeId;
+            this.category = category;
+            this.postedTime = postedTime;
+        }
+    }
+
+    private static class LikeRow {
+        final String userId, category;
+
+        LikeRow(String userId, String category) {
+            this.userId = userId;
+            this.category = category;
+        }
+    }
+
+    private static class CommentRow {
+        final String id, postId, authorId, text;
+        final LocalDateTime time;
+
+        CommentRow(String id, String postId, String authorId, String text, LocalDateTime time) {
+            this.id = id;
+            this.postId = postId;
+            this.authorId = authorId;
+            this.text = text;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package controllers;
+
+import entities.*;
+import use_cases.AsyncDatabaseManager;
+import use_cases.DatabaseManager;
+import use_cases.FeedCursor;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * A DatabaseManager that times the methods of another one, counting each call and the posts or users it
+ * returns in a QueryMetrics. With a MySQLController, the queries each method runs are counted in the
+ * same QueryMetrics, so a slow method can be traced to its queries.
+ */
+public class InstrumentedDatabaseManager extends DatabaseManager {
+    private final DatabaseManager databaseManager;
+    private final QueryMetrics queryMetrics;
+
+    /**
+     * Construct an InstrumentedDatabaseManager.
+     * @param databaseManager The DatabaseManager whose methods are timed.
+     * @param queryMetrics Where the calls are counted.
+     */
+    public InstrumentedDatabaseManager(DatabaseManager databaseManager, QueryMetrics queryMetrics) {
+        this.databaseManager = databaseManager;
+        this.queryMetrics = queryMetrics;
+    }
+
+    /**
+     * @return the DatabaseManager whose methods are timed.
+     */
+    public DatabaseManager getDatabaseManager() {
+        return this.databaseManager;
+    }
+
+    /**
+     * @return where the calls are counted.
+     */
+    public QueryMetrics getQueryMetrics() {
+        return this.queryMetrics;
+    }
+
+    private <T> T time(String method, Supplier<T> call, ToIntFunction<T> rows) {
+        QueryMetrics.Stats stats = this.queryMetrics.method(method);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            stats.addRows(result == null ? 0 : rows.applyAsInt(result));
+            return result;
+        } finally {
+            stats.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private void time(String method, Runnable call) {
+        this.time(method, () -> {
+            call.run();
+            return null;
+        }, result -> 0);
+    }
+
+    @Override
+    public void addNewPost(Post newPost) {
+        this.time("addNewPost", () -> this.databaseManager.addNewPost(newPost));
+    }
+
+    @Override
+    public void likePost(Post post, User user) {
+        this.time("likePost", () -> this.databaseManager.likePost(post, user));
+    }
+
+    @Override
+    public void commentPost(Post post, Comment comment) {
+        this.time("commentPost", () -> this.databaseManager.commentPost(post, comment));
+    }
+
+    @Override
+    public void editPost(Post newPost) {
+        this.time("editPost", () -> this.databaseManager.editPost(newPost));
+    }
+
+    @Override
+    public void deletePost(String postId) {
+        this.time("deletePost", () -> this.databaseManager.deletePost(postId));
+    }
+
+    @Override
+    public boolean addNewUser(User newUser) {
+        return this.time("addNewUser", () -> this.databaseManager.addNewUser(newUser), added -> 0);
+    }
+
+    @Override
+    public Post[] getAllPosts() {
+        return this.time("getAllPosts", this.databaseManager::getAllPosts, posts -> posts.length);
+    }
+
+    /**
+     * Gets all the posts as a Stream, as the timed DatabaseManager does. Only the time taken to open the
+     * Stream is counted, along with the posts read from it.
+     * @return a Stream of every post, which must be closed.
+     */
+    @Override
+    public Stream<Post> streamAllPosts() {
+        QueryMetrics.Stats stats = this.queryMetrics.method("streamAllPosts");
+        return this.time("streamAllPosts", this.databaseManager::streamAllPosts, posts -> 0)
+                .peek(post -> stats.addRows(1));
+    }
+
+    @Override
+    public Post[] getPostsPage(FeedCursor cursor, int limit) {
+        return this.time("getPostsPage", () -> this.databaseManager.getPostsPage(cursor, limit),
+                posts -> posts.length);
+    }
+
+    @Override
+    public Post[] getMostLikedPosts(int limit) {
+        return this.time("getMostLikedPosts", () -> this.databaseManager.getMostLikedPosts(limit),
+                posts -> posts.length);
+    }
+
+    @Override
+    public FeedCard[] getFeedCards(List<String> postIds) {
+        return this.time("getFeedCards", () -> this.databaseManager.getFeedCards(postIds), cards -> cards.length);
+    }
+
+    @Override
+    public boolean updateUser(User updatedUser) {
+        return this.time("updateUser", () -> this.databaseManager.updateUser(updatedUser), updated -> 0);
+    }
+
+    @Override
+    public boolean deleteUser(User user) {
+        return this.time("deleteUser", () -> this.databaseManager.deleteUser(user), deleted -> 0);
+    }
+
+    @Override
+    public User[] getAllUsers() {
+        return this.time("getAllUsers", this.databaseManager::getAllUsers, users -> users.length);
+    }
+
+    /**
+     * Gets an AsyncDatabaseManager that runs the timed methods of this DatabaseManager in the background, on
+     * the executor of the timed DatabaseManager, which is sized for its database.
+     * @return an AsyncDatabaseManager for this DatabaseManager.
+     */
+    @Override
+    public AsyncDatabaseManager async() {
+        return new AsyncDatabaseManager(this, this.databaseManager.async().getExecutor());
+    }
+}
@@ -0,0 +1,470 @@
+package controllers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes likes and comments to the database in the background.
+ * A like or comment is appended to a local journal and synced to disk before it is acknowledged,
+ * then a background flusher saves the waiting likes and comments with one batched INSERT per table.
+ * Whatever is in the journal when the app stops is saved the next time an InteractionWriter opens it,
+ * and the journal is emptied whenever everything in it has been saved.
+ */
+public class InteractionWriter implements AutoCloseable {
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final String LIKE = "L";
+    private static final String COMMENT = "C";
+    // Not a Base64 character, so it cannot be confused with an encoded field
+    private static final String NULL_FIELD = "~";
+
+    private final ConnectionPool connectionPool;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final FileChannel journal;
+    private final FileLock journalLock;
+
+    // Guards the journal and the waiting likes and comments, which are kept in the same order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pendingChanged = this.lock.newCondition();
+    private final ArrayDeque<String[]> pending = new ArrayDeque<>();
+    // Only one batch is saved at a time, so likes and comments reach the database in order
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    /**
+     * Construct an InteractionWriter, saving whatever a previous InteractionWriter left in the journal.
+     * @param connectionPool The pool to borrow connections from.
+     * @param journalFile The local file likes and comments are written to before they are acknowledged.
+     *                    Only one InteractionWriter can use a journal at a time.
+     * @param maxBatchSize The maximum number of likes and comments saved in one batch.
+     * @param lingerMillis How long the flusher waits for more likes and comments before saving a batch
+     *                     that is not full.
+     * @throws IOException if the journal cannot be opened, or is used by another InteractionWriter.
+     */
+    public InteractionWriter(ConnectionPool connectionPool, Path journalFile, int maxBatchSize, long lingerMillis)
+            throws IOException {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch size: " + maxBatchSize);
+        }
+        this.connectionPool = connectionPool;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+        this.journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileLock acquired = null;
+        try {
+            acquired = this.journal.tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            // Handled below
+        }
+        if (acquired == null) {
+            this.journal.close();
+            throw new IOException("The journal " + journalFile + " is used by another InteractionWriter.");
+        }
+        this.journalLock = acquired;
+        this.replayJournal(journalFile);
+
+        this.flusher = new Thread(this::runFlusher, "interaction-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a like to be saved. It is safe on disk when this returns.
+     * @param userId The ID of the user giving the like.
+     * @param postId The ID of the post being liked.
+     * @param category The category of the post being liked.
+     * @throws IOException if the like could not be written to the journal. It will not be saved.
+     */
+    public void like(String userId, String postId, String category) throws IOException {
+        this.append(new String[]{LIKE, userId, postId, category});
+    }
+
+    /**
+     * Queue a comment to be saved. It is safe on disk when this returns.
+     * @param userId The ID of the author of the comment.
+     * @param postId The ID of the post being commented on.
+     * @param commentTime The time the comment was written.
+     * @param commentText The text of the comment.
+     * @param commentId The ID of the comment.
+     * @throws IOException if the comment could not be written to the journal. It will not be saved.
+     */
+    public void comment(String userId, String postId, LocalDateTime commentTime, String commentText,
+                        String commentId) throws IOException {
+        this.append(new String[]{COMMENT, userId, postId, commentTime.toString(), commentText, commentId});
+    }
+
+    private void append(String[] record) throws IOException {
+        if (this.closed) {
+            throw new IOException("The InteractionWriter has been closed.");
+        }
+        ByteBuffer line = ByteBuffer.wrap(encode(record).getBytes(StandardCharsets.UTF_8));
+        this.lock.lock();
+        try {
+            long end = this.journal.size();
+            try {
+                while (line.hasRemaining()) {
+                    this.journal.write(line, end + line.position());
+                }
+                this.journal.force(false);
+            } catch (IOException e) {
+                // Do not leave half a record behind for the next record to be appended to
+                this.journal.truncate(end);
+                throw e;
+            }
+            this.pending.addLast(record);
+            // Wake the flusher for the first record it has to wait for, and when a batch is full
+            if (this.pending.size() == 1 || this.pending.size() >= this.maxBatchSize) {
+                this.pendingChanged.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Save every like and comment queued so far before returning.
+     * @throws SQLException if they could not be saved. They stay queued and will be retried.
+     */
+    public void flush() throws SQLException {
+        this.flushLock.lock();
+        try {
+            while (true) {
+                List<String[]> batch = this.takeBatch();
+                if (batch.isEmpty()) {
+                    return;
+                }
+                this.save(batch);
+            }
+        } finally {
+            this.flushLock.unlock();
+        }
+    }
+
+    private List<String[]> takeBatch() {
+        this.lock.lock();
+        try {
+            ArrayList<String[]> batch = new ArrayList<>();
+            while (batch.size() < this.maxBatchSize && !this.pending.isEmpty()) {
+                batch.add(this.pending.pollFirst());
+            }
+            return batch;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Save a batch in one transaction, putting it back at the front of the queue if that fails.
+     * Empties the journal once nothing is left waiting.
+     */
+    private void save(List<String[]> batch) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            this.insertBatch(batch);
+        } catch (SQLException e) {
+            this.failedFlushCount.incrementAndGet();
+            this.requeue(batch);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        this.flushCount.incrementAndGet();
+        this.flushedCount.addAndGet(batch.size());
+        this.totalFlushNanos.addAndGet(elapsed);
+        this.maxFlushNanos.accumulateAndGet(elapsed, Math::max);
+
+        this.lock.lock();
+        try {
+            if (this.pending.isEmpty()) {
+                this.journal.truncate(0);
+            }
+        } catch (IOException e) {
+            // Everything in the journal is saved, and saving it again on replay is harmless
+            e.printStackTrace();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void requeue(List<String[]> batch) {
+        this.lock.lock();
+        try {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                this.pending.addFirst(batch.get(i));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void insertBatch(List<String[]> batch) throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                this.insertRecords(connection, batch);
+                connection.commit();
+                return;
+            } catch (SQLException e) {
+                if (!isRejection(e)) {
+                    throw e;
+                }
+                connection.rollback();
+            }
+            // A record the database will never accept would block the queue, so find and drop it
+            connection.setAutoCommit(true);
+            for (String[] record : batch) {
+                try {
+                    this.insertRecords(connection, Collections.singletonList(record));
+                } catch (SQLException e) {
+                    if (!isRejection(e)) {
+                        throw e;
+                    }
+                    this.droppedCount.incrementAndGet();
+                    System.err.println("InteractionWriter: dropping a " + (LIKE.equals(record[0]) ? "like" :
+                            "comment") + " the database rejected: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true iff the exception means the database will never accept the data, as opposed to
+     * a problem reaching the database that may go away on a retry.
+     */
+    private static boolean isRejection(SQLException e) {
+        Throwable cause = e instanceof BatchUpdateException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof SQLNonTransientException && !(cause instanceof SQLNonTransientConnectionException);
+    }
+
+    /**
+     * Insert likes and comments with one batch per table. Likes and comments that were already
+     * saved, for example before the app stopped, are skipped.
+     */
+    private void insertRecords(Connection connection, List<String[]> records) throws SQLException {
+        String likesQuery = "INSERT INTO `likes`(`user_id`, `post_id`, `category`) VALUES (?,?,?) " +
+                "ON DUPLICATE KEY UPDATE `user_id`=`user_id`";
+        String commentsQuery = "INSERT INTO `comments`(`user_id`, `post_id`, `comment_time`, `comment_text`, " +
+                "`comment_id`) VALUES (?,?,?,?,?) ON DUPLICATE KEY UPDATE `comment_id`=`comment_id`";
+        try (PreparedStatement likesStmt = connection.prepareStatement(likesQuery);
+             PreparedStatement commentsStmt = connection.prepareStatement(commentsQuery)) {
+            int likes = 0;
+            int comments = 0;
+            for (String[] record : records) {
+                if (LIKE.equals(record[0])) {
+                    likesStmt.setString(1, record[1]);
+                    likesStmt.setString(2, record[2]);
+                    likesStmt.setString(3, record[3]);
+                    likesStmt.addBatch();
+                    likes++;
+                } else {
+                    commentsStmt.setString(1, record[1]);
+                    commentsStmt.setString(2, record[2]);
+                    commentsStmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.parse(record[3])));
+                    commentsStmt.setString(4, record[4]);
+                    commentsStmt.setString(5, record[5]);
+                    commentsStmt.addBatch();
+                    comments++;
+                }
+            }
+            if (likes > 0) {
+                likesStmt.executeBatch();
+            }
+            if (comments > 0) {
+                commentsStmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Wait until a batch is full or the oldest like or comment has waited long enough, then save.
+     */
+    private void runFlusher() {
+        while (!this.closed) {
+            this.lock.lock();
+            try {
+                while (!this.closed && this.pending.isEmpty()) {
+                    this.pendingChanged.await();
+                }
+                long remaining = this.lingerNanos;
+                while (!this.closed && this.pending.size() < this.maxBatchSize && remaining > 0) {
+                    remaining = this.pendingChanged.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                this.lock.unlock();
+            }
+            try {
+                this.flush();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void replayJournal(Path journalFile) throws IOException {
+        byte[] contents = Files.readAllBytes(journalFile);
+        int end = contents.length;
+        // A last line without a newline was being written when the app stopped, and was never acknowledged
+        while (end > 0 && contents[end - 1] != '\n') {
+            end--;
+        }
+        if (end < contents.length) {
+            this.journal.truncate(end);
+        }
+        String complete = new String(contents, 0, end, StandardCharsets.UTF_8);
+        for (String line : complete.split("\n")) {
+            String[] record = decode(line);
+            if (record != null) {
+                this.pending.addLast(record);
+            } else if (!line.isEmpty()) {
+                System.err.println("InteractionWriter: skipping an unreadable journal record: " + line);
+            }
+        }
+    }
+
+    private static String encode(String[] record) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        StringJoiner line = new StringJoiner(" ", "", "\n");
+        for (String field : record) {
+            line.add(field == null ? NULL_FIELD : encoder.encodeToString(field.getBytes(StandardCharsets.UTF_8)));
+        }
+        return line.toString();
+    }
+
+    /**
+     * @return the record stored in a line of the journal, or null if it is not a valid record.
+     */
+    private static String[] decode(String line) {
+        String[] fields = line.split(" ");
+        String[] record = new String[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                record[i] = fields[i].equals(NULL_FIELD) ? null :
+                        new String(Base64.getDecoder().decode(fields[i]), StandardCharsets.UTF_8);
+            }
+            if (LIKE.equals(record[0]) && record.length == 4) {
+                return record;
+            }
+            if (COMMENT.equals(record[0]) && record.length == 6) {
+                LocalDateTime.parse(record[3]);
+                return record;
+            }
+            return null;
+        } catch (IllegalArgumentException | DateTimeParseException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save everything that is queued, then stop the flusher and close the journal.
+     * Anything that could not be saved stays in the journal for the next InteractionWriter.
+     */
+    @Override
+    public void close() {
+        this.lock.lock();
+        try {
+            this.closed = true;
+            this.pendingChanged.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        try {
+            this.flusher.join();
+            this.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            this.journalLock.release();
+            this.journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the number of likes and comments waiting to be saved.
+     */
+    public int getQueueDepth() {
+        this.lock.lock();
+        try {
+            return this.pending.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of batches saved.
+     */
+    public long getFlushCount() {
+        return this.flushCount.get();
+    }
+
+    /**
+     * @return the number of likes and comments saved.
+     */
+    public long getFlushedCount() {
+        return this.flushedCount.get();
+    }
+
+    /**
+     * @return the number of batches that could not be saved and were retried.
+     */
+    public long getFailedFlushCount() {
+        return this.failedFlushCount.get();
+    }
+
+    /**
+     * @return the number of likes and comments dropped because the database rejected them.
+     */
+    public long getDroppedCount() {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * @return the average time it took to save a batch, in milliseconds.
+     */
+    public double getAverageFlushMillis() {
+        long flushes = this.flushCount.get();
+        return flushes == 0 ? 0 : this.totalFlushNanos.get() / (flushes * 1_000_000.0);
+    }
+
+    /**
+     * @return the longest time it took to save a batch, in milliseconds.
+     */
+    public double getMaxFlushMillis() {
+        return this.maxFlushNanos.get() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,89 @@
+package controllers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in buckets that grow exponentially with four buckets per power of two
+ * microseconds, so that percentiles are read to within about 20% whatever the range of the latencies,
+ * in a fixed amount of memory. The maximum is kept exactly. Recording is lock-free and can be done from
+ * any number of threads at the same time.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKET_COUNT = SUB_BUCKETS * 62;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one latency.
+     * @param nanos The latency, in nanoseconds.
+     */
+    public void record(long nanos) {
+        this.buckets.incrementAndGet(bucketOf(Math.max(0, nanos) / 1000));
+        this.count.incrementAndGet();
+        this.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return the number of latencies recorded.
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return the longest latency recorded, in milliseconds.
+     */
+    public double getMaxMillis() {
+        return this.maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Gets the latency that a given fraction of the recorded latencies are no longer than.
+     * @param fraction The fraction, between 0 and 1, for example 0.99 for the 99th percentile.
+     * @return the upper bound of the bucket holding the percentile, in milliseconds, or 0 if nothing was recorded.
+     */
+    public double getPercentileMillis(double fraction) {
+        long total = this.count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += this.buckets.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket) / 1000.0, this.getMaxMillis());
+            }
+        }
+        return this.getMaxMillis();
+    }
+
+    /**
+     * @return the bucket of a latency in microseconds: latencies under 4 microseconds have a bucket each,
+     * then every power of two is split into four buckets.
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) ((micros >>> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS * (exponent - 1) + subBucket;
+    }
+
+    /**
+     * @return the longest latency in microseconds that goes in a bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1L) << (exponent - 2)) - 1;
+    }
+}
@@ -0,0 +1,656 @@
+package controllers;
+
+import entities.*;
+import use_cases.DatabaseManager;
+import use_cases.DatabaseSnapshot;
+import use_cases.FeedCursor;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A DatabaseManager that stores its rows in an embedded SegmentLog instead of MySQL, so the app can run
+ * without a database server. It saves and reads rows the same way as InMemoryDatabaseManager, and every
+ * method writes its rows as one batch, so a crash never leaves half of a post or user behind.
+ * Each row is a key in the log, and the relationships between rows are keys too (the posts of an author,
+ * the posts in feed order, the likes of a user, ...), so every index is rebuilt with the log on startup.
+ */
+public class LogStructuredDatabaseManager extends DatabaseManager implements AutoCloseable {
+    // user/{userId} -> username, password, bio
+    private static final String USER = "user/";
+    // username/{username} -> userId
+    private static final String USERNAME = "username/";
+    // post/{postId} -> authorId, recipeId, category, postedTime
+    private static final String POST = "post/";
+    // author/{authorId}/{postId}
+    private static final String AUTHOR = "author/";
+    // feed/{postedTime}/{postId}, in the order of getPostsPage when read backwards
+    private static final String FEED = "feed/";
+    // recipe/{recipeId} -> title, steps, ingredients
+    private static final String RECIPE = "recipe/";
+    // like/{postId}/{userId} -> category
+    private static final String LIKE = "like/";
+    // liked/{userId}/{postId}
+    private static final String LIKED = "liked/";
+    // comment/{postId}/{commentId} -> authorId, text, time
+    private static final String COMMENT = "comment/";
+    // commented/{authorId}/{postId}/{commentId}
+    private static final String COMMENTED = "commented/";
+    // follower/{userId}/{followerId}
+    private static final String FOLLOWER = "follower/";
+    // following/{followerId}/{userId}
+    private static final String FOLLOWING = "following/";
+    private static final byte[] NO_VALUE = new byte[0];
+    // Sorts like the time it formats, to the second, as posted times are stored
+    private static final DateTimeFormatter FEED_TIME = DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss");
+    private static final byte COUNTABLE = 1;
+    private static final byte MEASURABLE = 2;
+
+    private final SegmentLog log;
+    // Adding or removing posts and users takes the write lock, so that they are read and written against
+    // a log that does not change under them. Likes, comments and reads take the read lock.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Construct a LogStructuredDatabaseManager storing its rows in the given directory.
+     * @param directory The directory of the log. Only one LogStructuredDatabaseManager can use it at a time.
+     * @throws IOException if the log cannot be opened or recovered.
+     */
+    public LogStructuredDatabaseManager(Path directory) throws IOException {
+        this(new SegmentLog(directory, SegmentLog.DEFAULT_SEGMENT_SIZE));
+    }
+
+    /**
+     * Construct a LogStructuredDatabaseManager storing its rows in the given log.
+     * @param log The log to store the rows in.
+     */
+    public LogStructuredDatabaseManager(SegmentLog log) {
+        this.log = log;
+    }
+
+    /**
+     * @return the log the rows are stored in.
+     */
+    public SegmentLog getLog() {
+        return this.log;
+    }
+
+    /**
+     * Closes the log. Everything saved is already on disk.
+     */
+    @Override
+    public void close() throws IOException {
+        this.log.close();
+    }
+
+    /**
+     * Save a new post to the database. Either all of the post is saved or none of it.
+     * @param newPost The Post to save to the database.
+     */
+    public void addNewPost(Post newPost) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.log.contains(POST + newPost.getId())) {
+                throw new DatabaseException("A post with the ID " + newPost.getId() + " is already saved.");
+            }
+            SegmentLog.Batch batch = new SegmentLog.Batch();
+            this.putPost(batch, newPost, newPost.getAuthorId());
+            for (Comment comment : newPost.getComments()) {
+                this.putComment(batch, newPost.getId(), comment);
+            }
+            for (UserRef user : newPost.getLikedUsers()) {
+                this.putLike(batch, newPost, user);
+            }
+            this.log.write(batch);
+        } catch (DatabaseException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Edit the Post saved in the Database
+     * @param newPost The Post to save to the database.
+     */
+    public void editPost(Post newPost) {
+        this.lock.writeLock().lock();
+        try {
+            if (!this.log.contains(POST + newPost.getId())) {
+                throw new DatabaseException("The given Post with ID " + newPost.getId() +
+                        " was not found in the Database.");
+            }
+            SegmentLog.Batch batch = new SegmentLog.Batch();
+            this.deletePostRow(batch, newPost.getId());
+            this.putPost(batch, newPost, newPost.getAuthorId());
+            this.log.write(batch);
+        } catch (DatabaseException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the like in the database on a given post
+     * @param post post object which is being given a like
+     * @param user user object that is giving the like
+     */
+    public void likePost(Post post, User user) {
+        this.lock.readLock().lock();
+        try {
+            if (!this.log.contains(LIKE + post.getId() + "/" + user.getId())) {
+                SegmentLog.Batch batch = new SegmentLog.Batch();
+                this.putLike(batch, post, user);
+                this.log.write(batch);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the comment in the database of a given post
+     * @param post post object which is being commented on
+     * @param comment comment that stores the information about it
+     */
+    public void commentPost(Post post, Comment comment) {
+        this.lock.readLock().lock();
+        try {
+            SegmentLog.Batch batch = new SegmentLog.Batch();
+            this.putComment(batch, post.getId(), comment);
+            this.log.write(batch);
+        } catch (DatabaseException | IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Delete a Post in the database, with its likes and comments. Its recipe is kept.
+     * @param postId The ID of the Post to delete.
+     */
+    public void deletePost(String postId) {
+        this.lock.writeLock().lock();
+        try {
+            SegmentLog.Batch batch = new SegmentLog.Batch();
+            this.deletePostRow(batch, postId);
+            for (String likeKey : this.log.keySet(LIKE + postId + "/")) {
+                String userId = lastPart(likeKey);
+                batch.delete(likeKey).delete(LIKED + userId + "/" + postId);
+            }
+            for (String commentKey : this.log.keySet(COMMENT + postId + "/")) {
+                String[] comment = fields(this.log.get(commentKey));
+                batch.delete(commentKey).delete(COMMENTED + comment[0] + "/" + postId + "/" + lastPart(commentKey));
+            }
+            this.log.write(batch);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Check if the given post ID exists in the database.
+     * @param postId the ID of the Post to check for in the database.
+     * @return a boolean which is true if the Post exists.
+     */
+    public boolean postExistsInDB(String postId) {
+        return this.log.contains(POST + postId);
+    }
+
+    /**
+     * Save a new user to the database.
+     * @param newUser The new User to save to the database.
+     * @return A boolean which is true if the user was successfully
+     * added (there was no user with the same username). False if
+     * unsuccessful.
+     */
+    public boolean addNewUser(User newUser) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.log.contains(USER + newUser.getId()) || this.log.contains(USERNAME + newUser.getUsername())) {
+                return false;
+            }
+            return this.updateUser(newUser, true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the attributes of the user to the new attributes
+     * given the parameter, and replaces their posts, followers and
+     * the users they follow with the ones of the given user.
+     * @param updatedUser user object with the updated values
+     * @return true if the attributes were changed, false if another
+     * user already has the new username
+     */
+    public boolean updateUser(User updatedUser) {
+        this.lock.writeLock().lock();
+        try {
+            return this.updateUser(updatedUser, false);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private boolean updateUser(User user, boolean isNew) throws IOException {
+        byte[] usernameOwner = this.log.get(USERNAME + user.getUsername());
+        if (usernameOwner != null && !fields(usernameOwner)[0].equals(user.getId())) {
+            return false;
+        }
+        SegmentLog.Batch batch = new SegmentLog.Batch();
+        byte[] storedUser = this.log.get(USER + user.getId());
+        if (storedUser != null) {
+            batch.delete(USERNAME + fields(storedUser)[0]);
+        }
+        if (storedUser != null || isNew) {
+            batch.put(USER + user.getId(), values(user.getUsername(), user.getPassword(), user.getBio()));
+            batch.put(USERNAME + user.getUsername(), values(user.getId()));
+        }
+
+        // The posts are saved again without touching their likes and comments
+        for (String authorKey : this.log.keySet(AUTHOR + user.getId() + "/")) {
+            this.deletePostRow(batch, lastPart(authorKey));
+        }
+        for (Post post : user.getPosts()) {
+            this.putPost(batch, post, user.getId());
+        }
+
+        this.deleteFollows(batch, user.getId());
+        for (UserRef follower : user.getFollowers()) {
+            batch.put(FOLLOWER + user.getId() + "/" + follower.getId(), NO_VALUE);
+            batch.put(FOLLOWING + follower.getId() + "/" + user.getId(), NO_VALUE);
+        }
+        for (UserRef followed : user.getFollowing()) {
+            batch.put(FOLLOWER + followed.getId() + "/" + user.getId(), NO_VALUE);
+            batch.put(FOLLOWING + user.getId() + "/" + followed.getId(), NO_VALUE);
+        }
+        this.log.write(batch);
+        return true;
+    }
+
+    /**
+     * deletes all the information except for recipes related
+     * to the given user in the database
+     * @param user user object that contains information about
+     *             the user
+     * @return true if it could delete all the information related
+     * to the user
+     */
+    public boolean deleteUser(User user) {
+        this.lock.writeLock().lock();
+        try {
+            SegmentLog.Batch batch = new SegmentLog.Batch();
+            byte[] storedUser = this.log.get(USER + user.getId());
+            if (storedUser != null) {
+                batch.delete(USER + user.getId()).delete(USERNAME + fields(storedUser)[0]);
+            }
+            for (String authorKey : this.log.keySet(AUTHOR + user.getId() + "/")) {
+                this.deletePostRow(batch, lastPart(authorKey));
+            }
+            for (String commentedKey : this.log.keySet(COMMENTED + user.getId() + "/")) {
+                // commented/{authorId}/{postId}/{commentId}
+                String[] parts = commentedKey.split("/");
+                batch.delete(commentedKey).delete(COMMENT + parts[2] + "/" + parts[3]);
+            }
+            this.deleteFollows(batch, user.getId());
+            for (String likedKey : this.log.keySet(LIKED + user.getId() + "/")) {
+                batch.delete(likedKey).delete(LIKE + lastPart(likedKey) + "/" + user.getId());
+            }
+            this.log.write(batch);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets all the posts stored in the database.
+     * @return an Array of all the posts stored in the database.
+     */
+    public Post[] getAllPosts() {
+        this.lock.readLock().lock();
+        try {
+            UserIdentityMap likers = new UserIdentityMap();
+            ArrayList<Post> posts = new ArrayList<>();
+            for (String postKey : this.log.keySet(POST)) {
+                Post post = this.readPost(postKey.substring(POST.length()), likers);
+                if (post != null) {
+                    posts.add(post);
+                }
+            }
+            return posts.toArray(new Post[0]);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a page of posts ordered from the most recently posted to the least recently posted.
+     * @param cursor The position of the last post of the previous page, or null to get the first page.
+     * @param limit The maximum number of posts in the page.
+     * @return an Array of at most limit posts that come after the cursor, in order.
+     */
+    public Post[] getPostsPage(FeedCursor cursor, int limit) {
+        this.lock.readLock().lock();
+        try {
+            NavigableSet<String> feed = this.log.keySet(FEED);
+            if (cursor != null) {
+                feed = feed.headSet(feedKey(cursor.getLastPostedTime(), cursor.getLastPostId()), false);
+            }
+            UserIdentityMap likers = new UserIdentityMap();
+            ArrayList<Post> posts = new ArrayList<>();
+            for (String feedKey : feed.descendingSet()) {
+                if (posts.size() >= limit) {
+                    break;
+                }
+                Post post = this.readPost(lastPart(feedKey), likers);
+                if (post != null) {
+                    posts.add(post);
+                }
+            }
+            return posts.toArray(new Post[0]);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets an array of all the Users saved in the database.
+     * @return an Array of all the Users registered in the app.
+     */
+    public User[] getAllUsers() {
+        return this.loadSnapshot().getUsers();
+    }
+
+    /**
+     * Reads every user and post while no post or user is being added or removed.
+     * @return the users and posts linked into a single graph, as MySQLController.loadSnapshot does.
+     */
+    public DatabaseSnapshot loadSnapshot() {
+        this.lock.readLock().lock();
+        try {
+            LinkedHashMap<String, User> usersById = new LinkedHashMap<>();
+            for (String userKey : this.log.keySet(USER)) {
+                byte[] value = this.log.get(userKey);
+                if (value != null) {
+                    String[] user = fields(value);
+                    String userId = userKey.substring(USER.length());
+                    usersById.put(userId, new User(user[0], user[1], user[2], userId));
+                }
+            }
+            for (String followerKey : this.log.keySet(FOLLOWER)) {
+                String[] parts = followerKey.split("/");
+                User user = usersById.get(parts[1]);
+                User follower = usersById.get(parts[2]);
+                if (user != null && follower != null) {
+                    user.addFollower(follower);
+                    follower.addFollowing(user);
+                }
+            }
+
+            LinkedHashMap<String, Post> postsById = new LinkedHashMap<>();
+            for (String postKey : this.log.keySet(POST)) {
+                Post post = this.readPost(postKey.substring(POST.length()), null);
+                if (post != null) {
+                    postsById.put(post.getId(), post);
+                    User author = usersById.get(post.getAuthorId());
+                    if (author != null) {
+                        author.addPost(post);
+                    }
+                }
+            }
+            for (String likeKey : this.log.keySet(LIKE)) {
+                byte[] value = this.log.get(likeKey);
+                String[] parts = likeKey.split("/");
+                // Likes of users that no longer exist are left out, as in getAllPosts
+                User user = usersById.get(parts[2]);
+                if (value != null && user != null) {
+                    user.setLike(fields(value)[0]);
+                    Post post = postsById.get(parts[1]);
+                    if (post != null) {
+                        post.addLike(user);
+                    }
+                }
+            }
+            return new DatabaseSnapshot(usersById, postsById);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads a post with its recipe and comments, and its likes if likers is not null.
+     * @return the post, or null if it is not saved.
+     */
+    private Post readPost(String postId, UserIdentityMap likers) {
+        byte[] value = this.log.get(POST + postId);
+        if (value == null) {
+            return null;
+        }
+        String[] post = fields(value);
+        Recipe recipe = this.readRecipe(post[1]);
+        if (recipe == null) {
+            return null;
+        }
+        Post assembled = new Post(post[0], post[3] == null ? null : LocalDateTime.parse(post[3]), recipe, post[2],
+                postId);
+
+        ArrayList<Comment> comments = new ArrayList<>();
+        for (String commentKey : this.log.keySet(COMMENT + postId + "/")) {
+            byte[] commentValue = this.log.get(commentKey);
+            if (commentValue != null) {
+                String[] comment = fields(commentValue);
+                if (this.log.contains(USER + comment[0])) {
+                    comments.add(new Comment(comment[1], comment[0], LocalDateTime.parse(comment[2]),
+                            lastPart(commentKey)));
+                }
+            }
+        }
+        comments.sort(Comparator.comparing(Comment::getCreatedTime).thenComparing(Comment::getId));
+        for (Comment comment : comments) {
+            assembled.addComment(comment);
+        }
+
+        if (likers != null) {
+            for (String likeKey : this.log.keySet(LIKE + postId + "/")) {
+                String userId = lastPart(likeKey);
+                byte[] user = this.log.get(USER + userId);
+                if (user != null) {
+                    assembled.addLike(likers.getUserRef(userId, fields(user)[0]));
+                }
+            }
+        }
+        return assembled;
+    }
+
+    /**
+     * Adds the rows of a post and its recipe to a batch, replacing the recipe if it is already saved.
+     */
+    private void putPost(SegmentLog.Batch batch, Post post, String authorId) {
+        LocalDateTime postedTime = post.getTime() == null ? null : post.getTime().withNano(0);
+        batch.put(POST + post.getId(), values(authorId, post.getRecipe().getId(), post.getCategory(),
+                postedTime == null ? null : postedTime.toString()));
+        batch.put(AUTHOR + authorId + "/" + post.getId(), NO_VALUE);
+        if (postedTime != null) {
+            batch.put(feedKey(postedTime, post.getId()), NO_VALUE);
+        }
+        batch.put(RECIPE + post.getRecipe().getId(), recipeValue(post.getRecipe()));
+    }
+
+    /**
+     * Adds the deletion of the row of a post, and of the keys that index it, to a batch.
+     */
+    private void deletePostRow(SegmentLog.Batch batch, String postId) {
+        byte[] value = this.log.get(POST + postId);
+        if (value != null) {
+            String[] post = fields(value);
+            batch.delete(POST + postId).delete(AUTHOR + post[0] + "/" + postId);
+            if (post[3] != null) {
+                batch.delete(feedKey(LocalDateTime.parse(post[3]), postId));
+            }
+        }
+    }
+
+    private void putLike(SegmentLog.Batch batch, Post post, UserRef user) {
+        batch.put(LIKE + post.getId() + "/" + user.getId(), values(post.getCategory()));
+        batch.put(LIKED + user.getId() + "/" + post.getId(), NO_VALUE);
+    }
+
+    /**
+     * @throws DatabaseException if the comment could not be saved in the comments table.
+     */
+    private void putComment(SegmentLog.Batch batch, String postId, Comment comment) throws DatabaseException {
+        if (comment.getCommentText() == null) {
+            throw new DatabaseException("The comment " + comment.getId() + " has no text.");
+        }
+        batch.put(COMMENT + postId + "/" + comment.getId(), values(comment.getAuthorId(), comment.getCommentText(),
+                comment.getCreatedTime().withNano(0).toString()));
+        batch.put(COMMENTED + comment.getAuthorId() + "/" + postId + "/" + comment.getId(), NO_VALUE);
+    }
+
+    /**
+     * Adds the deletion of every follow of or by the given user to a batch.
+     */
+    private void deleteFollows(SegmentLog.Batch batch, String userId) {
+        for (String followerKey : this.log.keySet(FOLLOWER + userId + "/")) {
+            batch.delete(followerKey).delete(FOLLOWING + lastPart(followerKey) + "/" + userId);
+        }
+        for (String followingKey : this.log.keySet(FOLLOWING + userId + "/")) {
+            batch.delete(followingKey).delete(FOLLOWER + lastPart(followingKey) + "/" + userId);
+        }
+    }
+
+    private static String feedKey(LocalDateTime postedTime, String postId) {
+        return FEED + FEED_TIME.format(postedTime) + "/" + postId;
+    }
+
+    private static String lastPart(String key) {
+        return key.substring(key.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Encodes strings, any of which may be null, as the value of a key.
+     */
+    private static byte[] values(String... fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(fields.length);
+            for (String field : fields) {
+                writeString(out, field);
+            }
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream does not fail
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String[] fields(byte[] value) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            String[] fields = new String[in.readInt()];
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = readString(in);
+            }
+            return fields;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encodes a recipe. Ingredients that are neither countable nor measurable are not saved,
+     * as in MySQLController.
+     */
+    private static byte[] recipeValue(Recipe recipe) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeString(out, recipe.getTitle());
+            out.writeInt(recipe.getSteps().size());
+            for (String step : recipe.getSteps()) {
+                writeString(out, step);
+            }
+            List<Ingredient> ingredients = new ArrayList<>();
+            for (Ingredient ingredient : recipe.getIngredients()) {
+                if (ingredient instanceof CountableIngredient || ingredient instanceof MeasurableIngredient) {
+                    ingredients.add(ingredient);
+                }
+            }
+            out.writeInt(ingredients.size());
+            for (Ingredient ingredient : ingredients) {
+                writeString(out, ingredient.getIngredientName());
+                if (ingredient instanceof CountableIngredient) {
+                    out.writeByte(COUNTABLE);
+                    out.writeFloat(((CountableIngredient) ingredient).getIngredientNumber());
+                } else {
+                    MeasurableIngredient measurable = (MeasurableIngredient) ingredient;
+                    out.writeByte(MEASURABLE);
+                    out.writeFloat(measurable.getIngredientAmount());
+                    writeString(out, measurable.getIngredientMeasurementType());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the saved recipe with the given ID, or null if there is none.
+     */
+    private Recipe readRecipe(String recipeId) {
+        byte[] value = this.log.get(RECIPE + recipeId);
+        if (value == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            String title = readString(in);
+            ArrayList<String> steps = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                steps.add(readString(in));
+            }
+            ArrayList<Ingredient> ingredients = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = readString(in);
+                if (in.readByte() == COUNTABLE) {
+                    ingredients.add(new CountableIngredient(name, in.readFloat()));
+                } else {
+                    ingredients.add(new MeasurableIngredient(name, in.readFloat(), readString(in)));
+                }
+            }
+            return new Recipe(title, ingredients, steps, recipeId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -1,87 +1,452 @@
 package controllers;
 
 import entities.*;
+import use_cases.AsyncDatabaseManager;
 import use_cases.DatabaseManager;
+import use_cases.DatabaseSnapshot;
+import use_cases.FeedCursor;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.TreeMap;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MySQLController extends DatabaseManager {
+    // rewriteBatchedStatements lets the driver send each batch of inserts as a single multi-row INSERT,
+    // and useServerPrepStmts lets the statements in each connection's statement cache stay prepared on the server.
+    // useCursorFetch makes statements with a fetch size read their rows from a cursor on the server,
+    // fetch size rows at a time, while the connection stays free for other queries
+    private static final String DATABASE_URL = "jdbc:mysql://localhost:8889/foodstagram" +
+            "?rewriteBatchedStatements=true&useServerPrepStmts=true&useCursorFetch=true";
+    private static final String DATABASE_USERNAME = "admin";
+    private static final String DATABASE_PASSWORD = "1234";
+    private static final int RECIPE_BATCH_SIZE = 1000;
+    private static final int INTERACTION_BATCH_SIZE = 500;
+    private static final int STREAM_FETCH_SIZE = 500;
+    // How many posts read without their details have them loaded together
+    private static final int LAZY_GROUP_SIZE = 100;
+    private static final long INTERACTION_LINGER_MILLIS = 50;
+    // Leaves out the posts of deleted users that their UserPurger has not removed yet
+    static final String LIVE_POSTS_CONDITION = "`posts`.`user_id` NOT IN (SELECT `user_id` FROM `user_tombstones`)";
+    // The columns readPostSummaries reads, followed by a WHERE condition on the posts table
+    private static final String POST_SUMMARIES_QUERY = "SELECT `posts`.*, `recipes`.`title` FROM `posts` " +
+            "INNER JOIN `recipes` ON `recipes`.`recipe_id` = `posts`.`recipe_id` WHERE ";
+    private static ConnectionPool defaultConnectionPool;
+    private static InteractionWriter defaultInteractionWriter;
+    private static boolean defaultInteractionWriterFailed;
+    private static SnapshotStore defaultSnapshotStore;
+    private static PostCounterReconciler defaultPostCounterReconciler;
+    private static final Set<ConnectionPool> migratedConnectionPools = new HashSet<>();
+    private static final Map<ConnectionPool, ExecutorService> asyncExecutors = new HashMap<>();
+    private static final Map<ConnectionPool, UserPurger> userPurgers = new HashMap<>();
+    private static final Map<ConnectionPool, ChangeLogPruner> changeLogPruners = new HashMap<>();
+    private static final Map<ConnectionPool, ChangeFeed> changeFeeds = new HashMap<>();
+    // The pools whose entries in the maps above are removed, and stopped, when the pool is closed
+    private static final Set<ConnectionPool> closeListenedPools = new HashSet<>();
+    private static final QueryMetrics queryMetrics = new QueryMetrics(
+            Long.getLong("foodstagram.db.slowQueryMillis", 200), System.err);
+
+    private final ConnectionPool connectionPool;
+    private final InteractionWriter interactionWriter;
+    private final SnapshotStore snapshotStore;
+
+    /**
+     * Construct a MySQLController that shares the default connection pool with every other
+     * MySQLController in the app. The pool size can be configured with the
+     * foodstagram.db.pool.min and foodstagram.db.pool.max system properties, and the number of
+     * prepared statements cached by each connection with foodstagram.db.pool.statementCache.
+     * Likes and comments are saved in the background, journaled to the file named by the
+     * foodstagram.journal system property (foodstagram-interactions.journal in the temp directory by default).
+     * If the foodstagram.snapshot.file system property is set, every user and post is loaded from a snapshot
+     * of the database kept in that file, rewritten every foodstagram.snapshot.intervalSeconds (300 by default).
+     * The like and comment counts of the posts are checked against their likes and comments every
+     * foodstagram.counters.reconcileSeconds (3600 by default), and the rows of deleted users are removed in the
+     * background (see deleteUser).
+     */
     public MySQLController() {
-        try {
-            this.connection = DriverManager.getConnection(
-                    "jdbc:mysql://localhost:8889/foodstagram",
-                    "admin",
-                    "1234");
-        } catch (Exception e) {
-            e.printStackTrace();
+        this(getDefaultConnectionPool(), getDefaultInteractionWriter(), getDefaultSnapshotStore());
+    }
+
+    /**
+     * Construct a MySQLController that runs its queries on connections from the given pool,
+     * and saves likes and comments right away.
+     * The first MySQLController to use a pool brings the database schema up to date.
+     * @param connectionPool The pool to borrow connections from.
+     */
+    public MySQLController(ConnectionPool connectionPool) {
+        this(connectionPool, null);
+    }
+
+    /**
+     * Construct a MySQLController that runs its queries on connections from the given pool.
+     * The first MySQLController to use a pool brings the database schema up to date.
+     * @param connectionPool The pool to borrow connections from.
+     * @param interactionWriter The InteractionWriter that saves likes and comments in the background,
+     *                          or null to save them right away.
+     */
+    public MySQLController(ConnectionPool connectionPool, InteractionWriter interactionWriter) {
+        this(connectionPool, interactionWriter, null);
+    }
+
+    /**
+     * Construct a MySQLController that runs its queries on connections from the given pool.
+     * The first MySQLController to use a pool brings the database schema up to date.
+     * @param connectionPool The pool to borrow connections from.
+     * @param interactionWriter The InteractionWriter that saves likes and comments in the background,
+     *                          or null to save them right away.
+     * @param snapshotStore The SnapshotStore that every user and post is loaded from, or null to read them
+     *                      from the database every time.
+     */
+    public MySQLController(ConnectionPool connectionPool, InteractionWriter interactionWriter,
+                           SnapshotStore snapshotStore) {
+        this.connectionPool = connectionPool;
+        this.interactionWriter = interactionWriter;
+        this.snapshotStore = snapshotStore;
+        migrateSchema(connectionPool);
+    }
+
+    private static synchronized void migrateSchema(ConnectionPool connectionPool) {
+        if (migratedConnectionPools.add(connectionPool)) {
+            try {
+                new SchemaMigrator(connectionPool).migrate();
+                // Every write adds to change_log, so its old rows are deleted wherever it is written to
+                changeLogPruners.computeIfAbsent(connectionPool, pool -> new ChangeLogPruner(pool,
+                        Long.getLong("foodstagram.changes.pruneIntervalSeconds", 3600)));
+                releaseOnClose(connectionPool);
+            } catch (Exception e) {
+                // Try again with the next MySQLController
+                migratedConnectionPools.remove(connectionPool);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Construct a MySQLController that only reads from a replica of the database.
+     * A replica gets its schema from its primary, so it is not migrated.
+     * @param connectionPool The pool to borrow connections to the replica from.
+     * @return the MySQLController.
+     */
+    public static MySQLController forReplica(ConnectionPool connectionPool) {
+        synchronized (MySQLController.class) {
+            migratedConnectionPools.add(connectionPool);
+            releaseOnClose(connectionPool);
+        }
+        return new MySQLController(connectionPool);
+    }
+
+    /**
+     * Makes closing the given pool stop what was started in the background for it, and forget it, so that
+     * neither the pool nor the threads are kept once it is closed. The default pool is used until the app exits,
+     * so what was started for it alone, such as its PostCounterReconciler, is not stopped.
+     * @param connectionPool A pool that something was started or recorded for.
+     */
+    private static synchronized void releaseOnClose(ConnectionPool connectionPool) {
+        if (closeListenedPools.add(connectionPool)) {
+            connectionPool.addCloseListener(() -> release(connectionPool));
         }
     }
 
+    private static synchronized void release(ConnectionPool connectionPool) {
+        closeListenedPools.remove(connectionPool);
+        migratedConnectionPools.remove(connectionPool);
+        ExecutorService asyncExecutor = asyncExecutors.remove(connectionPool);
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdownNow();
+        }
+        UserPurger userPurger = userPurgers.remove(connectionPool);
+        if (userPurger != null) {
+            userPurger.close();
+        }
+        ChangeLogPruner changeLogPruner = changeLogPruners.remove(connectionPool);
+        if (changeLogPruner != null) {
+            changeLogPruner.close();
+        }
+        ChangeFeed changeFeed = changeFeeds.remove(connectionPool);
+        if (changeFeed != null) {
+            changeFeed.close();
+        }
+    }
+
+    private static synchronized ConnectionPool getDefaultConnectionPool() {
+        if (defaultConnectionPool == null) {
+            defaultConnectionPool = createConnectionPool(DATABASE_URL);
+            defaultPostCounterReconciler = new PostCounterReconciler(defaultConnectionPool,
+                    Long.getLong("foodstagram.counters.reconcileSeconds", 3600));
+            // Carries on purging the users deleted before the app last stopped
+            getUserPurger(defaultConnectionPool);
+        }
+        return defaultConnectionPool;
+    }
+
+    /**
+     * Creates a pool of connections to a database, logging in and sized the same way as the default pool.
+     * Its queries are counted in the QueryMetrics shared by every pool created this way.
+     * @param url The JDBC url of the database.
+     * @return the pool.
+     */
+    static ConnectionPool createConnectionPool(String url) {
+        return new ConnectionPool(url, DATABASE_USERNAME, DATABASE_PASSWORD,
+                Integer.getInteger("foodstagram.db.pool.min", 1),
+                Integer.getInteger("foodstagram.db.pool.max", 10),
+                30_000, 300_000,
+                Integer.getInteger("foodstagram.db.pool.statementCache", 50),
+                queryMetrics);
+    }
+
+    /**
+     * Gets the QueryMetrics the queries of the default pool, and of the pools of replicas, are counted in.
+     * Queries taking longer than the foodstagram.db.slowQueryMillis system property (200 by default) are
+     * printed to standard error with their parameters.
+     * @return the shared QueryMetrics.
+     */
+    public static QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    private static synchronized InteractionWriter getDefaultInteractionWriter() {
+        if (defaultInteractionWriter == null && !defaultInteractionWriterFailed) {
+            // Likes and comments left in the journal are saved as soon as the writer opens,
+            // so the schema has to be up to date first
+            migrateSchema(getDefaultConnectionPool());
+            String journalFile = System.getProperty("foodstagram.journal",
+                    Paths.get(System.getProperty("java.io.tmpdir"), "foodstagram-interactions.journal").toString());
+            try {
+                defaultInteractionWriter = new InteractionWriter(getDefaultConnectionPool(), Paths.get(journalFile),
+                        INTERACTION_BATCH_SIZE, INTERACTION_LINGER_MILLIS);
+                // Save what is waiting when the app exits, rather than on the next start
+                Runtime.getRuntime().addShutdownHook(new Thread(defaultInteractionWriter::close,
+                        "interaction-writer-shutdown"));
+            } catch (IOException e) {
+                // Fall back to saving likes and comments right away
+                defaultInteractionWriterFailed = true;
+                e.printStackTrace();
+            }
+        }
+        return defaultInteractionWriter;
+    }
+
+    private static synchronized SnapshotStore getDefaultSnapshotStore() {
+        String snapshotFile = System.getProperty("foodstagram.snapshot.file");
+        if (defaultSnapshotStore == null && snapshotFile != null) {
+            // The snapshot is caught up from the change_log table, which the migrations create
+            migrateSchema(getDefaultConnectionPool());
+            defaultSnapshotStore = new SnapshotStore(getDefaultConnectionPool(), Paths.get(snapshotFile),
+                    Long.getLong("foodstagram.snapshot.intervalSeconds", 300));
+            // Save the latest snapshot when the app exits, so the next start has nothing to catch up
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultSnapshotStore::close, "snapshot-store-shutdown"));
+        }
+        return defaultSnapshotStore;
+    }
+
+    /**
+     * Gets an AsyncDatabaseManager that runs the methods of this MySQLController in the background, on an
+     * executor shared by every MySQLController that uses the same connection pool. No more methods run at the
+     * same time than the pool has connections, so they never wait on the pool for one.
+     * @return an AsyncDatabaseManager for this MySQLController.
+     */
+    @Override
+    public AsyncDatabaseManager async() {
+        return new AsyncDatabaseManager(this, getAsyncExecutor(this.connectionPool));
+    }
+
+    private static synchronized ExecutorService getAsyncExecutor(ConnectionPool connectionPool) {
+        ExecutorService executor = asyncExecutors.computeIfAbsent(connectionPool,
+                pool -> AsyncDatabaseManager.newExecutor("mysql-async", pool.getMaxSize()));
+        releaseOnClose(connectionPool);
+        return executor;
+    }
+
+    /**
+     * @return the InteractionWriter saving likes and comments in the background, or null if they are
+     * saved right away.
+     */
+    public InteractionWriter getInteractionWriter() {
+        return this.interactionWriter;
+    }
+
+    /**
+     * Save the likes and comments waiting in the background, so that reads see them and deletes remove them.
+     */
+    private void flushInteractions() {
+        if (this.interactionWriter != null) {
+            try {
+                this.interactionWriter.flush();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the SnapshotStore every user and post is loaded from, or null if they are read from the database.
+     */
+    public SnapshotStore getSnapshotStore() {
+        return this.snapshotStore;
+    }
+
+    /**
+     * @return the pool this MySQLController borrows its connections from.
+     */
+    public ConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+
     /**
      * Save a new post to the database.
      * @param newPost The Post to save to the database.
      */
     public void addNewPost(Post newPost) {
-        this.insertPostDB(newPost);
-        this.insertRecipeDB(newPost.getRecipe());
-        this.insertRecipeStepsDB(newPost.getRecipe());
-        this.insertRecipeIngredientsDB(newPost.getRecipe());
-        this.insertCommentsDB(newPost, newPost.getComments());
-        this.insertLikesDB(newPost, newPost.getLikedUsers());
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.addNewPost(connection, newPost);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
     }
 
     /**
-     * Edit the Post saved in the Database
-     * @param newPost The Post to save to the database.
+     * Saves every row of a new post in one transaction, so a half-written post is never visible.
+     * The rows of each table are sent as a single batch.
      */
-    public void editPost(Post newPost) {
+    private void addNewPost(Connection connection, Post newPost) throws SQLException {
+        connection.setAutoCommit(false);
         try {
-            if (!postExistsInDB(newPost.getId())) {
-                throw new DatabaseException("The given Post with ID " + newPost.getId() +
-                        " was not found in the Database.");
+            this.insertPostDB(connection, newPost);
+            if (!this.recipeExistsInDB(connection, newPost.getRecipe().getId())) {
+                this.insertRecipeDB(connection, newPost.getRecipe());
+                this.insertRecipeStepsDB(connection, newPost.getRecipe());
+                this.insertRecipeIngredientsDB(connection, newPost.getRecipe());
             } else {
-                this.updatePostsTable(newPost);
-                this.updateRecipesTable(newPost.getRecipe());
-                this.updateRecipesStepsTable(newPost.getRecipe());
-                this.updateRecipeIngredientsTable(newPost.getRecipe());
+                // The recipe outlived an earlier post (recipes are kept when posts are deleted)
+                this.updateRecipesTable(connection, newPost.getRecipe());
+                this.updateRecipesStepsTable(connection, newPost.getRecipe());
+                this.updateRecipeIngredientsTable(connection, newPost.getRecipe());
             }
+            this.insertCommentsDB(connection, newPost, newPost.getComments());
+            this.insertLikesDB(connection, newPost, newPost.getLikedUsers());
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Edit the Post saved in the Database
+     * @param newPost The Post to save to the database.
+     */
+    public void editPost(Post newPost) {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.editPost(connection, newPost);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private boolean userHasPostsDB(User user) {
+    /**
+     * Compares the stored post and recipe with the new ones and only writes the rows that changed,
+     * all in one transaction. Nothing is written when nothing changed.
+     */
+    private void editPost(Connection connection, Post newPost) throws SQLException, DatabaseException {
+        connection.setAutoCommit(false);
         try {
-            String query = "SELECT * FROM `posts` WHERE `user_id`= ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setString(1, user.getId());
-            return preparedStatement.execute();
-        } catch (Exception e){
-            e.printStackTrace();
-            return false;
+            if (!this.postRowMatches(connection, newPost)) {
+                this.updatePostsTable(connection, newPost);
+            }
+            Recipe newRecipe = newPost.getRecipe();
+            Recipe storedRecipe = this.getRecipes(connection, List.of(newRecipe.getId())).get(newRecipe.getId());
+            if (storedRecipe == null) {
+                this.insertRecipeDB(connection, newRecipe);
+            } else if (!storedRecipe.getTitle().equals(newRecipe.getTitle())) {
+                this.updateRecipesTable(connection, newRecipe);
+            }
+            this.updateRecipesStepsTable(connection, newRecipe);
+            this.updateRecipeIngredientsTable(connection, newRecipe);
+            connection.commit();
+        } catch (SQLException | DatabaseException | RuntimeException e) {
+            // Such as the details of a lazily read post that could not be loaded
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
         }
     }
 
     /**
-     * Deletes the post from the user and starts to add new
-     * ones from the user
-     * @param user user object where we want to delete the
-     *             posts
+     * @param newPost The edited post.
+     * @return true iff the stored posts row already has the values of the edited post.
+     * @throws DatabaseException if the post is not in the database.
      */
-    private void updatePostsFromUser(User user){
-        // first I delete the posts from the user
-        if (this.userHasPostsDB(user)){
-            this.deletePostsFromUser(user);
+    private boolean postRowMatches(Connection connection, Post newPost) throws SQLException, DatabaseException {
+        String query = "SELECT * FROM `posts` WHERE `post_id`=?";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, newPost.getId());
+            try (ResultSet postResult = preparedStmt.executeQuery()) {
+                if (!postResult.next()) {
+                    throw new DatabaseException("The given Post with ID " + newPost.getId() +
+                            " was not found in the Database.");
+                }
+                Timestamp postedTime = postResult.getTimestamp("posted_time");
+                // posted_time is stored to the second
+                return newPost.getAuthorId().equals(postResult.getString("user_id")) &&
+                        newPost.getRecipe().getId().equals(postResult.getString("recipe_id")) &&
+                        newPost.getCategory().equals(postResult.getString("category")) &&
+                        postedTime != null &&
+                        postedTime.toLocalDateTime().equals(newPost.getCreatedTime().withNano(0));
+            }
+        }
+    }
+
+    private Set<String> getPostIdsFromUser(Connection connection, User user) throws SQLException {
+        String query = "SELECT `post_id` FROM `posts` WHERE `user_id`= ?";
+        Set<String> postIds = new HashSet<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+            preparedStatement.setString(1, user.getId());
+            try (ResultSet postResult = preparedStatement.executeQuery()) {
+                while (postResult.next()) {
+                    postIds.add(postResult.getString("post_id"));
+                }
+            }
         }
+        return postIds;
+    }
 
-        // add the new ones
+    /**
+     * Saves the posts the user has that are not in the database yet, and deletes the ones the
+     * user no longer has. The posts already saved are left alone: deleting and saving them again
+     * would reset their like_count and comment_count, and edits to them go through editPost.
+     * @param user user object whose posts are saved
+     */
+    private void updatePostsFromUser(Connection connection, User user) throws SQLException {
+        Set<String> removedIds = this.getPostIdsFromUser(connection, user);
         for (Post post: user.getPosts()){
-            this.addNewPost(new Post(user.getId(), post.getTime(), post.getRecipe(),
-                    post.getCategory(), post.getId()));
+            if (removedIds.remove(post.getId())) {
+                continue;
+            }
+            try {
+                this.addNewPost(connection, new Post(user.getId(), post.getTime(), post.getRecipe(),
+                        post.getCategory(), post.getId()));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        if (!removedIds.isEmpty()) {
+            List<String> postIds = new ArrayList<>(removedIds);
+            String query = "DELETE FROM `posts` WHERE `user_id`=? AND `post_id` IN (" +
+                    placeholders(postIds.size()) + ")";
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                preparedStatement.setString(1, user.getId());
+                for (int i = 0; i < postIds.size(); i++) {
+                    preparedStatement.setString(i + 2, postIds.get(i));
+                }
+                preparedStatement.execute();
+            }
         }
     }
 
@@ -89,10 +454,9 @@ public class MySQLController extends DatabaseManager {
      * deletes all the rows where a user is following user_id
      * @param user object that stores the information of user_id
      */
-    private void deleteFollowersFromUser(User user){
-        try {
-            String query = "DELETE FROM `follows` WHERE `follower_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
+    private void deleteFollowersFromUser(Connection connection, User user){
+        String query = "DELETE FROM `follows` WHERE `follower_id`=?";
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             preparedStatement.setString(1, user.getId());
             preparedStatement.execute();
 
@@ -109,87 +473,115 @@ public class MySQLController extends DatabaseManager {
      *             update the values
      */
     public boolean updateUser(User user){
-        try {
-            String query = "UPDATE `user_info` SET `username`= ?, `password`=?, `bio`=? " +
-                    "WHERE `user_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
+        try (Connection connection = this.connectionPool.getConnection()) {
+            return this.updateUser(connection, user);
+        } catch (Exception e){
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private boolean updateUser(Connection connection, User user) throws SQLException {
+        String query = "UPDATE `user_info` SET `username`= ?, `password`=?, `bio`=? " +
+                "WHERE `user_id`=?";
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             preparedStatement.setString(1, user.getUsername());
             preparedStatement.setString(2, user.getPassword());
             preparedStatement.setString(3, user.getBio());
             preparedStatement.setString(4, user.getId());
             preparedStatement.execute();
-            this.updatePostsFromUser(user);
-            // update follows
-            this.updateFollowers(user);
-            this.updateFollows(user);
-            return true;
-
-        } catch (Exception e){
-            e.printStackTrace();
-            return false;
         }
-
+        this.updatePostsFromUser(connection, user);
+        // update follows
+        this.updateFollowers(connection, user);
+        this.updateFollows(connection, user);
+        return true;
     }
 
     /**
-     * deletes all the information except for recipes related
-     * to the given user in the database
+     * Deletes the given user right away, and everything else related to them except for recipes in the
+     * background. The user_info row is replaced by a tombstone in one transaction, after which the user and
+     * their posts, likes and comments are no longer read; a UserPurger shared by every MySQLController of the
+     * same pool then removes the rest of their rows a chunk at a time. The chunk size, the pause between
+     * chunks and how often leftover tombstones are looked for can be configured with the
+     * foodstagram.purge.chunkSize (500), foodstagram.purge.pauseMillis (100) and
+     * foodstagram.purge.intervalSeconds (60) system properties.
      * @param user user object that contains information about
      *             the user
-     * @return true if it could delete all the information related
-     * to the user
+     * @return true if the user was deleted
      */
     public boolean deleteUser(User user){
-        try {
-            String query = "DELETE FROM `user_info` WHERE `user_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setString(1, user.getId());
-            preparedStatement.execute();
+        // Likes and comments waiting to be saved are saved first, so that they are purged with the rest
+        this.flushInteractions();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                String tombstoneQuery = "INSERT IGNORE INTO `user_tombstones` (`user_id`) VALUES (?)";
+                try (PreparedStatement preparedStatement = connection.prepareStatement(tombstoneQuery)) {
+                    preparedStatement.setString(1, user.getId());
+                    preparedStatement.execute();
+                }
+                String query = "DELETE FROM `user_info` WHERE `user_id`=?";
+                try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                    preparedStatement.setString(1, user.getId());
+                    preparedStatement.execute();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            getUserPurger(this.connectionPool).wake();
+            return true;
 
         } catch (Exception e){
             e.printStackTrace();
             return false;
         }
-        this.deletePostsFromUser(user);
-        this.deleteCommentsFromUser(user);
-        this.deleteFollowsFromUser(user);
-        this.deleteFollowersFromUser(user);
-        this.deleteLikesFromUser(user);
-        return true;
-
-
     }
 
     /**
-     * deletes the posts from the table in mysql related to user
-     * @param user object user storing id
+     * Gets the UserPurger removing the rows of the users deleted through the given pool, starting it if needed.
+     * @param connectionPool The pool the users were deleted through.
+     * @return the UserPurger of the pool.
      */
-    private void deletePostsFromUser(User user){
-        this.deleteUserDataFromPosts(user);
+    static synchronized UserPurger getUserPurger(ConnectionPool connectionPool) {
+        UserPurger userPurger = userPurgers.computeIfAbsent(connectionPool, pool -> new UserPurger(pool,
+                Integer.getInteger("foodstagram.purge.chunkSize", 500),
+                Long.getLong("foodstagram.purge.pauseMillis", 100),
+                Long.getLong("foodstagram.purge.intervalSeconds", 60)));
+        releaseOnClose(connectionPool);
+        return userPurger;
     }
 
     /**
-     * deletes the likes given by the user from mysql table
-     * @param user object user storing id
+     * Gets the ChangeFeed of the database this MySQLController saves to, shared by every MySQLController of
+     * the same pool, starting it if needed. Every change made through any of its methods, such as a new post,
+     * a like, a comment, an updated user or a follow, is in the feed. How often it looks for new changes and how
+     * long it waits for a change that has not been committed yet can be configured with the
+     * foodstagram.changes.pollMillis (200) and foodstagram.changes.maxGapMillis (5000) system properties.
+     * @return the ChangeFeed of the database.
      */
-    private void deleteLikesFromUser(User user){
-        this.deleteUserDataFromLikes(user);
+    public ChangeFeed getChangeFeed() {
+        return getChangeFeed(this.connectionPool);
     }
 
-    /**
-     * deletes the comments given by the user from mysql table
-     * @param user object user storing id
-     */
-    private void deleteCommentsFromUser(User user){
-        this.deleteUserDataFromComments(user);
+    private static synchronized ChangeFeed getChangeFeed(ConnectionPool connectionPool) {
+        ChangeFeed changeFeed = changeFeeds.computeIfAbsent(connectionPool, pool -> new ChangeFeed(pool,
+                Long.getLong("foodstagram.changes.pollMillis", 200),
+                Long.getLong("foodstagram.changes.maxGapMillis", 5000)));
+        releaseOnClose(connectionPool);
+        return changeFeed;
     }
 
     /**
      * deletes the rows from the mysql table in follows
      * @param user object user storing id
      */
-    private void deleteFollowsFromUser(User user){
-        this.deleteUserDataFromFollows(user);
+    private void deleteFollowsFromUser(Connection connection, User user){
+        this.deleteUserDataFromFollows(connection, user);
     }
 
 
@@ -198,65 +590,17 @@ public class MySQLController extends DatabaseManager {
      * the user_id is equal to the one given
      * @param user: object user where we get the user_id
      */
-    private void deleteUserDataFromPosts(User user){
-
-        try {
-            String query = "DELETE FROM `posts` WHERE `user_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setString(1, user.getId());
-            preparedStatement.execute();
-
-        } catch (Exception e){
-            e.printStackTrace();
-        }
+    private void deleteUserDataFromFollows(Connection connection, User user){
+        this.deleteUserRows(connection, "DELETE FROM `follows` WHERE `user_id`=?", user);
     }
 
     /**
-     * This method deletes the rows where
-     * the user_id is equal to the one given
+     * Runs a delete query whose only parameter is the id of the given user
+     * @param query the delete query to run
      * @param user: object user where we get the user_id
      */
-    private void deleteUserDataFromLikes(User user){
-
-        try {
-            String query = "DELETE FROM `likes` WHERE `user_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setString(1, user.getId());
-            preparedStatement.execute();
-
-        } catch (Exception e){
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * This method deletes the rows where
-     * the user_id is equal to the one given
-     * @param user: object user where we get the user_id
-     */
-    private void deleteUserDataFromComments(User user){
-
-        try {
-            String query = "DELETE FROM `comments` WHERE `user_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
-            preparedStatement.setString(1, user.getId());
-            preparedStatement.execute();
-
-        } catch (Exception e){
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * This method deletes the rows where
-     * the user_id is equal to the one given
-     * @param user: object user where we get the user_id
-     */
-    private void deleteUserDataFromFollows(User user){
-
-        try {
-            String query = "DELETE FROM `follows` WHERE `user_id`=?";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
+    private void deleteUserRows(Connection connection, String query, User user){
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             preparedStatement.setString(1, user.getId());
             preparedStatement.execute();
 
@@ -273,29 +617,36 @@ public class MySQLController extends DatabaseManager {
      * @return a boolean which is true if the Post exists.
      */
     public boolean postExistsInDB(String postID) {
-        try {
-            String query = "SELECT * from posts WHERE post_id=?";
-
-            PreparedStatement preparedStmt = connection.prepareStatement(query);
-            preparedStmt.setString(1, postID);
-
-            ResultSet result = preparedStmt.executeQuery();
-            return result.next();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            return this.postExistsInDB(connection, postID);
         } catch (Exception e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    private boolean postExistsInDB(Connection connection, String postID) throws SQLException {
+        String query = "SELECT * from posts WHERE post_id=?";
+
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, postID);
+
+            try (ResultSet result = preparedStmt.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
     /**
      * Delete a Post in the database.
      * @param postID The ID of the Post to delete.
      */
     public void deletePost(String postID) {
-        try {
-            this.deleteFromPostsTable(postID);
-            this.deleteFromCommentsTable(postID);
-            this.deleteFromLikesTable(postID);
+        this.flushInteractions();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.deleteFromPostsTable(connection, postID);
+            this.deleteFromCommentsTable(connection, postID);
+            this.deleteFromLikesTable(connection, postID);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -309,9 +660,16 @@ public class MySQLController extends DatabaseManager {
      * @param newFollowers new follower that is starting to follow user
      */
     public void startFollowingDB(User user, User newFollowers){
-        try {
-            String query = "INSERT INTO `follows` (`user_id`, `follower_id`) VALUES(?, ?)";
-            PreparedStatement preparedStatement = connection.prepareStatement(query);
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.startFollowingDB(connection, user, newFollowers);
+        } catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    private void startFollowingDB(Connection connection, UserRef user, UserRef newFollowers){
+        String query = "INSERT INTO `follows` (`user_id`, `follower_id`) VALUES(?, ?)";
+        try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
             preparedStatement.setString(1, user.getId());
             preparedStatement.setString(2, newFollowers.getId());
             preparedStatement.execute();
@@ -325,11 +683,11 @@ public class MySQLController extends DatabaseManager {
      * deletes the follows of a user and adds it to the database
      * @param user stores the user_id
      */
-    private void updateFollows(User user){
+    private void updateFollows(Connection connection, User user){
         // given the list from the user list
-        this.deleteFollowsFromUser(user);
-        for(User followed: user.getFollowing()){
-            this.startFollowingDB(followed, user);
+        this.deleteFollowsFromUser(connection, user);
+        for(UserRef followed: user.getFollowing()){
+            this.startFollowingDB(connection, followed, user);
         }
     }
 
@@ -338,11 +696,11 @@ public class MySQLController extends DatabaseManager {
      * deletes the followers of a user and adds it to the database
      * @param user stores the user_id
      */
-    private void updateFollowers(User user){
+    private void updateFollowers(Connection connection, User user){
         // given the list from the user list
-        this.deleteFollowersFromUser(user);
-        for(User follower: user.getFollowers()){
-                this.startFollowingDB(user, follower);
+        this.deleteFollowersFromUser(connection, user);
+        for(UserRef follower: user.getFollowers()){
+                this.startFollowingDB(connection, user, follower);
         }
     }
 
@@ -354,18 +712,19 @@ public class MySQLController extends DatabaseManager {
      * unsuccessful.
      */
     public boolean addNewUser(User newUser) {
-        try {
+        try (Connection connection = this.connectionPool.getConnection()) {
             String query = "INSERT INTO `user_info`(`user_id`, `username`, `password`, `bio`) " +
                     "VALUES (?,?,?,?)";
 
-            PreparedStatement preparedStmt = connection.prepareStatement(query);
-            preparedStmt.setString(1, newUser.getId());
-            preparedStmt.setString(2, newUser.getUsername());
-            preparedStmt.setString(3, newUser.getPassword());
-            preparedStmt.setString(4, newUser.getBio());
+            try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+                preparedStmt.setString(1, newUser.getId());
+                preparedStmt.setString(2, newUser.getUsername());
+                preparedStmt.setString(3, newUser.getPassword());
+                preparedStmt.setString(4, newUser.getBio());
 
-            preparedStmt.execute();
-            this.updateUser(newUser);
+                preparedStmt.execute();
+            }
+            this.updateUser(connection, newUser);
             return true;
         } catch (Exception e) {
             e.printStackTrace();
@@ -373,326 +732,737 @@ public class MySQLController extends DatabaseManager {
         }
     }
 
-    private HashMap<String, ArrayList<User>> getAllLikes(){
-        try {
-            HashMap<String, ArrayList<User>> postIdLikes = new HashMap<>();
-            String postQuery = "SELECT * FROM `likes` INNER JOIN `user_info` ON user_info.user_id = likes.user_id";
-            ResultSet likesResult = this.connection.createStatement().executeQuery(postQuery);
-            while (likesResult.next()) {
-                // I need to create the user with all the information
-                // (String username, String password, String bio, String id)
-                String username = likesResult.getString("username");
-                String password = likesResult.getString("password");
-                String bio = likesResult.getString("bio");
-                String userId = likesResult.getString("user_id");
-                // now I just need the post ID
-                String postId = likesResult.getString("post_id");
-                if (!postIdLikes.containsKey(postId)) {
-                    ArrayList<User> likingUserList = new ArrayList<User>();
-                    likingUserList.add(new User(username, password, bio, userId));
-                    postIdLikes.put(postId, likingUserList);
-                } else {
-                    postIdLikes.get(postId).add(new User(username, password, bio, userId));
+    /**
+     * Adds the likes matching the given condition to their posts, in a single pass over the likes.
+     * All the likes of a user share one UserRef.
+     * @param postsById The posts to add the likes to, indexed by their ID.
+     * @param condition The WHERE condition selecting the likes to add.
+     * @param parameters The values of the placeholders in the condition.
+     */
+    private void addLikesPosts(Connection connection, HashMap<String, Post> postsById, String condition,
+                               List<String> parameters){
+        UserIdentityMap likers = new UserIdentityMap();
+        String likesQuery = "SELECT likes.post_id, likes.user_id, user_info.username FROM `likes` " +
+                "INNER JOIN `user_info` ON user_info.user_id = likes.user_id WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(likesQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet likesResult = preparedStmt.executeQuery()) {
+                while (likesResult.next()) {
+                    Post post = postsById.get(likesResult.getString("post_id"));
+                    if (post != null) {
+                        post.addLike(likers.getUserRef(likesResult.getString("user_id"),
+                                likesResult.getString("username")));
+                    }
                 }
-
             }
-            return postIdLikes;
-
         } catch (Exception e) {
             e.printStackTrace();
-            return new HashMap<String, ArrayList<User>>();
         }
     }
 
+    /**
+     * Adds every comment in the database to its post, in a single pass over the comments.
+     * @param postsById The posts to add the comments to, indexed by their ID.
+     */
+    private void addCommentsPosts(Connection connection, HashMap<String, Post> postsById){
+        this.addCommentsPosts(connection, postsById, "1", Collections.emptyList());
+    }
 
-    private HashMap<String, ArrayList<Comment>> getAllComments(){
-        try {
-            HashMap<String, ArrayList<Comment>> postComments = new HashMap<>();
-            String postQuery = "SELECT * FROM `comments` INNER JOIN `user_info` ON user_info.user_id = " +
-                    "comments.user_id";
-            ResultSet commentsResult = this.connection.createStatement().executeQuery(postQuery);
-            while (commentsResult.next()) {
-                // I need to create the user with all the information
-                // (String username, String password, String bio, String id)
-                String userId = commentsResult.getString("user_id");
-                // I need to create comment
-                // (String commentText, String authorId, LocalDateTime dateTime, String id)
-                String commentText = commentsResult.getString("comment_text");
-                String postId = commentsResult.getString("post_id");
-                LocalDateTime postedTime = commentsResult.getTimestamp("comment_time").toLocalDateTime();
-                String commentId = commentsResult.getString("comment_id");
-                if (!postComments.containsKey(postId)){
-                    ArrayList<Comment> commentArrayList = new ArrayList<>();
-                    commentArrayList.add(new Comment(commentText, userId, postedTime, commentId));
-                    postComments.put(postId, commentArrayList);
-                } else {
-                    postComments.get(postId).add(new Comment(commentText, userId, postedTime, commentId));
+    /**
+     * Adds the comments matching the given condition to their posts, in a single pass over the comments.
+     * @param postsById The posts to add the comments to, indexed by their ID.
+     * @param condition The WHERE condition selecting the comments to add.
+     * @param parameters The values of the placeholders in the condition.
+     */
+    private void addCommentsPosts(Connection connection, HashMap<String, Post> postsById, String condition,
+                                  List<String> parameters){
+        String commentsQuery = "SELECT * FROM `comments` INNER JOIN `user_info` ON user_info.user_id = " +
+                "comments.user_id WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(commentsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet commentsResult = preparedStmt.executeQuery()) {
+                while (commentsResult.next()) {
+                    Post post = postsById.get(commentsResult.getString("post_id"));
+                    if (post != null) {
+                        // (String commentText, String authorId, LocalDateTime dateTime, String id)
+                        post.addComment(new Comment(commentsResult.getString("comment_text"),
+                                commentsResult.getString("user_id"),
+                                commentsResult.getTimestamp("comment_time").toLocalDateTime(),
+                                commentsResult.getString("comment_id")));
+                    }
                 }
-
             }
-            return postComments;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
+    /**
+     * Gets all the posts stored in the database.
+     * @return an Array of all the posts stored in the database.
+     */
+    public Post[] getAllPosts() {
+        if (this.snapshotStore != null) {
+            return this.loadSnapshot().getPosts();
+        }
+        this.flushInteractions();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            return this.getAllPosts(connection);
         } catch (Exception e) {
             e.printStackTrace();
-            return new HashMap<>();
+            return new Post[0];
         }
     }
 
+    /**
+     * Reads every post with only the title of its recipe and the counts of its likes and comments. The rest is
+     * loaded LAZY_GROUP_SIZE posts at a time, the first time one of the posts needs it.
+     */
+    private Post[] getAllPosts(Connection connection) throws SQLException {
+        try (PreparedStatement preparedStmt = connection.prepareStatement(POST_SUMMARIES_QUERY +
+                LIVE_POSTS_CONDITION)) {
+            return this.readPostSummaries(preparedStmt);
+        }
+    }
 
-    private void lookForPostAndComment(Post[] posts, HashMap<String, ArrayList<Comment>> commentsHashMap,
-                                       String postId){
-        for (Post post : posts) {
-            if (post.getId().equals(postId)) {
-                for (Comment comment: commentsHashMap.get(postId)){
-                    post.addComment(comment);
+    /**
+     * Gets all the posts stored in the database as a Stream that reads them STREAM_FETCH_SIZE at a time.
+     * @return a Stream of all the posts stored in the database, which must be closed once it is no longer used.
+     */
+    @Override
+    public Stream<Post> streamAllPosts() {
+        return this.streamAllPosts(STREAM_FETCH_SIZE);
+    }
+
+    /**
+     * Gets all the posts stored in the database as a Stream that reads them from a cursor, fetchSize at a time,
+     * so that only fetchSize posts are held in memory at once. The recipes, likes and comments of each fetch
+     * are read with one query each, on the same connection as the cursor.
+     * The connection is given back to the pool when the Stream is closed or has been read to the end.
+     * Without useCursorFetch in the url of the database, the driver reads every row of the posts table
+     * at once, but only fetchSize posts are still assembled at a time.
+     * With a SnapshotStore, the posts are streamed from the snapshot, which is already in memory.
+     * @param fetchSize How many posts are read from the database at a time.
+     * @return a Stream of all the posts stored in the database, which must be closed once it is no longer used.
+     * @throws IllegalStateException from the Stream if the posts could not be read from the database.
+     */
+    public Stream<Post> streamAllPosts(int fetchSize) {
+        if (this.snapshotStore != null) {
+            return Arrays.stream(this.loadSnapshot().getPosts());
+        }
+        this.flushInteractions();
+        Connection connection = null;
+        try {
+            connection = this.connectionPool.getConnection();
+            PostCursor cursor = new PostCursor(connection, fetchSize);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(cursor::close);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException closeException) {
+                    e.addSuppressed(closeException);
                 }
             }
+            return Stream.empty();
         }
     }
 
-
-    private void addCommentsPosts(Post[] posts){
-        // add all the comments to the post
-        HashMap<String, ArrayList<Comment>> commentsHashMap = this.getAllComments();
-        for (String postId: commentsHashMap.keySet()) {
-            this.lookForPostAndComment(posts, commentsHashMap, postId);
+    /**
+     * Reads the posts table through a forward-only cursor, and assembles the posts one fetch at a time.
+     */
+    private final class PostCursor implements Iterator<Post>, AutoCloseable {
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final ResultSet postsResult;
+        private final int fetchSize;
+        private final ArrayDeque<Post> fetched = new ArrayDeque<>();
+        private boolean exhausted;
+        private boolean closed;
+
+        PostCursor(Connection connection, int fetchSize) throws SQLException {
+            this.connection = connection;
+            this.fetchSize = fetchSize;
+            this.statement = connection.prepareStatement("SELECT * FROM `posts` WHERE " + LIVE_POSTS_CONDITION,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            this.statement.setFetchSize(fetchSize);
+            this.postsResult = this.statement.executeQuery();
         }
-    }
 
-    private void lookForPostAndLike(Post[] posts, HashMap<String, ArrayList<User>> likesHashMap, String postId){
-        for (Post post : posts) {
-            if (post.getId().equals(postId)) {
-                for (User user: likesHashMap.get(postId)){
-                    post.addLike(user);
+        @Override
+        public boolean hasNext() {
+            if (this.fetched.isEmpty() && !this.exhausted) {
+                try {
+                    this.fetch();
+                } catch (SQLException | DatabaseException e) {
+                    this.close();
+                    throw new IllegalStateException("The posts could not be read from the database.", e);
                 }
             }
+            return !this.fetched.isEmpty();
         }
-    }
 
-    private void addLikesPosts(Post[] posts){
-        // add all the likes
-        HashMap<String, ArrayList<User>> likesHashMap = this.getAllLikes();
-        for (String postId: likesHashMap.keySet()) {
-            this.lookForPostAndLike(posts, likesHashMap, postId);
+        @Override
+        public Post next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.fetched.removeFirst();
         }
-    }
 
-    /**
-     * Gets all the posts stored in the database.
-     * @return an Array of all the posts stored in the database.
-     */
-    public Post[] getAllPosts() {
-        try {
-            HashMap<String, Post> postData = new HashMap<>();
-            String postsQuery = "SELECT * FROM `posts` WHERE 1";
-            ResultSet postsResult = this.connection.createStatement().executeQuery(postsQuery);
-            while (postsResult.next()) {
-                String postId = postsResult.getString("post_id");
-                String userId = postsResult.getString("user_id");
-                String recipeId = postsResult.getString("recipe_id");
-                String category = postsResult.getString("category");
-                LocalDateTime postedTime = postsResult.getTimestamp("posted_time").toLocalDateTime();
-                Recipe associatedRecipe = this.getRecipe(recipeId);
-                postData.put(postId, new Post(userId, postedTime, associatedRecipe, category, postId));
+        /**
+         * Reads the next fetchSize rows of the posts table and assembles them into posts,
+         * with their recipes, likes and comments.
+         */
+        private void fetch() throws SQLException, DatabaseException {
+            ArrayList<String[]> rows = new ArrayList<>();
+            ArrayList<String> recipeIds = new ArrayList<>();
+            ArrayList<Timestamp> postedTimes = new ArrayList<>();
+            while (rows.size() < this.fetchSize && this.postsResult.next()) {
+                rows.add(new String[]{this.postsResult.getString("post_id"), this.postsResult.getString("user_id"),
+                        this.postsResult.getString("recipe_id"), this.postsResult.getString("category")});
+                recipeIds.add(this.postsResult.getString("recipe_id"));
+                postedTimes.add(this.postsResult.getTimestamp("posted_time"));
             }
+            // The connection is still needed for the recipes, likes and comments of the last rows
+            try {
+                if (!rows.isEmpty()) {
+                    this.assemble(rows, recipeIds, postedTimes);
+                }
+            } finally {
+                if (rows.size() < this.fetchSize) {
+                    this.close();
+                }
+            }
+        }
 
-            Post[] posts = new Post[postData.size()];
-            int postsCounter = 0;
-            for (String postId: postData.keySet()) {
-                posts[postsCounter] = postData.get(postId);
-                postsCounter ++;
+        /**
+         * Assembles rows of the posts table into posts, with their recipes, likes and comments.
+         */
+        private void assemble(ArrayList<String[]> rows, ArrayList<String> recipeIds, ArrayList<Timestamp> postedTimes)
+                throws SQLException, DatabaseException {
+            HashMap<String, Recipe> recipes = getRecipes(this.connection, recipeIds);
+            LinkedHashMap<String, Post> postData = new LinkedHashMap<>();
+            for (int i = 0; i < rows.size(); i++) {
+                String[] row = rows.get(i);
+                Recipe associatedRecipe = recipes.get(row[2]);
+                if (associatedRecipe == null) {
+                    throw new DatabaseException("A recipe with the ID " + row[2] + " was not found.");
+                }
+                postData.put(row[0], new Post(row[1], postedTimes.get(i).toLocalDateTime(), associatedRecipe,
+                        row[3], row[0]));
             }
+            ArrayList<String> postIds = new ArrayList<>(postData.keySet());
+            addCommentsPosts(this.connection, postData,
+                    "comments.post_id IN (" + placeholders(postIds.size()) + ")", postIds);
+            addLikesPosts(this.connection, postData,
+                    "likes.post_id IN (" + placeholders(postIds.size()) + ")", postIds);
+            this.fetched.addAll(postData.values());
+        }
 
-            this.addCommentsPosts(posts);
-            this.addLikesPosts(posts);
+        /**
+         * Closes the cursor and gives the connection back to the pool. The posts already fetched can still be read.
+         */
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.exhausted = true;
+            try {
+                this.postsResult.close();
+                this.statement.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    this.connection.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
 
-            return posts;
+    /**
+     * Gets a page of posts ordered from the most recently posted to the least recently posted.
+     * Only the posts of the page are read from the database, with the titles of their recipes and the counts of
+     * their likes and comments. The rest of their recipes, their likes and their comments are read for the whole
+     * page at once, the first time one of its posts needs them.
+     * @param cursor The position of the last post of the previous page, or null to get the first page.
+     * @param limit The maximum number of posts in the page.
+     * @return an Array of at most limit posts that come after the cursor, in order.
+     */
+    public Post[] getPostsPage(FeedCursor cursor, int limit) {
+        this.flushInteractions();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            return this.getPostsPage(connection, cursor, limit);
         } catch (Exception e) {
             e.printStackTrace();
             return new Post[0];
         }
     }
 
-    public Recipe getRecipe(String recipeID) throws SQLException, DatabaseException {
-        String recipeTitle;
-        String query = "SELECT title FROM recipes WHERE recipe_id = ?";
-        PreparedStatement preparedStmt = connection.prepareStatement(query);
-        preparedStmt.setString(1, recipeID);
-        ResultSet recipeTitleResult = preparedStmt.executeQuery();
-        if (recipeTitleResult.next()) {
-            recipeTitle = recipeTitleResult.getString("title");
-            ArrayList<String> recipeSteps = this.getRecipeSteps(recipeID);
-            ArrayList<Ingredient> ingredients = this.getIngredients(recipeID);
-            return new Recipe(recipeTitle, ingredients, recipeSteps, recipeID);
-        } else {
-            throw new DatabaseException("A recipe with the ID " + recipeID + " was not found.");
+    private Post[] getPostsPage(Connection connection, FeedCursor cursor, int limit) throws SQLException {
+        String postsQuery = POST_SUMMARIES_QUERY + "`posted_time` IS NOT NULL AND " + LIVE_POSTS_CONDITION;
+        if (cursor != null) {
+            postsQuery += " AND (`posted_time` < ? OR (`posted_time` = ? AND `post_id` < ?))";
+        }
+        postsQuery += " ORDER BY `posted_time` DESC, `post_id` DESC LIMIT ?";
+
+        try (PreparedStatement preparedStmt = connection.prepareStatement(postsQuery)) {
+            int parameterIndex = 1;
+            if (cursor != null) {
+                Timestamp lastPostedTime = Timestamp.valueOf(cursor.getLastPostedTime());
+                preparedStmt.setTimestamp(parameterIndex++, lastPostedTime);
+                preparedStmt.setTimestamp(parameterIndex++, lastPostedTime);
+                preparedStmt.setString(parameterIndex++, cursor.getLastPostId());
+            }
+            preparedStmt.setInt(parameterIndex, limit);
+            return this.readPostSummaries(preparedStmt);
         }
     }
 
     /**
-     * Gets an array of all the Users saved in the database.
-     * @return an Array of all the Users registered in the app.
+     * Gets the posts with the most likes, from the most liked to the least liked, using the like_count column.
+     * Only the posts, the titles of their recipes and the counts of their likes and comments are read from the
+     * database, as with getPostsPage.
+     * With a SnapshotStore, the posts are sorted in the snapshot instead.
+     * @param limit The maximum number of posts to get.
+     * @return an Array of at most limit posts with the most likes.
      */
-    public User[] getAllUsers() {
-        try {
-            HashMap<String, User> usersData = new HashMap<>();
-            this.populateUsersWithUsersInfo(usersData);
-            this.populateUsersWithLikesInfo(usersData);
-            this.populateUsersWithFollowsInfo(usersData);
-            this.populateUsersWithPostsInfo(usersData);
-
-            User[] users = new User[usersData.size()];
-            int usersCounter = 0;
-            for (String id: usersData.keySet()) {
-                users[usersCounter] = usersData.get(id);
-                usersCounter ++;
-            }
-
-            return users;
-
+    @Override
+    public Post[] getMostLikedPosts(int limit) {
+        if (this.snapshotStore != null) {
+            return super.getMostLikedPosts(limit);
+        }
+        this.flushInteractions();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            return this.getMostLikedPosts(connection, limit);
         } catch (Exception e) {
             e.printStackTrace();
-            return new User[0];
+            return new Post[0];
         }
     }
 
-    private ArrayList<String> getRecipeSteps(String recipeID) throws SQLException {
-        String query = "SELECT step_number, step_text from recipes_steps where recipe_id=?";
-        PreparedStatement preparedStmt = connection.prepareStatement(query);
-        preparedStmt.setString(1, recipeID);
-        ResultSet recipeStepsResult = preparedStmt.executeQuery();
-        TreeMap<Integer, String> stepNumToStepText = new TreeMap<>();
-        while (recipeStepsResult.next()) {
-            stepNumToStepText.put(
-                recipeStepsResult.getInt("step_number"),
-                recipeStepsResult.getString("step_text")
-            );
+    private Post[] getMostLikedPosts(Connection connection, int limit) throws SQLException {
+        String postsQuery = POST_SUMMARIES_QUERY + "`posted_time` IS NOT NULL AND " + LIVE_POSTS_CONDITION +
+                " ORDER BY `like_count` DESC, `post_id` DESC LIMIT ?";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(postsQuery)) {
+            preparedStmt.setInt(1, limit);
+            return this.readPostSummaries(preparedStmt);
         }
-        return new ArrayList<>(stepNumToStepText.values());
     }
 
-    private ArrayList<Ingredient> getIngredients(String recipeID) throws SQLException {
-        ResultSet recipeIngredientsResult = this.getRecipeIngredients(recipeID);
-        return this.assembleIngredientsList(recipeIngredientsResult);
+    /**
+     * Gets what a list of posts shows for each of the given posts with one query per RECIPE_BATCH_SIZE posts,
+     * which joins the posts with the titles of their recipes and the usernames of their authors, and uses the
+     * like_count and comment_count columns.
+     * @param postIds The IDs of the posts.
+     * @return an Array of the FeedCards of the posts that were found, in the order of postIds.
+     */
+    @Override
+    public FeedCard[] getFeedCards(List<String> postIds) {
+        this.flushInteractions();
+        HashMap<String, FeedCard> cards = new HashMap<>();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            for (int start = 0; start < postIds.size(); start += RECIPE_BATCH_SIZE) {
+                List<String> batch = postIds.subList(start, Math.min(postIds.size(), start + RECIPE_BATCH_SIZE));
+                this.addFeedCards(connection, batch, cards);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        ArrayList<FeedCard> orderedCards = new ArrayList<>();
+        for (String postId : postIds) {
+            if (cards.containsKey(postId)) {
+                orderedCards.add(cards.get(postId));
+            }
+        }
+        return orderedCards.toArray(new FeedCard[0]);
     }
 
-    private ResultSet getRecipeIngredients(String recipeID) throws SQLException {
-        String query = "SELECT ingredient_name, ingredient_count, ingredient_amount, ingredient_measurement " +
-                "from recipe_ingredients where recipe_id=?";
-        PreparedStatement preparedStmt = connection.prepareStatement(query);
-        preparedStmt.setString(1, recipeID);
-        return preparedStmt.executeQuery();
+    private void addFeedCards(Connection connection, List<String> postIds, HashMap<String, FeedCard> cards)
+            throws SQLException {
+        String query = "SELECT `posts`.`post_id`, `posts`.`user_id`, `user_info`.`username`, `recipes`.`title`, " +
+                "`posts`.`category`, `posts`.`posted_time`, `posts`.`like_count`, `posts`.`comment_count` " +
+                "FROM `posts` INNER JOIN `recipes` ON `recipes`.`recipe_id` = `posts`.`recipe_id` " +
+                "LEFT JOIN `user_info` ON `user_info`.`user_id` = `posts`.`user_id` " +
+                "WHERE `posts`.`post_id` IN (" + placeholders(postIds.size()) + ") AND " + LIVE_POSTS_CONDITION;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            setStrings(preparedStmt, postIds);
+            try (ResultSet cardsResult = preparedStmt.executeQuery()) {
+                while (cardsResult.next()) {
+                    Timestamp postedTime = cardsResult.getTimestamp("posted_time");
+                    FeedCard card = new FeedCard(cardsResult.getString("post_id"), cardsResult.getString("user_id"),
+                            cardsResult.getString("username"), cardsResult.getString("title"),
+                            cardsResult.getString("category"),
+                            postedTime == null ? null : postedTime.toLocalDateTime(),
+                            cardsResult.getInt("like_count"), cardsResult.getInt("comment_count"));
+                    cards.put(card.getPostId(), card);
+                }
+            }
+        }
     }
 
-    private ArrayList<Ingredient> assembleIngredientsList(ResultSet recipeIngredientsResult) throws SQLException {
-        ArrayList<Ingredient> ingredients = new ArrayList<>();
-        while (recipeIngredientsResult.next()) {
-            String name = recipeIngredientsResult.getString("ingredient_name");
-            int count = recipeIngredientsResult.getInt("ingredient_count");
-            float amount = recipeIngredientsResult.getFloat("ingredient_amount");
-            String measurement = recipeIngredientsResult.getString("ingredient_measurement");
-            if (measurement != null && !measurement.isEmpty()) {
-                ingredients.add(new MeasurableIngredient(name, amount, measurement));
-            } else {
-                ingredients.add(new CountableIngredient(name, count));
+    /**
+     * Runs a query starting with POST_SUMMARIES_QUERY, and creates its posts with only the titles of their
+     * recipes and the counts of their likes and comments. The rest of their recipes, their likes and their
+     * comments are read with loadDetails, LAZY_GROUP_SIZE posts at a time, the first time one of them needs it.
+     * @param preparedStmt The query, with its parameters set.
+     * @return the posts, in the order of the query.
+     */
+    private Post[] readPostSummaries(PreparedStatement preparedStmt) throws SQLException {
+        ArrayList<Post> posts = new ArrayList<>();
+        try (ResultSet postsResult = preparedStmt.executeQuery()) {
+            while (postsResult.next()) {
+                Timestamp postedTime = postsResult.getTimestamp("posted_time");
+                Recipe recipeTitle = new Recipe(postsResult.getString("title"), new ArrayList<>(), new ArrayList<>(),
+                        postsResult.getString("recipe_id"));
+                Post post = new Post(postsResult.getString("user_id"),
+                        postedTime == null ? null : postedTime.toLocalDateTime(), recipeTitle,
+                        postsResult.getString("category"), postsResult.getString("post_id"));
+                post.setInteractionCounts(postsResult.getInt("like_count"), postsResult.getInt("comment_count"));
+                posts.add(post);
             }
-        } return ingredients;
+        }
+        // The likes of a user share one UserRef across every group of the read
+        UserIdentityMap likers = new UserIdentityMap();
+        for (int start = 0; start < posts.size(); start += LAZY_GROUP_SIZE) {
+            LazyPostGroup.loadLazily(posts.subList(start, Math.min(posts.size(), start + LAZY_GROUP_SIZE)),
+                    group -> this.loadDetails(group, likers));
+        }
+        return posts.toArray(new Post[0]);
     }
 
     /**
-     * Populates a given HashMap of User data with Post info.
-     * @param usersData The users data that needs to be populated.
+     * Reads the recipes, likes and comments of posts read by readPostSummaries, with one query for each per
+     * RECIPE_BATCH_SIZE posts.
+     * @param posts The posts to read the details of.
+     * @param likers The UserRefs of the users who liked the posts read with them, shared by every group.
+     * @throws IllegalStateException if the details could not be read from the database.
      */
-    private void populateUsersWithPostsInfo(HashMap<String, User> usersData) {
-        Post[] allPosts = this.getAllPosts();
-        for (Post post: allPosts) {
-            if (usersData.containsKey(post.getAuthorId())) {
-                User user = usersData.get(post.getAuthorId());
-                user.addPost(post);
+    private void loadDetails(List<Post> posts, UserIdentityMap likers) {
+        this.flushInteractions();
+        try (Connection connection = this.connectionPool.getConnection()) {
+            // The posts are being loaded, so getRecipe gives the recipe with only its title
+            ArrayList<String> recipeIds = new ArrayList<>();
+            for (Post post : posts) {
+                recipeIds.add(post.getRecipe().getId());
+            }
+            HashMap<String, Recipe> recipes = this.getRecipes(connection, recipeIds);
+            LinkedHashMap<String, Post> details = new LinkedHashMap<>();
+            for (Post post : posts) {
+                details.put(post.getId(), new Post(post.getAuthorId(), post.getTime(),
+                        recipes.getOrDefault(post.getRecipe().getId(), post.getRecipe()), post.getCategory(),
+                        post.getId()));
             }
+            ArrayList<String> postIds = new ArrayList<>(details.keySet());
+            for (int start = 0; start < postIds.size(); start += RECIPE_BATCH_SIZE) {
+                List<String> batch = postIds.subList(start, Math.min(postIds.size(), start + RECIPE_BATCH_SIZE));
+                this.addCommentsPosts(connection, details, "comments.post_id IN (" + placeholders(batch.size()) +
+                        ")", batch);
+                this.addLikesPosts(connection, details, "likes.post_id IN (" + placeholders(batch.size()) + ")",
+                        batch);
+            }
+            for (Post post : posts) {
+                Post loaded = details.get(post.getId());
+                ArrayList<UserRef> likedUsers = new ArrayList<>();
+                // Groups can be loaded on different threads at the same time
+                synchronized (likers) {
+                    for (UserRef liker : loaded.getLikedUsers()) {
+                        likedUsers.add(likers.getUserRef(liker.getId(), liker.getUsername()));
+                    }
+                }
+                post.setDetails(loaded.getRecipe(), likedUsers, loaded.getComments());
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("The details of the posts could not be read from the database.", e);
         }
     }
 
     /**
-     * Populates a given HashMap of User data with follower/following info from the database.
-     * @param usersData The user data to populate.
-     * @throws SQLException An exception that throws when there is an issue with the database.
+     * Creates the Post stored in the current row of the posts table, without its likes and comments.
+     * @param postsResult A ResultSet positioned at a row of the posts table.
+     * @param recipes The recipes of the posts, indexed by their ID.
+     * @return the Post stored in the current row.
+     * @throws DatabaseException if the recipe of the post is not in the given recipes.
      */
-    private void populateUsersWithFollowsInfo(HashMap<String, User> usersData) throws SQLException {
-        String userFollowsQuery = "SELECT * FROM `follows` WHERE 1";
-        ResultSet userFollowsResult = this.connection.createStatement().executeQuery(userFollowsQuery);
-        while(userFollowsResult.next()) {
-            String userId = userFollowsResult.getString("user_id");
-            String followerId = userFollowsResult.getString("follower_id");
-            User user = usersData.get(userId);
-            User follower = usersData.get(followerId);
-            user.addFollower(follower);
-            follower.addFollowing(user);
+    private Post assemblePost(ResultSet postsResult, HashMap<String, Recipe> recipes)
+            throws SQLException, DatabaseException {
+        String postId = postsResult.getString("post_id");
+        String userId = postsResult.getString("user_id");
+        String recipeId = postsResult.getString("recipe_id");
+        String category = postsResult.getString("category");
+        LocalDateTime postedTime = postsResult.getTimestamp("posted_time").toLocalDateTime();
+        Recipe associatedRecipe = recipes.get(recipeId);
+        if (associatedRecipe == null) {
+            throw new DatabaseException("A recipe with the ID " + recipeId + " was not found.");
+        }
+        return new Post(userId, postedTime, associatedRecipe, category, postId);
+    }
+
+    public Recipe getRecipe(String recipeID) throws SQLException, DatabaseException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            return this.getRecipe(connection, recipeID);
+        }
+    }
+
+    private Recipe getRecipe(Connection connection, String recipeID) throws SQLException, DatabaseException {
+        Recipe recipe = this.getRecipes(connection, List.of(recipeID)).get(recipeID);
+        if (recipe == null) {
+            throw new DatabaseException("A recipe with the ID " + recipeID + " was not found.");
         }
+        return recipe;
     }
 
     /**
-     * Populates a given HashMap of userData with likes info from the database.
-     * @param usersData The users data to be populated.
+     * Gets the recipes with the given IDs. Titles, steps and ingredients are each loaded
+     * with one query per batch of RECIPE_BATCH_SIZE recipes rather than one per recipe.
+     * @param recipeIDs The IDs of the recipes to load.
+     * @return a HashMap of recipe ID to Recipe. IDs that were not found are left out.
      * @throws SQLException An exception thrown when there is an issue with the database.
      */
-    private void populateUsersWithLikesInfo(HashMap<String, User> usersData) throws SQLException {
-        String userLikesQuery = "SELECT * FROM `likes` WHERE 1";
-        ResultSet userLikesResult = this.connection.createStatement().executeQuery(userLikesQuery);
-        while(userLikesResult.next()) {
-            String userId = userLikesResult.getString("user_id");
-            String category = userLikesResult.getString("category");
-            usersData.get(userId).setLike(category);
+    private HashMap<String, Recipe> getRecipes(Connection connection, Collection<String> recipeIDs)
+            throws SQLException {
+        HashMap<String, Recipe> recipes = new HashMap<>();
+        ArrayList<String> uniqueIDs = new ArrayList<>(new LinkedHashSet<>(recipeIDs));
+        for (int start = 0; start < uniqueIDs.size(); start += RECIPE_BATCH_SIZE) {
+            List<String> batch = uniqueIDs.subList(start, Math.min(uniqueIDs.size(), start + RECIPE_BATCH_SIZE));
+            this.loadRecipes(connection, "recipe_id IN (" + placeholders(batch.size()) + ")", batch, recipes);
         }
+        return recipes;
     }
 
     /**
-     * Populates a given HashMap of userData with user info from the database.
-     * @param usersData The users data to be populated.
+     * Gets the recipes of every post in the database with a fixed number of queries.
+     * @return a HashMap of recipe ID to Recipe.
      * @throws SQLException An exception thrown when there is an issue with the database.
      */
-    private void populateUsersWithUsersInfo(HashMap<String, User> usersData) throws SQLException {
-        String userInfoQuery = "SELECT * FROM `user_info` WHERE 1";
-        ResultSet userInfoResult = this.connection.createStatement().executeQuery(userInfoQuery);
-        while(userInfoResult.next()) {
-            String userId = userInfoResult.getString("user_id");
-            String username = userInfoResult.getString("username");
-            String password = userInfoResult.getString("password");
-            String bio = userInfoResult.getString("bio");
-            usersData.put(userId, new User(username, password, bio, userId));
-        }
+    private HashMap<String, Recipe> getRecipesOfAllPosts(Connection connection) throws SQLException {
+        HashMap<String, Recipe> recipes = new HashMap<>();
+        this.loadRecipes(connection, "recipe_id IN (SELECT recipe_id FROM posts)", List.of(), recipes);
+        return recipes;
     }
 
     /**
-     * Save the ingredients in a recipe to the database.
-     * @param recipe The recipe which contains the ingredients to save.
+     * Loads the titles, steps and ingredients of the recipes matching a condition and
+     * assembles them into Recipes.
+     * @param condition The WHERE condition selecting the recipes, on the recipe_id column.
+     * @param parameters The values bound to the placeholders in the condition.
+     * @param recipes The HashMap of recipe ID to Recipe that the loaded recipes are added to.
+     * @throws SQLException An exception thrown when there is an issue with the database.
      */
-    private void insertRecipeIngredientsDB(Recipe recipe) {
-        try {
-            Iterable<Ingredient> ingredients = recipe.getIngredients();
-            for (Ingredient ingredient: ingredients) {
-                String query = "INSERT INTO `recipe_ingredients`(`recipe_id`, `ingredient_name`, `ingredient_count`, " +
-                        "`ingredient_amount`, `ingredient_measurement`) " +
-                        "VALUES (?,?,?,?,?)";
+    private void loadRecipes(Connection connection, String condition, List<String> parameters,
+                             HashMap<String, Recipe> recipes) throws SQLException {
+        LinkedHashMap<String, String> titles = new LinkedHashMap<>();
+        String titlesQuery = "SELECT recipe_id, title FROM recipes WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(titlesQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet titlesResult = preparedStmt.executeQuery()) {
+                while (titlesResult.next()) {
+                    titles.put(titlesResult.getString("recipe_id"), titlesResult.getString("title"));
+                }
+            }
+        }
 
-                PreparedStatement preparedStmt = connection.prepareStatement(query);
-                preparedStmt.setString (1, recipe.getId());
-                preparedStmt.setString (2, ingredient.getIngredientName());
-                if (ingredient instanceof CountableIngredient) {
-                    preparedStmt.setFloat(3, ((CountableIngredient) ingredient).getIngredientNumber());
-                    preparedStmt.setNull(4, Types.FLOAT);
-                    preparedStmt.setNull(5, Types.VARCHAR);
+        HashMap<String, TreeMap<Integer, String>> steps = new HashMap<>();
+        String stepsQuery = "SELECT recipe_id, step_number, step_text FROM recipes_steps WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(stepsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet stepsResult = preparedStmt.executeQuery()) {
+                while (stepsResult.next()) {
+                    steps.computeIfAbsent(stepsResult.getString("recipe_id"), id -> new TreeMap<>()).put(
+                            stepsResult.getInt("step_number"),
+                            stepsResult.getString("step_text")
+                    );
                 }
-                if (ingredient instanceof MeasurableIngredient) {
-                    preparedStmt.setNull(3, Types.FLOAT);
-                    preparedStmt.setFloat(4, ((MeasurableIngredient) ingredient).getIngredientAmount());
-                    preparedStmt.setString(5, (
-                            (MeasurableIngredient) ingredient).getIngredientMeasurementType());
+            }
+        }
+
+        HashMap<String, ArrayList<Ingredient>> ingredients = new HashMap<>();
+        String ingredientsQuery = "SELECT recipe_id, ingredient_name, ingredient_count, ingredient_amount, " +
+                "ingredient_measurement FROM recipe_ingredients WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(ingredientsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet ingredientsResult = preparedStmt.executeQuery()) {
+                while (ingredientsResult.next()) {
+                    ingredients.computeIfAbsent(ingredientsResult.getString("recipe_id"), id -> new ArrayList<>())
+                            .add(this.assembleIngredient(ingredientsResult));
                 }
-                preparedStmt.execute();
+            }
+        }
+
+        for (Map.Entry<String, String> title: titles.entrySet()) {
+            String recipeID = title.getKey();
+            TreeMap<Integer, String> recipeSteps = steps.getOrDefault(recipeID, new TreeMap<>());
+            recipes.put(recipeID, new Recipe(title.getValue(),
+                    ingredients.getOrDefault(recipeID, new ArrayList<>()),
+                    new ArrayList<>(recipeSteps.values()), recipeID));
+        }
+    }
+
+    private Ingredient assembleIngredient(ResultSet recipeIngredientsResult) throws SQLException {
+        String name = recipeIngredientsResult.getString("ingredient_name");
+        int count = recipeIngredientsResult.getInt("ingredient_count");
+        float amount = recipeIngredientsResult.getFloat("ingredient_amount");
+        String measurement = recipeIngredientsResult.getString("ingredient_measurement");
+        if (measurement != null && !measurement.isEmpty()) {
+            return new MeasurableIngredient(name, amount, measurement);
+        } else {
+            return new CountableIngredient(name, count);
+        }
+    }
+
+    /**
+     * @param count The number of placeholders.
+     * @return a comma-separated list of the given number of ? placeholders.
+     */
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static void setStrings(PreparedStatement preparedStmt, List<String> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            preparedStmt.setString(i + 1, values.get(i));
+        }
+    }
+
+    /**
+     * Gets an array of all the Users saved in the database.
+     * @return an Array of all the Users registered in the app.
+     */
+    public User[] getAllUsers() {
+        return this.loadSnapshot().getUsers();
+    }
+
+    /**
+     * Reads every user and post in the database once, inside one read-only transaction, so that
+     * they are all as they were at the same point in time. With a SnapshotStore, only what changed since
+     * the last snapshot is read.
+     * @return the users and posts linked into a single graph, or an empty snapshot if the database
+     * could not be read.
+     */
+    public DatabaseSnapshot loadSnapshot() {
+        this.flushInteractions();
+        if (this.snapshotStore != null) {
+            try {
+                return this.snapshotStore.load();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return new DatabaseSnapshot(new HashMap<>(), new HashMap<>());
+            }
+        }
+        try (Connection connection = this.connectionPool.getConnection()) {
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            try {
+                DatabaseSnapshot snapshot = this.loadSnapshot(connection);
+                connection.commit();
+                return snapshot;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+                connection.setReadOnly(false);
+                connection.setTransactionIsolation(isolation);
             }
         } catch (Exception e) {
             e.printStackTrace();
+            return new DatabaseSnapshot(new HashMap<>(), new HashMap<>());
+        }
+    }
+
+    private DatabaseSnapshot loadSnapshot(Connection connection) throws SQLException, DatabaseException {
+        LinkedHashMap<String, User> usersById = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement()) {
+            // Every read after the first one in the transaction sees the database as it was at the first one
+            try (ResultSet userInfoResult = statement.executeQuery("SELECT * FROM `user_info`")) {
+                while (userInfoResult.next()) {
+                    String userId = userInfoResult.getString("user_id");
+                    usersById.put(userId, new User(userInfoResult.getString("username"),
+                            userInfoResult.getString("password"), userInfoResult.getString("bio"), userId));
+                }
+            }
+            try (ResultSet userFollowsResult = statement.executeQuery("SELECT * FROM `follows`")) {
+                while (userFollowsResult.next()) {
+                    User user = usersById.get(userFollowsResult.getString("user_id"));
+                    User follower = usersById.get(userFollowsResult.getString("follower_id"));
+                    if (user != null && follower != null) {
+                        user.addFollower(follower);
+                        follower.addFollowing(user);
+                    }
+                }
+            }
+        }
+
+        HashMap<String, Recipe> recipes = this.getRecipesOfAllPosts(connection);
+        LinkedHashMap<String, Post> postsById = new LinkedHashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet postsResult = statement.executeQuery("SELECT * FROM `posts` WHERE " + LIVE_POSTS_CONDITION)) {
+            while (postsResult.next()) {
+                Post post = this.assemblePost(postsResult, recipes);
+                postsById.put(post.getId(), post);
+                User author = usersById.get(post.getAuthorId());
+                if (author != null) {
+                    author.addPost(post);
+                }
+            }
+        }
+        this.addCommentsPosts(connection, postsById);
+
+        try (Statement statement = connection.createStatement();
+             ResultSet likesResult = statement.executeQuery("SELECT * FROM `likes`")) {
+            while (likesResult.next()) {
+                // Likes of users that no longer exist are left out, as in getAllPosts
+                User user = usersById.get(likesResult.getString("user_id"));
+                if (user != null) {
+                    user.setLike(likesResult.getString("category"));
+                    Post post = postsById.get(likesResult.getString("post_id"));
+                    if (post != null) {
+                        post.addLike(user);
+                    }
+                }
+            }
+        }
+        return new DatabaseSnapshot(usersById, postsById);
+    }
+
+    /**
+     * Save the ingredients in a recipe to the database.
+     * @param recipe The recipe which contains the ingredients to save.
+     */
+    private void insertRecipeIngredientsDB(Connection connection, Recipe recipe) throws SQLException {
+        this.insertIngredientsDB(connection, recipe.getId(), recipe.getIngredients());
+    }
+
+    /**
+     * Save ingredients of a recipe to the database.
+     * @param recipeId The ID of the recipe the ingredients belong to.
+     * @param ingredients The ingredients to save.
+     */
+    private void insertIngredientsDB(Connection connection, String recipeId, Iterable<Ingredient> ingredients)
+            throws SQLException {
+        String query = "INSERT INTO `recipe_ingredients`(`recipe_id`, `ingredient_name`, `ingredient_count`, " +
+                "`ingredient_amount`, `ingredient_measurement`) " +
+                "VALUES (?,?,?,?,?)";
+
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            for (Ingredient ingredient: ingredients) {
+                // Only countable and measurable ingredients have a quantity that can be stored
+                if (!(ingredient instanceof CountableIngredient) && !(ingredient instanceof MeasurableIngredient)) {
+                    continue;
+                }
+                preparedStmt.setString (1, recipeId);
+                preparedStmt.setString (2, ingredient.getIngredientName());
+                setIngredientQuantity(preparedStmt, 3, ingredient);
+                preparedStmt.addBatch();
+            }
+            preparedStmt.executeBatch();
         }
     }
 
@@ -700,21 +1470,19 @@ public class MySQLController extends DatabaseManager {
      * Save the steps in a recipe to the database.
      * @param recipe The recipe which contains the steps to save.
      */
-    private void insertRecipeStepsDB(Recipe recipe) {
-        try {
+    private void insertRecipeStepsDB(Connection connection, Recipe recipe) throws SQLException {
+        String query = "INSERT INTO `recipes_steps`(`recipe_id`, `step_number`, `step_text`) " +
+                "VALUES (?,?,?)";
+
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
             ArrayList<String> steps = recipe.getSteps();
             for (int i = 0; i < steps.size(); i++) {
-                String query = "INSERT INTO `recipes_steps`(`recipe_id`, `step_number`, `step_text`) " +
-                        "VALUES (?,?,?)";
-
-                PreparedStatement preparedStmt = connection.prepareStatement(query);
                 preparedStmt.setString(1, recipe.getId());
                 preparedStmt.setInt(2, i + 1);
                 preparedStmt.setString(3, steps.get(i));
-                preparedStmt.execute();
+                preparedStmt.addBatch();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            preparedStmt.executeBatch();
         }
     }
 
@@ -724,59 +1492,86 @@ public class MySQLController extends DatabaseManager {
      * @param user user object that is giving the like
      */
     public void likePost(Post post, User user){
-        try {
-                String query = "INSERT INTO `likes`(`user_id`, `post_id`, `category`) VALUES (?,?,?)";
-                PreparedStatement preparedStmt = connection.prepareStatement(query);
-                preparedStmt.setString(1, user.getId());
-                preparedStmt.setString(2, post.getId());
-                preparedStmt.setString(3, post.getCategory());
-                preparedStmt.execute();
+        if (this.interactionWriter != null) {
+            try {
+                this.interactionWriter.like(user.getId(), post.getId(), post.getCategory());
+                return;
+            } catch (IOException e) {
+                // Save it right away instead
+                e.printStackTrace();
+            }
+        }
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.likePost(connection, post, user);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void likePost(Connection connection, Post post, User user) throws SQLException {
+        String query = "INSERT INTO `likes`(`user_id`, `post_id`, `category`) VALUES (?,?,?)";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, user.getId());
+            preparedStmt.setString(2, post.getId());
+            preparedStmt.setString(3, post.getCategory());
+            preparedStmt.execute();
+        }
+    }
+
     /**
      * Saves the comment in the database of a given post
      * @param post post object which is being commented on
      * @param comment comment that stores the information about it
      */
     public void commentPost(Post post, Comment comment){
-        try {
-                String query = "INSERT INTO `comments`(`user_id`, `post_id`, `comment_time`, `comment_text`, " +
-                        "`comment_id`) " +
-                        "VALUES (?,?,?,?,?)";
-
-                PreparedStatement preparedStmt = connection.prepareStatement(query);
-                preparedStmt.setString(1, comment.getAuthorId());
-                preparedStmt.setString(2, post.getId());
-                preparedStmt.setTimestamp(3, Timestamp.valueOf(comment.getCreatedTime()));
-                preparedStmt.setString(4, comment.getCommentText());
-                preparedStmt.setString(5, comment.getId());
-                preparedStmt.execute();
+        if (this.interactionWriter != null) {
+            try {
+                this.interactionWriter.comment(comment.getAuthorId(), post.getId(), comment.getCreatedTime(),
+                        comment.getCommentText(), comment.getId());
+                return;
+            } catch (IOException e) {
+                // Save it right away instead
+                e.printStackTrace();
+            }
+        }
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.commentPost(connection, post, comment);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    private void commentPost(Connection connection, Post post, Comment comment) throws SQLException {
+        String query = "INSERT INTO `comments`(`user_id`, `post_id`, `comment_time`, `comment_text`, " +
+                "`comment_id`) " +
+                "VALUES (?,?,?,?,?)";
+
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, comment.getAuthorId());
+            preparedStmt.setString(2, post.getId());
+            preparedStmt.setTimestamp(3, Timestamp.valueOf(comment.getCreatedTime()));
+            preparedStmt.setString(4, comment.getCommentText());
+            preparedStmt.setString(5, comment.getId());
+            preparedStmt.execute();
+        }
+    }
+
     /**
      * Save the likes associated with the post in the database.
      * @param post The Post associated with the likes.
      * @param userLikeList A List of users who liked the Post.
      */
-    private void insertLikesDB(Post post, Iterable<User> userLikeList) {
-        try {
-            for (User user: userLikeList) {
-                String query = "INSERT INTO `likes`(`user_id`, `post_id`, `category`) VALUES (?,?,?)";
-
-                PreparedStatement preparedStmt = connection.prepareStatement(query);
+    private void insertLikesDB(Connection connection, Post post, Iterable<UserRef> userLikeList)
+            throws SQLException {
+        String query = "INSERT INTO `likes`(`user_id`, `post_id`, `category`) VALUES (?,?,?)";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            for (UserRef user: userLikeList) {
                 preparedStmt.setString(1, user.getId());
                 preparedStmt.setString(2, post.getId());
                 preparedStmt.setString(3, post.getCategory());
-                preparedStmt.execute();
+                preparedStmt.addBatch();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            preparedStmt.executeBatch();
         }
     }
 
@@ -785,13 +1580,21 @@ public class MySQLController extends DatabaseManager {
      * @param post The Post associated with the comments.
      * @param comments A List of comments associated with the Post.
      */
-    private void insertCommentsDB(Post post, Iterable<Comment> comments) {
-        try {
+    private void insertCommentsDB(Connection connection, Post post, Iterable<Comment> comments)
+            throws SQLException {
+        String query = "INSERT INTO `comments`(`user_id`, `post_id`, `comment_time`, `comment_text`, " +
+                "`comment_id`) " +
+                "VALUES (?,?,?,?,?)";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
             for (Comment comment: comments) {
-                this.commentPost(post, comment);
+                preparedStmt.setString(1, comment.getAuthorId());
+                preparedStmt.setString(2, post.getId());
+                preparedStmt.setTimestamp(3, Timestamp.valueOf(comment.getCreatedTime()));
+                preparedStmt.setString(4, comment.getCommentText());
+                preparedStmt.setString(5, comment.getId());
+                preparedStmt.addBatch();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+            preparedStmt.executeBatch();
         }
     }
 
@@ -799,18 +1602,25 @@ public class MySQLController extends DatabaseManager {
      * Save recipe associated with a Post ID to the database.
      * @param recipe The recipe associated with the Post.
      */
-    private void insertRecipeDB(Recipe recipe) {
-        try {
-            String query = "INSERT INTO `recipes`(`recipe_id`, `title`)" +
-                    "VALUES (?,?)";
+    private void insertRecipeDB(Connection connection, Recipe recipe) throws SQLException {
+        String query = "INSERT INTO `recipes`(`recipe_id`, `title`)" +
+                "VALUES (?,?)";
 
-            PreparedStatement preparedStmt = connection.prepareStatement(query);
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
             preparedStmt.setString(1, recipe.getId());
             preparedStmt.setString(2, recipe.getTitle());
 
             preparedStmt.execute();
-        } catch (Exception e) {
-            e.printStackTrace();
+        }
+    }
+
+    private boolean recipeExistsInDB(Connection connection, String recipeID) throws SQLException {
+        String query = "SELECT 1 FROM `recipes` WHERE `recipe_id`=?";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, recipeID);
+            try (ResultSet existsResult = preparedStmt.executeQuery()) {
+                return existsResult.next();
+            }
         }
     }
 
@@ -818,12 +1628,11 @@ public class MySQLController extends DatabaseManager {
      * Save recipe associated with a Post ID to the database.
      * @param post The post to save to the database
      */
-    private void insertPostDB(Post post) {
-        try {
-            String query = "INSERT INTO `posts`(`post_id`, `user_id`, `recipe_id`, `category`, `posted_time`)" +
-                    "VALUES (?,?,?,?,?)";
+    private void insertPostDB(Connection connection, Post post) throws SQLException {
+        String query = "INSERT INTO `posts`(`post_id`, `user_id`, `recipe_id`, `category`, `posted_time`)" +
+                "VALUES (?,?,?,?,?)";
 
-            PreparedStatement preparedStmt = connection.prepareStatement(query);
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
             preparedStmt.setString(1, post.getId());
             preparedStmt.setString(2, post.getAuthorId());
             preparedStmt.setString(3, post.getRecipe().getId());
@@ -831,109 +1640,221 @@ public class MySQLController extends DatabaseManager {
             preparedStmt.setTimestamp(5, Timestamp.valueOf(post.getCreatedTime()));
 
             preparedStmt.execute();
-        } catch (Exception e) {
-            e.printStackTrace();
         }
     }
 
-    private void updatePostsTable(Post newPost) throws SQLException {
+    private void updatePostsTable(Connection connection, Post newPost) throws SQLException {
         String query = "UPDATE posts SET user_id=?, recipe_id=?, category=?, posted_time=? WHERE post_id=?";
 
-        PreparedStatement preparedStmt = connection.prepareStatement(query);
-        preparedStmt.setString(1, newPost.getAuthorId());
-        preparedStmt.setString(2, newPost.getRecipe().getId());
-        preparedStmt.setString(3, newPost.getCategory());
-        preparedStmt.setTimestamp(4, Timestamp.valueOf(newPost.getCreatedTime()));
-        preparedStmt.setString(5, newPost.getId());
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, newPost.getAuthorId());
+            preparedStmt.setString(2, newPost.getRecipe().getId());
+            preparedStmt.setString(3, newPost.getCategory());
+            preparedStmt.setTimestamp(4, Timestamp.valueOf(newPost.getCreatedTime()));
+            preparedStmt.setString(5, newPost.getId());
 
-        preparedStmt.execute();
+            preparedStmt.execute();
+        }
     }
 
-    private void updateRecipesTable(Recipe newRecipe) throws SQLException {
+    private void updateRecipesTable(Connection connection, Recipe newRecipe) throws SQLException {
         String query = "UPDATE recipes SET title=? WHERE recipe_id=?";
 
-        PreparedStatement preparedStmt = connection.prepareStatement(query);
-        preparedStmt.setString(1, newRecipe.getTitle());
-        preparedStmt.setString(2, newRecipe.getId());
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, newRecipe.getTitle());
+            preparedStmt.setString(2, newRecipe.getId());
 
-        preparedStmt.execute();
+            preparedStmt.execute();
+        }
     }
 
-    private void updateRecipesStepsTable(Recipe newRecipe) throws SQLException {
-        String deleteQuery = "DELETE from recipes_steps where recipe_id=?";
-        PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery);
-        deleteStmt.setString(1, newRecipe.getId());
-        deleteStmt.execute();
+    /**
+     * Brings the stored steps of a recipe in line with its steps, numbered from 1. Only the steps
+     * whose text changed are updated, and only added or removed steps are inserted or deleted.
+     */
+    private void updateRecipesStepsTable(Connection connection, Recipe newRecipe) throws SQLException {
+        HashMap<Integer, String> storedSteps = new HashMap<>();
+        String selectQuery = "SELECT `step_number`, `step_text` FROM `recipes_steps` WHERE `recipe_id`=?";
+        try (PreparedStatement selectStmt = connection.prepareStatement(selectQuery)) {
+            selectStmt.setString(1, newRecipe.getId());
+            try (ResultSet stepsResult = selectStmt.executeQuery()) {
+                while (stepsResult.next()) {
+                    storedSteps.put(stepsResult.getInt("step_number"), stepsResult.getString("step_text"));
+                }
+            }
+        }
 
-        ArrayList<String> steps = newRecipe.getSteps();
-        for (int i = 0; i < steps.size(); i++) {
-            String insertQuery = "INSERT into recipes_steps (recipe_id, step_number, step_text) VALUES (?,?,?)";
-            PreparedStatement insertStmt = connection.prepareStatement(insertQuery);
-            insertStmt.setString(1, newRecipe.getId());
-            insertStmt.setInt(2, i);
-            insertStmt.setString(3, steps.get(i));
-            insertStmt.execute();
+        String updateQuery = "UPDATE recipes_steps SET step_text=? WHERE recipe_id=? AND step_number=?";
+        String insertQuery = "INSERT into recipes_steps (recipe_id, step_number, step_text) VALUES (?,?,?)";
+        String deleteQuery = "DELETE from recipes_steps WHERE recipe_id=? AND step_number=?";
+        try (PreparedStatement updateStmt = connection.prepareStatement(updateQuery);
+             PreparedStatement insertStmt = connection.prepareStatement(insertQuery);
+             PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery)) {
+            ArrayList<String> steps = newRecipe.getSteps();
+            for (int i = 0; i < steps.size(); i++) {
+                int stepNumber = i + 1;
+                String storedStep = storedSteps.remove(stepNumber);
+                if (storedStep == null) {
+                    insertStmt.setString(1, newRecipe.getId());
+                    insertStmt.setInt(2, stepNumber);
+                    insertStmt.setString(3, steps.get(i));
+                    insertStmt.addBatch();
+                } else if (!storedStep.equals(steps.get(i))) {
+                    updateStmt.setString(1, steps.get(i));
+                    updateStmt.setString(2, newRecipe.getId());
+                    updateStmt.setInt(3, stepNumber);
+                    updateStmt.addBatch();
+                }
+            }
+            // Whatever is left is no longer a step of the recipe
+            for (int stepNumber : storedSteps.keySet()) {
+                deleteStmt.setString(1, newRecipe.getId());
+                deleteStmt.setInt(2, stepNumber);
+                deleteStmt.addBatch();
+            }
+            updateStmt.executeBatch();
+            insertStmt.executeBatch();
+            deleteStmt.executeBatch();
         }
     }
 
-    private void updateRecipeIngredientsTable(Recipe newRecipe) throws SQLException {
-        String deleteQuery = "DELETE from recipe_ingredients where recipe_id=?";
-        PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery);
-        deleteStmt.setString(1, newRecipe.getId());
-        deleteStmt.execute();
+    /**
+     * Brings the stored ingredients of a recipe in line with its ingredients, matching them by name.
+     * Only changed, added or removed ingredients are written.
+     */
+    private void updateRecipeIngredientsTable(Connection connection, Recipe newRecipe) throws SQLException {
+        HashMap<String, List<Object>> storedIngredients = new HashMap<>();
+        boolean duplicateNames = false;
+        String selectQuery = "SELECT * FROM `recipe_ingredients` WHERE `recipe_id`=?";
+        try (PreparedStatement selectStmt = connection.prepareStatement(selectQuery)) {
+            selectStmt.setString(1, newRecipe.getId());
+            try (ResultSet ingredientsResult = selectStmt.executeQuery()) {
+                while (ingredientsResult.next()) {
+                    Float count = ingredientsResult.getFloat("ingredient_count");
+                    if (ingredientsResult.wasNull()) {
+                        count = null;
+                    }
+                    Float amount = ingredientsResult.getFloat("ingredient_amount");
+                    if (ingredientsResult.wasNull()) {
+                        amount = null;
+                    }
+                    List<Object> quantity = Arrays.asList(count, amount,
+                            ingredientsResult.getString("ingredient_measurement"));
+                    duplicateNames |= storedIngredients.put(ingredientsResult.getString("ingredient_name"),
+                            quantity) != null;
+                }
+            }
+        }
+
+        LinkedHashMap<String, Ingredient> newIngredients = new LinkedHashMap<>();
+        for (Ingredient ingredient : newRecipe.getIngredients()) {
+            if (ingredient instanceof CountableIngredient || ingredient instanceof MeasurableIngredient) {
+                duplicateNames |= newIngredients.put(ingredient.getIngredientName(), ingredient) != null;
+            }
+        }
+        if (duplicateNames) {
+            // Ingredients cannot be matched by name, so replace all of them
+            this.deleteRecipeRows(connection, "DELETE from recipe_ingredients where recipe_id=?",
+                    newRecipe.getId());
+            this.insertRecipeIngredientsDB(connection, newRecipe);
+            return;
+        }
+
+        ArrayList<Ingredient> changedIngredients = new ArrayList<>();
+        ArrayList<Ingredient> addedIngredients = new ArrayList<>();
+        for (Ingredient ingredient : newIngredients.values()) {
+            List<Object> storedQuantity = storedIngredients.remove(ingredient.getIngredientName());
+            if (storedQuantity == null) {
+                addedIngredients.add(ingredient);
+            } else if (!storedQuantity.equals(quantityOf(ingredient))) {
+                changedIngredients.add(ingredient);
+            }
+        }
+
+        String updateQuery = "UPDATE recipe_ingredients SET ingredient_count=?, ingredient_amount=?, " +
+                "ingredient_measurement=? WHERE recipe_id=? AND ingredient_name=?";
+        String deleteQuery = "DELETE from recipe_ingredients WHERE recipe_id=? AND ingredient_name=?";
+        try (PreparedStatement updateStmt = connection.prepareStatement(updateQuery);
+             PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery)) {
+            for (Ingredient ingredient : changedIngredients) {
+                setIngredientQuantity(updateStmt, 1, ingredient);
+                updateStmt.setString(4, newRecipe.getId());
+                updateStmt.setString(5, ingredient.getIngredientName());
+                updateStmt.addBatch();
+            }
+            for (String ingredientName : storedIngredients.keySet()) {
+                deleteStmt.setString(1, newRecipe.getId());
+                deleteStmt.setString(2, ingredientName);
+                deleteStmt.addBatch();
+            }
+            updateStmt.executeBatch();
+            deleteStmt.executeBatch();
+        }
+        this.insertIngredientsDB(connection, newRecipe.getId(), addedIngredients);
+    }
 
-        ArrayList<CountableIngredient> countableIngredients = newRecipe.getCountableIngredients();
-        ArrayList<MeasurableIngredient> measurableIngredients = newRecipe.getMeasurableIngredients();
-        this.updateRecipeCountableIngredients(countableIngredients, newRecipe);
-        this.updateRecipeMeasurableIngredients(measurableIngredients, newRecipe);
+    /**
+     * @param ingredient A countable or measurable ingredient.
+     * @return the count, amount and measurement of the ingredient as they are stored in recipe_ingredients.
+     */
+    private static List<Object> quantityOf(Ingredient ingredient) {
+        if (ingredient instanceof CountableIngredient) {
+            return Arrays.asList(((CountableIngredient) ingredient).getIngredientNumber(), null, null);
+        }
+        MeasurableIngredient measurableIngredient = (MeasurableIngredient) ingredient;
+        return Arrays.asList(null, measurableIngredient.getIngredientAmount(),
+                measurableIngredient.getIngredientMeasurementType());
     }
 
-    private void updateRecipeCountableIngredients(
-            ArrayList<CountableIngredient> countableIngredients, Recipe newRecipe) throws SQLException {
-        for (CountableIngredient countableIngredient: countableIngredients) {
-            String insertQuery = "INSERT into recipe_ingredients" +
-                    "(recipe_id, ingredient_name, ingredient_count) VALUES (?,?,?)";
-            PreparedStatement insertStmt = connection.prepareStatement(insertQuery);
-            insertStmt.setString(1, newRecipe.getId());
-            insertStmt.setString(2, countableIngredient.getIngredientName());
-            insertStmt.setFloat(3, countableIngredient.getIngredientNumber());
-            insertStmt.execute();
+    /**
+     * Sets the count, amount and measurement of a countable or measurable ingredient
+     * as three consecutive parameters.
+     * @param firstParameter The index of the count parameter.
+     */
+    private static void setIngredientQuantity(PreparedStatement preparedStmt, int firstParameter,
+                                              Ingredient ingredient) throws SQLException {
+        List<Object> quantity = quantityOf(ingredient);
+        if (quantity.get(0) == null) {
+            preparedStmt.setNull(firstParameter, Types.FLOAT);
+        } else {
+            preparedStmt.setFloat(firstParameter, (Float) quantity.get(0));
+        }
+        if (quantity.get(1) == null) {
+            preparedStmt.setNull(firstParameter + 1, Types.FLOAT);
+        } else {
+            preparedStmt.setFloat(firstParameter + 1, (Float) quantity.get(1));
+        }
+        if (quantity.get(2) == null) {
+            preparedStmt.setNull(firstParameter + 2, Types.VARCHAR);
+        } else {
+            preparedStmt.setString(firstParameter + 2, (String) quantity.get(2));
         }
     }
 
-    private void updateRecipeMeasurableIngredients(
-            ArrayList<MeasurableIngredient> measurableIngredients, Recipe newRecipe) throws SQLException {
-        for (MeasurableIngredient measurableIngredient: measurableIngredients) {
-            String insertQuery = "INSERT into recipe_ingredients (recipe_id, ingredient_name," +
-                    "ingredient_amount, ingredient_measurement) VALUES (?,?,?,?)";
-            PreparedStatement insertStmt = connection.prepareStatement(insertQuery);
-            insertStmt.setString(1, newRecipe.getId());
-            insertStmt.setString(2, measurableIngredient.getIngredientName());
-            insertStmt.setFloat(3, measurableIngredient.getIngredientAmount());
-            insertStmt.setString(4, measurableIngredient.getIngredientMeasurementType());
-            insertStmt.execute();
+    private void deleteRecipeRows(Connection connection, String deleteQuery, String recipeID) throws SQLException {
+        try (PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery)) {
+            deleteStmt.setString(1, recipeID);
+            deleteStmt.execute();
         }
     }
 
-    private void deleteFromPostsTable(String postID) throws SQLException {
-        String deleteQuery = "DELETE from posts where post_id=?";
-        PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery);
-        deleteStmt.setString(1, postID);
-        deleteStmt.execute();
+    private void deleteFromPostsTable(Connection connection, String postID) throws SQLException {
+        this.deletePostRows(connection, "DELETE from posts where post_id=?", postID);
     }
 
-    private void deleteFromLikesTable(String postID) throws SQLException {
-        String deleteQuery = "DELETE from likes where post_id=?";
-        PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery);
-        deleteStmt.setString(1, postID);
-        deleteStmt.execute();
+    private void deleteFromLikesTable(Connection connection, String postID) throws SQLException {
+        this.deletePostRows(connection, "DELETE from likes where post_id=?", postID);
     }
 
-    private void deleteFromCommentsTable(String postID) throws SQLException {
-        String deleteQuery = "DELETE from comments where post_id=?";
-        PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery);
-        deleteStmt.setString(1, postID);
-        deleteStmt.execute();
+    private void deleteFromCommentsTable(Connection connection, String postID) throws SQLException {
+        this.deletePostRows(connection, "DELETE from comments where post_id=?", postID);
+    }
+
+    private void deletePostRows(Connection connection, String deleteQuery, String postID) throws SQLException {
+        try (PreparedStatement deleteStmt = connection.prepareStatement(deleteQuery)) {
+            deleteStmt.setString(1, postID);
+            deleteStmt.execute();
+        }
     }
 
     public static void main(String[] arg) {
@@ -57,10 +57,16 @@ public class PostController {
 
     protected void browsePost(Post selectedPost) {
         int postAction = -1;
-        while (postAction != 99) {
-            this.displayPost(selectedPost.getId());
-            postAction = this.getPostActionInput();
-            this.runPostAction(selectedPost, postAction);
+        try {
+            while (postAction != 99) {
+                this.displayPost(selectedPost.getId());
+                postAction = this.getPostActionInput();
+                this.runPostAction(selectedPost, postAction);
+            }
+        } catch (IllegalStateException e) {
+            // The recipe, likes or comments of a post read without them could not be loaded
+            e.printStackTrace();
+            this.inOut.setOutput("This post could not be loaded. Returning to main menu.");
         }
     }
 
@@ -0,0 +1,132 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Corrects the like_count and comment_count columns of the posts table where they no longer match
+ * the likes and comments tables. The triggers on likes and comments keep the counters up to date,
+ * so this only finds drift left by changes made with the triggers turned off, or by hand.
+ * The posts are checked in batches of BATCH_SIZE, each in its own transaction, so that likes and comments
+ * are never held up for long.
+ */
+public class PostCounterReconciler implements AutoCloseable {
+    private static final int BATCH_SIZE = 1000;
+
+    private final ConnectionPool connectionPool;
+    private final ScheduledExecutorService reconciler;
+
+    // Guarded by this
+    private long correctedCount;
+
+    /**
+     * Construct a PostCounterReconciler.
+     * @param connectionPool The pool to borrow connections from. The schema must be up to date.
+     * @param intervalSeconds How often the counters are checked in the background,
+     *                        or 0 to only check them when reconcile is called.
+     */
+    public PostCounterReconciler(ConnectionPool connectionPool, long intervalSeconds) {
+        this.connectionPool = connectionPool;
+        if (intervalSeconds > 0) {
+            this.reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "post-counter-reconciler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.reconciler.scheduleWithFixedDelay(this::reconcileInBackground, intervalSeconds, intervalSeconds,
+                    TimeUnit.SECONDS);
+        } else {
+            this.reconciler = null;
+        }
+    }
+
+    /**
+     * Checks the counters of every post and corrects the ones that are wrong.
+     * @return the number of posts whose counters were corrected.
+     * @throws SQLException if the database could not be read or updated. The batches before stay corrected.
+     */
+    public synchronized int reconcile() throws SQLException {
+        int corrected = 0;
+        try (Connection connection = this.connectionPool.getConnection()) {
+            String lastPostId = "";
+            ArrayList<String> postIds;
+            do {
+                postIds = this.readPostIds(connection, lastPostId);
+                if (!postIds.isEmpty()) {
+                    corrected += this.reconcile(connection, postIds);
+                    lastPostId = postIds.get(postIds.size() - 1);
+                }
+            } while (postIds.size() == BATCH_SIZE);
+        }
+        this.correctedCount += corrected;
+        return corrected;
+    }
+
+    /**
+     * @return how many posts had their counters corrected, in total.
+     */
+    public synchronized long getCorrectedCount() {
+        return this.correctedCount;
+    }
+
+    private ArrayList<String> readPostIds(Connection connection, String lastPostId) throws SQLException {
+        ArrayList<String> postIds = new ArrayList<>();
+        String query = "SELECT `post_id` FROM `posts` WHERE `post_id` > ? ORDER BY `post_id` LIMIT " + BATCH_SIZE;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, lastPostId);
+            try (ResultSet postsResult = preparedStmt.executeQuery()) {
+                while (postsResult.next()) {
+                    postIds.add(postsResult.getString("post_id"));
+                }
+            }
+        }
+        return postIds;
+    }
+
+    /**
+     * Sets the counters of the given posts that do not match their likes and comments.
+     * @return the number of posts corrected.
+     */
+    private int reconcile(Connection connection, ArrayList<String> postIds) throws SQLException {
+        // The likes and comments of deleted users are no longer counted, even before their UserPurger deletes them
+        String likeCount = "(SELECT COUNT(*) FROM `likes` WHERE `likes`.`post_id` = `posts`.`post_id` " +
+                "AND `likes`.`user_id` NOT IN (SELECT `user_id` FROM `user_tombstones`))";
+        String commentCount = "(SELECT COUNT(*) FROM `comments` WHERE `comments`.`post_id` = `posts`.`post_id` " +
+                "AND `comments`.`user_id` NOT IN (SELECT `user_id` FROM `user_tombstones`))";
+        String query = "UPDATE `posts` SET `like_count` = " + likeCount + ", `comment_count` = " + commentCount +
+                " WHERE `post_id` IN (" + String.join(",", Collections.nCopies(postIds.size(), "?")) +
+                ") AND (`like_count` <> " + likeCount + " OR `comment_count` <> " + commentCount + ")";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            for (int i = 0; i < postIds.size(); i++) {
+                preparedStmt.setString(i + 1, postIds.get(i));
+            }
+            return preparedStmt.executeUpdate();
+        }
+    }
+
+    private void reconcileInBackground() {
+        try {
+            this.reconcile();
+        } catch (SQLException e) {
+            // Try again at the next interval
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops checking the counters in the background.
+     */
+    @Override
+    public void close() {
+        if (this.reconciler != null) {
+            this.reconciler.shutdownNow();
+        }
+    }
+}
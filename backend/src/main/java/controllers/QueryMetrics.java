@@ -0,0 +1,283 @@
+package controllers;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the queries run on the database and the DatabaseManager methods called, and how long they took.
+ * Queries are grouped by their SQL with the literal values and the lists of placeholders taken out, so that
+ * the same query run with different values, or with IN lists of different lengths, is counted once.
+ * For each query and each method, the number of calls, failures, rows read or changed, bytes read
+ * (counting a character as a byte) and a LatencyHistogram are kept.
+ * Queries that take longer than the slow query threshold are also printed with their parameters to the
+ * slow query log, and the last few are kept for dump.
+ */
+public class QueryMetrics {
+    private static final int MAX_CACHED_NORMALIZATIONS = 10_000;
+    private static final int RECENT_SLOW_QUERIES = 20;
+    private static final int MAX_SHOWN_SQL_LENGTH = 100;
+    private static final int MAX_SHOWN_PARAMETER_LENGTH = 100;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w`.])-?\\d+(?:\\.\\d+)?(?![\\w`])");
+    private static final Pattern PLACEHOLDER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern REPEATED_LIST = Pattern.compile("\\(\\.\\.\\.\\)(?:\\s*,\\s*\\(\\.\\.\\.\\))+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * What was counted for one query or method.
+     */
+    public static final class Stats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong rowCount = new AtomicLong();
+        private final AtomicLong byteCount = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(long nanos, boolean failed) {
+            this.count.incrementAndGet();
+            if (failed) {
+                this.errorCount.incrementAndGet();
+            }
+            this.totalNanos.addAndGet(nanos);
+            this.latency.record(nanos);
+        }
+
+        void addRows(long rows) {
+            this.rowCount.addAndGet(rows);
+        }
+
+        void addBytes(long bytes) {
+            this.byteCount.addAndGet(bytes);
+        }
+
+        /**
+         * @return the number of calls.
+         */
+        public long getCount() {
+            return this.count.get();
+        }
+
+        /**
+         * @return the number of calls that threw.
+         */
+        public long getErrorCount() {
+            return this.errorCount.get();
+        }
+
+        /**
+         * @return the number of rows read or changed, or for a method the number of posts or users returned.
+         */
+        public long getRowCount() {
+            return this.rowCount.get();
+        }
+
+        /**
+         * @return the number of bytes read, counting a character as a byte.
+         */
+        public long getByteCount() {
+            return this.byteCount.get();
+        }
+
+        /**
+         * @return the time taken by every call together, in milliseconds.
+         */
+        public double getTotalMillis() {
+            return this.totalNanos.get() / 1_000_000.0;
+        }
+
+        /**
+         * @return the latencies of the calls.
+         */
+        public LatencyHistogram getLatency() {
+            return this.latency;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Stats> statements = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Stats> methods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> normalizations = new ConcurrentHashMap<>();
+    private final PrintStream slowQueryLog;
+    private volatile long slowQueryNanos;
+
+    // Guarded by itself
+    private final ArrayDeque<String> recentSlowQueries = new ArrayDeque<>();
+
+    /**
+     * Construct a QueryMetrics.
+     * @param slowQueryMillis How long a query may take before it is logged as slow, or a negative number to log
+     *                        none.
+     * @param slowQueryLog Where slow queries are printed, or null to only keep the last few for dump.
+     */
+    public QueryMetrics(long slowQueryMillis, PrintStream slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+        this.setSlowQueryMillis(slowQueryMillis);
+    }
+
+    /**
+     * @param slowQueryMillis How long a query may take before it is logged as slow, or a negative number to log
+     *                        none.
+     */
+    public void setSlowQueryMillis(long slowQueryMillis) {
+        this.slowQueryNanos = slowQueryMillis < 0 ? Long.MAX_VALUE : slowQueryMillis * 1_000_000;
+    }
+
+    /**
+     * @param sql The SQL of a query, as it was run.
+     * @return what is counted for the query and every other query with the same normalized SQL.
+     */
+    public Stats statement(String sql) {
+        return this.statements.computeIfAbsent(this.normalizeCached(sql), key -> new Stats());
+    }
+
+    /**
+     * @param name The name of a DatabaseManager method.
+     * @return what is counted for the method.
+     */
+    public Stats method(String name) {
+        return this.methods.computeIfAbsent(name, key -> new Stats());
+    }
+
+    /**
+     * Records that a query ran, logging it if it was slow.
+     * @param stats What is counted for the query, from statement.
+     * @param sql The SQL of the query.
+     * @param parameters The values bound to its placeholders, by position, or null if it has none.
+     * @param nanos How long it took.
+     * @param failed Whether it threw.
+     */
+    void recordStatement(Stats stats, String sql, Map<Integer, Object> parameters, long nanos, boolean failed) {
+        stats.record(nanos, failed);
+        if (nanos >= this.slowQueryNanos) {
+            String entry = String.format("Slow query (%.1f ms%s): %s%s", nanos / 1_000_000.0,
+                    failed ? ", failed" : "", sql, parameters == null || parameters.isEmpty() ? ""
+                            : " with parameters " + showParameters(parameters));
+            synchronized (this.recentSlowQueries) {
+                if (this.recentSlowQueries.size() == RECENT_SLOW_QUERIES) {
+                    this.recentSlowQueries.removeFirst();
+                }
+                this.recentSlowQueries.addLast(entry);
+            }
+            if (this.slowQueryLog != null) {
+                this.slowQueryLog.println(entry);
+            }
+        }
+    }
+
+    private static String showParameters(Map<Integer, Object> parameters) {
+        List<String> shown = new ArrayList<>();
+        for (Object parameter : new TreeMap<>(parameters).values()) {
+            String value = parameter instanceof String ? "'" + parameter + "'" : String.valueOf(parameter);
+            shown.add(value.length() > MAX_SHOWN_PARAMETER_LENGTH
+                    ? value.substring(0, MAX_SHOWN_PARAMETER_LENGTH) + "..." : value);
+        }
+        return shown.toString();
+    }
+
+    /**
+     * @return what was counted for each query, by normalized SQL.
+     */
+    public Map<String, Stats> getStatementStats() {
+        return new TreeMap<>(this.statements);
+    }
+
+    /**
+     * @return what was counted for each DatabaseManager method, by name.
+     */
+    public Map<String, Stats> getMethodStats() {
+        return new TreeMap<>(this.methods);
+    }
+
+    /**
+     * @return the last few slow queries logged, oldest first.
+     */
+    public List<String> getSlowQueries() {
+        synchronized (this.recentSlowQueries) {
+            return new ArrayList<>(this.recentSlowQueries);
+        }
+    }
+
+    /**
+     * Forgets everything counted so far.
+     */
+    public void reset() {
+        this.statements.clear();
+        this.methods.clear();
+        synchronized (this.recentSlowQueries) {
+            this.recentSlowQueries.clear();
+        }
+    }
+
+    /**
+     * @return a table of what was counted for each method and query, the ones that took the most time
+     * altogether first, followed by the last few slow queries.
+     */
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        dump.append("DatabaseManager methods:\n");
+        dumpStats(dump, this.methods);
+        dump.append("Queries:\n");
+        dumpStats(dump, this.statements);
+        List<String> slowQueries = this.getSlowQueries();
+        dump.append("Recent slow queries:\n");
+        if (slowQueries.isEmpty()) {
+            dump.append("  none\n");
+        }
+        for (String slowQuery : slowQueries) {
+            dump.append("  ").append(slowQuery).append('\n');
+        }
+        return dump.toString();
+    }
+
+    private static void dumpStats(StringBuilder dump, Map<String, Stats> stats) {
+        dump.append(String.format("  %8s %6s %10s %12s %9s %9s %9s %10s  %s%n", "calls", "errors", "rows", "bytes",
+                "p50 ms", "p99 ms", "max ms", "total ms", "name"));
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(stats.entrySet());
+        entries.sort(Comparator.comparingDouble((Map.Entry<String, Stats> entry) -> entry.getValue().getTotalMillis())
+                .reversed());
+        for (Map.Entry<String, Stats> entry : entries) {
+            Stats entryStats = entry.getValue();
+            LatencyHistogram latency = entryStats.getLatency();
+            String name = entry.getKey().length() > MAX_SHOWN_SQL_LENGTH
+                    ? entry.getKey().substring(0, MAX_SHOWN_SQL_LENGTH) + "..." : entry.getKey();
+            dump.append(String.format("  %8d %6d %10d %12d %9.2f %9.2f %9.2f %10.1f  %s%n", entryStats.getCount(),
+                    entryStats.getErrorCount(), entryStats.getRowCount(), entryStats.getByteCount(),
+                    latency.getPercentileMillis(0.5), latency.getPercentileMillis(0.99), latency.getMaxMillis(),
+                    entryStats.getTotalMillis(), name));
+        }
+    }
+
+    private String normalizeCached(String sql) {
+        String normalized = this.normalizations.get(sql);
+        if (normalized == null) {
+            normalized = normalize(sql);
+            if (this.normalizations.size() < MAX_CACHED_NORMALIZATIONS) {
+                this.normalizations.put(sql, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Takes the literal values out of a query, so that it is grouped with the same query run with other values:
+     * strings and numbers become ?, lists of placeholders such as IN (?,?,?) become (...), a list of those,
+     * such as the rows of a multi-row INSERT, becomes a single (...), and whitespace is collapsed.
+     * @param sql The SQL of a query.
+     * @return the normalized SQL.
+     */
+    static String normalize(String sql) {
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = PLACEHOLDER_LIST.matcher(normalized).replaceAll("(...)");
+        normalized = REPEATED_LIST.matcher(normalized).replaceAll("(...)");
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+}
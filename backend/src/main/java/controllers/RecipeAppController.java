@@ -1,7 +1,11 @@
 package controllers;
 
+import use_cases.DatabaseManager;
 import use_cases.LoginManager;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+
 public class RecipeAppController {
     private final InOut inOut;
     private final LoginController loginController;
@@ -9,15 +13,45 @@ public class RecipeAppController {
     private final PostController postController;
     private final UserProfileController userProfileController;
     private final LoginManager loginManager;
+    private final QueryMetrics queryMetrics;
 
     public RecipeAppController(InOut inOut) {
         this.inOut = inOut;
-        MySQLController mySQLController = new MySQLController();
-        this.loginManager = new LoginManager(mySQLController);
+        // Every call to the database is timed, for the metrics shown by DUMPMETRICS
+        this.queryMetrics = MySQLController.getQueryMetrics();
+        DatabaseManager databaseManager = new InstrumentedDatabaseManager(createDatabaseManager(), this.queryMetrics);
+        this.loginManager = new LoginManager(databaseManager);
         this.loginController = new LoginController(inOut, this.loginManager);
-        this.postController = new PostController(inOut, mySQLController, this.loginManager);
-        this.userProfileController = new UserProfileController(inOut, mySQLController, this.loginManager);
-        this.feedController = new FeedController(inOut, mySQLController, this.loginManager, this.postController);
+        this.postController = new PostController(inOut, databaseManager, this.loginManager);
+        this.userProfileController = new UserProfileController(inOut, databaseManager, this.loginManager);
+        this.feedController = new FeedController(inOut, databaseManager, this.loginManager, this.postController);
+    }
+
+    /**
+     * The app stores its data in MySQL, unless the foodstagram.log.dir system property names a directory
+     * to store it in without a database server. If the foodstagram.db.replicas system property lists replicas
+     * of the MySQL database, reads are spread over them, from replicas no more than
+     * foodstagram.db.replicas.maxLagMillis (1000 by default) behind. If the foodstagram.db.shards system
+     * property lists the JDBC urls of several MySQL databases instead, users and their posts are spread over them.
+     */
+    private static DatabaseManager createDatabaseManager() {
+        String logDirectory = System.getProperty("foodstagram.log.dir");
+        if (logDirectory != null) {
+            try {
+                return new LogStructuredDatabaseManager(Paths.get(logDirectory));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        String shardUrls = System.getProperty("foodstagram.db.shards");
+        if (shardUrls != null) {
+            return ShardedDatabaseManager.forUrls(shardUrls.split(","));
+        }
+        if (System.getProperty("foodstagram.db.replicas") != null) {
+            return new ReplicatedDatabaseManager(ReplicaRouter.getDefault(),
+                    Long.getLong("foodstagram.db.replicas.maxLagMillis", 1000));
+        }
+        return new MySQLController();
     }
 
     public void run() {
@@ -48,6 +82,8 @@ public class RecipeAppController {
                 return ShellAction.CUSTOMIZEPROFILE;
             case "4":
                 return ShellAction.LOGOUT;
+            case "5":
+                return ShellAction.DUMPMETRICS;
             default:
                 return ShellAction.INVALIDACTION;
         }
@@ -64,6 +100,8 @@ public class RecipeAppController {
             this.userProfileController.run(ShellAction.CUSTOMIZEPROFILE);
         } else if (action == ShellAction.LOGOUT) {
             this.loginController.run(ShellAction.LOGOUT);
+        } else if (action == ShellAction.DUMPMETRICS) {
+            this.inOut.setOutput(this.queryMetrics.dump());
         } else {
             this.inOut.setOutput("That is not a valid action.");
         }
@@ -75,6 +113,7 @@ public class RecipeAppController {
                 "1 Browse a User Profile\n" +
                 "2 Post a Recipe\n" +
                 "3 Customize your User Profile\n" +
-                "4 Logout\n";
+                "4 Logout\n" +
+                "5 Show database metrics\n";
     }
 }
@@ -0,0 +1,222 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how far behind the primary database each of its replicas is, and picks a replica
+ * that is close enough behind for a read. It is shared by every ReplicatedDatabaseManager in the app.
+ *
+ * How far a database has got is measured by the last change_seq in its change_log table.
+ * A replica that has the same last change as the primary is not behind. Otherwise it is behind by how long
+ * ago the primary was first seen past the replica's last change. Positions are polled in the background,
+ * so a replica can be up to one poll interval further behind than it seems.
+ */
+public class ReplicaRouter implements AutoCloseable {
+    private static final String POSITION_QUERY = "SELECT COALESCE(MAX(`change_seq`), 0) FROM `change_log`";
+    private static ReplicaRouter defaultReplicaRouter;
+
+    private final MySQLController primary;
+    private final List<MySQLController> replicas;
+    private final ScheduledExecutorService monitor;
+
+    // Guarded by this. Each entry is a position of the primary and the System.nanoTime it was first seen at,
+    // from the oldest position a replica may still be at to the newest.
+    private final ArrayDeque<long[]> primaryPositions = new ArrayDeque<>();
+    // Guarded by this. -1 for a replica that could not be reached at the last poll.
+    private final long[] replicaPositions;
+    private int nextReplica;
+
+    private final AtomicLong primaryReadCount = new AtomicLong();
+    private final AtomicLong replicaReadCount = new AtomicLong();
+
+    /**
+     * Construct a ReplicaRouter and poll the positions of the databases once.
+     * @param primary The MySQLController of the primary database, which every write goes to.
+     * @param replicas The MySQLControllers of the replicas of the primary. See MySQLController.forReplica.
+     * @param pollIntervalMillis How often the positions of the databases are polled in the background,
+     *                           or 0 to only poll them when pollPositions is called.
+     */
+    public ReplicaRouter(MySQLController primary, List<MySQLController> replicas, long pollIntervalMillis) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.replicaPositions = new long[replicas.size()];
+        Arrays.fill(this.replicaPositions, -1);
+        this.pollPositions();
+        if (pollIntervalMillis > 0) {
+            this.monitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "replica-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.monitor.scheduleWithFixedDelay(this::pollPositions, pollIntervalMillis, pollIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.monitor = null;
+        }
+    }
+
+    /**
+     * Returns the ReplicaRouter shared by the app. Its primary is the default MySQLController, and its replicas
+     * are at the comma-separated JDBC urls in the foodstagram.db.replicas system property. Positions are polled
+     * every foodstagram.db.replicas.pollMillis (200 by default).
+     * @return the default ReplicaRouter.
+     */
+    public static synchronized ReplicaRouter getDefault() {
+        if (defaultReplicaRouter == null) {
+            List<MySQLController> replicas = new ArrayList<>();
+            for (String url : System.getProperty("foodstagram.db.replicas", "").split(",")) {
+                if (!url.isBlank()) {
+                    replicas.add(MySQLController.forReplica(MySQLController.createConnectionPool(url.trim())));
+                }
+            }
+            defaultReplicaRouter = new ReplicaRouter(new MySQLController(), replicas,
+                    Long.getLong("foodstagram.db.replicas.pollMillis", 200));
+        }
+        return defaultReplicaRouter;
+    }
+
+    /**
+     * @return the MySQLController of the primary database.
+     */
+    public MySQLController getPrimary() {
+        return this.primary;
+    }
+
+    /**
+     * Reads the position of the primary database now, rather than at the last poll.
+     * @return the last change_seq in the change_log table of the primary.
+     * @throws SQLException if the primary could not be read.
+     */
+    public long readPrimaryPosition() throws SQLException {
+        return readPosition(this.primary);
+    }
+
+    /**
+     * Reads the positions of the primary and every replica, and works out how far behind each replica is.
+     */
+    public void pollPositions() {
+        long primaryPosition;
+        try {
+            primaryPosition = readPosition(this.primary);
+        } catch (SQLException e) {
+            // Without the primary's position there is nothing to compare the replicas to
+            e.printStackTrace();
+            return;
+        }
+        long[] positions = new long[this.replicas.size()];
+        for (int i = 0; i < positions.length; i++) {
+            try {
+                positions[i] = readPosition(this.replicas.get(i));
+            } catch (SQLException e) {
+                positions[i] = -1;
+            }
+        }
+        long now = System.nanoTime();
+
+        synchronized (this) {
+            if (this.primaryPositions.isEmpty() || this.primaryPositions.peekLast()[0] < primaryPosition) {
+                this.primaryPositions.addLast(new long[]{primaryPosition, now});
+            }
+            System.arraycopy(positions, 0, this.replicaPositions, 0, positions.length);
+            // Only the first position past each replica's is needed to work out how far behind it is
+            long oldestReplicaPosition = Long.MAX_VALUE;
+            for (long position : positions) {
+                if (position >= 0) {
+                    oldestReplicaPosition = Math.min(oldestReplicaPosition, position);
+                }
+            }
+            while (this.primaryPositions.size() > 1
+                    && this.primaryPositions.peekFirst()[0] <= oldestReplicaPosition) {
+                this.primaryPositions.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @param replica The index of a replica.
+     * @return how many milliseconds the replica was behind the primary at the last poll, 0 if it was not behind,
+     * or Long.MAX_VALUE if it could not be reached.
+     */
+    public synchronized long getLagMillis(int replica) {
+        long position = this.replicaPositions[replica];
+        if (position < 0) {
+            return Long.MAX_VALUE;
+        }
+        for (long[] primaryPosition : this.primaryPositions) {
+            if (primaryPosition[0] > position) {
+                // A replica that is behind at all is at least 1 ms behind
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - primaryPosition[1]));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Picks the next replica, in turn, that has at least the given position and is not too far behind.
+     * @param minPosition The position the replica must have reached.
+     * @param maxLagMillis How far behind the primary the replica may be, in milliseconds.
+     * @return the MySQLController of the replica, or null if no replica is close enough behind.
+     */
+    synchronized MySQLController chooseReplica(long minPosition, long maxLagMillis) {
+        for (int i = 0; i < this.replicas.size(); i++) {
+            int replica = (this.nextReplica + i) % this.replicas.size();
+            if (this.replicaPositions[replica] >= minPosition && this.getLagMillis(replica) <= maxLagMillis) {
+                this.nextReplica = replica + 1;
+                this.replicaReadCount.incrementAndGet();
+                return this.replicas.get(replica);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts a read that was sent to the primary.
+     */
+    void recordPrimaryRead() {
+        this.primaryReadCount.incrementAndGet();
+    }
+
+    /**
+     * @return how many reads were sent to the primary.
+     */
+    public long getPrimaryReadCount() {
+        return this.primaryReadCount.get();
+    }
+
+    /**
+     * @return how many reads were sent to a replica.
+     */
+    public long getReplicaReadCount() {
+        return this.replicaReadCount.get();
+    }
+
+    /**
+     * Stops polling the positions of the databases.
+     */
+    @Override
+    public void close() {
+        if (this.monitor != null) {
+            this.monitor.shutdownNow();
+        }
+    }
+
+    private static long readPosition(MySQLController database) throws SQLException {
+        try (Connection connection = database.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet positionResult = statement.executeQuery(POSITION_QUERY)) {
+            positionResult.next();
+            return positionResult.getLong(1);
+        }
+    }
+}
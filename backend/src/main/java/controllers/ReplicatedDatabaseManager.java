@@ -0,0 +1,206 @@
+package controllers;
+
+import entities.*;
+import use_cases.DatabaseManager;
+import use_cases.DatabaseSnapshot;
+import use_cases.FeedCursor;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A DatabaseManager for one session of the app that sends writes to the primary database and spreads reads
+ * over its replicas, through a ReplicaRouter shared with the other sessions.
+ * The session always sees its own writes: after a write, reads only go to replicas that have caught up with
+ * the primary as it was right after it. Reads also only go to replicas that are no further behind the primary
+ * than the session's lag tolerance, and to the primary if no replica is.
+ */
+public class ReplicatedDatabaseManager extends DatabaseManager {
+    private final ReplicaRouter router;
+    private volatile long maxLagMillis;
+
+    // Guarded by this. The position a replica must have reached to have this session's writes,
+    // and whether a write was made whose position is not known yet.
+    private long writtenPosition;
+    private boolean positionUnknown;
+
+    /**
+     * Construct a ReplicatedDatabaseManager.
+     * @param router The ReplicaRouter shared by every session.
+     * @param maxLagMillis How far behind the primary, in milliseconds, a replica may be for this session
+     *                     to read from it.
+     */
+    public ReplicatedDatabaseManager(ReplicaRouter router, long maxLagMillis) {
+        this.router = router;
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * @param maxLagMillis How far behind the primary, in milliseconds, a replica may be for this session
+     *                     to read from it. 0 reads only from replicas that are not behind at all.
+     */
+    public void setMaxLagMillis(long maxLagMillis) {
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * @return how far behind the primary, in milliseconds, a replica may be for this session to read from it.
+     */
+    public long getMaxLagMillis() {
+        return this.maxLagMillis;
+    }
+
+    /**
+     * Picks the database the next read runs on: a replica that is close enough behind, or the primary.
+     * After a write, the position of the primary is read first, with any likes and comments that were
+     * waiting to be saved, so that later reads can go to the replicas that have the write.
+     */
+    private synchronized MySQLController reader() {
+        MySQLController primary = this.router.getPrimary();
+        if (this.positionUnknown) {
+            try {
+                if (primary.getInteractionWriter() != null) {
+                    primary.getInteractionWriter().flush();
+                }
+                this.writtenPosition = this.router.readPrimaryPosition();
+                this.positionUnknown = false;
+            } catch (SQLException e) {
+                // Keep reading from the primary until the position can be read
+                e.printStackTrace();
+            }
+        }
+        if (!this.positionUnknown) {
+            MySQLController replica = this.router.chooseReplica(this.writtenPosition, this.maxLagMillis);
+            if (replica != null) {
+                return replica;
+            }
+        }
+        this.router.recordPrimaryRead();
+        return primary;
+    }
+
+    private synchronized void wrote() {
+        this.positionUnknown = true;
+    }
+
+    private MySQLController primary() {
+        return this.router.getPrimary();
+    }
+
+    @Override
+    public void addNewPost(Post newPost) {
+        this.primary().addNewPost(newPost);
+        this.wrote();
+    }
+
+    @Override
+    public void likePost(Post post, User user) {
+        this.primary().likePost(post, user);
+        this.wrote();
+    }
+
+    @Override
+    public void commentPost(Post post, Comment comment) {
+        this.primary().commentPost(post, comment);
+        this.wrote();
+    }
+
+    @Override
+    public void editPost(Post newPost) {
+        this.primary().editPost(newPost);
+        this.wrote();
+    }
+
+    @Override
+    public void deletePost(String postId) {
+        this.primary().deletePost(postId);
+        this.wrote();
+    }
+
+    @Override
+    public boolean addNewUser(User newUser) {
+        boolean added = this.primary().addNewUser(newUser);
+        this.wrote();
+        return added;
+    }
+
+    @Override
+    public boolean updateUser(User updatedUser) {
+        boolean updated = this.primary().updateUser(updatedUser);
+        this.wrote();
+        return updated;
+    }
+
+    @Override
+    public boolean deleteUser(User user) {
+        boolean deleted = this.primary().deleteUser(user);
+        this.wrote();
+        return deleted;
+    }
+
+    /**
+     * Saves a follow in the primary database, as MySQLController.startFollowingDB does.
+     * @param user The user being followed.
+     * @param newFollower The user following them.
+     */
+    public void startFollowingDB(User user, User newFollower) {
+        this.primary().startFollowingDB(user, newFollower);
+        this.wrote();
+    }
+
+    @Override
+    public Post[] getAllPosts() {
+        return this.reader().getAllPosts();
+    }
+
+    @Override
+    public Stream<Post> streamAllPosts() {
+        return this.reader().streamAllPosts();
+    }
+
+    @Override
+    public Post[] getPostsPage(FeedCursor cursor, int limit) {
+        return this.reader().getPostsPage(cursor, limit);
+    }
+
+    @Override
+    public Post[] getMostLikedPosts(int limit) {
+        return this.reader().getMostLikedPosts(limit);
+    }
+
+    @Override
+    public FeedCard[] getFeedCards(List<String> postIds) {
+        return this.reader().getFeedCards(postIds);
+    }
+
+    @Override
+    public User[] getAllUsers() {
+        return this.reader().getAllUsers();
+    }
+
+    /**
+     * @return every user and post, as MySQLController.loadSnapshot returns them.
+     */
+    public DatabaseSnapshot loadSnapshot() {
+        return this.reader().loadSnapshot();
+    }
+
+    /**
+     * @param postId the ID of a post.
+     * @return true if the post is in the database.
+     */
+    public boolean postExistsInDB(String postId) {
+        return this.reader().postExistsInDB(postId);
+    }
+
+    /**
+     * @param recipeId the ID of a recipe.
+     * @return the recipe, as MySQLController.getRecipe returns it.
+     * @throws SQLException if the database could not be read.
+     * @throws DatabaseException if there is no recipe with the ID.
+     */
+    public Recipe getRecipe(String recipeId) throws SQLException, DatabaseException {
+        return this.reader().getRecipe(recipeId);
+    }
+}
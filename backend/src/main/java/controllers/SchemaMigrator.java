@@ -0,0 +1,181 @@
+package controllers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the database schema up to date by running the versioned scripts in db/migration.
+ * A script named V{n}__{description}.sql is run once, in order of n, and recorded in the
+ * schema_version table. The database created by setup.sql is version 0.
+ */
+public class SchemaMigrator {
+    private static final String MIGRATION_DIRECTORY = "/db/migration/";
+    // Every script, in the order it has to run. Add new scripts at the end.
+    private static final String[] MIGRATIONS = {
+            "V1__keys_and_indexes.sql",
+            "V2__change_log.sql",
+            "V3__post_counters.sql",
+            "V4__user_tombstones.sql",
+            "V5__change_sources.sql",
+            "V6__tombstone_counters.sql",
+    };
+    private static final String LOCK_NAME = "foodstagram_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final ConnectionPool connectionPool;
+
+    /**
+     * Construct a SchemaMigrator.
+     * @param connectionPool The pool to borrow a connection to the database from.
+     */
+    public SchemaMigrator(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Runs every script that has not been applied to the database yet. Other apps migrating
+     * the same database at the same time wait for this one to finish.
+     * @return the number of scripts that were applied.
+     * @throws SQLException if a script fails. The scripts before it stay applied.
+     * @throws IOException if a script cannot be read.
+     */
+    public int migrate() throws SQLException, IOException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.lock(connection);
+            try {
+                this.createVersionTable(connection);
+                int currentVersion = this.getCurrentVersion(connection);
+                int applied = 0;
+                for (String migration : MIGRATIONS) {
+                    int version = versionOf(migration);
+                    if (version > currentVersion) {
+                        this.apply(connection, migration, version);
+                        applied++;
+                    }
+                }
+                return applied;
+            } finally {
+                this.unlock(connection);
+            }
+        }
+    }
+
+    /**
+     * @return the version of the last script applied to the database, or 0 if none was.
+     */
+    public int getCurrentVersion() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            this.createVersionTable(connection);
+            return this.getCurrentVersion(connection);
+        }
+    }
+
+    /**
+     * @return the version of the last script in db/migration.
+     */
+    public static int getLatestVersion() {
+        return versionOf(MIGRATIONS[MIGRATIONS.length - 1]);
+    }
+
+    private int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet versionResult = statement.executeQuery("SELECT MAX(`version`) FROM `schema_version`")) {
+            versionResult.next();
+            return versionResult.getInt(1);
+        }
+    }
+
+    private void createVersionTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS `schema_version` (" +
+                    "`version` int(11) NOT NULL, " +
+                    "`script` varchar(255) NOT NULL, " +
+                    "`applied_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "PRIMARY KEY (`version`)" +
+                    ") ENGINE=InnoDB DEFAULT CHARSET=utf8");
+        }
+    }
+
+    /**
+     * Runs every statement of a script and records its version. MySQL commits schema changes
+     * as they happen, so the scripts are written to be rerun if one stops halfway.
+     */
+    private void apply(Connection connection, String migration, int version) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : readStatements(migration)) {
+                statement.execute(sql);
+            }
+        }
+        String query = "INSERT INTO `schema_version` (`version`, `script`) VALUES (?,?)";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setInt(1, version);
+            preparedStmt.setString(2, migration);
+            preparedStmt.execute();
+        }
+    }
+
+    private void lock(Connection connection) throws SQLException {
+        try (PreparedStatement preparedStmt = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            preparedStmt.setString(1, LOCK_NAME);
+            preparedStmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet lockResult = preparedStmt.executeQuery()) {
+                if (!lockResult.next() || lockResult.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another schema migration to finish.");
+                }
+            }
+        }
+    }
+
+    private void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement preparedStmt = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            preparedStmt.setString(1, LOCK_NAME);
+            preparedStmt.executeQuery().close();
+        }
+    }
+
+    /**
+     * @param migration The file name of a script, V{n}__{description}.sql.
+     * @return n
+     */
+    private static int versionOf(String migration) {
+        return Integer.parseInt(migration.substring(1, migration.indexOf("__")));
+    }
+
+    /**
+     * Splits a script into its statements. Statements end with a semicolon at the end of a line,
+     * and lines starting with -- are comments.
+     */
+    private static List<String> readStatements(String migration) throws IOException {
+        InputStream script = SchemaMigrator.class.getResourceAsStream(MIGRATION_DIRECTORY + migration);
+        if (script == null) {
+            throw new IOException("The migration " + migration + " was not found.");
+        }
+        List<String> statements = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(script, StandardCharsets.UTF_8))) {
+            StringBuilder statement = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                statement.append(line).append("\n");
+                if (trimmed.endsWith(";")) {
+                    statement.setLength(statement.lastIndexOf(";"));
+                    statements.add(statement.toString());
+                    statement.setLength(0);
+                }
+            }
+            if (statement.toString().trim().length() > 0) {
+                statements.add(statement.toString());
+            }
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,748 @@
+package controllers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An embedded key-value store kept as an append-only log in a directory of memory-mapped segment files.
+ * Every write is a batch of puts and deletes that is appended to the newest segment as one checksummed
+ * frame and synced to disk before write returns, so after a crash a batch is either all there or not at all.
+ * A segment that is full is sealed with a footer listing where each of its keys is, so that on startup the
+ * in-memory index of every key is rebuilt from the footers, and only the newest segment has to be scanned.
+ * A background thread compacts the sealed segments into new ones holding only the values that are still
+ * in use, once at least half of what they hold has been overwritten or deleted.
+ */
+public class SegmentLog implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+    private static final int MAGIC = 0x46534c47;
+    private static final int VERSION = 1;
+    // magic, version and the offset of the footer, which is 0 until the segment is sealed
+    private static final int HEADER_SIZE = 16;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int FOOTER_MARK = -1;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+    private static final long COMPACTION_INTERVAL_SECONDS = 30;
+    private static final int COMPACTION_FRAME_SIZE = 64 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FileChannel lockFile;
+    private final FileLock directoryLock;
+    private final ConcurrentSkipListMap<String, Location> index = new ConcurrentSkipListMap<>();
+    // Guards sealed and active. Writers hold the monitor of the SegmentLog, and take this lock after it.
+    private final Object segmentsLock = new Object();
+    // The sealed segments from the oldest to the newest
+    private final ArrayList<Segment> sealed = new ArrayList<>();
+    private Segment active;
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong compactionCount = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * Construct a SegmentLog, recovering whatever a previous SegmentLog left in the directory.
+     * @param directory The directory of the segment files. Only one SegmentLog can use it at a time.
+     * @param segmentSize The size of a segment file, in bytes.
+     * @throws IOException if the directory cannot be read, or is used by another SegmentLog.
+     */
+    public SegmentLog(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.lockFile = FileChannel.open(directory.resolve("LOCK"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock acquired = null;
+        try {
+            acquired = this.lockFile.tryLock();
+        } catch (IOException | OverlappingFileLockException e) {
+            // Handled below
+        }
+        if (acquired == null) {
+            this.lockFile.close();
+            throw new IOException("The directory " + directory + " is used by another SegmentLog.");
+        }
+        this.directoryLock = acquired;
+        this.recover();
+
+        this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.compactor.scheduleWithFixedDelay(this::compactIfWorthIt, COMPACTION_INTERVAL_SECONDS,
+                COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return the value of the key, or null if it has none.
+     */
+    public byte[] get(String key) {
+        Location location = this.index.get(key);
+        return location == null ? null : location.read();
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return true iff the key has a value.
+     */
+    public boolean contains(String key) {
+        return this.index.containsKey(key);
+    }
+
+    /**
+     * @param prefix The start of the keys.
+     * @return the keys that start with the prefix and have a value, in order. The set changes as the log is
+     * written to.
+     */
+    public NavigableSet<String> keySet(String prefix) {
+        return this.index.subMap(prefix, true, prefix + Character.MAX_VALUE, false).navigableKeySet();
+    }
+
+    /**
+     * Appends a batch of puts and deletes to the log. It is safe on disk when this returns.
+     * @param batch The puts and deletes, applied in order.
+     * @throws IOException if the batch could not be written. None of it is applied.
+     */
+    public synchronized void write(Batch batch) throws IOException {
+        if (this.closed) {
+            throw new IOException("The SegmentLog has been closed.");
+        }
+        if (batch.operations.isEmpty()) {
+            return;
+        }
+        Frame frame = encode(batch);
+        if (!this.active.fits(frame)) {
+            this.rollSegment(frame);
+        }
+        List<Location> locations = this.active.append(frame);
+        this.apply(batch, locations);
+    }
+
+    /**
+     * Compacts the sealed segments into new segments that only hold the values that are still in use.
+     * Writes and reads go on while it runs.
+     * @return the number of segments that were compacted.
+     * @throws IOException if the new segments could not be written. The log is left as it was.
+     */
+    public int compact() throws IOException {
+        this.compactionLock.lock();
+        try {
+            List<Segment> inputs;
+            synchronized (this.segmentsLock) {
+                inputs = new ArrayList<>(this.sealed);
+            }
+            if (inputs.isEmpty()) {
+                return 0;
+            }
+            Set<Segment> inputSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            inputSet.addAll(inputs);
+            // The new segments are placed right after the newest input, and before every newer segment
+            Segment newestInput = inputs.get(inputs.size() - 1);
+            long number = newestInput.number;
+            int generation = newestInput.generation + 1;
+
+            List<Segment> outputs = new ArrayList<>();
+            List<Move> moves = new ArrayList<>();
+            Segment output = null;
+            try {
+                Batch batch = new Batch();
+                List<Location> sources = new ArrayList<>();
+                int batchBytes = 0;
+                Iterator<Map.Entry<String, Location>> entries = this.index.entrySet().iterator();
+                while (entries.hasNext() || !sources.isEmpty()) {
+                    Map.Entry<String, Location> entry = entries.hasNext() ? entries.next() : null;
+                    if (entry != null && inputSet.contains(entry.getValue().segment)) {
+                        byte[] value = entry.getValue().read();
+                        batch.put(entry.getKey(), value);
+                        sources.add(entry.getValue());
+                        batchBytes += entry.getKey().length() + value.length;
+                    }
+                    if (!sources.isEmpty() && (entry == null || batchBytes >= COMPACTION_FRAME_SIZE)) {
+                        Frame frame = encode(batch);
+                        if (output == null || !output.fits(frame)) {
+                            if (output != null) {
+                                output.seal();
+                            }
+                            output = Segment.create(this.segmentPath(number, generation, true), number,
+                                    generation, Math.max(this.segmentSize, frame.size() + HEADER_SIZE));
+                            outputs.add(output);
+                            generation++;
+                        }
+                        List<Location> locations = output.append(frame);
+                        for (int i = 0; i < sources.size(); i++) {
+                            moves.add(new Move(batch.operations.get(i).key, sources.get(i), locations.get(i)));
+                        }
+                        batch = new Batch();
+                        sources.clear();
+                        batchBytes = 0;
+                    }
+                }
+                if (output != null) {
+                    output.seal();
+                }
+                for (Segment segment : outputs) {
+                    segment.moveTo(this.segmentPath(segment.number, segment.generation, false));
+                }
+                this.syncDirectory();
+            } catch (IOException e) {
+                for (Segment segment : outputs) {
+                    segment.close();
+                    Files.deleteIfExists(segment.path);
+                }
+                throw e;
+            }
+
+            for (Move move : moves) {
+                // A key written while compacting keeps its newer value
+                if (this.index.replace(move.key, move.from, move.to)) {
+                    move.from.segment.live.decrementAndGet();
+                    move.to.segment.live.incrementAndGet();
+                }
+            }
+            synchronized (this.segmentsLock) {
+                this.sealed.removeAll(inputs);
+                this.sealed.addAll(0, outputs);
+            }
+            for (Segment segment : inputs) {
+                segment.close();
+                Files.deleteIfExists(segment.path);
+            }
+            this.compactionCount.incrementAndGet();
+            return inputs.size();
+        } finally {
+            this.compactionLock.unlock();
+        }
+    }
+
+    private void compactIfWorthIt() {
+        int records = 0;
+        int live = 0;
+        synchronized (this.segmentsLock) {
+            if (this.sealed.size() < 2) {
+                return;
+            }
+            for (Segment segment : this.sealed) {
+                records += segment.records;
+                live += segment.live.get();
+            }
+        }
+        if (live <= records * (1 - COMPACTION_GARBAGE_RATIO)) {
+            try {
+                this.compact();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return the number of segment files, including the one being written to.
+     */
+    public int getSegmentCount() {
+        synchronized (this.segmentsLock) {
+            return this.sealed.size() + 1;
+        }
+    }
+
+    /**
+     * @return the number of keys that have a value.
+     */
+    public int getKeyCount() {
+        return this.index.size();
+    }
+
+    /**
+     * @return the number of times the sealed segments were compacted.
+     */
+    public long getCompactionCount() {
+        return this.compactionCount.get();
+    }
+
+    /**
+     * Stops the compactor and closes the segment files. Everything written is already on disk.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        this.compactor.shutdownNow();
+        this.compactionLock.lock();
+        try {
+            synchronized (this.segmentsLock) {
+                for (Segment segment : this.sealed) {
+                    segment.close();
+                }
+                this.active.close();
+            }
+            this.directoryLock.release();
+            this.lockFile.close();
+        } finally {
+            this.compactionLock.unlock();
+        }
+    }
+
+    /**
+     * Seals the segment being written to and starts a new one that fits the given frame.
+     */
+    private void rollSegment(Frame frame) throws IOException {
+        Segment full = this.active;
+        full.seal();
+        Segment next = Segment.create(this.segmentPath(full.number + 1, 0, false), full.number + 1, 0,
+                Math.max(this.segmentSize, frame.size() + HEADER_SIZE));
+        synchronized (this.segmentsLock) {
+            this.sealed.add(full);
+            this.active = next;
+        }
+        this.syncDirectory();
+        this.compactor.execute(this::compactIfWorthIt);
+    }
+
+    /**
+     * Applies the operations of a batch that was written at the given locations to the index.
+     */
+    private void apply(Batch batch, List<Location> locations) {
+        for (int i = 0; i < batch.operations.size(); i++) {
+            Operation operation = batch.operations.get(i);
+            Location old;
+            if (operation.value != null) {
+                Location location = locations.get(i);
+                old = this.index.put(operation.key, location);
+                location.segment.live.incrementAndGet();
+            } else {
+                old = this.index.remove(operation.key);
+            }
+            if (old != null) {
+                old.segment.live.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Opens every segment in the directory, oldest first, and rebuilds the index from their footers, or
+     * by reading their frames if they were not sealed. A frame that was only partly written is dropped.
+     */
+    private void recover() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    // Left by a compaction that did not finish; the segments it compacted are still there
+                    Files.delete(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    String[] parts = name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()).split("-");
+                    segments.add(Segment.open(file, Long.parseLong(parts[0]), Integer.parseInt(parts[1]),
+                            this.segmentSize));
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong((Segment segment) -> segment.number)
+                .thenComparingInt(segment -> segment.generation));
+
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            if (segment.footerOffset > 0) {
+                segment.loadFooter(this.index);
+            } else {
+                segment.scan(this.index);
+                if (!last) {
+                    segment.seal();
+                }
+            }
+            if (!last || segment.footerOffset > 0) {
+                this.sealed.add(segment);
+            } else {
+                this.active = segment;
+            }
+        }
+        if (this.active == null) {
+            long number = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).number + 1;
+            this.active = Segment.create(this.segmentPath(number, 0, false), number, 0, this.segmentSize);
+            this.syncDirectory();
+        }
+        for (Location location : this.index.values()) {
+            location.segment.live.incrementAndGet();
+        }
+    }
+
+    private Path segmentPath(long number, int generation, boolean temporary) {
+        return this.directory.resolve(String.format("%s%012d-%04d%s", SEGMENT_PREFIX, number, generation,
+                SEGMENT_SUFFIX + (temporary ? TEMPORARY_SUFFIX : "")));
+    }
+
+    /**
+     * Makes the creation, renaming and deletion of segment files durable. Not every platform can sync a
+     * directory, and the ones that cannot keep file names durable on their own.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(this.directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on this platform
+        }
+    }
+
+    /**
+     * Encodes a batch as the payload of a frame: the number of operations, then for each its type, its key,
+     * and for a put the length of the value and the value.
+     */
+    private static Frame encode(Batch batch) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int[] valueOffsets = new int[batch.operations.size()];
+        try {
+            out.writeInt(batch.operations.size());
+            for (int i = 0; i < batch.operations.size(); i++) {
+                Operation operation = batch.operations.get(i);
+                out.writeByte(operation.value != null ? PUT : DELETE);
+                out.writeUTF(operation.key);
+                if (operation.value != null) {
+                    out.writeInt(operation.value.length);
+                    valueOffsets[i] = out.size();
+                    out.write(operation.value);
+                }
+            }
+        } catch (IOException e) {
+            // Writing to a ByteArrayOutputStream does not fail
+            throw new UncheckedIOException(e);
+        }
+        return new Frame(bytes.toByteArray(), valueOffsets);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * A batch of puts and deletes written to the log as one frame.
+     */
+    public static class Batch {
+        private final ArrayList<Operation> operations = new ArrayList<>();
+
+        /**
+         * Sets the value of a key.
+         * @return this batch.
+         */
+        public Batch put(String key, byte[] value) {
+            this.operations.add(new Operation(key, Objects.requireNonNull(value)));
+            return this;
+        }
+
+        /**
+         * Removes the value of a key.
+         * @return this batch.
+         */
+        public Batch delete(String key) {
+            this.operations.add(new Operation(key, null));
+            return this;
+        }
+
+        /**
+         * @return true iff nothing was added to this batch.
+         */
+        public boolean isEmpty() {
+            return this.operations.isEmpty();
+        }
+    }
+
+    private static class Operation {
+        final String key;
+        // null for a delete
+        final byte[] value;
+
+        Operation(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static class Frame {
+        final byte[] payload;
+        // The offset of the value of each put in the payload
+        final int[] valueOffsets;
+
+        Frame(byte[] payload, int[] valueOffsets) {
+            this.payload = payload;
+            this.valueOffsets = valueOffsets;
+        }
+
+        int size() {
+            return FRAME_HEADER_SIZE + this.payload.length;
+        }
+    }
+
+    /**
+     * A value copied by a compaction, from where it was to where it is now.
+     */
+    private static class Move {
+        final String key;
+        final Location from, to;
+
+        Move(String key, Location from, Location to) {
+            this.key = key;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Where the value of a key is stored.
+     */
+    private static class Location {
+        final Segment segment;
+        final int offset, length;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        byte[] read() {
+            byte[] value = new byte[this.length];
+            // The mapping stays valid after the segment is closed or compacted away
+            this.segment.buffer.get(this.offset, value);
+            return value;
+        }
+    }
+
+    /**
+     * A segment file: a header, then frames, each its payload length, its checksum and its payload, and once
+     * the segment is sealed, a footer with the location of the last value written for each key.
+     */
+    private static class Segment {
+        Path path;
+        final long number;
+        final int generation;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+        int end = HEADER_SIZE;
+        long footerOffset;
+        // The last operation on each key in this segment, kept until it is written to the footer
+        LinkedHashMap<String, Location> footer = new LinkedHashMap<>();
+        int records;
+        final AtomicInteger live = new AtomicInteger();
+
+        private Segment(Path path, long number, int generation, FileChannel channel, int capacity)
+                throws IOException {
+            this.path = path;
+            this.number = number;
+            this.generation = generation;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        static Segment create(Path path, long number, int generation, int capacity) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, number, generation, channel, capacity);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.buffer.putLong(8, 0);
+            segment.buffer.force();
+            return segment;
+        }
+
+        static Segment open(Path path, long number, int generation, int segmentSize) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, number, generation, channel,
+                    (int) Math.max(segmentSize, channel.size()));
+            if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                segment.close();
+                throw new IOException(path + " is not a segment file.");
+            }
+            segment.footerOffset = segment.buffer.getLong(8);
+            return segment;
+        }
+
+        boolean fits(Frame frame) {
+            return this.footerOffset == 0 && this.end + frame.size() <= this.capacity;
+        }
+
+        /**
+         * Writes a frame at the end of the segment and syncs it.
+         * @return the location of the value of each operation of the frame, or null for a delete.
+         */
+        List<Location> append(Frame frame) throws IOException {
+            int start = this.end;
+            this.buffer.putInt(start, frame.payload.length);
+            this.buffer.putInt(start + 4, checksum(frame.payload));
+            this.buffer.put(start + FRAME_HEADER_SIZE, frame.payload);
+            this.buffer.force(start, frame.size());
+            this.end += frame.size();
+            return this.addToFooter(start, frame.payload, null);
+        }
+
+        /**
+         * Reads the frames of a segment that was not sealed, stopping at the first one that is missing or
+         * was only partly written, and clears whatever is after it so the next frame can be written there.
+         */
+        void scan(Map<String, Location> index) throws IOException {
+            int position = HEADER_SIZE;
+            while (position + FRAME_HEADER_SIZE <= this.capacity) {
+                int length = this.buffer.getInt(position);
+                if (length <= 0 || position + FRAME_HEADER_SIZE + length > this.capacity) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                this.buffer.get(position + FRAME_HEADER_SIZE, payload);
+                if (checksum(payload) != this.buffer.getInt(position + 4)) {
+                    break;
+                }
+                this.addToFooter(position, payload, index);
+                position += FRAME_HEADER_SIZE + length;
+            }
+            this.end = position;
+            byte[] zeros = new byte[Math.min(64 * 1024, this.capacity - position)];
+            for (int offset = position; offset < this.capacity; offset += zeros.length) {
+                this.buffer.put(offset, zeros, 0, Math.min(zeros.length, this.capacity - offset));
+            }
+            this.buffer.force();
+        }
+
+        /**
+         * Records the operations of the frame at the given position in the footer, and in the index if
+         * there is one.
+         */
+        private List<Location> addToFooter(int framePosition, byte[] payload, Map<String, Location> index)
+                throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            int count = in.readInt();
+            List<Location> locations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                String key = in.readUTF();
+                Location location = null;
+                if (type == PUT) {
+                    int length = in.readInt();
+                    int offset = payload.length - in.available();
+                    in.skipBytes(length);
+                    location = new Location(this, framePosition + FRAME_HEADER_SIZE + offset, length);
+                }
+                locations.add(location);
+                this.footer.remove(key);
+                this.footer.put(key, location);
+                if (index != null) {
+                    if (location != null) {
+                        index.put(key, location);
+                    } else {
+                        index.remove(key);
+                    }
+                }
+            }
+            this.records = this.footer.size();
+            return locations;
+        }
+
+        /**
+         * Writes the footer after the last frame and then its offset to the header, so a segment whose
+         * header has a footer offset always has a complete footer.
+         */
+        void seal() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(this.footer.size());
+            for (Map.Entry<String, Location> entry : this.footer.entrySet()) {
+                Location location = entry.getValue();
+                out.writeByte(location != null ? PUT : DELETE);
+                out.writeUTF(entry.getKey());
+                if (location != null) {
+                    out.writeInt(location.offset);
+                    out.writeInt(location.length);
+                }
+            }
+            byte[] entries = bytes.toByteArray();
+            ByteBuffer footerBytes = ByteBuffer.allocate(12 + entries.length);
+            footerBytes.putInt(FOOTER_MARK).putInt(entries.length).putInt(checksum(entries)).put(entries).flip();
+            while (footerBytes.hasRemaining()) {
+                this.channel.write(footerBytes, this.end + footerBytes.position());
+            }
+            this.channel.force(true);
+            this.buffer.putLong(8, this.end);
+            this.buffer.force(0, HEADER_SIZE);
+            this.footerOffset = this.end;
+            this.footer = null;
+        }
+
+        /**
+         * Adds the keys listed in the footer of a sealed segment to the index.
+         */
+        void loadFooter(Map<String, Location> index) throws IOException {
+            ByteBuffer footerHeader = ByteBuffer.allocate(12);
+            readFully(footerHeader, this.footerOffset);
+            footerHeader.flip();
+            int mark = footerHeader.getInt();
+            int length = footerHeader.getInt();
+            int checksum = footerHeader.getInt();
+            ByteBuffer entries = ByteBuffer.allocate(length);
+            readFully(entries, this.footerOffset + 12);
+            if (mark != FOOTER_MARK || checksum(entries.array()) != checksum) {
+                throw new IOException("The footer of " + this.path + " is damaged.");
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(entries.array()));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                String key = in.readUTF();
+                if (type == PUT) {
+                    index.put(key, new Location(this, in.readInt(), in.readInt()));
+                } else {
+                    index.remove(key);
+                }
+            }
+            this.records = count;
+            this.end = (int) this.footerOffset;
+            this.footer = null;
+        }
+
+        private void readFully(ByteBuffer destination, long position) throws IOException {
+            while (destination.hasRemaining()) {
+                if (this.channel.read(destination, position + destination.position()) < 0) {
+                    throw new EOFException("The footer of " + this.path + " is cut short.");
+                }
+            }
+        }
+
+        void moveTo(Path target) throws IOException {
+            Files.move(this.path, target, StandardCopyOption.ATOMIC_MOVE);
+            this.path = target;
+        }
+
+        void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package controllers;
+
+import entities.*;
+import use_cases.AsyncDatabaseManager;
+import use_cases.DatabaseManager;
+import use_cases.FeedCursor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A DatabaseManager that spreads the app's data over several other DatabaseManagers, its shards.
+ * Each user is owned by the shard picked by a hash of their ID, and their posts, with the likes and comments
+ * on them, are saved on that shard only. Every user is also copied, without their posts, to every other
+ * shard, along with who they follow, because each shard needs the users who liked or commented on its posts
+ * to read those likes and comments. Users are few next to likes and comments, so the copies are cheap.
+ * Reads that need every shard are sent to all of them in parallel, and the posts they return are merged
+ * in order, so a page of the feed costs one page from each shard.
+ */
+public class ShardedDatabaseManager extends DatabaseManager {
+    // The order of getPostsPage: the most recently posted first, then by ID
+    private static final Comparator<Post> FEED_ORDER = Comparator.comparing(Post::getTime,
+            Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(Post::getId).reversed();
+
+    private final List<DatabaseManager> shards;
+    private final ExecutorService executor;
+    // Taken while adding a user or changing their username, so that two users cannot take the same
+    // username on different shards at the same time
+    private final Object usernameLock = new Object();
+
+    /**
+     * Construct a ShardedDatabaseManager. The shards must always be given in the same order, since a user's
+     * shard is picked by their position.
+     * @param shards The DatabaseManagers to spread the data over.
+     */
+    public ShardedDatabaseManager(List<? extends DatabaseManager> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = new ArrayList<>(shards);
+        this.executor = AsyncDatabaseManager.newExecutor("shard-query", shards.size());
+    }
+
+    /**
+     * Creates a ShardedDatabaseManager over MySQL databases, with a MySQLController for each.
+     * @param urls The JDBC urls of the databases, always in the same order.
+     * @return a ShardedDatabaseManager with a shard for each url.
+     */
+    public static ShardedDatabaseManager forUrls(String... urls) {
+        List<DatabaseManager> shards = new ArrayList<>();
+        for (String url : urls) {
+            shards.add(new MySQLController(MySQLController.createConnectionPool(url.trim())));
+        }
+        return new ShardedDatabaseManager(shards);
+    }
+
+    /**
+     * @return the shards, in order.
+     */
+    public List<DatabaseManager> getShards() {
+        return new ArrayList<>(this.shards);
+    }
+
+    /**
+     * @param userId The ID of a user.
+     * @return the position of the shard that owns the user and their posts.
+     */
+    public int shardOf(String userId) {
+        // String.hashCode is the same in every JVM, so users stay on their shard across restarts
+        return Math.floorMod(userId.hashCode(), this.shards.size());
+    }
+
+    private DatabaseManager owner(String userId) {
+        return this.shards.get(this.shardOf(userId));
+    }
+
+    /**
+     * Runs a call on every shard in parallel.
+     * @return the result of each shard, in the order of the shards.
+     */
+    private <T> List<T> scatter(Function<DatabaseManager, T> call) {
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (DatabaseManager shard : this.shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> call.apply(shard), this.executor));
+        }
+        List<T> results = new ArrayList<>();
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Merges arrays of posts that are each sorted in the given order into one sorted array, by taking the
+     * first post of the array whose first post comes first, until limit posts are taken.
+     * @param sortedPosts Arrays of posts, each sorted in order.
+     * @param order The order of the posts.
+     * @param limit The maximum number of posts to take.
+     * @return the first limit posts of all the arrays together, in order.
+     */
+    static Post[] merge(List<Post[]> sortedPosts, Comparator<Post> order, int limit) {
+        // Each entry is the position of an array and of its next post
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sortedPosts.size()),
+                (a, b) -> order.compare(sortedPosts.get(a[0])[a[1]], sortedPosts.get(b[0])[b[1]]));
+        int total = 0;
+        for (int i = 0; i < sortedPosts.size(); i++) {
+            total += sortedPosts.get(i).length;
+            if (sortedPosts.get(i).length > 0) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        Post[] merged = new Post[Math.min(total, Math.max(0, limit))];
+        for (int i = 0; i < merged.length; i++) {
+            int[] head = heads.poll();
+            Post[] posts = sortedPosts.get(head[0]);
+            merged[i] = posts[head[1]];
+            if (++head[1] < posts.length) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Save a new post to the shard of its author.
+     * @param newPost The Post to save to the database.
+     */
+    @Override
+    public void addNewPost(Post newPost) {
+        this.owner(newPost.getAuthorId()).addNewPost(newPost);
+    }
+
+    /**
+     * Saves the like on the shard of the post's author, where the post is.
+     * @param post post object which is being given a like
+     * @param user user object that is giving the like
+     */
+    @Override
+    public void likePost(Post post, User user) {
+        this.owner(post.getAuthorId()).likePost(post, user);
+    }
+
+    /**
+     * Saves the comment on the shard of the post's author, where the post is.
+     * @param post post object which is being commented on
+     * @param comment comment that stores the information about it
+     */
+    @Override
+    public void commentPost(Post post, Comment comment) {
+        this.owner(post.getAuthorId()).commentPost(post, comment);
+    }
+
+    @Override
+    public void editPost(Post newPost) {
+        this.owner(newPost.getAuthorId()).editPost(newPost);
+    }
+
+    /**
+     * Delete a Post from every shard, since only its ID is known.
+     * @param postId The ID of the Post to delete.
+     */
+    @Override
+    public void deletePost(String postId) {
+        this.scatter(shard -> {
+            shard.deletePost(postId);
+            return null;
+        });
+    }
+
+    /**
+     * Save a new user to their shard, and a copy of them without their posts to every other shard.
+     * @param newUser The new User to save to the database.
+     * @return true if the user was added, false if their shard already has a user with the same username,
+     * or the user could not be copied to every shard.
+     */
+    @Override
+    public boolean addNewUser(User newUser) {
+        synchronized (this.usernameLock) {
+            if (!this.owner(newUser.getId()).addNewUser(newUser)) {
+                return false;
+            }
+            User copy = copyWithoutPosts(newUser);
+            List<Boolean> added = this.scatter(shard -> shard == this.owner(newUser.getId())
+                    || shard.addNewUser(copy));
+            if (added.contains(false)) {
+                this.deleteUser(newUser);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Updates the user on their shard, and their copies on every other shard.
+     * @param updatedUser user object with the updated values
+     * @return true if the attributes were changed on the user's shard
+     */
+    @Override
+    public boolean updateUser(User updatedUser) {
+        synchronized (this.usernameLock) {
+            if (!this.owner(updatedUser.getId()).updateUser(updatedUser)) {
+                return false;
+            }
+            User copy = copyWithoutPosts(updatedUser);
+            this.scatter(shard -> shard == this.owner(updatedUser.getId()) || shard.updateUser(copy));
+            return true;
+        }
+    }
+
+    /**
+     * Deletes the user from every shard, along with their posts, likes, comments and follows.
+     * @param user user object that contains information about
+     *             the user
+     * @return true if every shard deleted the user
+     */
+    @Override
+    public boolean deleteUser(User user) {
+        return !this.scatter(shard -> shard.deleteUser(user)).contains(false);
+    }
+
+    /**
+     * Gets the users owned by every shard, reading the shards in parallel.
+     * @return an Array of all the Users registered in the app.
+     */
+    @Override
+    public User[] getAllUsers() {
+        List<User[]> shardUsers = this.scatter(DatabaseManager::getAllUsers);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < shardUsers.size(); i++) {
+            for (User user : shardUsers.get(i)) {
+                // The other shards only have a copy
+                if (this.shardOf(user.getId()) == i) {
+                    users.add(user);
+                }
+            }
+        }
+        return users.toArray(new User[0]);
+    }
+
+    /**
+     * Gets the posts of every shard, reading the shards in parallel, from the most recently posted to
+     * the least recently posted.
+     * @return an Array of all the posts stored in the database.
+     */
+    @Override
+    public Post[] getAllPosts() {
+        List<Post[]> shardPosts = this.scatter(shard -> {
+            Post[] posts = shard.getAllPosts();
+            Arrays.sort(posts, FEED_ORDER);
+            return posts;
+        });
+        return merge(shardPosts, FEED_ORDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the posts of every shard as a Stream, one shard after the other, in no particular order.
+     * Each shard's Stream is only opened once the one before has been read to the end, and closed as soon as
+     * it has been read to the end itself, or when the returned Stream is closed. The shard Streams are read one
+     * post at a time, so no more posts are held in memory than a shard's own Stream holds.
+     * @return a Stream of all the posts stored in the database, which must be closed.
+     */
+    @Override
+    public Stream<Post> streamAllPosts() {
+        // Stream.flatMap would read a whole shard's Stream into a buffer when read through an iterator
+        ShardCursor cursor = new ShardCursor();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                Spliterator.NONNULL), false).onClose(cursor::close);
+    }
+
+    /**
+     * Reads the Stream of every shard in turn, opening the next shard's when the current one is used up.
+     */
+    private final class ShardCursor implements Iterator<Post>, AutoCloseable {
+        private int nextShard;
+        private Stream<Post> shardStream;
+        private Iterator<Post> shardPosts = Collections.emptyIterator();
+        private boolean closed;
+
+        @Override
+        public boolean hasNext() {
+            while (!this.closed && !this.shardPosts.hasNext()) {
+                this.closeShardStream();
+                if (this.nextShard == ShardedDatabaseManager.this.shards.size()) {
+                    this.closed = true;
+                } else {
+                    this.shardStream = ShardedDatabaseManager.this.shards.get(this.nextShard++).streamAllPosts();
+                    this.shardPosts = this.shardStream.iterator();
+                }
+            }
+            return !this.closed;
+        }
+
+        @Override
+        public Post next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.shardPosts.next();
+        }
+
+        private void closeShardStream() {
+            if (this.shardStream != null) {
+                Stream<Post> shardStream = this.shardStream;
+                this.shardStream = null;
+                this.shardPosts = Collections.emptyIterator();
+                shardStream.close();
+            }
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+            this.closeShardStream();
+        }
+    }
+
+    /**
+     * Gets the same page from every shard in parallel, and merges them into one page.
+     * @param cursor The position of the last post of the previous page, or null to get the first page.
+     * @param limit The maximum number of posts in the page.
+     * @return an Array of at most limit posts that come after the cursor, in order.
+     */
+    @Override
+    public Post[] getPostsPage(FeedCursor cursor, int limit) {
+        return merge(this.scatter(shard -> shard.getPostsPage(cursor, limit)), FEED_ORDER, limit);
+    }
+
+    /**
+     * Gets the most liked posts of every shard in parallel, and merges them.
+     * @param limit The maximum number of posts to get.
+     * @return an Array of at most limit posts with the most likes.
+     */
+    @Override
+    public Post[] getMostLikedPosts(int limit) {
+        return merge(this.scatter(shard -> shard.getMostLikedPosts(limit)), Post.PostLikesComparator, limit);
+    }
+
+    /**
+     * Asks every shard for the cards of the posts in parallel, since only the IDs of the posts are known.
+     * Each shard has a copy of every user, so it finds the usernames of the authors of its own posts.
+     * @param postIds The IDs of the posts.
+     * @return an Array of the FeedCards of the posts that were found, in the order of postIds.
+     */
+    @Override
+    public FeedCard[] getFeedCards(List<String> postIds) {
+        HashMap<String, FeedCard> cards = new HashMap<>();
+        for (FeedCard[] shardCards : this.scatter(shard -> shard.getFeedCards(postIds))) {
+            for (FeedCard card : shardCards) {
+                cards.put(card.getPostId(), card);
+            }
+        }
+        List<FeedCard> orderedCards = new ArrayList<>();
+        for (String postId : postIds) {
+            if (cards.containsKey(postId)) {
+                orderedCards.add(cards.get(postId));
+            }
+        }
+        return orderedCards.toArray(new FeedCard[0]);
+    }
+
+    private static User copyWithoutPosts(User user) {
+        User copy = new User(user.getUsername(), user.getPassword(), user.getBio(), user.getId());
+        copy.setFollowers(new ArrayList<>(user.getFollowers()));
+        copy.setFollowing(new ArrayList<>(user.getFollowing()));
+        copy.setLikeHistory(user.getLikeHistory());
+        return copy;
+    }
+}
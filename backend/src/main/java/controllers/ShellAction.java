@@ -6,5 +6,6 @@ public enum ShellAction {
     POST,
     CUSTOMIZEPROFILE,
     LOGOUT,
+    DUMPMETRICS,
     INVALIDACTION
 }
\ No newline at end of file
@@ -0,0 +1,324 @@
+package controllers;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves SnapshotTables to a compact binary file and reads them back.
+ * Every distinct string (IDs, usernames, categories, step texts, ...) is stored once in a string table at the
+ * start of the file, and the rows refer to strings by their index in it. A file is read by mapping it into
+ * memory and decoding each string straight from the mapping the first time a row refers to it, so a user ID
+ * that appears in thousands of likes is decoded once and shared by all of them.
+ *
+ * The file is laid out as:
+ * <pre>
+ *   header       magic, version, change sequence, captured time, string count, string table length
+ *   offsets      string count + 1 ints, the start of each string in the string table
+ *   strings      the UTF-8 bytes of every string
+ *   users        count, then per user: id, username, bio, follower IDs
+ *   posts        count, then per post: id, author, recipe, category, posted time, recipe row, comments, likes
+ *   checksum     the CRC32 of everything before it
+ * </pre>
+ * A file is written to a temporary file first and then renamed over the old one, so a reader never sees
+ * half of a file. Passwords are left out of the file, and on file systems with POSIX permissions only the
+ * owner of the file can read it.
+ */
+class SnapshotFile {
+    private static final int MAGIC = 0x46534e50;
+    // Version 1 files had the users' passwords
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final ByteBuffer buffer;
+    private final int offsetsStart;
+    private final int stringsStart;
+    private final String[] strings;
+    private byte[] scratch = new byte[256];
+
+    private SnapshotFile(ByteBuffer buffer, int stringCount) {
+        this.buffer = buffer;
+        this.offsetsStart = HEADER_SIZE;
+        this.stringsStart = HEADER_SIZE + 4 * (stringCount + 1);
+        this.strings = new String[stringCount];
+    }
+
+    /**
+     * Saves the rows to a file, replacing the file if it exists.
+     * @param tables The rows to save.
+     * @param file The file to save them to.
+     * @throws IOException if the file could not be written. The old file, if any, is left as it was.
+     */
+    static void write(SnapshotTables tables, Path file) throws IOException {
+        StringTable stringTable = new StringTable();
+        for (SnapshotTables.UserRow user : tables.users.values()) {
+            stringTable.add(user.id, user.username, user.bio);
+            stringTable.addAll(user.followerIds);
+        }
+        for (SnapshotTables.PostRow post : tables.posts.values()) {
+            stringTable.add(post.id, post.authorId, post.recipeId, post.category);
+            if (post.recipe != null) {
+                stringTable.add(post.recipe.title);
+                stringTable.addAll(post.recipe.steps);
+                for (SnapshotTables.IngredientRow ingredient : post.recipe.ingredients) {
+                    stringTable.add(ingredient.name, ingredient.measurement);
+                }
+            }
+            for (SnapshotTables.CommentRow comment : post.comments) {
+                stringTable.add(comment.id, comment.authorId, comment.text);
+            }
+            stringTable.addAll(post.likerIds);
+            stringTable.addAll(post.likeCategories);
+        }
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 checksum = new CRC32();
+        Files.deleteIfExists(temporaryFile);
+        if (temporaryFile.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(temporaryFile, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        }
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporaryFile), 1 << 16), checksum))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(tables.changeSequence);
+            out.writeLong(encodeTime(tables.capturedTime));
+            out.writeInt(stringTable.encoded.size());
+            out.writeInt(stringTable.length);
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] string : stringTable.encoded) {
+                offset += string.length;
+                out.writeInt(offset);
+            }
+            for (byte[] string : stringTable.encoded) {
+                out.write(string);
+            }
+
+            out.writeInt(tables.users.size());
+            for (SnapshotTables.UserRow user : tables.users.values()) {
+                stringTable.write(out, user.id, user.username, user.bio);
+                out.writeInt(user.followerIds.size());
+                stringTable.writeAll(out, user.followerIds);
+            }
+            out.writeInt(tables.posts.size());
+            for (SnapshotTables.PostRow post : tables.posts.values()) {
+                writePost(out, stringTable, post);
+            }
+            // A mapping can only be up to 2GB, so neither can the file
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("The snapshot is too large to be saved in one file.");
+            }
+            out.writeInt((int) checksum.getValue());
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writePost(DataOutputStream out, StringTable stringTable, SnapshotTables.PostRow post)
+            throws IOException {
+        stringTable.write(out, post.id, post.authorId, post.recipeId, post.category);
+        out.writeLong(encodeTime(post.postedTime));
+        out.writeBoolean(post.recipe != null);
+        if (post.recipe != null) {
+            stringTable.write(out, post.recipe.title);
+            out.writeInt(post.recipe.steps.size());
+            stringTable.writeAll(out, post.recipe.steps);
+            out.writeInt(post.recipe.ingredients.size());
+            for (SnapshotTables.IngredientRow ingredient : post.recipe.ingredients) {
+                stringTable.write(out, ingredient.name);
+                out.writeInt(ingredient.count);
+                out.writeFloat(ingredient.amount);
+                stringTable.write(out, ingredient.measurement);
+            }
+        }
+        out.writeInt(post.comments.size());
+        for (SnapshotTables.CommentRow comment : post.comments) {
+            stringTable.write(out, comment.id, comment.authorId);
+            out.writeLong(encodeTime(comment.time));
+            stringTable.write(out, comment.text);
+        }
+        out.writeInt(post.likerIds.size());
+        for (int i = 0; i < post.likerIds.size(); i++) {
+            stringTable.write(out, post.likerIds.get(i), post.likeCategories.get(i));
+        }
+    }
+
+    /**
+     * Reads the rows saved in a file.
+     * @param file A file saved by write.
+     * @return the rows in the file.
+     * @throws IOException if the file could not be read, or is not a whole snapshot file.
+     */
+    static SnapshotTables read(Path file) throws IOException {
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE + 4 || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a snapshot file.");
+            }
+            // The mapping stays valid after the channel is closed
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (mapping.getInt(0) != MAGIC || mapping.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a snapshot file of version " + VERSION + ".");
+        }
+        int checksumOffset = mapping.capacity() - 4;
+        CRC32 checksum = new CRC32();
+        checksum.update(mapping.duplicate().limit(checksumOffset));
+        if ((int) checksum.getValue() != mapping.getInt(checksumOffset)) {
+            throw new IOException(file + " is damaged: its checksum does not match.");
+        }
+
+        SnapshotFile snapshotFile = new SnapshotFile(mapping, mapping.getInt(24));
+        SnapshotTables tables = new SnapshotTables();
+        tables.changeSequence = mapping.getLong(8);
+        tables.capturedTime = decodeTime(mapping.getLong(16));
+        ByteBuffer records = mapping.duplicate().position(snapshotFile.stringsStart + mapping.getInt(28));
+        snapshotFile.readRows(records, tables);
+        return tables;
+    }
+
+    private void readRows(ByteBuffer records, SnapshotTables tables) {
+        int userCount = records.getInt();
+        for (int i = 0; i < userCount; i++) {
+            SnapshotTables.UserRow user = new SnapshotTables.UserRow(this.string(records), this.string(records),
+                    null, this.string(records));
+            int followerCount = records.getInt();
+            user.followerIds.ensureCapacity(followerCount);
+            for (int j = 0; j < followerCount; j++) {
+                user.followerIds.add(this.string(records));
+            }
+            tables.users.put(user.id, user);
+        }
+
+        int postCount = records.getInt();
+        for (int i = 0; i < postCount; i++) {
+            SnapshotTables.PostRow post = new SnapshotTables.PostRow(this.string(records), this.string(records),
+                    this.string(records), this.string(records), decodeTime(records.getLong()));
+            if (records.get() != 0) {
+                post.recipe = new SnapshotTables.RecipeRow(this.string(records));
+                int stepCount = records.getInt();
+                post.recipe.steps.ensureCapacity(stepCount);
+                for (int j = 0; j < stepCount; j++) {
+                    post.recipe.steps.add(this.string(records));
+                }
+                int ingredientCount = records.getInt();
+                for (int j = 0; j < ingredientCount; j++) {
+                    post.recipe.ingredients.add(new SnapshotTables.IngredientRow(this.string(records),
+                            records.getInt(), records.getFloat(), this.string(records)));
+                }
+            }
+            int commentCount = records.getInt();
+            for (int j = 0; j < commentCount; j++) {
+                post.comments.add(new SnapshotTables.CommentRow(this.string(records), this.string(records),
+                        decodeTime(records.getLong()), this.string(records)));
+            }
+            int likeCount = records.getInt();
+            post.likerIds.ensureCapacity(likeCount);
+            post.likeCategories.ensureCapacity(likeCount);
+            for (int j = 0; j < likeCount; j++) {
+                post.addLike(this.string(records), this.string(records));
+            }
+            tables.posts.put(post.id, post);
+        }
+    }
+
+    /**
+     * Reads a string index from the records and returns the string, decoding it from the string table
+     * only the first time it is referred to.
+     */
+    private String string(ByteBuffer records) {
+        int index = records.getInt();
+        if (index < 0) {
+            return null;
+        }
+        String string = this.strings[index];
+        if (string == null) {
+            int start = this.buffer.getInt(this.offsetsStart + 4 * index);
+            int length = this.buffer.getInt(this.offsetsStart + 4 * (index + 1)) - start;
+            if (this.scratch.length < length) {
+                this.scratch = new byte[Math.max(length, 2 * this.scratch.length)];
+            }
+            this.buffer.get(this.stringsStart + start, this.scratch, 0, length);
+            string = new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+            this.strings[index] = string;
+        }
+        return string;
+    }
+
+    private static long encodeTime(LocalDateTime time) {
+        if (time == null) {
+            return NO_TIME;
+        }
+        return time.toEpochSecond(ZoneOffset.UTC) * NANOS_PER_SECOND + time.getNano();
+    }
+
+    private static LocalDateTime decodeTime(long time) {
+        if (time == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(time, NANOS_PER_SECOND),
+                (int) Math.floorMod(time, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+
+    /**
+     * The distinct strings of a snapshot, in the order they were first added, and their UTF-8 bytes.
+     */
+    private static class StringTable {
+        private final HashMap<String, Integer> indices = new HashMap<>();
+        private final ArrayList<byte[]> encoded = new ArrayList<>();
+        private int length;
+
+        void add(String... strings) {
+            for (String string : strings) {
+                if (string != null && !this.indices.containsKey(string)) {
+                    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                    this.indices.put(string, this.encoded.size());
+                    this.encoded.add(bytes);
+                    this.length = Math.addExact(this.length, bytes.length);
+                }
+            }
+        }
+
+        void addAll(Iterable<String> strings) {
+            for (String string : strings) {
+                this.add(string);
+            }
+        }
+
+        void write(DataOutputStream out, String... strings) throws IOException {
+            for (String string : strings) {
+                out.writeInt(string == null ? -1 : this.indices.get(string));
+            }
+        }
+
+        void writeAll(DataOutputStream out, Iterable<String> strings) throws IOException {
+            for (String string : strings) {
+                this.write(out, string);
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package controllers;
+
+import use_cases.DatabaseSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a copy of every row in the database in memory and in a snapshot file, so that loading every user
+ * and post does not mean reading every table again.
+ * The first load reads the snapshot file if there is one, and every load then reads only the users and
+ * posts that the change_log table says changed since the last one. The snapshot file is rewritten in the
+ * background every so often, so that the next start of the app has little to catch up on.
+ * If there is no usable snapshot file, or too much changed, every table is read again instead.
+ * The users' passwords are not saved in the snapshot file, and are read from the database after it.
+ */
+public class SnapshotStore implements AutoCloseable {
+    private static final int ID_BATCH_SIZE = 1000;
+    // A transaction can commit after one that started later, so changes are read again from a little
+    // before the last catch-up. Reading a user or post again is harmless.
+    private static final long CATCH_UP_OVERLAP_SECONDS = 60;
+    // Past this many changed users and posts, reading every table again is about as fast
+    private static final int MAX_CATCH_UP_CHANGES = 100_000;
+
+    private final ConnectionPool connectionPool;
+    private final Path file;
+    private final ScheduledExecutorService writer;
+
+    // Guarded by this
+    private SnapshotTables tables;
+    private boolean fileRead;
+    private long fullLoadCount;
+    private long caughtUpCount;
+
+    /**
+     * Construct a SnapshotStore. Nothing is read until the first load.
+     * @param connectionPool The pool to borrow connections from. The schema must be up to date.
+     * @param file The snapshot file. It is created if it does not exist.
+     * @param writeIntervalSeconds How often the snapshot file is brought up to date and rewritten in the
+     *                             background, or 0 to only write it when write or close is called.
+     */
+    public SnapshotStore(ConnectionPool connectionPool, Path file, long writeIntervalSeconds) {
+        this.connectionPool = connectionPool;
+        this.file = file;
+        if (writeIntervalSeconds > 0) {
+            this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "snapshot-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.writer.scheduleWithFixedDelay(this::writeInBackground, writeIntervalSeconds, writeIntervalSeconds,
+                    TimeUnit.SECONDS);
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Brings the rows in memory up to date with the database and links them into a new graph.
+     * All the rows read from the database are read inside one read-only transaction.
+     * @return every user and post in the database, as MySQLController.loadSnapshot returns them.
+     * @throws SQLException if the database could not be read. The rows in memory stay as they were.
+     */
+    public synchronized DatabaseSnapshot load() throws SQLException {
+        this.catchUp();
+        return this.tables.link();
+    }
+
+    /**
+     * Brings the rows in memory up to date with the database and saves them to the snapshot file.
+     * @throws SQLException if the database could not be read.
+     * @throws IOException if the snapshot file could not be written.
+     */
+    public synchronized void write() throws SQLException, IOException {
+        this.catchUp();
+        SnapshotFile.write(this.tables, this.file);
+    }
+
+    /**
+     * @return the snapshot file.
+     */
+    public Path getFile() {
+        return this.file;
+    }
+
+    /**
+     * @return how many times every table was read, because there was no usable snapshot to catch up.
+     */
+    public synchronized long getFullLoadCount() {
+        return this.fullLoadCount;
+    }
+
+    /**
+     * @return how many changed users and posts were read again to catch up, in total.
+     */
+    public synchronized long getCaughtUpCount() {
+        return this.caughtUpCount;
+    }
+
+    private void writeInBackground() {
+        try {
+            this.write();
+        } catch (Exception e) {
+            // Try again at the next interval
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops writing the snapshot file in the background, and writes it one last time.
+     */
+    @Override
+    public void close() {
+        if (this.writer != null) {
+            this.writer.shutdown();
+            try {
+                this.writer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (this.tables != null) {
+                try {
+                    this.write();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void catchUp() throws SQLException {
+        if (!this.fileRead) {
+            this.fileRead = true;
+            this.tables = this.readFile();
+        }
+        try (Connection connection = this.connectionPool.getConnection()) {
+            int isolation = connection.getTransactionIsolation();
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            connection.setReadOnly(true);
+            connection.setAutoCommit(false);
+            try {
+                this.tables = this.catchUp(connection, this.tables);
+                connection.commit();
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+                connection.setReadOnly(false);
+                connection.setTransactionIsolation(isolation);
+            }
+        }
+    }
+
+    private SnapshotTables readFile() {
+        if (!Files.exists(this.file)) {
+            return null;
+        }
+        try {
+            return SnapshotFile.read(this.file);
+        } catch (IOException e) {
+            // Read every table instead, and replace the file at the next write
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the users and posts that changed since the rows were read, or every table if the rows
+     * cannot be caught up.
+     * @param tables The rows to catch up, or null if there are none.
+     * @return the caught up rows.
+     */
+    private SnapshotTables catchUp(Connection connection, SnapshotTables tables) throws SQLException {
+        LocalDateTime now;
+        long lastChange;
+        try (Statement statement = connection.createStatement();
+             // Every read after the first one in the transaction sees the database as it was at the first one
+             ResultSet changeResult = statement.executeQuery(
+                     "SELECT NOW(), COALESCE(MAX(`change_seq`), 0) FROM `change_log`")) {
+            changeResult.next();
+            now = changeResult.getTimestamp(1).toLocalDateTime();
+            lastChange = changeResult.getLong(2);
+        }
+        // A change sequence past the last change means the snapshot is of a different database.
+        // The ChangeLogPruner deletes older changes, so an older snapshot cannot be caught up.
+        if (tables == null || tables.capturedTime == null || tables.changeSequence > lastChange
+                || tables.capturedTime.isBefore(now.minusDays(ChangeLogPruner.RETENTION_DAYS))) {
+            return this.readAll(connection, lastChange, now);
+        }
+
+        LinkedHashSet<String> userIds = new LinkedHashSet<>();
+        LinkedHashSet<String> postIds = new LinkedHashSet<>();
+        HashSet<String> recipeIds = new HashSet<>();
+        String changesQuery = "SELECT DISTINCT `entity`, `entity_id` FROM `change_log` " +
+                "WHERE `change_seq` > ? OR `changed_time` >= ?";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(changesQuery)) {
+            preparedStmt.setLong(1, tables.changeSequence);
+            preparedStmt.setTimestamp(2, Timestamp.valueOf(tables.capturedTime.minusSeconds(CATCH_UP_OVERLAP_SECONDS)));
+            try (ResultSet changesResult = preparedStmt.executeQuery()) {
+                while (changesResult.next()) {
+                    String entityId = changesResult.getString("entity_id");
+                    switch (changesResult.getString("entity")) {
+                        case "user":
+                            userIds.add(entityId);
+                            break;
+                        case "post":
+                            postIds.add(entityId);
+                            break;
+                        case "recipe":
+                            recipeIds.add(entityId);
+                            break;
+                    }
+                    if (userIds.size() + postIds.size() + recipeIds.size() > MAX_CATCH_UP_CHANGES) {
+                        return this.readAll(connection, lastChange, now);
+                    }
+                }
+            }
+        }
+
+        // A changed recipe changes the posts that had it before and the posts that have it now
+        postIds.addAll(tables.getPostIdsWithRecipes(recipeIds));
+        for (List<String> batch : batches(recipeIds)) {
+            String query = "SELECT `post_id` FROM `posts` WHERE `recipe_id` IN (" + placeholders(batch.size()) + ")";
+            try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+                setStrings(preparedStmt, batch);
+                try (ResultSet postsResult = preparedStmt.executeQuery()) {
+                    while (postsResult.next()) {
+                        postIds.add(postsResult.getString("post_id"));
+                    }
+                }
+            }
+        }
+
+        LinkedHashMap<String, SnapshotTables.UserRow> users = new LinkedHashMap<>();
+        for (List<String> batch : batches(userIds)) {
+            this.readUsers(connection, "user_id IN (" + placeholders(batch.size()) + ")", batch, users);
+        }
+        LinkedHashMap<String, SnapshotTables.PostRow> posts = new LinkedHashMap<>();
+        for (List<String> batch : batches(postIds)) {
+            this.readPosts(connection, "post_id IN (" + placeholders(batch.size()) + ")", batch, posts);
+        }
+        tables.replaceUsers(userIds, users);
+        tables.replacePosts(postIds, posts);
+        this.readPasswords(connection, tables);
+        tables.changeSequence = lastChange;
+        tables.capturedTime = now;
+        this.caughtUpCount += userIds.size() + postIds.size();
+        return tables;
+    }
+
+    private SnapshotTables readAll(Connection connection, long lastChange, LocalDateTime now) throws SQLException {
+        SnapshotTables tables = new SnapshotTables();
+        this.readUsers(connection, "1", List.of(), tables.users);
+        this.readPosts(connection, "1", List.of(), tables.posts);
+        tables.changeSequence = lastChange;
+        tables.capturedTime = now;
+        this.fullLoadCount++;
+        return tables;
+    }
+
+    /**
+     * Reads the passwords of the users whose rows were read from the snapshot file, which leaves them out.
+     */
+    private void readPasswords(Connection connection, SnapshotTables tables) throws SQLException {
+        List<String> userIds = new ArrayList<>();
+        for (SnapshotTables.UserRow user : tables.users.values()) {
+            if (user.password == null) {
+                userIds.add(user.id);
+            }
+        }
+        for (List<String> batch : batches(userIds)) {
+            String query = "SELECT user_id, password FROM user_info WHERE user_id IN (" +
+                    placeholders(batch.size()) + ")";
+            try (PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+                setStrings(preparedStmt, batch);
+                try (ResultSet passwordsResult = preparedStmt.executeQuery()) {
+                    while (passwordsResult.next()) {
+                        tables.users.get(passwordsResult.getString("user_id")).password =
+                                passwordsResult.getString("password");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the users matching a condition, with the IDs of their followers.
+     * @param condition The WHERE condition selecting the users, on the user_id column.
+     * @param parameters The values bound to the placeholders in the condition.
+     * @param users The rows read, indexed by user ID.
+     */
+    private void readUsers(Connection connection, String condition, List<String> parameters,
+                           Map<String, SnapshotTables.UserRow> users) throws SQLException {
+        String usersQuery = "SELECT user_id, username, password, bio FROM user_info WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(usersQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet usersResult = preparedStmt.executeQuery()) {
+                while (usersResult.next()) {
+                    SnapshotTables.UserRow user = new SnapshotTables.UserRow(usersResult.getString("user_id"),
+                            usersResult.getString("username"), usersResult.getString("password"),
+                            usersResult.getString("bio"));
+                    users.put(user.id, user);
+                }
+            }
+        }
+        String followsQuery = "SELECT user_id, follower_id FROM follows WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(followsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet followsResult = preparedStmt.executeQuery()) {
+                while (followsResult.next()) {
+                    SnapshotTables.UserRow user = users.get(followsResult.getString("user_id"));
+                    if (user != null) {
+                        user.followerIds.add(followsResult.getString("follower_id"));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the posts matching a condition, with their recipes, comments and likes.
+     * @param condition The WHERE condition selecting the posts, on the post_id column.
+     * @param parameters The values bound to the placeholders in the condition.
+     * @param posts The rows read, indexed by post ID.
+     */
+    private void readPosts(Connection connection, String condition, List<String> parameters,
+                           Map<String, SnapshotTables.PostRow> posts) throws SQLException {
+        String postsQuery = "SELECT post_id, user_id, recipe_id, category, posted_time FROM posts WHERE (" +
+                condition + ") AND " + MySQLController.LIVE_POSTS_CONDITION;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(postsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet postsResult = preparedStmt.executeQuery()) {
+                while (postsResult.next()) {
+                    SnapshotTables.PostRow post = new SnapshotTables.PostRow(postsResult.getString("post_id"),
+                            postsResult.getString("user_id"), postsResult.getString("recipe_id"),
+                            postsResult.getString("category"),
+                            toLocalDateTime(postsResult.getTimestamp("posted_time")));
+                    posts.put(post.id, post);
+                }
+            }
+        }
+
+        HashMap<String, SnapshotTables.RecipeRow> recipes = this.readRecipes(connection,
+                "recipe_id IN (SELECT recipe_id FROM posts WHERE " + condition + ")", parameters);
+        for (SnapshotTables.PostRow post : posts.values()) {
+            post.recipe = recipes.get(post.recipeId);
+        }
+
+        String commentsQuery = "SELECT comment_id, post_id, user_id, comment_time, comment_text FROM comments " +
+                "WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(commentsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet commentsResult = preparedStmt.executeQuery()) {
+                while (commentsResult.next()) {
+                    SnapshotTables.PostRow post = posts.get(commentsResult.getString("post_id"));
+                    if (post != null) {
+                        post.comments.add(new SnapshotTables.CommentRow(commentsResult.getString("comment_id"),
+                                commentsResult.getString("user_id"),
+                                toLocalDateTime(commentsResult.getTimestamp("comment_time")),
+                                commentsResult.getString("comment_text")));
+                    }
+                }
+            }
+        }
+
+        String likesQuery = "SELECT post_id, user_id, category FROM likes WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(likesQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet likesResult = preparedStmt.executeQuery()) {
+                while (likesResult.next()) {
+                    SnapshotTables.PostRow post = posts.get(likesResult.getString("post_id"));
+                    if (post != null) {
+                        post.addLike(likesResult.getString("user_id"), likesResult.getString("category"));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the titles, steps and ingredients of the recipes matching a condition.
+     * @param condition The WHERE condition selecting the recipes, on the recipe_id column.
+     * @param parameters The values bound to the placeholders in the condition.
+     * @return the rows read, indexed by recipe ID.
+     */
+    private HashMap<String, SnapshotTables.RecipeRow> readRecipes(Connection connection, String condition,
+                                                                  List<String> parameters) throws SQLException {
+        HashMap<String, SnapshotTables.RecipeRow> recipes = new HashMap<>();
+        String titlesQuery = "SELECT recipe_id, title FROM recipes WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(titlesQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet titlesResult = preparedStmt.executeQuery()) {
+                while (titlesResult.next()) {
+                    recipes.put(titlesResult.getString("recipe_id"),
+                            new SnapshotTables.RecipeRow(titlesResult.getString("title")));
+                }
+            }
+        }
+        // In primary key order, so the steps of each recipe come in order without sorting them here
+        String stepsQuery = "SELECT recipe_id, step_text FROM recipes_steps WHERE " + condition +
+                " ORDER BY recipe_id, step_number";
+        try (PreparedStatement preparedStmt = connection.prepareStatement(stepsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet stepsResult = preparedStmt.executeQuery()) {
+                while (stepsResult.next()) {
+                    SnapshotTables.RecipeRow recipe = recipes.get(stepsResult.getString("recipe_id"));
+                    if (recipe != null) {
+                        recipe.steps.add(stepsResult.getString("step_text"));
+                    }
+                }
+            }
+        }
+        String ingredientsQuery = "SELECT recipe_id, ingredient_name, ingredient_count, ingredient_amount, " +
+                "ingredient_measurement FROM recipe_ingredients WHERE " + condition;
+        try (PreparedStatement preparedStmt = connection.prepareStatement(ingredientsQuery)) {
+            setStrings(preparedStmt, parameters);
+            try (ResultSet ingredientsResult = preparedStmt.executeQuery()) {
+                while (ingredientsResult.next()) {
+                    SnapshotTables.RecipeRow recipe = recipes.get(ingredientsResult.getString("recipe_id"));
+                    if (recipe != null) {
+                        recipe.ingredients.add(new SnapshotTables.IngredientRow(
+                                ingredientsResult.getString("ingredient_name"),
+                                ingredientsResult.getInt("ingredient_count"),
+                                ingredientsResult.getFloat("ingredient_amount"),
+                                ingredientsResult.getString("ingredient_measurement")));
+                    }
+                }
+            }
+        }
+        return recipes;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    private static List<List<String>> batches(Collection<String> ids) {
+        ArrayList<String> idList = new ArrayList<>(ids);
+        List<List<String>> batches = new ArrayList<>();
+        for (int start = 0; start < idList.size(); start += ID_BATCH_SIZE) {
+            batches.add(idList.subList(start, Math.min(idList.size(), start + ID_BATCH_SIZE)));
+        }
+        return batches;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(",", Collections.nCopies(count, "?"));
+    }
+
+    private static void setStrings(PreparedStatement preparedStmt, List<String> values) throws SQLException {
+        for (int i = 0; i < values.size(); i++) {
+            preparedStmt.setString(i + 1, values.get(i));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package controllers;
+
+import entities.*;
+import use_cases.DatabaseSnapshot;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * The rows of the database that a DatabaseSnapshot is linked from, grouped by user and by post.
+ * A user's row carries the IDs of their followers, and a post's row carries its recipe, comments and likes,
+ * so that when a user or post changes in the database only its own row has to be read again.
+ * Everything that depends on more than one row, like a user's posts or like history, is worked out in link.
+ */
+class SnapshotTables {
+    final LinkedHashMap<String, UserRow> users = new LinkedHashMap<>();
+    final LinkedHashMap<String, PostRow> posts = new LinkedHashMap<>();
+    // The last change in the change_log table that the rows include, and the database time they were read at
+    long changeSequence;
+    LocalDateTime capturedTime;
+
+    static class UserRow {
+        final String id;
+        final String username;
+        // Not saved in the snapshot file, so null for a row read from it until SnapshotStore reads it again
+        String password;
+        final String bio;
+        final ArrayList<String> followerIds = new ArrayList<>();
+
+        UserRow(String id, String username, String password, String bio) {
+            this.id = id;
+            this.username = username;
+            this.password = password;
+            this.bio = bio;
+        }
+    }
+
+    static class PostRow {
+        final String id;
+        final String authorId;
+        final String recipeId;
+        final String category;
+        final LocalDateTime postedTime;
+        // Null if the recipe of the post is not in the database
+        RecipeRow recipe;
+        final ArrayList<CommentRow> comments = new ArrayList<>();
+        final ArrayList<String> likerIds = new ArrayList<>();
+        final ArrayList<String> likeCategories = new ArrayList<>();
+
+        PostRow(String id, String authorId, String recipeId, String category, LocalDateTime postedTime) {
+            this.id = id;
+            this.authorId = authorId;
+            this.recipeId = recipeId;
+            this.category = category;
+            this.postedTime = postedTime;
+        }
+
+        void addLike(String userId, String category) {
+            this.likerIds.add(userId);
+            this.likeCategories.add(category);
+        }
+    }
+
+    static class RecipeRow {
+        final String title;
+        final ArrayList<String> steps = new ArrayList<>();
+        final ArrayList<IngredientRow> ingredients = new ArrayList<>();
+
+        RecipeRow(String title) {
+            this.title = title;
+        }
+    }
+
+    static class IngredientRow {
+        final String name;
+        final int count;
+        final float amount;
+        // Null or empty for a countable ingredient
+        final String measurement;
+
+        IngredientRow(String name, int count, float amount, String measurement) {
+            this.name = name;
+            this.count = count;
+            this.amount = amount;
+            this.measurement = measurement;
+        }
+
+        Ingredient toIngredient() {
+            if (this.measurement != null && !this.measurement.isEmpty()) {
+                return new MeasurableIngredient(this.name, this.amount, this.measurement);
+            } else {
+                return new CountableIngredient(this.name, this.count);
+            }
+        }
+    }
+
+    static class CommentRow {
+        final String id;
+        final String authorId;
+        final LocalDateTime time;
+        final String text;
+
+        CommentRow(String id, String authorId, LocalDateTime time, String text) {
+            this.id = id;
+            this.authorId = authorId;
+            this.time = time;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Replaces the rows of the given users with their rows as they are now.
+     * @param userIds The IDs of the users that changed.
+     * @param rows The rows of those users that are still in the database.
+     */
+    void replaceUsers(Collection<String> userIds, Map<String, UserRow> rows) {
+        for (String userId : userIds) {
+            UserRow row = rows.get(userId);
+            if (row == null) {
+                this.users.remove(userId);
+            } else {
+                this.users.put(userId, row);
+            }
+        }
+    }
+
+    /**
+     * Replaces the rows of the given posts with their rows as they are now.
+     * @param postIds The IDs of the posts that changed.
+     * @param rows The rows of those posts that are still in the database.
+     */
+    void replacePosts(Collection<String> postIds, Map<String, PostRow> rows) {
+        for (String postId : postIds) {
+            PostRow row = rows.get(postId);
+            if (row == null) {
+                this.posts.remove(postId);
+            } else {
+                this.posts.put(postId, row);
+            }
+        }
+    }
+
+    /**
+     * @param recipeIds The IDs of some recipes.
+     * @return the IDs of the posts in these rows that have one of the recipes.
+     */
+    Set<String> getPostIdsWithRecipes(Set<String> recipeIds) {
+        Set<String> postIds = new HashSet<>();
+        for (PostRow post : this.posts.values()) {
+            if (recipeIds.contains(post.recipeId)) {
+                postIds.add(post.id);
+            }
+        }
+        return postIds;
+    }
+
+    /**
+     * Creates new Users and Posts from the rows and links them into one graph, the same way
+     * MySQLController.loadSnapshot does. Posts without a recipe, and likes and comments of users
+     * that are not in the rows, are left out.
+     * @return the users and posts in these rows.
+     */
+    DatabaseSnapshot link() {
+        LinkedHashMap<String, User> usersById = new LinkedHashMap<>();
+        for (UserRow row : this.users.values()) {
+            usersById.put(row.id, new User(row.username, row.password, row.bio, row.id));
+        }
+        for (UserRow row : this.users.values()) {
+            User user = usersById.get(row.id);
+            for (String followerId : row.followerIds) {
+                User follower = usersById.get(followerId);
+                if (follower != null) {
+                    user.addFollower(follower);
+                    follower.addFollowing(user);
+                }
+            }
+        }
+
+        LinkedHashMap<String, Post> postsById = new LinkedHashMap<>();
+        for (PostRow row : this.posts.values()) {
+            if (row.recipe == null) {
+                continue;
+            }
+            ArrayList<Ingredient> ingredients = new ArrayList<>(row.recipe.ingredients.size());
+            for (IngredientRow ingredient : row.recipe.ingredients) {
+                ingredients.add(ingredient.toIngredient());
+            }
+            Recipe recipe = new Recipe(row.recipe.title, ingredients, new ArrayList<>(row.recipe.steps), row.recipeId);
+            Post post = new Post(row.authorId, row.postedTime, recipe, row.category, row.id);
+            postsById.put(post.getId(), post);
+            User author = usersById.get(row.authorId);
+            if (author != null) {
+                author.addPost(post);
+            }
+            for (CommentRow comment : row.comments) {
+                if (usersById.containsKey(comment.authorId)) {
+                    post.addComment(new Comment(comment.text, comment.authorId, comment.time, comment.id));
+                }
+            }
+            for (int i = 0; i < row.likerIds.size(); i++) {
+                User user = usersById.get(row.likerIds.get(i));
+                if (user != null) {
+                    user.setLike(row.likeCategories.get(i));
+                    post.addLike(user);
+                }
+            }
+        }
+        return new DatabaseSnapshot(usersById, postsById);
+    }
+}
@@ -0,0 +1,44 @@
+package controllers;
+
+import entities.UserRef;
+
+import java.util.HashMap;
+
+/**
+ * Keeps one UserRef per user id while the rows of a read are turned into objects, so that every row about
+ * the same user, such as each of their likes, points at the same UserRef instead of a copy of its own.
+ * A map lives only as long as the read that uses it, so a renamed user is seen by the next read.
+ */
+public class UserIdentityMap {
+    private final HashMap<String, UserRef> usersById = new HashMap<>();
+
+    /**
+     * Makes getUserRef return the given user for its id, for reads that have already loaded the full User.
+     * @param user The user to reuse.
+     */
+    public void put(UserRef user) {
+        this.usersById.put(user.getId(), user);
+    }
+
+    /**
+     * Returns the UserRef of the user with the given id, creating it the first time the id is seen.
+     * @param id The id of the user.
+     * @param username The username of the user, used if the UserRef has to be created.
+     * @return the only UserRef of the user in this map.
+     */
+    public UserRef getUserRef(String id, String username) {
+        UserRef user = this.usersById.get(id);
+        if (user == null) {
+            user = new UserRef(id, username);
+            this.usersById.put(id, user);
+        }
+        return user;
+    }
+
+    /**
+     * @return the number of different users in this map.
+     */
+    public int size() {
+        return this.usersById.size();
+    }
+}
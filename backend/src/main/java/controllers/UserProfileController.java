@@ -246,7 +246,7 @@ public class UserProfileController {
         for (int i = 0; i < userPosts.size(); i++) {
             postsString.append("\n");
             postsString.append(i).append(" ");
-            postsString.append(userPosts.get(i).getRecipe().getTitle());
+            postsString.append(userPosts.get(i).getRecipeTitle());
         }
         return postsString.toString();
     }
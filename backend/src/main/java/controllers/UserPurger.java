@@ -0,0 +1,192 @@
+package controllers;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Removes the posts, likes, comments and follows of deleted users, who are listed in the user_tombstones table.
+ * The rows are deleted chunkSize at a time, each chunk in its own transaction on a connection borrowed just
+ * for it, with a pause between chunks, so that removing a user with many rows never holds locks or
+ * connections for long. Likes and comments on the posts of a user are removed with the posts.
+ * A user's tombstone is removed once all of their rows are, so a purge that stops half way carries on
+ * where it stopped the next time.
+ */
+public class UserPurger implements AutoCloseable {
+    private static final int TOMBSTONE_BATCH_SIZE = 100;
+
+    private final ConnectionPool connectionPool;
+    private final int chunkSize;
+    private final long pauseMillis;
+    private final ScheduledExecutorService purger;
+    private final AtomicBoolean purgeQueued = new AtomicBoolean();
+
+    // Guarded by this
+    private long purgedUserCount;
+    private long deletedRowCount;
+
+    /**
+     * Construct a UserPurger.
+     * @param connectionPool The pool to borrow connections from. The schema must be up to date.
+     * @param chunkSize The most rows deleted by each statement.
+     * @param pauseMillis How long to wait after each chunk, to leave the database to other queries.
+     * @param intervalSeconds How often to look for tombstones in the background, besides when woken,
+     *                        or 0 to only look when woken or when purge is called.
+     */
+    public UserPurger(ConnectionPool connectionPool, int chunkSize, long pauseMillis, long intervalSeconds) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.connectionPool = connectionPool;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+        this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (intervalSeconds > 0) {
+            this.purger.scheduleWithFixedDelay(this::purgeInBackground, intervalSeconds, intervalSeconds,
+                    TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Starts a purge in the background, unless one is already waiting to start.
+     */
+    public void wake() {
+        if (this.purgeQueued.compareAndSet(false, true)) {
+            this.purger.execute(() -> {
+                this.purgeQueued.set(false);
+                this.purgeInBackground();
+            });
+        }
+    }
+
+    /**
+     * Removes the rows of every tombstoned user, oldest tombstone first, then their tombstones.
+     * @return the number of users purged.
+     * @throws SQLException if rows could not be deleted. The chunks deleted before stay deleted.
+     * @throws InterruptedException if interrupted while pausing between chunks.
+     */
+    public synchronized int purge() throws SQLException, InterruptedException {
+        int purged = 0;
+        List<String> userIds;
+        do {
+            userIds = this.readIds("SELECT `user_id` FROM `user_tombstones` ORDER BY `deleted_time`, `user_id` " +
+                    "LIMIT " + TOMBSTONE_BATCH_SIZE, Collections.emptyList());
+            for (String userId : userIds) {
+                this.purgeUser(userId);
+                purged++;
+            }
+        } while (userIds.size() == TOMBSTONE_BATCH_SIZE);
+        this.purgedUserCount += purged;
+        return purged;
+    }
+
+    /**
+     * @return how many users have been purged, in total.
+     */
+    public synchronized long getPurgedUserCount() {
+        return this.purgedUserCount;
+    }
+
+    /**
+     * @return how many rows have been deleted, in total, not counting tombstones.
+     */
+    public synchronized long getDeletedRowCount() {
+        return this.deletedRowCount;
+    }
+
+    private void purgeUser(String userId) throws SQLException, InterruptedException {
+        List<String> user = Collections.singletonList(userId);
+        this.deleteInChunks("likes", "`user_id` = ?", user);
+        this.deleteInChunks("comments", "`user_id` = ?", user);
+        this.deleteInChunks("follows", "`user_id` = ?", user);
+        this.deleteInChunks("follows", "`follower_id` = ?", user);
+
+        List<String> postIds;
+        do {
+            postIds = this.readIds("SELECT `post_id` FROM `posts` WHERE `user_id` = ? LIMIT " + this.chunkSize, user);
+            if (!postIds.isEmpty()) {
+                String condition = "`post_id` IN (" + String.join(",", Collections.nCopies(postIds.size(), "?")) +
+                        ")";
+                this.deleteInChunks("likes", condition, postIds);
+                this.deleteInChunks("comments", condition, postIds);
+                this.deleteInChunks("posts", condition, postIds);
+            }
+        } while (postIds.size() == this.chunkSize);
+
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(
+                     "DELETE FROM `user_tombstones` WHERE `user_id` = ?")) {
+            preparedStmt.setString(1, userId);
+            preparedStmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Deletes the rows of a table matching a condition, at most chunkSize per statement, pausing after each.
+     */
+    private void deleteInChunks(String table, String condition, List<String> parameters)
+            throws SQLException, InterruptedException {
+        String query = "DELETE FROM `" + table + "` WHERE " + condition + " LIMIT " + this.chunkSize;
+        int deleted;
+        do {
+            try (Connection connection = this.connectionPool.getConnection();
+                 PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+                for (int i = 0; i < parameters.size(); i++) {
+                    preparedStmt.setString(i + 1, parameters.get(i));
+                }
+                deleted = preparedStmt.executeUpdate();
+            }
+            this.deletedRowCount += deleted;
+            if (deleted > 0 && this.pauseMillis > 0) {
+                Thread.sleep(this.pauseMillis);
+            }
+        } while (deleted == this.chunkSize);
+    }
+
+    private List<String> readIds(String query, List<String> parameters) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                preparedStmt.setString(i + 1, parameters.get(i));
+            }
+            try (ResultSet idsResult = preparedStmt.executeQuery()) {
+                while (idsResult.next()) {
+                    ids.add(idsResult.getString(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void purgeInBackground() {
+        try {
+            this.purge();
+        } catch (SQLException e) {
+            // Try again at the next interval, or when woken
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops purging in the background. A purge that is running stops after its current chunk.
+     */
+    @Override
+    public void close() {
+        this.purger.shutdownNow();
+    }
+}
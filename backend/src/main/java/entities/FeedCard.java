@@ -0,0 +1,110 @@
+package entities;
+
+import java.time.LocalDateTime;
+
+/**
+ * FeedCard stores what a list of posts shows for each post: who posted it, the title of its recipe, its
+ * category, when it was posted and how many likes and comments it has. It is read without the recipe's steps
+ * and ingredients, the likes or the comments of the post, which are only needed once a post is opened.
+ */
+public class FeedCard {
+    private final String postId;
+    private final String authorId;
+    private final String authorUsername;
+    private final String recipeTitle;
+    private final String category;
+    private final LocalDateTime postedTime;
+    private final int numLikes;
+    private final int numComments;
+
+    /**
+     * Construct a FeedCard.
+     *
+     * @param postId the ID of the post
+     * @param authorId the ID of the user who posted it
+     * @param authorUsername the username of the user who posted it, or null if the user is not found
+     * @param recipeTitle the title of the post's recipe
+     * @param category the category of the post
+     * @param postedTime when the post was posted
+     * @param numLikes the number of likes of the post
+     * @param numComments the number of comments of the post
+     */
+    public FeedCard(String postId, String authorId, String authorUsername, String recipeTitle, String category,
+                    LocalDateTime postedTime, int numLikes, int numComments) {
+        this.postId = postId;
+        this.authorId = authorId;
+        this.authorUsername = authorUsername;
+        this.recipeTitle = recipeTitle;
+        this.category = category;
+        this.postedTime = postedTime;
+        this.numLikes = numLikes;
+        this.numComments = numComments;
+    }
+
+    /**
+     * Construct the FeedCard of a post.
+     *
+     * @param post the post
+     * @param authorUsername the username of the user who posted it, or null if the user is not found
+     */
+    public FeedCard(Post post, String authorUsername) {
+        this(post.getId(), post.getAuthorId(), authorUsername, post.getRecipeTitle(), post.getCategory(),
+                post.getTime(), post.getNumLikes(), post.getNumComments());
+    }
+
+    /**
+     * @return the ID of the post.
+     */
+    public String getPostId() {
+        return this.postId;
+    }
+
+    /**
+     * @return the ID of the user who posted it.
+     */
+    public String getAuthorId() {
+        return this.authorId;
+    }
+
+    /**
+     * @return the username of the user who posted it, or null if the user is not found.
+     */
+    public String getAuthorUsername() {
+        return this.authorUsername;
+    }
+
+    /**
+     * @return the title of the post's recipe.
+     */
+    public String getRecipeTitle() {
+        return this.recipeTitle;
+    }
+
+    /**
+     * @return the category of the post.
+     */
+    public String getCategory() {
+        return this.category;
+    }
+
+    /**
+     * @return when the post was posted.
+     */
+    public LocalDateTime getPostedTime() {
+        return this.postedTime;
+    }
+
+    /**
+     * @return the number of likes of the post.
+     */
+    public int getNumLikes() {
+        return this.numLikes;
+    }
+
+    /**
+     * @return the number of comments of the post.
+     */
+    public int getNumComments() {
+        return this.numComments;
+    }
+}
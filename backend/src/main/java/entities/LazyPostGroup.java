@@ -0,0 +1,70 @@
+package entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Posts that were read with only the title of their recipe and the number of their likes and comments, such as
+ * the posts of one page of the feed. The steps and ingredients of their recipes, their likes and their comments
+ * are loaded for every post of the group at once, the first time any of them is needed.
+ * Collaborators: Post
+ */
+public class LazyPostGroup {
+    /**
+     * Reads what was left out of the posts of a group.
+     */
+    public interface Loader {
+        /**
+         * Reads the recipes, likes and comments of the given posts, and gives them to each post with
+         * Post.setDetails.
+         * @param posts the posts to read the details of
+         * @throws IllegalStateException if the details could not be read.
+         */
+        void loadDetails(List<Post> posts);
+    }
+
+    private final Loader loader;
+    private final List<Post> posts;
+    // Guarded by this
+    private boolean loaded;
+    // Guarded by this. The Loader reads the posts of the group while they are being loaded.
+    private boolean loading;
+
+    private LazyPostGroup(Loader loader, List<Post> posts) {
+        this.loader = loader;
+        this.posts = new ArrayList<>(posts);
+    }
+
+    /**
+     * Makes the given posts load their details together, with the given Loader, the first time one is needed.
+     * @param posts the posts, each read with only the title of its recipe
+     * @param loader the Loader that reads the details of the posts
+     */
+    public static void loadLazily(List<Post> posts, Loader loader) {
+        LazyPostGroup group = new LazyPostGroup(loader, posts);
+        for (Post post : posts) {
+            post.setLazyGroup(group);
+        }
+    }
+
+    /**
+     * Loads the details of every post of the group, unless they were already.
+     * @throws IllegalStateException if the details could not be read. The posts are then left unloaded,
+     * so that they never pass for whole posts, and their details are read again the next time one is needed.
+     */
+    synchronized void load() {
+        if (this.loaded || this.loading) {
+            return;
+        }
+        this.loading = true;
+        try {
+            this.loader.loadDetails(this.posts);
+        } finally {
+            this.loading = false;
+        }
+        this.loaded = true;
+        for (Post post : this.posts) {
+            post.setLazyGroup(null);
+        }
+    }
+}
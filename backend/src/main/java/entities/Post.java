@@ -8,13 +8,23 @@ import java.util.Objects;
 /**
  * A Post that Users make on Foodstagram.
  * Stores a list of Users ids who have liked the post, created time, comments on the post, associated User id, a Recipe, a String which is the category of the post (i.e. "Chinese" "Indian", "Italian")
- * Collaborators: Comment, Recipe, User
+ * A Post can be read with only the title of its recipe and the number of its likes and comments, and the rest
+ * loaded the first time it is needed, together with the other posts of its LazyPostGroup.
+ * Collaborators: Comment, Recipe, UserRef, LazyPostGroup
  */
 public class Post extends PostableItem {
-    private final ArrayList<User> likedUsers;
+    private final ArrayList<UserRef> likedUsers;
     private final ArrayList<Comment> comments;
-    private final Recipe recipe;
+    private Recipe recipe;
     private final String category;
+    // Likes and comments the post has in the database beyond those in likedUsers and comments,
+    // for a post read with the counts of its likes and comments instead of the likes and comments themselves
+    private int unloadedLikes;
+    private int unloadedComments;
+    // For a post read without its recipe's steps and ingredients, likes and comments: the group of posts
+    // they are loaded with. Null once they are loaded. Loading them throws IllegalStateException if they
+    // cannot be read, so that a post is never used without them.
+    private volatile LazyPostGroup lazyGroup;
 
     /** Construct a Post object.
      *
@@ -57,11 +67,20 @@ public class Post extends PostableItem {
 
     /**
      * @return the recipe associated with the Post
+     * @throws IllegalStateException if the Post was read without its recipe, and it could not be loaded.
      */
     public Recipe getRecipe() {
+        this.loadDetails();
         return this.recipe;
     }
 
+    /**
+     * @return the title of the recipe associated with the Post, without loading the rest of the recipe.
+     */
+    public String getRecipeTitle() {
+        return this.recipe.getTitle();
+    }
+
     /**
      * @return the id we assigned when we first created
      * the Post object
@@ -80,6 +99,7 @@ public class Post extends PostableItem {
      * @param comment the comment to be added to the post
      */
     public void addComment(Comment comment) {
+        this.loadDetails();
         this.comments.add(comment);
     }
 
@@ -87,14 +107,16 @@ public class Post extends PostableItem {
      * Adds the given user to the Post's list of liked users.
      * @param user The user that liked the post
      */
-    public void addLike(User user) {
+    public void addLike(UserRef user) {
+        this.loadDetails();
         this.likedUsers.add(user);
     }
 
     /**
      * @return  All the users that liked the Post
      */
-    public ArrayList<User> getLikedUsers() {
+    public ArrayList<UserRef> getLikedUsers() {
+        this.loadDetails();
         return this.likedUsers;
     }
 
@@ -103,6 +125,7 @@ public class Post extends PostableItem {
      * added to this Post
      */
     public ArrayList<Comment> getComments() {
+        this.loadDetails();
         return this.comments;
     }
 
@@ -111,7 +134,61 @@ public class Post extends PostableItem {
      * by different users to this Post
      */
     public int getNumLikes() {
-        return this.likedUsers.size();
+        return this.likedUsers.size() + this.unloadedLikes;
+    }
+
+    /**
+     * @return the total amount of comments on this Post
+     */
+    public int getNumComments() {
+        return this.comments.size() + this.unloadedComments;
+    }
+
+    /**
+     * Sets how many likes and comments this Post has in total, for a Post that was read without
+     * all its likes and comments. Likes and comments added afterwards are counted on top.
+     * @param numLikes the total amount of likes of this Post
+     * @param numComments the total amount of comments on this Post
+     */
+    public void setInteractionCounts(int numLikes, int numComments) {
+        this.unloadedLikes = Math.max(0, numLikes - this.likedUsers.size());
+        this.unloadedComments = Math.max(0, numComments - this.comments.size());
+    }
+
+    /**
+     * @return true if the recipe, likes and comments of this Post are loaded, false if they are
+     * loaded the first time they are needed.
+     */
+    public boolean isLoaded() {
+        return this.lazyGroup == null;
+    }
+
+    /**
+     * Sets the recipe, likes and comments of a Post that was read without them, replacing its
+     * likes and comments and the counts of those that were not read.
+     * @param recipe the whole recipe of this Post
+     * @param likedUsers all the users that liked this Post
+     * @param comments all the comments on this Post
+     */
+    public void setDetails(Recipe recipe, ArrayList<UserRef> likedUsers, ArrayList<Comment> comments) {
+        this.recipe = recipe;
+        this.likedUsers.clear();
+        this.likedUsers.addAll(likedUsers);
+        this.comments.clear();
+        this.comments.addAll(comments);
+        this.unloadedLikes = 0;
+        this.unloadedComments = 0;
+    }
+
+    void setLazyGroup(LazyPostGroup lazyGroup) {
+        this.lazyGroup = lazyGroup;
+    }
+
+    private void loadDetails() {
+        LazyPostGroup group = this.lazyGroup;
+        if (group != null) {
+            group.load();
+        }
     }
 
     /**
@@ -4,16 +4,15 @@ import java.util.ArrayList;
 
 /**
  * User class stores: username, password, HashMap mapping cuisine to number of likes (Integer) user put for that
- * cuisine (String), a String bio, a list of Users that follow User (followers), a list of Users the user is following,
- * a list of Posts the user has posted
+ * cuisine (String), a String bio, a list of the users that follow User (followers), a list of the users the user is
+ * following, a list of Posts the user has posted
  */
-public class User {
-    private String username, password, bio;
+public class User extends UserRef {
+    private String password, bio;
     // HashMap<String cuisineCategory, int likes>
     private HashMap<String, Integer> likeHistory;
-    private ArrayList<User> followers, following;
+    private ArrayList<UserRef> followers, following;
     private final ArrayList<Post> posts;
-    private final String id;
 
     // constructors
     /** Construct a User object.
@@ -24,10 +23,9 @@ public class User {
      * @param id this user's unique id
      */
     public User(String username, String password, String bio, String id) {
-        this.username = username;
+        super(id, username);
         this.password = password;
         this.bio = bio;
-        this.id = id;
         this.likeHistory = new HashMap<>();
         this.followers = new ArrayList<>();
         this.following = new ArrayList<>();
@@ -66,28 +64,28 @@ public class User {
     /** Add a user to this user's followers list.
      *
      */
-    public void addFollower(User user) {
+    public void addFollower(UserRef user) {
         this.followers.add(user);
     }
 
     /** Add a user to this user's following list.
      *
      */
-    public void addFollowing(User user) {
+    public void addFollowing(UserRef user) {
         this.following.add(user);
     }
 
     /** Set user's followers list.
      *
      */
-    public void setFollowers(ArrayList<User> followers) {
+    public void setFollowers(ArrayList<UserRef> followers) {
         this.followers = followers;
     }
 
     /** Set user's following list.
      *
      */
-    public void setFollowing(ArrayList<User> following) {
+    public void setFollowing(ArrayList<UserRef> following) {
         this.following = following;
     }
 
@@ -99,14 +97,6 @@ public class User {
     }
 
     // getters
-    /** Return username of this user.
-     *
-     * @return username of this user.
-     */
-    public String getUsername() {
-        return this.username;
-    }
-
     /** Return password of this user.
      *
      * @return password of this user.
@@ -123,21 +113,6 @@ public class User {
         return this.bio;
     }
 
-    /** Return id of this user.
-     *
-     * @return id of this user.
-     */
-    public String getId() { return this.id; }
-
-    /** Return true if this user is same as the other user. False otherwise.
-     *
-     * @param other user to compare with
-     * @return true if two users are the same
-     */
-    public boolean sameUser(User other) {
-        return this.getId().equals(other.getId());
-    }
-
     /**
      * Increments a like on a cuisine category.
      * @param cuisine The cuisine category to like.
@@ -163,7 +138,7 @@ public class User {
      *
      * @return followers of this user.
      */
-    public ArrayList<User> getFollowers() {
+    public ArrayList<UserRef> getFollowers() {
         return this.followers;
     }
 
@@ -171,7 +146,7 @@ public class User {
      *
      * @return list of users that this user follows
      */
-    public ArrayList<User> getFollowing() {
+    public ArrayList<UserRef> getFollowing() {
         return this.following;
     }
 
@@ -0,0 +1,59 @@
+package entities;
+
+/**
+ * UserRef stores only the id and username of a user. It is what a Post keeps for each user that liked it,
+ * and what a User keeps for its followers and the users it follows, so that a user who liked many posts
+ * is not copied once per like. Every User is also a UserRef to itself.
+ */
+public class UserRef {
+    private final String id;
+    protected String username;
+
+    /** Construct a UserRef object.
+     *
+     * @param id the unique id of the user
+     * @param username the username of the user
+     */
+    public UserRef(String id, String username) {
+        this.id = id;
+        this.username = username;
+    }
+
+    /** Return id of this user.
+     *
+     * @return id of this user.
+     */
+    public String getId() {
+        return this.id;
+    }
+
+    /** Return username of this user.
+     *
+     * @return username of this user.
+     */
+    public String getUsername() {
+        return this.username;
+    }
+
+    /** Return true if this user is same as the other user. False otherwise.
+     *
+     * @param other user to compare with
+     * @return true if two users are the same
+     */
+    public boolean sameUser(UserRef other) {
+        return this.getId().equals(other.getId());
+    }
+
+    /**
+     * Two references are equal if they are to the same user, whether they are UserRefs or Users.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof UserRef && this.sameUser((UserRef) other);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.id.hashCode();
+    }
+}
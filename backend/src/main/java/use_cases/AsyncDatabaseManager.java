@@ -0,0 +1,183 @@
+package use_cases;
+
+import entities.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the methods of a DatabaseManager in the background, so that lookups that do not depend on each other
+ * can run at the same time. Each method returns a CompletableFuture that completes with what the
+ * DatabaseManager method returns.
+ * The methods run on an executor with a fixed number of threads, so no more of them run at the same time
+ * than the database can serve; the others wait in the executor's queue without holding a thread.
+ * A method should not wait on another one from inside the executor, as every thread could end up waiting.
+ */
+public class AsyncDatabaseManager {
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+    private static ExecutorService defaultExecutor;
+
+    private final DatabaseManager databaseManager;
+    private final ExecutorService executor;
+
+    /**
+     * Construct an AsyncDatabaseManager.
+     * @param databaseManager The DatabaseManager whose methods are run in the background.
+     * @param executor The executor the methods are run on, usually shared by every AsyncDatabaseManager
+     *                 of the same database.
+     */
+    public AsyncDatabaseManager(DatabaseManager databaseManager, ExecutorService executor) {
+        this.databaseManager = databaseManager;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates an executor that runs at most maxConcurrency tasks at the same time, on daemon threads that are
+     * started when needed and stop after sitting idle for a minute.
+     * @param name The name of the threads, followed by their number.
+     * @param maxConcurrency The number of tasks that may run at the same time.
+     * @return the executor.
+     */
+    public static ExecutorService newExecutor(String name, int maxConcurrency) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the executor shared by the AsyncDatabaseManagers of DatabaseManagers that do not have one of their
+     * own. It runs at most foodstagram.db.async.maxConcurrency (8 by default) methods at the same time.
+     * @return the default executor.
+     */
+    public static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = newExecutor("database-async", Integer.getInteger("foodstagram.db.async.maxConcurrency",
+                    8));
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * @return the DatabaseManager whose methods are run in the background.
+     */
+    public DatabaseManager getDatabaseManager() {
+        return this.databaseManager;
+    }
+
+    /**
+     * @return the executor the methods are run on.
+     */
+    public ExecutorService getExecutor() {
+        return this.executor;
+    }
+
+    /**
+     * Save a new post to the database, as DatabaseManager.addNewPost does.
+     * @param newPost The Post to save to the database.
+     * @return a CompletableFuture that completes once the post is saved.
+     */
+    public CompletableFuture<Void> addNewPost(Post newPost) {
+        return CompletableFuture.runAsync(() -> this.databaseManager.addNewPost(newPost), this.executor);
+    }
+
+    /**
+     * Saves the like in the database on a given post, as DatabaseManager.likePost does.
+     * @param post post object which is being given a like
+     * @param user user object that is giving the like
+     * @return a CompletableFuture that completes once the like is saved.
+     */
+    public CompletableFuture<Void> likePost(Post post, User user) {
+        return CompletableFuture.runAsync(() -> this.databaseManager.likePost(post, user), this.executor);
+    }
+
+    /**
+     * Saves the comment in the database of a given post, as DatabaseManager.commentPost does.
+     * @param post post object which is being commented on
+     * @param comment comment that stores the information about it
+     * @return a CompletableFuture that completes once the comment is saved.
+     */
+    public CompletableFuture<Void> commentPost(Post post, Comment comment) {
+        return CompletableFuture.runAsync(() -> this.databaseManager.commentPost(post, comment), this.executor);
+    }
+
+    /**
+     * Edit the Post saved in the Database, as DatabaseManager.editPost does.
+     * @param newPost The Post to save to the database.
+     * @return a CompletableFuture that completes once the post is saved.
+     */
+    public CompletableFuture<Void> editPost(Post newPost) {
+        return CompletableFuture.runAsync(() -> this.databaseManager.editPost(newPost), this.executor);
+    }
+
+    /**
+     * Delete a Post in the database, as DatabaseManager.deletePost does.
+     * @param postId The ID of the Post to delete.
+     * @return a CompletableFuture that completes once the post is deleted.
+     */
+    public CompletableFuture<Void> deletePost(String postId) {
+        return CompletableFuture.runAsync(() -> this.databaseManager.deletePost(postId), this.executor);
+    }
+
+    /**
+     * Save a new user to the database, as DatabaseManager.addNewUser does.
+     * @param newUser The new User to save to the database.
+     * @return a CompletableFuture of whether the user was added.
+     */
+    public CompletableFuture<Boolean> addNewUser(User newUser) {
+        return CompletableFuture.supplyAsync(() -> this.databaseManager.addNewUser(newUser), this.executor);
+    }
+
+    /**
+     * Gets all the posts stored in the database, as DatabaseManager.getAllPosts does.
+     * @return a CompletableFuture of an Array of all the posts stored in the database.
+     */
+    public CompletableFuture<Post[]> getAllPosts() {
+        return CompletableFuture.supplyAsync(this.databaseManager::getAllPosts, this.executor);
+    }
+
+    /**
+     * Gets a page of posts, as DatabaseManager.getPostsPage does.
+     * @param cursor The position of the last post of the previous page, or null to get the first page.
+     * @param limit The maximum number of posts in the page.
+     * @return a CompletableFuture of an Array of at most limit posts that come after the cursor, in order.
+     */
+    public CompletableFuture<Post[]> getPostsPage(FeedCursor cursor, int limit) {
+        return CompletableFuture.supplyAsync(() -> this.databaseManager.getPostsPage(cursor, limit), this.executor);
+    }
+
+    /**
+     * Updates the attributes of the user, as DatabaseManager.updateUser does.
+     * @param updatedUser user object with the updated values
+     * @return a CompletableFuture of whether the attributes were changed.
+     */
+    public CompletableFuture<Boolean> updateUser(User updatedUser) {
+        return CompletableFuture.supplyAsync(() -> this.databaseManager.updateUser(updatedUser), this.executor);
+    }
+
+    /**
+     * Deletes the information related to the given user, as DatabaseManager.deleteUser does.
+     * @param user user object that contains information about the user
+     * @return a CompletableFuture of whether all the information related to the user could be deleted.
+     */
+    public CompletableFuture<Boolean> deleteUser(User user) {
+        return CompletableFuture.supplyAsync(() -> this.databaseManager.deleteUser(user), this.executor);
+    }
+
+    /**
+     * Gets all the Users saved in the database, as DatabaseManager.getAllUsers does.
+     * @return a CompletableFuture of an Array of all the Users registered in the app.
+     */
+    public CompletableFuture<User[]> getAllUsers() {
+        return CompletableFuture.supplyAsync(this.databaseManager::getAllUsers, this.executor);
+    }
+}
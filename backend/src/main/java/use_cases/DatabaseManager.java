@@ -2,11 +2,13 @@ package use_cases;
 
 import entities.*;
 
-import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.Stream;
 
 public abstract class DatabaseManager {
-    protected Connection connection;
-
     /**
      * Save a new post to the database.
      * @param newPost The Post to save to the database.
@@ -56,6 +58,61 @@ public abstract class DatabaseManager {
      */
     public abstract Post[] getAllPosts();
 
+    /**
+     * Gets all the posts stored in the database as a Stream, for going through every post without
+     * holding them all in memory at once. The Stream must be closed once it is no longer used.
+     * By default the posts are all read with getAllPosts first.
+     * @return a Stream of all the posts stored in the database.
+     */
+    public Stream<Post> streamAllPosts() {
+        return Arrays.stream(this.getAllPosts());
+    }
+
+    /**
+     * Gets a page of posts ordered from the most recently posted to the least recently posted.
+     * @param cursor The position of the last post of the previous page, or null to get the first page.
+     * @param limit The maximum number of posts in the page.
+     * @return an Array of at most limit posts that come after the cursor, in order.
+     */
+    public abstract Post[] getPostsPage(FeedCursor cursor, int limit);
+
+    /**
+     * Gets the posts with the most likes, from the most liked to the least liked.
+     * By default every post is read with getAllPosts first.
+     * @param limit The maximum number of posts to get.
+     * @return an Array of at most limit posts with the most likes.
+     */
+    public Post[] getMostLikedPosts(int limit) {
+        Post[] posts = this.getAllPosts();
+        Arrays.sort(posts, Post.PostLikesComparator);
+        return Arrays.copyOf(posts, Math.min(limit, posts.length));
+    }
+
+    /**
+     * Gets what a list of posts shows for each of the given posts, with the usernames of their authors.
+     * By default every post and user is read with getAllPosts and getAllUsers first.
+     * @param postIds The IDs of the posts.
+     * @return an Array of the FeedCards of the posts that were found, in the order of postIds.
+     */
+    public FeedCard[] getFeedCards(List<String> postIds) {
+        HashMap<String, Post> posts = new HashMap<>();
+        for (Post post : this.getAllPosts()) {
+            posts.put(post.getId(), post);
+        }
+        HashMap<String, String> usernames = new HashMap<>();
+        for (User user : this.getAllUsers()) {
+            usernames.put(user.getId(), user.getUsername());
+        }
+        ArrayList<FeedCard> cards = new ArrayList<>();
+        for (String postId : postIds) {
+            Post post = posts.get(postId);
+            if (post != null) {
+                cards.add(new FeedCard(post, usernames.get(post.getAuthorId())));
+            }
+        }
+        return cards.toArray(new FeedCard[0]);
+    }
+
     /**
      * Updates the attributes of the user to the new attributes
      * given the parameter
@@ -80,4 +137,13 @@ public abstract class DatabaseManager {
      * @return an Array of all the Users registered in the app.
      */
     public abstract User[] getAllUsers();
-}
\ No newline at end of file
+
+    /**
+     * Gets an AsyncDatabaseManager that runs the methods of this DatabaseManager in the background.
+     * By default they run on AsyncDatabaseManager.getDefaultExecutor.
+     * @return an AsyncDatabaseManager for this DatabaseManager.
+     */
+    public AsyncDatabaseManager async() {
+        return new AsyncDatabaseManager(this, AsyncDatabaseManager.getDefaultExecutor());
+    }
+}
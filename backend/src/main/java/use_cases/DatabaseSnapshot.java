@@ -0,0 +1,58 @@
+package use_cases;
+
+import entities.Post;
+import entities.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Every user and post in the database as they were at one point in time.
+ * The users and posts are linked into a single graph: the authors of the posts, the users who
+ * liked them and the followers of each user are the same User objects as the ones in getUsers.
+ */
+public class DatabaseSnapshot {
+    private final LinkedHashMap<String, User> usersById;
+    private final LinkedHashMap<String, Post> postsById;
+
+    /**
+     * Construct a DatabaseSnapshot.
+     *
+     * @param usersById every user, indexed by their ID
+     * @param postsById every post, indexed by its ID
+     */
+    public DatabaseSnapshot(Map<String, User> usersById, Map<String, Post> postsById) {
+        this.usersById = new LinkedHashMap<>(usersById);
+        this.postsById = new LinkedHashMap<>(postsById);
+    }
+
+    /**
+     * @return every user in the snapshot
+     */
+    public User[] getUsers() {
+        return this.usersById.values().toArray(new User[0]);
+    }
+
+    /**
+     * @return every post in the snapshot
+     */
+    public Post[] getPosts() {
+        return this.postsById.values().toArray(new Post[0]);
+    }
+
+    /**
+     * @param id the ID of a user
+     * @return the user with the given ID, or null if there is none
+     */
+    public User getUser(String id) {
+        return this.usersById.get(id);
+    }
+
+    /**
+     * @param id the ID of a post
+     * @return the post with the given ID, or null if there is none
+     */
+    public Post getPost(String id) {
+        return this.postsById.get(id);
+    }
+}
@@ -0,0 +1,48 @@
+package use_cases;
+
+import entities.Post;
+
+import java.time.LocalDateTime;
+
+/**
+ * The position in the feed of the last post of a page of posts.
+ * Posts are ordered from the most recently posted to the least recently posted, and posts
+ * posted at the same time are ordered by their ID.
+ */
+public class FeedCursor {
+    private final LocalDateTime lastPostedTime;
+    private final String lastPostId;
+
+    /**
+     * Construct a FeedCursor.
+     *
+     * @param lastPostedTime the posted time of the last post of the page
+     * @param lastPostId     the ID of the last post of the page
+     */
+    public FeedCursor(LocalDateTime lastPostedTime, String lastPostId) {
+        this.lastPostedTime = lastPostedTime;
+        this.lastPostId = lastPostId;
+    }
+
+    /**
+     * @param lastPost the last post of a page
+     * @return a FeedCursor positioned at the given post, so the next page starts right after it.
+     */
+    public static FeedCursor after(Post lastPost) {
+        return new FeedCursor(lastPost.getTime(), lastPost.getId());
+    }
+
+    /**
+     * @return the posted time of the last post of the page
+     */
+    public LocalDateTime getLastPostedTime() {
+        return this.lastPostedTime;
+    }
+
+    /**
+     * @return the ID of the last post of the page
+     */
+    public String getLastPostId() {
+        return this.lastPostId;
+    }
+}
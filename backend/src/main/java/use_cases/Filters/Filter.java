@@ -8,6 +8,10 @@ import java.util.Collections;
 import java.util.Comparator;
 
 public class Filter {
+    /**
+     * The most Posts a filter displays.
+     */
+    public static final int NUM_POSTS_LIMIT = 10;
     protected final Feed currentUserFeed;
 
     /**
@@ -31,6 +35,15 @@ public class Filter {
         return this.currentUserFeed;
     }
 
+    /**
+     * Check if a Post can be displayed by this filter. By default, every Post can.
+     * @param p A Post.
+     * @return a boolean whether p can be displayed by this filter.
+     */
+    boolean accepts(Post p) {
+        return true;
+    }
+
     /**
      * Get the list of Posts filtered by default from the current User's Feed's Posts.
      * @return an ArrayList of Posts filtered by default from the current User's Feed's Posts.
@@ -68,10 +81,9 @@ public class Filter {
      * @return an ArrayList of ten Posts maximum.
      */
     public ArrayList<Post> limitNumPosts(ArrayList<Post> tempDisplayedPosts) {
-        int numPostsLimit = 10;
         ArrayList<Post> maxDisplayedPosts = new ArrayList<>();
-        if (!this.checkNumPosts(tempDisplayedPosts, numPostsLimit)) {
-            for (int i=0; i < numPostsLimit; i++) {
+        if (!this.checkNumPosts(tempDisplayedPosts, NUM_POSTS_LIMIT)) {
+            for (int i=0; i < NUM_POSTS_LIMIT; i++) {
                 maxDisplayedPosts.add(tempDisplayedPosts.get(i));
             }
             return maxDisplayedPosts;
@@ -32,18 +32,25 @@ public class FilterByCuisine extends Filter {
         ArrayList<Post> allPosts = this.currentUserFeed.getPosts();
         ArrayList<Post> cuisinePosts = new ArrayList<>();
         for (Post p : allPosts) {
-            // Get the posts with the cuisine types that are not Chinese, American, Japanese, Italian, French, Mexican
-            if (this.cuisineNumInput == 6) {
-                if (!this.cuisineList.contains(p.getCategory().toLowerCase())) {
-                    cuisinePosts.add(p);
-                }
-            } else {
-                if (p.getCategory().toLowerCase().equals(this.cuisineList.get(this.cuisineNumInput))) {
-                    cuisinePosts.add(p);
-                }
+            if (this.accepts(p)) {
+                cuisinePosts.add(p);
             }
         }
         Collections.shuffle(cuisinePosts);
         return cuisinePosts;
     }
-}
\ No newline at end of file
+
+    /**
+     * Check if a Post is of the chosen cuisine type.
+     * @param p A Post.
+     * @return a boolean whether p is of the chosen cuisine type.
+     */
+    @Override
+    boolean accepts(Post p) {
+        // Get the posts with the cuisine types that are not Chinese, American, Japanese, Italian, French, Mexican
+        if (this.cuisineNumInput == 6) {
+            return !this.cuisineList.contains(p.getCategory().toLowerCase());
+        }
+        return p.getCategory().toLowerCase().equals(this.cuisineList.get(this.cuisineNumInput));
+    }
+}
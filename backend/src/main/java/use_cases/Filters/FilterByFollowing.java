@@ -3,6 +3,7 @@ package use_cases.Filters;
 import entities.Feed;
 import entities.Post;
 import entities.User;
+import entities.UserRef;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -44,10 +45,10 @@ public class FilterByFollowing extends Filter {
      * @return an ArrayList of IDs of Users that the current User follow.
      */
     public ArrayList<String> getUsersFollowingList() {
-        ArrayList<User> currentUsersFollowing = this.currentUser.getFollowing();
+        ArrayList<UserRef> currentUsersFollowing = this.currentUser.getFollowing();
         ArrayList<String> usersFollowingInStrings = new ArrayList<>();
         if (currentUsersFollowing.size() != 0) {
-            for (User s : currentUsersFollowing) {
+            for (UserRef s : currentUsersFollowing) {
                 usersFollowingInStrings.add(s.getId());
             }
         }
@@ -49,20 +49,29 @@ public class FilterByRecommended extends Filter {
      */
     private ArrayList<Post> getRecommendablePosts() {
         ArrayList<Post> allPosts = this.currentUserFeed.getPosts();
-        ArrayList<String> likedCategories = new ArrayList<>(this.user.getLikeHistory().keySet());
 
         ArrayList<Post> recommendablePosts = new ArrayList<>();
         for (Post post : allPosts) {
-            if (likedCategories.contains(post.getCategory())
-                    && !post.getLikedUsers().contains(this.user)
-                    && !this.user.getPosts().contains(post)) {
-
+            if (this.accepts(post)) {
                 recommendablePosts.add(post);
             }
         }
         return recommendablePosts;
     }
 
+    /**
+     * Check if a Post can be recommended: it has not been previously liked/posted by user,
+     * and it is part of a category that the user has liked.
+     * @param post A Post.
+     * @return a boolean whether post can be recommended.
+     */
+    @Override
+    boolean accepts(Post post) {
+        return this.user.getLikeHistory().containsKey(post.getCategory())
+                && !post.getLikedUsers().contains(this.user)
+                && !this.user.getPosts().contains(post);
+    }
+
     /**
      * Recommend a random post that is in recommendablePosts and is part of category
      * @param recommendablePosts ArrayList of posts that can be recommended
@@ -7,6 +7,7 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /*
     add a new post, comment/like a Post
@@ -23,8 +24,10 @@ public class PostManager {
      */
     public PostManager(DatabaseManager databaseManager){
         this.databaseManager = databaseManager;
-        this.userManager = new UserManager(databaseManager);
+        // The users are read in the background while the posts are read
+        CompletableFuture<User[]> allUsers = this.databaseManager.async().getAllUsers();
         Post[] allPosts = this.databaseManager.getAllPosts();
+        this.userManager = new UserManager(databaseManager, allUsers.join());
         this.posts = new ArrayList<>(Arrays.asList(allPosts));
     }
 
@@ -60,7 +63,6 @@ public class PostManager {
 
                     }
                 }
-                this.databaseManager.editPost(post);
                 return true;
             }
         }
@@ -74,7 +76,7 @@ public class PostManager {
      * @return true if user did not already like the post
      */
     public boolean userDidNotAlreadyLike(Post targetPost, User new_like_user) {
-        for (User user: targetPost.getLikedUsers()) {
+        for (UserRef user: targetPost.getLikedUsers()) {
             if (user.sameUser(new_like_user)) {
                 return false;
             }
@@ -157,10 +159,10 @@ public class PostManager {
     public String[] getPostLikedUsers(String postId){
 
         if (Objects.nonNull(this.getSpecificPost(postId))){
-            ArrayList<User> likedUsers = this.getSpecificPost(postId).getLikedUsers();
+            ArrayList<UserRef> likedUsers = this.getSpecificPost(postId).getLikedUsers();
             String[] likes = new String[likedUsers.size()];
             for (int i = 0; i < likedUsers.size(); i++) {
-                likes[i] = userManager.getUsername(likedUsers.get(i));
+                likes[i] = likedUsers.get(i).getUsername();
             }
             return likes;
         }
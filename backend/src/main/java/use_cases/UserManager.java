@@ -5,6 +5,7 @@ import java.util.HashMap;
 
 import entities.Post;
 import entities.User;
+import entities.UserRef;
 
 public class UserManager {
     private final DatabaseManager databaseManager;
@@ -20,6 +21,17 @@ public class UserManager {
         this.allUsers = this.databaseManager.getAllUsers();
     }
 
+    /**
+     * Create a UserManager with a DatabaseManager and the users already read from it
+     *
+     * @param dbManager DatabaseManager that is used by UserManager
+     * @param allUsers every User registered with the database manager
+     */
+    public UserManager(DatabaseManager dbManager, User[] allUsers) {
+        this.databaseManager = dbManager;
+        this.allUsers = allUsers;
+    }
+
     /**
      * Get the User with the given ID. Returns null if no user with
      * the given ID exists.
@@ -92,7 +104,7 @@ public class UserManager {
             return false;
         } else {
             // update current_user's following list: following
-            ArrayList<User> updatedFollowingList = new ArrayList<>();
+            ArrayList<UserRef> updatedFollowingList = new ArrayList<>();
             updatedFollowingList.add(wantToFollow);
             updatedFollowingList.addAll(currentUser.getFollowing());
             currentUser.setFollowing(updatedFollowingList);
@@ -111,8 +123,8 @@ public class UserManager {
         String usernameWantToUnfollow = wantToUnfollow.getUsername();
         ArrayList<String> usernamesFollowed = getFollowingListUsernames(currentUser);
         if (usernamesFollowed.contains(usernameWantToUnfollow)) {
-            ArrayList<User> updatedFollowingList = new ArrayList<>();
-            for (User user : currentUser.getFollowing()) {
+            ArrayList<UserRef> updatedFollowingList = new ArrayList<>();
+            for (UserRef user : currentUser.getFollowing()) {
                 if (!user.getUsername().equals(usernameWantToUnfollow)) {
                     updatedFollowingList.add(user);
                 }
@@ -242,9 +254,9 @@ public class UserManager {
      * @return user's following list as usernames
      */
     public ArrayList<String> getFollowingListUsernames(User user) {
-        ArrayList<User> followingList = user.getFollowing();
+        ArrayList<UserRef> followingList = user.getFollowing();
         ArrayList<String> followingListUsernames = new ArrayList<>();
-        for (User targetUser : followingList) {
+        for (UserRef targetUser : followingList) {
             followingListUsernames.add(targetUser.getUsername());
         }
         return followingListUsernames;
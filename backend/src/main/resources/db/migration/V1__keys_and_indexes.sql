@@ -0,0 +1,116 @@
+-- Moves every id column from TEXT to a fixed-width VARCHAR so that it can be part of a key,
+-- and adds primary keys and the indexes the queries in MySQLController filter and join on.
+-- Each table is copied into a new table with INSERT IGNORE, which drops rows that would
+-- violate the new primary keys (for example a user liking the same post twice), and then
+-- swapped in with a single RENAME, so the script can be rerun if it is interrupted.
+
+DROP TABLE IF EXISTS `user_info_v0`, `user_info_v1`;
+CREATE TABLE `user_info_v1` (
+    `user_id` varchar(36) NOT NULL,
+    `username` varchar(255) NOT NULL,
+    `password` text NOT NULL,
+    `bio` text NOT NULL,
+    PRIMARY KEY (`user_id`),
+    KEY `user_info_username` (`username`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `user_info_v1` (`user_id`, `username`, `password`, `bio`)
+    SELECT `user_id`, `username`, `password`, `bio` FROM `user_info`;
+RENAME TABLE `user_info` TO `user_info_v0`, `user_info_v1` TO `user_info`;
+DROP TABLE `user_info_v0`;
+
+DROP TABLE IF EXISTS `posts_v0`, `posts_v1`;
+CREATE TABLE `posts_v1` (
+    `post_id` varchar(36) NOT NULL,
+    `user_id` varchar(36) NOT NULL,
+    `recipe_id` varchar(36) NOT NULL,
+    `category` varchar(64) NOT NULL,
+    `posted_time` timestamp NULL DEFAULT NULL,
+    PRIMARY KEY (`post_id`),
+    KEY `posts_user_time` (`user_id`, `posted_time`),
+    KEY `posts_time_id` (`posted_time`, `post_id`),
+    KEY `posts_recipe` (`recipe_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `posts_v1` (`post_id`, `user_id`, `recipe_id`, `category`, `posted_time`)
+    SELECT `post_id`, `user_id`, `recipe_id`, `category`, `posted_time` FROM `posts`;
+RENAME TABLE `posts` TO `posts_v0`, `posts_v1` TO `posts`;
+DROP TABLE `posts_v0`;
+
+DROP TABLE IF EXISTS `recipes_v0`, `recipes_v1`;
+CREATE TABLE `recipes_v1` (
+    `recipe_id` varchar(36) NOT NULL,
+    `title` text NOT NULL,
+    PRIMARY KEY (`recipe_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `recipes_v1` (`recipe_id`, `title`)
+    SELECT `recipe_id`, `title` FROM `recipes`;
+RENAME TABLE `recipes` TO `recipes_v0`, `recipes_v1` TO `recipes`;
+DROP TABLE `recipes_v0`;
+
+DROP TABLE IF EXISTS `recipes_steps_v0`, `recipes_steps_v1`;
+CREATE TABLE `recipes_steps_v1` (
+    `recipe_id` varchar(36) NOT NULL,
+    `step_number` int(11) NOT NULL,
+    `step_text` text NOT NULL,
+    PRIMARY KEY (`recipe_id`, `step_number`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `recipes_steps_v1` (`recipe_id`, `step_number`, `step_text`)
+    SELECT `recipe_id`, `step_number`, `step_text` FROM `recipes_steps`;
+RENAME TABLE `recipes_steps` TO `recipes_steps_v0`, `recipes_steps_v1` TO `recipes_steps`;
+DROP TABLE `recipes_steps_v0`;
+
+DROP TABLE IF EXISTS `recipe_ingredients_v0`, `recipe_ingredients_v1`;
+CREATE TABLE `recipe_ingredients_v1` (
+    `recipe_id` varchar(36) NOT NULL,
+    `ingredient_name` varchar(255) NOT NULL,
+    `ingredient_count` float DEFAULT NULL,
+    `ingredient_amount` float DEFAULT NULL,
+    `ingredient_measurement` text,
+    KEY `recipe_ingredients_recipe_name` (`recipe_id`, `ingredient_name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT INTO `recipe_ingredients_v1` (`recipe_id`, `ingredient_name`, `ingredient_count`,
+        `ingredient_amount`, `ingredient_measurement`)
+    SELECT `recipe_id`, `ingredient_name`, `ingredient_count`, `ingredient_amount`, `ingredient_measurement`
+    FROM `recipe_ingredients`;
+RENAME TABLE `recipe_ingredients` TO `recipe_ingredients_v0`, `recipe_ingredients_v1` TO `recipe_ingredients`;
+DROP TABLE `recipe_ingredients_v0`;
+
+DROP TABLE IF EXISTS `likes_v0`, `likes_v1`;
+CREATE TABLE `likes_v1` (
+    `user_id` varchar(36) NOT NULL,
+    `post_id` varchar(36) NOT NULL,
+    `category` varchar(64) NOT NULL,
+    PRIMARY KEY (`post_id`, `user_id`),
+    KEY `likes_user` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `likes_v1` (`user_id`, `post_id`, `category`)
+    SELECT `user_id`, `post_id`, `category` FROM `likes`;
+RENAME TABLE `likes` TO `likes_v0`, `likes_v1` TO `likes`;
+DROP TABLE `likes_v0`;
+
+DROP TABLE IF EXISTS `comments_v0`, `comments_v1`;
+CREATE TABLE `comments_v1` (
+    `user_id` varchar(36) NOT NULL,
+    `post_id` varchar(36) NOT NULL,
+    `comment_time` timestamp NULL DEFAULT NULL,
+    `comment_text` text NOT NULL,
+    `comment_id` varchar(36) NOT NULL,
+    PRIMARY KEY (`comment_id`),
+    KEY `comments_post` (`post_id`),
+    KEY `comments_user` (`user_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `comments_v1` (`user_id`, `post_id`, `comment_time`, `comment_text`, `comment_id`)
+    SELECT `user_id`, `post_id`, `comment_time`, `comment_text`, `comment_id` FROM `comments`;
+RENAME TABLE `comments` TO `comments_v0`, `comments_v1` TO `comments`;
+DROP TABLE `comments_v0`;
+
+DROP TABLE IF EXISTS `follows_v0`, `follows_v1`;
+CREATE TABLE `follows_v1` (
+    `user_id` varchar(36) NOT NULL,
+    `follower_id` varchar(36) NOT NULL,
+    PRIMARY KEY (`user_id`, `follower_id`),
+    KEY `follows_follower` (`follower_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+INSERT IGNORE INTO `follows_v1` (`user_id`, `follower_id`)
+    SELECT `user_id`, `follower_id` FROM `follows`;
+RENAME TABLE `follows` TO `follows_v0`, `follows_v1` TO `follows`;
+DROP TABLE `follows_v0`;
@@ -0,0 +1,96 @@
+-- Adds the change_log table, which records the ID of every user, post and recipe whose rows change,
+-- in the order the changes were made. A SnapshotStore reads it to catch a snapshot of the database
+-- up with what changed after the snapshot was taken, instead of reading every table again.
+-- The rows are written by triggers, so they are added in the same transaction as the change itself,
+-- whichever code path makes it. With binary logging on, creating triggers may need the SUPER privilege.
+-- Likes and comments are recorded against their post, and follows against both users.
+
+CREATE TABLE IF NOT EXISTS `change_log` (
+    `change_seq` bigint(20) NOT NULL AUTO_INCREMENT,
+    `entity` varchar(8) NOT NULL,
+    `entity_id` varchar(36) NOT NULL,
+    `changed_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`change_seq`),
+    KEY `change_log_time` (`changed_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+DROP TRIGGER IF EXISTS `user_info_insert_change`;
+CREATE TRIGGER `user_info_insert_change` AFTER INSERT ON `user_info` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('user', NEW.user_id);
+DROP TRIGGER IF EXISTS `user_info_update_change`;
+CREATE TRIGGER `user_info_update_change` AFTER UPDATE ON `user_info` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('user', OLD.user_id), ('user', NEW.user_id);
+DROP TRIGGER IF EXISTS `user_info_delete_change`;
+CREATE TRIGGER `user_info_delete_change` AFTER DELETE ON `user_info` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('user', OLD.user_id);
+
+DROP TRIGGER IF EXISTS `follows_insert_change`;
+CREATE TRIGGER `follows_insert_change` AFTER INSERT ON `follows` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('user', NEW.user_id), ('user', NEW.follower_id);
+DROP TRIGGER IF EXISTS `follows_update_change`;
+CREATE TRIGGER `follows_update_change` AFTER UPDATE ON `follows` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('user', OLD.user_id), ('user', OLD.follower_id),
+        ('user', NEW.user_id), ('user', NEW.follower_id);
+DROP TRIGGER IF EXISTS `follows_delete_change`;
+CREATE TRIGGER `follows_delete_change` AFTER DELETE ON `follows` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('user', OLD.user_id), ('user', OLD.follower_id);
+
+DROP TRIGGER IF EXISTS `posts_insert_change`;
+CREATE TRIGGER `posts_insert_change` AFTER INSERT ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', NEW.post_id);
+DROP TRIGGER IF EXISTS `posts_update_change`;
+CREATE TRIGGER `posts_update_change` AFTER UPDATE ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', OLD.post_id), ('post', NEW.post_id);
+DROP TRIGGER IF EXISTS `posts_delete_change`;
+CREATE TRIGGER `posts_delete_change` AFTER DELETE ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', OLD.post_id);
+
+DROP TRIGGER IF EXISTS `recipes_insert_change`;
+CREATE TRIGGER `recipes_insert_change` AFTER INSERT ON `recipes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', NEW.recipe_id);
+DROP TRIGGER IF EXISTS `recipes_update_change`;
+CREATE TRIGGER `recipes_update_change` AFTER UPDATE ON `recipes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', OLD.recipe_id), ('recipe', NEW.recipe_id);
+DROP TRIGGER IF EXISTS `recipes_delete_change`;
+CREATE TRIGGER `recipes_delete_change` AFTER DELETE ON `recipes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', OLD.recipe_id);
+
+DROP TRIGGER IF EXISTS `recipes_steps_insert_change`;
+CREATE TRIGGER `recipes_steps_insert_change` AFTER INSERT ON `recipes_steps` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', NEW.recipe_id);
+DROP TRIGGER IF EXISTS `recipes_steps_update_change`;
+CREATE TRIGGER `recipes_steps_update_change` AFTER UPDATE ON `recipes_steps` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', OLD.recipe_id), ('recipe', NEW.recipe_id);
+DROP TRIGGER IF EXISTS `recipes_steps_delete_change`;
+CREATE TRIGGER `recipes_steps_delete_change` AFTER DELETE ON `recipes_steps` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', OLD.recipe_id);
+
+DROP TRIGGER IF EXISTS `recipe_ingredients_insert_change`;
+CREATE TRIGGER `recipe_ingredients_insert_change` AFTER INSERT ON `recipe_ingredients` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', NEW.recipe_id);
+DROP TRIGGER IF EXISTS `recipe_ingredients_update_change`;
+CREATE TRIGGER `recipe_ingredients_update_change` AFTER UPDATE ON `recipe_ingredients` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', OLD.recipe_id), ('recipe', NEW.recipe_id);
+DROP TRIGGER IF EXISTS `recipe_ingredients_delete_change`;
+CREATE TRIGGER `recipe_ingredients_delete_change` AFTER DELETE ON `recipe_ingredients` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('recipe', OLD.recipe_id);
+
+DROP TRIGGER IF EXISTS `likes_insert_change`;
+CREATE TRIGGER `likes_insert_change` AFTER INSERT ON `likes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', NEW.post_id);
+DROP TRIGGER IF EXISTS `likes_update_change`;
+CREATE TRIGGER `likes_update_change` AFTER UPDATE ON `likes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', OLD.post_id), ('post', NEW.post_id);
+DROP TRIGGER IF EXISTS `likes_delete_change`;
+CREATE TRIGGER `likes_delete_change` AFTER DELETE ON `likes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', OLD.post_id);
+
+DROP TRIGGER IF EXISTS `comments_insert_change`;
+CREATE TRIGGER `comments_insert_change` AFTER INSERT ON `comments` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', NEW.post_id);
+DROP TRIGGER IF EXISTS `comments_update_change`;
+CREATE TRIGGER `comments_update_change` AFTER UPDATE ON `comments` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', OLD.post_id), ('post', NEW.post_id);
+DROP TRIGGER IF EXISTS `comments_delete_change`;
+CREATE TRIGGER `comments_delete_change` AFTER DELETE ON `comments` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`) VALUES ('post', OLD.post_id);
@@ -0,0 +1,57 @@
+-- Adds like_count and comment_count to the posts table, so that the number of likes and comments of a post
+-- can be read, and posts sorted by likes, without reading the likes and comments tables.
+-- The counters are kept up to date by triggers on likes and comments, in the same transaction as the like
+-- or comment itself, whichever code path adds or removes it. PostCounterReconciler corrects any that drift.
+-- Changes to the counters alone are not recorded in change_log, as the like or comment behind them already is.
+
+-- The columns are only added if they are not there yet, so the script can be rerun if it is interrupted
+SET @add_counters = IF((SELECT COUNT(*) FROM `information_schema`.`columns` WHERE `table_schema` = DATABASE()
+        AND `table_name` = 'posts' AND `column_name` = 'like_count') = 0,
+    'ALTER TABLE `posts` ADD COLUMN `like_count` int(11) NOT NULL DEFAULT 0,
+        ADD COLUMN `comment_count` int(11) NOT NULL DEFAULT 0,
+        ADD KEY `posts_like_count` (`like_count`, `post_id`)',
+    'DO 0');
+PREPARE add_counters FROM @add_counters;
+EXECUTE add_counters;
+DEALLOCATE PREPARE add_counters;
+
+DROP TRIGGER IF EXISTS `posts_update_change`;
+CREATE TRIGGER `posts_update_change` AFTER UPDATE ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`)
+        SELECT 'post', OLD.post_id FROM DUAL
+            WHERE NOT (OLD.post_id <=> NEW.post_id AND OLD.user_id <=> NEW.user_id
+                AND OLD.recipe_id <=> NEW.recipe_id AND OLD.category <=> NEW.category
+                AND OLD.posted_time <=> NEW.posted_time)
+        UNION ALL
+        SELECT 'post', NEW.post_id FROM DUAL
+            WHERE NOT (OLD.post_id <=> NEW.post_id AND OLD.user_id <=> NEW.user_id
+                AND OLD.recipe_id <=> NEW.recipe_id AND OLD.category <=> NEW.category
+                AND OLD.posted_time <=> NEW.posted_time);
+
+DROP TRIGGER IF EXISTS `likes_insert_count`;
+CREATE TRIGGER `likes_insert_count` AFTER INSERT ON `likes` FOR EACH ROW
+    UPDATE `posts` SET `like_count` = `like_count` + 1 WHERE `post_id` = NEW.post_id;
+DROP TRIGGER IF EXISTS `likes_update_count`;
+CREATE TRIGGER `likes_update_count` AFTER UPDATE ON `likes` FOR EACH ROW
+    UPDATE `posts` SET `like_count` = `like_count` + (`post_id` = NEW.post_id) - (`post_id` = OLD.post_id)
+        WHERE OLD.post_id <> NEW.post_id AND `post_id` IN (OLD.post_id, NEW.post_id);
+DROP TRIGGER IF EXISTS `likes_delete_count`;
+CREATE TRIGGER `likes_delete_count` AFTER DELETE ON `likes` FOR EACH ROW
+    UPDATE `posts` SET `like_count` = `like_count` - 1 WHERE `post_id` = OLD.post_id;
+
+DROP TRIGGER IF EXISTS `comments_insert_count`;
+CREATE TRIGGER `comments_insert_count` AFTER INSERT ON `comments` FOR EACH ROW
+    UPDATE `posts` SET `comment_count` = `comment_count` + 1 WHERE `post_id` = NEW.post_id;
+DROP TRIGGER IF EXISTS `comments_update_count`;
+CREATE TRIGGER `comments_update_count` AFTER UPDATE ON `comments` FOR EACH ROW
+    UPDATE `posts` SET `comment_count` = `comment_count` + (`post_id` = NEW.post_id) - (`post_id` = OLD.post_id)
+        WHERE OLD.post_id <> NEW.post_id AND `post_id` IN (OLD.post_id, NEW.post_id);
+DROP TRIGGER IF EXISTS `comments_delete_count`;
+CREATE TRIGGER `comments_delete_count` AFTER DELETE ON `comments` FOR EACH ROW
+    UPDATE `posts` SET `comment_count` = `comment_count` - 1 WHERE `post_id` = OLD.post_id;
+
+-- Counts the likes and comments saved before the triggers were added. Likes and comments added while this runs
+-- are counted once, as the count replaces whatever the triggers added before it.
+UPDATE `posts` SET
+    `like_count` = (SELECT COUNT(*) FROM `likes` WHERE `likes`.`post_id` = `posts`.`post_id`),
+    `comment_count` = (SELECT COUNT(*) FROM `comments` WHERE `comments`.`post_id` = `posts`.`post_id`);
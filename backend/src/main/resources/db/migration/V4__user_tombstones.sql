@@ -0,0 +1,17 @@
+-- Adds the user_tombstones table, which lists the users that were deleted but whose posts, likes, comments
+-- and follows have not been removed yet. Deleting a user only removes their user_info row and adds a tombstone,
+-- so it is quick however much the user posted; the queries leave out the posts of tombstoned users, and a
+-- UserPurger removes the rest of their rows in the background, a chunk at a time, then the tombstone.
+
+CREATE TABLE IF NOT EXISTS `user_tombstones` (
+    `user_id` varchar(36) NOT NULL,
+    `deleted_time` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (`user_id`),
+    KEY `user_tombstones_time` (`deleted_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- The posts of a tombstoned user are recorded as changed, so that snapshots drop them right away
+DROP TRIGGER IF EXISTS `user_tombstones_insert_change`;
+CREATE TRIGGER `user_tombstones_insert_change` AFTER INSERT ON `user_tombstones` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`)
+        SELECT 'post', `post_id` FROM `posts` WHERE `user_id` = NEW.user_id;
@@ -0,0 +1,142 @@
+-- Records in change_log which table each change was made to and whether a row was inserted, updated or deleted,
+-- so that a ChangeFeed can tell its subscribers what happened (a like, a comment, a follow, a new post...) and
+-- not only which user, post or recipe changed. Rows recorded before this script have an empty source_table
+-- and operation. The triggers are otherwise the same as before: one row per changed entity, written in the
+-- same transaction as the change itself.
+
+-- The columns are only added if they are not there yet, so the script can be rerun if it is interrupted
+SET @add_sources = IF((SELECT COUNT(*) FROM `information_schema`.`columns` WHERE `table_schema` = DATABASE()
+        AND `table_name` = 'change_log' AND `column_name` = 'source_table') = 0,
+    'ALTER TABLE `change_log` ADD COLUMN `source_table` varchar(20) NOT NULL DEFAULT \'\',
+        ADD COLUMN `operation` varchar(6) NOT NULL DEFAULT \'\'',
+    'DO 0');
+PREPARE add_sources FROM @add_sources;
+EXECUTE add_sources;
+DEALLOCATE PREPARE add_sources;
+
+DROP TRIGGER IF EXISTS `user_info_insert_change`;
+CREATE TRIGGER `user_info_insert_change` AFTER INSERT ON `user_info` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('user', NEW.user_id, 'user_info', 'insert');
+DROP TRIGGER IF EXISTS `user_info_update_change`;
+CREATE TRIGGER `user_info_update_change` AFTER UPDATE ON `user_info` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('user', OLD.user_id, 'user_info', 'update'),
+        ('user', NEW.user_id, 'user_info', 'update');
+DROP TRIGGER IF EXISTS `user_info_delete_change`;
+CREATE TRIGGER `user_info_delete_change` AFTER DELETE ON `user_info` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('user', OLD.user_id, 'user_info', 'delete');
+
+DROP TRIGGER IF EXISTS `follows_insert_change`;
+CREATE TRIGGER `follows_insert_change` AFTER INSERT ON `follows` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('user', NEW.user_id, 'follows', 'insert'),
+        ('user', NEW.follower_id, 'follows', 'insert');
+DROP TRIGGER IF EXISTS `follows_update_change`;
+CREATE TRIGGER `follows_update_change` AFTER UPDATE ON `follows` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('user', OLD.user_id, 'follows', 'update'), ('user', OLD.follower_id, 'follows', 'update'),
+        ('user', NEW.user_id, 'follows', 'update'), ('user', NEW.follower_id, 'follows', 'update');
+DROP TRIGGER IF EXISTS `follows_delete_change`;
+CREATE TRIGGER `follows_delete_change` AFTER DELETE ON `follows` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('user', OLD.user_id, 'follows', 'delete'),
+        ('user', OLD.follower_id, 'follows', 'delete');
+
+-- Changes to the like and comment counters alone are still not recorded
+DROP TRIGGER IF EXISTS `posts_insert_change`;
+CREATE TRIGGER `posts_insert_change` AFTER INSERT ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', NEW.post_id, 'posts', 'insert');
+DROP TRIGGER IF EXISTS `posts_update_change`;
+CREATE TRIGGER `posts_update_change` AFTER UPDATE ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        SELECT 'post', OLD.post_id, 'posts', 'update' FROM DUAL
+            WHERE NOT (OLD.post_id <=> NEW.post_id AND OLD.user_id <=> NEW.user_id
+                AND OLD.recipe_id <=> NEW.recipe_id AND OLD.category <=> NEW.category
+                AND OLD.posted_time <=> NEW.posted_time)
+        UNION ALL
+        SELECT 'post', NEW.post_id, 'posts', 'update' FROM DUAL
+            WHERE NOT (OLD.post_id <=> NEW.post_id AND OLD.user_id <=> NEW.user_id
+                AND OLD.recipe_id <=> NEW.recipe_id AND OLD.category <=> NEW.category
+                AND OLD.posted_time <=> NEW.posted_time);
+DROP TRIGGER IF EXISTS `posts_delete_change`;
+CREATE TRIGGER `posts_delete_change` AFTER DELETE ON `posts` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', OLD.post_id, 'posts', 'delete');
+
+DROP TRIGGER IF EXISTS `recipes_insert_change`;
+CREATE TRIGGER `recipes_insert_change` AFTER INSERT ON `recipes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', NEW.recipe_id, 'recipes', 'insert');
+DROP TRIGGER IF EXISTS `recipes_update_change`;
+CREATE TRIGGER `recipes_update_change` AFTER UPDATE ON `recipes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', OLD.recipe_id, 'recipes', 'update'),
+        ('recipe', NEW.recipe_id, 'recipes', 'update');
+DROP TRIGGER IF EXISTS `recipes_delete_change`;
+CREATE TRIGGER `recipes_delete_change` AFTER DELETE ON `recipes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', OLD.recipe_id, 'recipes', 'delete');
+
+DROP TRIGGER IF EXISTS `recipes_steps_insert_change`;
+CREATE TRIGGER `recipes_steps_insert_change` AFTER INSERT ON `recipes_steps` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', NEW.recipe_id, 'recipes_steps', 'insert');
+DROP TRIGGER IF EXISTS `recipes_steps_update_change`;
+CREATE TRIGGER `recipes_steps_update_change` AFTER UPDATE ON `recipes_steps` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', OLD.recipe_id, 'recipes_steps', 'update'),
+        ('recipe', NEW.recipe_id, 'recipes_steps', 'update');
+DROP TRIGGER IF EXISTS `recipes_steps_delete_change`;
+CREATE TRIGGER `recipes_steps_delete_change` AFTER DELETE ON `recipes_steps` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', OLD.recipe_id, 'recipes_steps', 'delete');
+
+DROP TRIGGER IF EXISTS `recipe_ingredients_insert_change`;
+CREATE TRIGGER `recipe_ingredients_insert_change` AFTER INSERT ON `recipe_ingredients` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', NEW.recipe_id, 'recipe_ingredients', 'insert');
+DROP TRIGGER IF EXISTS `recipe_ingredients_update_change`;
+CREATE TRIGGER `recipe_ingredients_update_change` AFTER UPDATE ON `recipe_ingredients` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', OLD.recipe_id, 'recipe_ingredients', 'update'),
+        ('recipe', NEW.recipe_id, 'recipe_ingredients', 'update');
+DROP TRIGGER IF EXISTS `recipe_ingredients_delete_change`;
+CREATE TRIGGER `recipe_ingredients_delete_change` AFTER DELETE ON `recipe_ingredients` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('recipe', OLD.recipe_id, 'recipe_ingredients', 'delete');
+
+DROP TRIGGER IF EXISTS `likes_insert_change`;
+CREATE TRIGGER `likes_insert_change` AFTER INSERT ON `likes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', NEW.post_id, 'likes', 'insert');
+DROP TRIGGER IF EXISTS `likes_update_change`;
+CREATE TRIGGER `likes_update_change` AFTER UPDATE ON `likes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', OLD.post_id, 'likes', 'update'),
+        ('post', NEW.post_id, 'likes', 'update');
+DROP TRIGGER IF EXISTS `likes_delete_change`;
+CREATE TRIGGER `likes_delete_change` AFTER DELETE ON `likes` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', OLD.post_id, 'likes', 'delete');
+
+DROP TRIGGER IF EXISTS `comments_insert_change`;
+CREATE TRIGGER `comments_insert_change` AFTER INSERT ON `comments` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', NEW.post_id, 'comments', 'insert');
+DROP TRIGGER IF EXISTS `comments_update_change`;
+CREATE TRIGGER `comments_update_change` AFTER UPDATE ON `comments` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', OLD.post_id, 'comments', 'update'),
+        ('post', NEW.post_id, 'comments', 'update');
+DROP TRIGGER IF EXISTS `comments_delete_change`;
+CREATE TRIGGER `comments_delete_change` AFTER DELETE ON `comments` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        VALUES ('post', OLD.post_id, 'comments', 'delete');
+
+DROP TRIGGER IF EXISTS `user_tombstones_insert_change`;
+CREATE TRIGGER `user_tombstones_insert_change` AFTER INSERT ON `user_tombstones` FOR EACH ROW
+    INSERT INTO `change_log` (`entity`, `entity_id`, `source_table`, `operation`)
+        SELECT 'post', `post_id`, 'user_tombstones', 'insert' FROM `posts` WHERE `user_id` = NEW.user_id;
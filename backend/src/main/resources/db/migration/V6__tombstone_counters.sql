@@ -0,0 +1,34 @@
+-- Takes the likes and comments of a deleted user out of the like_count and comment_count of the posts they
+-- liked and commented on as soon as their tombstone is added, instead of when their UserPurger deletes them,
+-- so that the most liked posts are ranked without them straight away. The likes and comments of a tombstoned
+-- user are then no longer counted when they are deleted, nor by PostCounterReconciler.
+
+DROP TRIGGER IF EXISTS `user_tombstones_insert_count`;
+CREATE TRIGGER `user_tombstones_insert_count` AFTER INSERT ON `user_tombstones` FOR EACH ROW
+    UPDATE `posts` SET
+        `like_count` = `like_count` - (SELECT COUNT(*) FROM `likes`
+            WHERE `likes`.`post_id` = `posts`.`post_id` AND `likes`.`user_id` = NEW.user_id),
+        `comment_count` = `comment_count` - (SELECT COUNT(*) FROM `comments`
+            WHERE `comments`.`post_id` = `posts`.`post_id` AND `comments`.`user_id` = NEW.user_id)
+        WHERE `post_id` IN (SELECT `post_id` FROM `likes` WHERE `user_id` = NEW.user_id
+            UNION SELECT `post_id` FROM `comments` WHERE `user_id` = NEW.user_id);
+
+DROP TRIGGER IF EXISTS `likes_delete_count`;
+CREATE TRIGGER `likes_delete_count` AFTER DELETE ON `likes` FOR EACH ROW
+    UPDATE `posts` SET `like_count` = `like_count` - 1 WHERE `post_id` = OLD.post_id
+        AND OLD.user_id NOT IN (SELECT `user_id` FROM `user_tombstones`);
+
+DROP TRIGGER IF EXISTS `comments_delete_count`;
+CREATE TRIGGER `comments_delete_count` AFTER DELETE ON `comments` FOR EACH ROW
+    UPDATE `posts` SET `comment_count` = `comment_count` - 1 WHERE `post_id` = OLD.post_id
+        AND OLD.user_id NOT IN (SELECT `user_id` FROM `user_tombstones`);
+
+-- Counts again the posts liked or commented on by users tombstoned before the triggers were added
+UPDATE `posts` SET
+    `like_count` = (SELECT COUNT(*) FROM `likes` WHERE `likes`.`post_id` = `posts`.`post_id`
+        AND `likes`.`user_id` NOT IN (SELECT `user_id` FROM `user_tombstones`)),
+    `comment_count` = (SELECT COUNT(*) FROM `comments` WHERE `comments`.`post_id` = `posts`.`post_id`
+        AND `comments`.`user_id` NOT IN (SELECT `user_id` FROM `user_tombstones`))
+    WHERE `post_id` IN (SELECT `post_id` FROM `likes` WHERE `user_id` IN (SELECT `user_id` FROM `user_tombstones`)
+        UNION SELECT `post_id` FROM `comments`
+            WHERE `user_id` IN (SELECT `user_id` FROM `user_tombstones`));
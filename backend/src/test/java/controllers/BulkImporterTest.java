@@ -0,0 +1,141 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkImporterTest {
+    private static MySQLController mySQLController;
+
+    @TempDir
+    Path directory;
+
+    private final String prefix = UUID.randomUUID().toString().substring(0, 8);
+    private final ByteArrayOutputStream progress = new ByteArrayOutputStream();
+
+    @BeforeAll
+    static void setUp() {
+        mySQLController = new MySQLController(new MySQLController().getConnectionPool());
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        for (String table : Arrays.asList("user_info", "recipes", "posts", "likes")) {
+            String column = table.equals("recipes") ? "recipe_id" : "user_id";
+            try (Connection connection = mySQLController.getConnectionPool().getConnection();
+                 PreparedStatement preparedStmt = connection.prepareStatement(
+                         "DELETE FROM `" + table + "` WHERE `" + column + "` LIKE ?")) {
+                preparedStmt.setString(1, this.prefix + "%");
+                preparedStmt.execute();
+            }
+        }
+    }
+
+    private BulkImporter createImporter(boolean keepIndexes) {
+        return new BulkImporter(mySQLController.getConnectionPool(), 2, 2, keepIndexes,
+                new PrintStream(this.progress, true));
+    }
+
+    private Path write(String name, String... lines) throws IOException {
+        return Files.write(this.directory.resolve(name), Arrays.asList(lines));
+    }
+
+    private int countIndexColumns(String table) throws SQLException {
+        try (Connection connection = mySQLController.getConnectionPool().getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement("SELECT COUNT(*) FROM " +
+                     "`information_schema`.`statistics` WHERE `table_schema` = DATABASE() AND `table_name` = ?")) {
+            preparedStmt.setString(1, table);
+            try (ResultSet countResult = preparedStmt.executeQuery()) {
+                countResult.next();
+                return countResult.getInt(1);
+            }
+        }
+    }
+
+    private User findUser(String userId) {
+        return Arrays.stream(mySQLController.getAllUsers()).filter(user -> user.getId().equals(userId))
+                .findFirst().orElse(null);
+    }
+
+    @Test
+    void testImportTables() throws Exception {
+        String author = this.prefix + "-author";
+        String liker = this.prefix + "-liker";
+        String post = this.prefix + "-post";
+        Map<String, Path> files = new LinkedHashMap<>();
+        // Listed out of order, to check that likes are imported after the posts they refer to
+        files.put("likes", this.write("likes.jsonl",
+                "{\"user_id\": \"" + liker + "\", \"post_id\": \"" + post + "\", \"category\": \"Others\"}"));
+        files.put("posts", this.write("posts.jsonl",
+                "{\"post_id\": \"" + post + "\", \"user_id\": \"" + author + "\", \"recipe_id\": \"" + this.prefix +
+                        "\", \"category\": \"Others\", \"posted_time\": \"2021-12-01 12:00:30\"}"));
+        files.put("recipes", this.write("recipes.csv", "recipe_id,title", this.prefix + ",Imported Cake"));
+        files.put("user_info", this.write("users.csv",
+                "user_id,username,password,bio",
+                author + ",importer,123,\"Bakes, \"\"mostly\"\"\"",
+                liker + ",liker,456,\"\"",
+                this.prefix + "-extra,extra,789,"));
+        int postIndexColumns = this.countIndexColumns("posts");
+
+        Map<String, Long> imported = this.createImporter(false).importTables(files);
+        assertEquals(Arrays.asList("user_info", "recipes", "posts", "likes"), Arrays.asList(
+                imported.keySet().toArray()));
+        assertEquals(3, imported.get("user_info"));
+        assertEquals(postIndexColumns, this.countIndexColumns("posts"));
+
+        assertEquals("Bakes, \"mostly\"", this.findUser(author).getBio());
+        assertEquals("", this.findUser(liker).getBio());
+        assertEquals("", this.findUser(this.prefix + "-extra").getBio());
+        Post importedPost = Arrays.stream(mySQLController.getMostLikedPosts(1000))
+                .filter(candidate -> candidate.getId().equals(post)).findFirst().orElseThrow();
+        assertEquals("Imported Cake", importedPost.getRecipe().getTitle());
+        assertEquals(1, importedPost.getNumLikes());
+        assertTrue(this.progress.toString().contains("user_info: imported 3 rows"));
+    }
+
+    @Test
+    void testImportAgainSkipsSavedRows() throws Exception {
+        String row = "{\"user_id\": \"" + this.prefix + "-%d\", \"username\": \"again\", \"password\": \"1\", " +
+                "\"bio\": \"\"}";
+        Path users = this.write("users.jsonl", String.format(row, 1), String.format(row, 2), String.format(row, 3));
+        this.createImporter(true).importTable("user_info", users);
+        assertEquals(3, this.createImporter(true).importTable("user_info", users));
+        assertEquals(3, Arrays.stream(mySQLController.getAllUsers())
+                .filter(user -> user.getId().startsWith(this.prefix)).count());
+    }
+
+    @Test
+    void testRejectsUnknownTablesAndColumns() throws IOException {
+        Path file = this.write("rows.csv", "user_id,nickname", this.prefix + ",nick");
+        BulkImporter importer = this.createImporter(true);
+        assertThrows(IllegalArgumentException.class, () -> importer.importTable("schema_version", file));
+        assertThrows(IllegalArgumentException.class, () -> importer.importTable("user_info", file));
+    }
+
+    @Test
+    void testFailedImportRestoresIndexes() throws Exception {
+        int indexColumns = this.countIndexColumns("user_info");
+        Path file = this.write("users.csv", "user_id,username,password,bio",
+                this.prefix + "-1,failing,123,", this.prefix + "-2,failing,123,", this.prefix + "-3,failing");
+        assertThrows(IOException.class, () -> this.createImporter(false).importTable("user_info", file));
+        assertEquals(indexColumns, this.countIndexColumns("user_info"));
+    }
+}
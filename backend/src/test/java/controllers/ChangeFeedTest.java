@@ -0,0 +1,170 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeFeedTest {
+    private static MySQLController mySQLController;
+
+    private final List<ChangeFeed.Change> received = new ArrayList<>();
+    private final ChangeFeed.Listener listener = this.received::addAll;
+    private ChangeFeed changeFeed;
+
+    @BeforeAll
+    static void setUp() {
+        // Saves likes and comments right away, so they are in the feed straight after
+        mySQLController = new MySQLController(new MySQLController().getConnectionPool());
+    }
+
+    @AfterEach
+    void closeChangeFeed() {
+        if (this.changeFeed != null) {
+            this.changeFeed.close();
+        }
+    }
+
+    private List<String> receivedFor(String entityId) {
+        return this.received.stream().filter(change -> change.getEntityId().equals(entityId))
+                .map(change -> change.getSourceTable() + " " + change.getOperation())
+                .collect(Collectors.toList());
+    }
+
+    private void insertChange(Connection connection, String entityId) throws SQLException {
+        try (PreparedStatement preparedStmt = connection.prepareStatement("INSERT INTO `change_log` " +
+                "(`entity`, `entity_id`, `source_table`, `operation`) VALUES ('post', ?, 'posts', 'update')")) {
+            preparedStmt.setString(1, entityId);
+            preparedStmt.execute();
+        }
+    }
+
+    @Test
+    void testMutationsAreInTheFeed() throws SQLException {
+        this.changeFeed = new ChangeFeed(mySQLController.getConnectionPool(), 0, 60_000);
+        this.changeFeed.subscribe(this.listener);
+
+        User author = new User("feed-author", "123", "", UUID.randomUUID().toString());
+        User follower = new User("feed-follower", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(author);
+        mySQLController.addNewUser(follower);
+        Recipe recipe = new Recipe("Fed Fish", new ArrayList<>(), new ArrayList<>(), UUID.randomUUID().toString());
+        Post post = new Post(author.getId(), LocalDateTime.now().withNano(0), recipe, "Others",
+                UUID.randomUUID().toString());
+        mySQLController.addNewPost(post);
+        mySQLController.likePost(post, follower);
+        mySQLController.commentPost(post, new Comment("Tasty", follower.getId(), LocalDateTime.now().withNano(0),
+                UUID.randomUUID().toString()));
+        mySQLController.startFollowingDB(author, follower);
+        this.changeFeed.poll();
+
+        // addNewUser saves the new user with updateUser too, which records an update of their user_info row
+        List<String> authorChanges = this.receivedFor(author.getId());
+        assertEquals("user_info insert", authorChanges.get(0));
+        assertEquals("follows insert", authorChanges.get(authorChanges.size() - 1));
+        assertEquals(List.of("posts insert", "likes insert", "comments insert"), this.receivedFor(post.getId()));
+        assertEquals(List.of("recipes insert"), this.receivedFor(recipe.getId()));
+        for (int i = 1; i < this.received.size(); i++) {
+            assertTrue(this.received.get(i - 1).getSequence() < this.received.get(i).getSequence());
+        }
+
+        // Nothing is given twice
+        this.changeFeed.poll();
+        assertEquals(this.received.size(), this.received.stream().mapToLong(ChangeFeed.Change::getSequence)
+                .distinct().count());
+    }
+
+    @Test
+    void testUncommittedChangeHoldsBackLaterOnes() throws SQLException {
+        this.changeFeed = new ChangeFeed(mySQLController.getConnectionPool(), 0, 60_000);
+        this.changeFeed.subscribe(this.listener);
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+
+        try (Connection connection = mySQLController.getConnectionPool().getConnection()) {
+            connection.setAutoCommit(false);
+            this.insertChange(connection, first);
+            try (Connection otherConnection = mySQLController.getConnectionPool().getConnection()) {
+                this.insertChange(otherConnection, second);
+            }
+            this.changeFeed.poll();
+            assertTrue(this.receivedFor(second).isEmpty());
+            connection.commit();
+        }
+
+        this.changeFeed.poll();
+        List<String> entityIds = this.received.stream().map(ChangeFeed.Change::getEntityId)
+                .filter(id -> id.equals(first) || id.equals(second)).collect(Collectors.toList());
+        assertEquals(List.of(first, second), entityIds);
+    }
+
+    @Test
+    void testRolledBackChangeIsSkipped() throws SQLException {
+        this.changeFeed = new ChangeFeed(mySQLController.getConnectionPool(), 0, 0);
+        this.changeFeed.subscribe(this.listener);
+        String rolledBack = UUID.randomUUID().toString();
+        String committed = UUID.randomUUID().toString();
+
+        try (Connection connection = mySQLController.getConnectionPool().getConnection()) {
+            connection.setAutoCommit(false);
+            this.insertChange(connection, rolledBack);
+            connection.rollback();
+            connection.setAutoCommit(true);
+            this.insertChange(connection, committed);
+        }
+
+        this.changeFeed.poll();
+        assertTrue(this.receivedFor(rolledBack).isEmpty());
+        assertEquals(List.of("posts update"), this.receivedFor(committed));
+    }
+
+    @Test
+    void testUnusedSequencesDoNotHoldBackLaterChanges() throws SQLException {
+        User author = new User("feed-editor", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(author);
+        Recipe recipe = new Recipe("Edited Eel", new ArrayList<>(), new ArrayList<>(), UUID.randomUUID().toString());
+        LocalDateTime postedTime = LocalDateTime.now().withNano(0);
+        Post post = new Post(author.getId(), postedTime, recipe, "Others", UUID.randomUUID().toString());
+        mySQLController.addNewPost(post);
+
+        // Without a wait for missing changes, nothing would be held back anyway
+        this.changeFeed = new ChangeFeed(mySQLController.getConnectionPool(), 0, 60_000);
+        this.changeFeed.subscribe(this.listener);
+        // The posts_update_change trigger inserts with INSERT ... SELECT, which takes more sequences than it uses
+        mySQLController.editPost(new Post(author.getId(), postedTime, recipe, "Japanese", post.getId()));
+        String later = UUID.randomUUID().toString();
+        try (Connection connection = mySQLController.getConnectionPool().getConnection()) {
+            this.insertChange(connection, later);
+        }
+        this.changeFeed.poll();
+
+        assertEquals(List.of("posts update", "posts update"), this.receivedFor(post.getId()));
+        assertEquals(List.of("posts update"), this.receivedFor(later));
+        mySQLController.deletePost(post.getId());
+        mySQLController.deleteUser(author);
+    }
+
+    @Test
+    void testUnsubscribe() throws SQLException {
+        this.changeFeed = new ChangeFeed(mySQLController.getConnectionPool(), 0, 0);
+        long sequence = this.changeFeed.subscribe(this.listener);
+        assertTrue(sequence > 0 || this.changeFeed.getChangesSince(0, 1).isEmpty());
+        this.changeFeed.unsubscribe(this.listener);
+        try (Connection connection = mySQLController.getConnectionPool().getConnection()) {
+            this.insertChange(connection, UUID.randomUUID().toString());
+        }
+        this.changeFeed.poll();
+        assertTrue(this.received.isEmpty());
+    }
+}
@@ -0,0 +1,52 @@
+package controllers;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogPrunerTest {
+    private static final ConnectionPool connectionPool = new MySQLController().getConnectionPool();
+
+    private void insertChange(String entityId, int daysAgo) throws SQLException {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement("INSERT INTO `change_log` " +
+                     "(`entity`, `entity_id`, `changed_time`) VALUES ('post', ?, NOW() - INTERVAL ? DAY)")) {
+            preparedStmt.setString(1, entityId);
+            preparedStmt.setInt(2, daysAgo);
+            preparedStmt.execute();
+        }
+    }
+
+    private boolean isLogged(String entityId) throws SQLException {
+        try (Connection connection = connectionPool.getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM `change_log` WHERE `entity_id` = ?")) {
+            preparedStmt.setString(1, entityId);
+            try (ResultSet countResult = preparedStmt.executeQuery()) {
+                countResult.next();
+                return countResult.getInt(1) > 0;
+            }
+        }
+    }
+
+    @Test
+    void testOldChangesAreDeleted() throws SQLException {
+        String oldChange = UUID.randomUUID().toString();
+        String newChange = UUID.randomUUID().toString();
+        this.insertChange(oldChange, (int) ChangeLogPruner.RETENTION_DAYS + 1);
+        this.insertChange(newChange, 1);
+
+        try (ChangeLogPruner pruner = new ChangeLogPruner(connectionPool, 0)) {
+            assertTrue(pruner.prune() >= 1);
+            assertFalse(this.isLogged(oldChange));
+            assertTrue(this.isLogged(newChange));
+            assertEquals(0, pruner.prune());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package controllers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private ConnectionPool connectionPool;
+
+    @BeforeEach
+    void setupConnectionPool() {
+        this.connectionPool = new ConnectionPool("jdbc:mysql://localhost:8889/foodstagram", "admin",
+                "1234", 1, 2, 500, 60_000);
+    }
+
+    @AfterEach
+    void closeConnectionPool() {
+        this.connectionPool.close();
+    }
+
+    @Test
+    void testBorrowAndReturn() throws SQLException {
+        Connection connection = this.connectionPool.getConnection();
+        assertEquals(1, this.connectionPool.getActiveCount());
+        connection.close();
+        assertEquals(0, this.connectionPool.getActiveCount());
+        assertEquals(1, this.connectionPool.getIdleCount());
+        assertTrue(connection.isClosed());
+    }
+
+    @Test
+    void testReturnedConnectionIsReused() throws SQLException {
+        this.connectionPool.getConnection().close();
+        this.connectionPool.getConnection().close();
+        assertEquals(1, this.connectionPool.getTotalCount());
+        assertEquals(2, this.connectionPool.getBorrowCount());
+    }
+
+    @Test
+    void testMaxSizeIsEnforced() throws SQLException {
+        Connection first = this.connectionPool.getConnection();
+        Connection second = this.connectionPool.getConnection();
+        assertThrows(SQLException.class, () -> this.connectionPool.getConnection());
+        assertEquals(1, this.connectionPool.getTimeoutCount());
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void testUnclosedStatementIsDetected() throws SQLException {
+        Connection connection = this.connectionPool.getConnection();
+        PreparedStatement statement = connection.prepareStatement("SELECT * FROM `posts` WHERE `post_id`=?");
+        statement.setString(1, "a");
+        statement.executeQuery();
+        connection.close();
+        assertEquals(1, this.connectionPool.getLeakedStatementCount());
+        assertTrue(statement.isClosed());
+    }
+
+    @Test
+    void testClosedStatementIsNotALeak() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1")) {
+            statement.executeQuery();
+        }
+        assertEquals(0, this.connectionPool.getLeakedStatementCount());
+        assertEquals(0, this.connectionPool.getLeakedResultSetCount());
+    }
+
+    @Test
+    void testPreparedStatementIsReused() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+                statement.setInt(1, 1);
+                statement.executeQuery();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("SELECT ?")) {
+                statement.setInt(1, 2);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    assertEquals(2, resultSet.getInt(1));
+                }
+            }
+        }
+        assertEquals(1, this.connectionPool.getStatementCacheMissCount());
+        assertEquals(1, this.connectionPool.getStatementCacheHitCount());
+        assertEquals(0, this.connectionPool.getLeakedResultSetCount());
+    }
+
+    @Test
+    void testClosingCachedStatementClosesResultSet() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            PreparedStatement statement = connection.prepareStatement("SELECT 1");
+            ResultSet resultSet = statement.executeQuery();
+            statement.close();
+            assertTrue(resultSet.isClosed());
+            assertTrue(statement.isClosed());
+            assertThrows(SQLException.class, statement::executeQuery);
+        }
+    }
+
+    @Test
+    void testStatementInUseIsNotShared() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement first = connection.prepareStatement("SELECT ?");
+             PreparedStatement second = connection.prepareStatement("SELECT ?")) {
+            first.setInt(1, 1);
+            second.setInt(1, 2);
+            try (ResultSet firstResult = first.executeQuery(); ResultSet secondResult = second.executeQuery()) {
+                firstResult.next();
+                secondResult.next();
+                assertEquals(1, firstResult.getInt(1));
+                assertEquals(2, secondResult.getInt(1));
+            }
+        }
+        assertEquals(0, this.connectionPool.getStatementCacheHitCount());
+    }
+
+    @Test
+    void testOpenStatementCount() throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            Statement statement = connection.createStatement();
+            PreparedStatement preparedStatement = connection.prepareStatement("SELECT 1");
+            assertEquals(2, this.connectionPool.getOpenStatementCount());
+            statement.close();
+            preparedStatement.close();
+            assertEquals(0, this.connectionPool.getOpenStatementCount());
+        }
+    }
+
+    @Test
+    void testQueriesAreMeasured() throws SQLException {
+        QueryMetrics queryMetrics = this.connectionPool.getQueryMetrics();
+        queryMetrics.setSlowQueryMillis(0);
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT ? AS `a` UNION ALL SELECT ?")) {
+            statement.setString(1, "first");
+            statement.setString(2, "second");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    resultSet.getString("a");
+                }
+                assertSame(statement, resultSet.getStatement());
+            }
+        }
+        QueryMetrics.Stats stats = queryMetrics.getStatementStats().get("SELECT ? AS `a` UNION ALL SELECT ?");
+        assertEquals(1, stats.getCount());
+        assertEquals(2, stats.getRowCount());
+        assertEquals("first".length() + "second".length(), stats.getByteCount());
+        assertEquals(1, stats.getLatency().getCount());
+        assertTrue(queryMetrics.getSlowQueries().get(0).endsWith("with parameters ['first', 'second']"));
+
+        try (Connection connection = this.connectionPool.getConnection();
+             Statement statement = connection.createStatement()) {
+            assertThrows(SQLException.class, () -> statement.executeQuery("SELECT * FROM `no_such_table`"));
+        }
+        assertEquals(1, queryMetrics.getStatementStats().get("SELECT * FROM `no_such_table`").getErrorCount());
+    }
+}
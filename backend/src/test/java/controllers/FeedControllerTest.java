@@ -2,14 +2,18 @@ package controllers;
 
 import entities.Feed;
 import entities.Post;
+import entities.Recipe;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import use_cases.FeedCursor;
 import use_cases.FeedManager;
 import use_cases.LoginManager;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,6 +81,97 @@ class FeedControllerTest {
         assertTrue(actualMessage.contains(expectedMessage));
     }
 
+    @Test
+    void testGetSelectedPostInputLoadMore(){
+        ArrayList<String> input = new ArrayList<>(List.of("98"));
+        inOut.setInput(input);
+        Feed feed = feedManager.getCurrentUsersFeed();
+        String postsString = feedController.generateDisplayedPosts(feed.getDisplayedPosts());
+        int actual = feedController.getSelectedPostInput(postsString, feed.getDisplayedPosts().size(), true);
+
+        assertEquals(98, actual);
+    }
+
+    @Test
+    void testGetPostsPage(){
+        Post[] allPosts = mySQLController.getAllPosts();
+        ArrayList<Post> pagedPosts = new ArrayList<>();
+        FeedCursor cursor = null;
+        Post[] page;
+        do {
+            page = mySQLController.getPostsPage(cursor, 2);
+            assertTrue(page.length <= 2);
+            pagedPosts.addAll(Arrays.asList(page));
+            if (page.length > 0) {
+                cursor = FeedCursor.after(page[page.length - 1]);
+            }
+        } while (page.length == 2);
+
+        assertEquals(allPosts.length, pagedPosts.size());
+        assertTrue(pagedPosts.containsAll(Arrays.asList(allPosts)));
+        for (int i = 1; i < pagedPosts.size(); i++) {
+            assertFalse(pagedPosts.get(i).getTime().isAfter(pagedPosts.get(i - 1).getTime()));
+        }
+    }
+
+    private FeedController createFeedOfOtherPosts(ArrayList<Integer> pageSizes) {
+        InMemoryDatabaseManager databaseManager = new InMemoryDatabaseManager() {
+            @Override
+            public Post[] getPostsPage(FeedCursor cursor, int limit) {
+                Post[] page = super.getPostsPage(cursor, limit);
+                pageSizes.add(page.length);
+                return page;
+            }
+        };
+        LoginManager memoryLoginManager = new LoginManager(databaseManager);
+        memoryLoginManager.signUp("browser", "1234");
+        memoryLoginManager.login("browser", "1234");
+        String authorId = memoryLoginManager.getCurrUser().getId();
+        LocalDateTime postedTime = LocalDateTime.of(2021, 12, 1, 12, 0);
+        for (int i = 0; i < 500; i++) {
+            Recipe recipe = new Recipe("Toast", new ArrayList<>(), new ArrayList<>(), UUID.randomUUID().toString());
+            databaseManager.addNewPost(new Post(authorId, postedTime.plusMinutes(i), recipe, "Others",
+                    UUID.randomUUID().toString()));
+        }
+        return new FeedController(inOut, databaseManager, memoryLoginManager,
+                new PostController(inOut, databaseManager, memoryLoginManager));
+    }
+
+    @Test
+    void testBrowseFeedStopsSkippingEmptyPages() {
+        ArrayList<Integer> pageSizes = new ArrayList<>();
+        FeedController memoryFeedController = this.createFeedOfOtherPosts(pageSizes);
+
+        // Filter by Chinese cuisine, which no post is, then go back to the filters and to the main menu
+        inOut.setInput(new ArrayList<>(List.of("1", "0", "99", "99")));
+        inOut.clearOutputs();
+        memoryFeedController.run(ShellAction.BROWSEFEED);
+
+        // There are more posts to look through, so the user is not told there are none
+        assertEquals(10, pageSizes.size());
+        assertFalse(inOut.getOutputs().contains(
+                "There aren't any posts suitable for the chosen filter. Pick a different filter."));
+        assertTrue(inOut.getOutputs().contains("Returning to main menu."));
+    }
+
+    @Test
+    void testBrowseFeedLoadsMoreUntilTheLastPage() {
+        ArrayList<Integer> pageSizes = new ArrayList<>();
+        FeedController memoryFeedController = this.createFeedOfOtherPosts(pageSizes);
+
+        // Go back from the cuisines, filter by Chinese cuisine and load more until every post was read
+        inOut.setInput(new ArrayList<>(List.of("1", "99", "1", "0", "98", "98", "98", "98", "98", "99")));
+        inOut.clearOutputs();
+        memoryFeedController.run(ShellAction.BROWSEFEED);
+
+        // 50 full pages, and an empty one that shows there are no more
+        assertEquals(51, pageSizes.size());
+        assertEquals(0, pageSizes.get(50));
+        assertTrue(inOut.getOutputs().contains(
+                "There aren't any posts suitable for the chosen filter. Pick a different filter."));
+        assertTrue(inOut.getOutputs().contains("Returning to main menu."));
+    }
+
     @Test
     void testGetFilterInput() {
         ArrayList<String> input = new ArrayList<>(List.of("0"));
@@ -0,0 +1,64 @@
+package controllers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportRowsTest {
+    @TempDir
+    Path directory;
+
+    private ImportRows open(String name, String... lines) throws IOException {
+        return ImportRows.open(Files.write(this.directory.resolve(name), Arrays.asList(lines)));
+    }
+
+    @Test
+    void testCsv() throws IOException {
+        try (ImportRows rows = this.open("rows.csv", "id,text,note", "1,plain,",
+                "2,\"a, \"\"quoted\"\"", "line\",\"\"")) {
+            assertEquals(Arrays.asList("id", "text", "note"), rows.getColumns());
+            assertArrayEquals(new String[]{"1", "plain", null}, rows.next());
+            assertArrayEquals(new String[]{"2", "a, \"quoted\"\nline", ""}, rows.next());
+            assertNull(rows.next());
+        }
+    }
+
+    @Test
+    void testCsvWithMissingValues() throws IOException {
+        try (ImportRows rows = this.open("rows.csv", "id,text", "1")) {
+            assertThrows(IOException.class, rows::next);
+        }
+    }
+
+    @Test
+    void testJsonLines() throws IOException {
+        try (ImportRows rows = this.open("rows.jsonl", "{\"id\": 1, \"text\": \"tab\\there \\u00e9\", \"ok\": true}",
+                "", "{ \"ok\" : false , \"id\" : 2 }", "{\"id\": null, \"text\": \"\\\"\"}")) {
+            assertEquals(Arrays.asList("id", "text", "ok"), rows.getColumns());
+            assertArrayEquals(new String[]{"1", "tab\there \u00e9", "true"}, rows.next());
+            assertArrayEquals(new String[]{"2", null, "false"}, rows.next());
+            assertArrayEquals(new String[]{null, "\"", null}, rows.next());
+            assertNull(rows.next());
+        }
+    }
+
+    @Test
+    void testJsonLinesWithUnexpectedKey() throws IOException {
+        try (ImportRows rows = this.open("rows.jsonl", "{\"id\": 1}", "{\"id\": 2, \"extra\": 3}")) {
+            rows.next();
+            assertThrows(IOException.class, rows::next);
+        }
+    }
+
+    @Test
+    void testMalformedJson() {
+        assertThrows(IOException.class, () -> this.open("rows.jsonl", "{\"id\": [1]}"));
+        assertThrows(IOException.class, () -> this.open("rows.jsonl", "{\"id\": 1"));
+    }
+}
@@ -0,0 +1,183 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import use_cases.DatabaseSnapshot;
+import use_cases.FeedCursor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryDatabaseManagerTest {
+    private static final LocalDateTime POSTED_TIME = LocalDateTime.of(2021, 12, 1, 12, 0);
+
+    private InMemoryDatabaseManager databaseManager;
+    private User author;
+    private User liker;
+
+    @BeforeEach
+    void setUp() {
+        this.databaseManager = new InMemoryDatabaseManager();
+        this.author = new User("author", "123", "", UUID.randomUUID().toString());
+        this.liker = new User("liker", "123", "", UUID.randomUUID().toString());
+        this.databaseManager.addNewUser(this.author);
+        this.databaseManager.addNewUser(this.liker);
+    }
+
+    private Post createPost(LocalDateTime postedTime) {
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        ingredients.add(new CountableIngredient("Egg", 2));
+        ArrayList<String> steps = new ArrayList<>();
+        steps.add("Boil the egg");
+        Recipe recipe = new Recipe("Boiled Egg", ingredients, steps, UUID.randomUUID().toString());
+        return new Post(this.author.getId(), postedTime, recipe, "Others", UUID.randomUUID().toString());
+    }
+
+    @Test
+    void testAddNewPost() {
+        Post post = this.createPost(POSTED_TIME);
+        post.addComment(new Comment("Looks good", this.liker.getId(), POSTED_TIME, UUID.randomUUID().toString()));
+        this.databaseManager.addNewPost(post);
+
+        Post[] posts = this.databaseManager.getAllPosts();
+        assertEquals(1, posts.length);
+        assertNotSame(post, posts[0]);
+        assertEquals(post.getRecipe().getSteps(), posts[0].getRecipe().getSteps());
+        assertEquals(1, posts[0].getComments().size());
+        assertTrue(this.databaseManager.postExistsInDB(post.getId()));
+    }
+
+    @Test
+    void testAddNewPostIsAtomic() {
+        Post post = this.createPost(POSTED_TIME);
+        post.addComment(new Comment(null, this.liker.getId(), POSTED_TIME, UUID.randomUUID().toString()));
+        this.databaseManager.addNewPost(post);
+
+        assertFalse(this.databaseManager.postExistsInDB(post.getId()));
+    }
+
+    @Test
+    void testEditPost() {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        post.getRecipe().setTitle("Soft Boiled Egg");
+        assertEquals("Boiled Egg", this.databaseManager.getAllPosts()[0].getRecipe().getTitle());
+
+        this.databaseManager.editPost(post);
+        assertEquals("Soft Boiled Egg", this.databaseManager.getAllPosts()[0].getRecipe().getTitle());
+    }
+
+    @Test
+    void testLikePostOnce() {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        this.databaseManager.likePost(post, this.liker);
+        this.databaseManager.likePost(post, this.liker);
+
+        Post savedPost = this.databaseManager.getAllPosts()[0];
+        assertEquals(1, savedPost.getNumLikes());
+        assertEquals("liker", savedPost.getLikedUsers().get(0).getUsername());
+    }
+
+    @Test
+    void testGetPostsPage() {
+        ArrayList<Post> posts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Post post = this.createPost(POSTED_TIME.plusHours(i % 3));
+            posts.add(post);
+            this.databaseManager.addNewPost(post);
+        }
+
+        ArrayList<Post> pages = new ArrayList<>();
+        FeedCursor cursor = null;
+        Post[] page;
+        do {
+            page = this.databaseManager.getPostsPage(cursor, 2);
+            for (Post post : page) {
+                pages.add(post);
+                cursor = FeedCursor.after(post);
+            }
+        } while (page.length > 0);
+
+        assertEquals(posts.size(), pages.size());
+        for (int i = 1; i < pages.size(); i++) {
+            Post previous = pages.get(i - 1);
+            Post post = pages.get(i);
+            assertTrue(previous.getTime().isAfter(post.getTime()) || (previous.getTime().equals(post.getTime())
+                    && previous.getId().compareTo(post.getId()) > 0));
+        }
+    }
+
+    @Test
+    void testGetUserByUsername() {
+        assertEquals(this.author.getId(), this.databaseManager.getUserByUsername("author").getId());
+        assertFalse(this.databaseManager.addNewUser(new User("author", "456", "", UUID.randomUUID().toString())));
+
+        this.author.setUsername("writer");
+        assertTrue(this.databaseManager.updateUser(this.author));
+        assertNull(this.databaseManager.getUserByUsername("author"));
+        assertEquals(this.author.getId(), this.databaseManager.getUserByUsername("writer").getId());
+    }
+
+    @Test
+    void testDeleteUser() {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        this.databaseManager.likePost(post, this.liker);
+        this.liker.addFollowing(this.author);
+        this.databaseManager.updateUser(this.liker);
+
+        this.databaseManager.deleteUser(this.liker);
+        assertEquals(0, this.databaseManager.getAllPosts()[0].getNumLikes());
+        assertEquals(0, this.databaseManager.loadSnapshot().getUser(this.author.getId()).getFollowers().size());
+
+        this.databaseManager.deleteUser(this.author);
+        assertEquals(0, this.databaseManager.getAllPosts().length);
+        assertEquals(0, this.databaseManager.getPostsByAuthor(this.author.getId()).length);
+    }
+
+    @Test
+    void testLoadSnapshotIsOneGraph() {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        this.databaseManager.likePost(post, this.liker);
+        this.liker.addFollowing(this.author);
+        this.databaseManager.updateUser(this.liker);
+
+        DatabaseSnapshot snapshot = this.databaseManager.loadSnapshot();
+        User author = snapshot.getUser(this.author.getId());
+        User liker = snapshot.getUser(this.liker.getId());
+        assertSame(snapshot.getPost(post.getId()), author.getPosts().get(0));
+        assertSame(liker, snapshot.getPost(post.getId()).getLikedUsers().get(0));
+        assertSame(liker, author.getFollowers().get(0));
+        assertEquals(1, liker.getLikeHistory().get("Others"));
+    }
+
+    @Test
+    void testConcurrentLikes() throws InterruptedException {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        int numUsers = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < numUsers; i++) {
+            User user = new User("user" + i, "123", "", UUID.randomUUID().toString());
+            executor.execute(() -> {
+                this.databaseManager.addNewUser(user);
+                this.databaseManager.likePost(post, user);
+                this.databaseManager.getPostsPage(null, 10);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(numUsers, this.databaseManager.getAllPosts()[0].getNumLikes());
+        assertEquals(numUsers + 2, this.databaseManager.getAllUsers().length);
+    }
+}
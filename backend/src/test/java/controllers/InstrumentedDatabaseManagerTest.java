@@ -0,0 +1,57 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.Test;
+import use_cases.AsyncDatabaseManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentedDatabaseManagerTest {
+    private final QueryMetrics queryMetrics = new QueryMetrics(-1, null);
+    private final InstrumentedDatabaseManager databaseManager = new InstrumentedDatabaseManager(
+            new InMemoryDatabaseManager(), this.queryMetrics);
+
+    @Test
+    void testMethodsAreCounted() {
+        User user = new User("measured", "123", "", UUID.randomUUID().toString());
+        assertTrue(this.databaseManager.addNewUser(user));
+        for (int i = 0; i < 3; i++) {
+            this.databaseManager.addNewPost(new Post(user.getId(), LocalDateTime.now(), new Recipe("Timed Toast",
+                    new ArrayList<>(), new ArrayList<>(), UUID.randomUUID().toString()), "Others",
+                    UUID.randomUUID().toString()));
+        }
+        assertEquals(3, this.databaseManager.getAllPosts().length);
+        assertEquals(1, this.databaseManager.getAllUsers().length);
+        try (Stream<Post> posts = this.databaseManager.streamAllPosts()) {
+            assertEquals(3, posts.collect(Collectors.toList()).size());
+        }
+
+        QueryMetrics.Stats addNewPost = this.queryMetrics.getMethodStats().get("addNewPost");
+        assertEquals(3, addNewPost.getCount());
+        assertEquals(3, addNewPost.getLatency().getCount());
+        assertEquals(3, this.queryMetrics.getMethodStats().get("getAllPosts").getRowCount());
+        assertEquals(1, this.queryMetrics.getMethodStats().get("getAllUsers").getRowCount());
+        assertEquals(3, this.queryMetrics.getMethodStats().get("streamAllPosts").getRowCount());
+        assertTrue(this.queryMetrics.dump().contains("addNewPost"));
+    }
+
+    @Test
+    void testAsyncCallsAreCountedOnTheTimedManagersExecutor() {
+        MySQLController mySQLController = new MySQLController();
+        InstrumentedDatabaseManager instrumented = new InstrumentedDatabaseManager(mySQLController,
+                this.queryMetrics);
+        AsyncDatabaseManager async = instrumented.async();
+
+        assertSame(mySQLController.async().getExecutor(), async.getExecutor());
+        assertSame(instrumented, async.getDatabaseManager());
+        int numPosts = async.getAllPosts().join().length;
+        assertEquals(1, this.queryMetrics.getMethodStats().get("getAllPosts").getCount());
+        assertEquals(numPosts, this.queryMetrics.getMethodStats().get("getAllPosts").getRowCount());
+    }
+}
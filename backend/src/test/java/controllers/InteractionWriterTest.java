@@ -0,0 +1,137 @@
+package controllers;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InteractionWriterTest {
+    private static final String DATABASE_URL = "jdbc:mysql://localhost:8889/foodstagram?rewriteBatchedStatements=true";
+    private ConnectionPool connectionPool;
+    private Path journalFile;
+    private String postId;
+
+    @BeforeEach
+    void setupInteractionWriterTest() throws IOException {
+        this.connectionPool = new ConnectionPool(DATABASE_URL, "admin", "1234", 1, 2, 5000, 60_000);
+        // Brings the schema up to date
+        new MySQLController(this.connectionPool);
+        this.journalFile = Files.createTempFile("interactions", ".journal");
+        this.postId = UUID.randomUUID().toString();
+    }
+
+    @AfterEach
+    void cleanUpInteractionWriterTest() throws Exception {
+        try (Connection connection = this.connectionPool.getConnection()) {
+            for (String table : new String[]{"likes", "comments"}) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM `" + table + "` WHERE `post_id`=?")) {
+                    statement.setString(1, this.postId);
+                    statement.execute();
+                }
+            }
+        }
+        this.connectionPool.close();
+        Files.deleteIfExists(this.journalFile);
+    }
+
+    private int countRows(String table) throws SQLException {
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM `" + table + "` WHERE `post_id`=?")) {
+            statement.setString(1, this.postId);
+            try (ResultSet countResult = statement.executeQuery()) {
+                countResult.next();
+                return countResult.getInt(1);
+            }
+        }
+    }
+
+    @Test
+    void testInteractionsAreSavedInOneBatch() throws Exception {
+        try (InteractionWriter writer = new InteractionWriter(this.connectionPool, this.journalFile, 1000, 60_000)) {
+            for (int i = 0; i < 100; i++) {
+                writer.like("user-" + i, this.postId, "Others");
+            }
+            writer.comment("user-0", this.postId, LocalDateTime.now(), "Nice", UUID.randomUUID().toString());
+            assertEquals(101, writer.getQueueDepth());
+            assertEquals(0, this.countRows("likes"));
+
+            writer.flush();
+            assertEquals(0, writer.getQueueDepth());
+            assertEquals(1, writer.getFlushCount());
+            assertEquals(101, writer.getFlushedCount());
+            assertEquals(100, this.countRows("likes"));
+            assertEquals(1, this.countRows("comments"));
+            assertEquals(0, Files.size(this.journalFile));
+        }
+    }
+
+    @Test
+    void testFlusherSavesInBackground() throws Exception {
+        try (InteractionWriter writer = new InteractionWriter(this.connectionPool, this.journalFile, 1000, 10)) {
+            writer.like("user-0", this.postId, "Others");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (writer.getFlushedCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, this.countRows("likes"));
+        }
+    }
+
+    @Test
+    void testJournalIsReplayed() throws Exception {
+        ConnectionPool closedPool = new ConnectionPool(DATABASE_URL, "admin", "1234", 0, 1, 100, 60_000);
+        closedPool.close();
+        // The database cannot be reached, so the like is only in the journal when the writer stops
+        InteractionWriter failingWriter = new InteractionWriter(closedPool, this.journalFile, 1000, 60_000);
+        failingWriter.like("user-0", this.postId, "Others");
+        failingWriter.close();
+        assertTrue(Files.size(this.journalFile) > 0);
+
+        // A record that was cut off while it was being written is not replayed
+        Files.write(this.journalFile, "TA==".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (InteractionWriter writer = new InteractionWriter(this.connectionPool, this.journalFile, 1000, 60_000)) {
+            assertEquals(1, writer.getQueueDepth());
+            writer.flush();
+        }
+        assertEquals(1, this.countRows("likes"));
+    }
+
+    @Test
+    void testJournalCannotBeShared() throws Exception {
+        try (InteractionWriter writer = new InteractionWriter(this.connectionPool, this.journalFile, 1000, 60_000)) {
+            assertThrows(IOException.class,
+                    () -> new InteractionWriter(this.connectionPool, this.journalFile, 1000, 60_000));
+            // The writer that holds the journal carries on
+            writer.like("user-0", this.postId, "Others");
+            writer.flush();
+            assertEquals(1, this.countRows("likes"));
+        }
+    }
+
+    @Test
+    void testRejectedInteractionIsDropped() throws Exception {
+        try (InteractionWriter writer = new InteractionWriter(this.connectionPool, this.journalFile, 1000, 60_000)) {
+            writer.like("user-0", this.postId, "Others");
+            writer.comment("user-0", this.postId, LocalDateTime.now(), null, UUID.randomUUID().toString());
+            writer.flush();
+            assertEquals(1, writer.getDroppedCount());
+            assertEquals(1, this.countRows("likes"));
+            assertEquals(0, writer.getQueueDepth());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package controllers;
+
+import entities.Post;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+
+/**
+ * Measures how long getAllPosts and reading the likes of its posts take as the number of likes grows to 1M.
+ * Run it against a development database: it adds benchmark users, posts and likes
+ * (all ids start with "bench-") and deletes them again when it is done.
+ */
+public class LikesLoadingBenchmark {
+    private static final int NUM_USERS = 1000;
+    private static final int NUM_POSTS = 10_000;
+    private static final int[] NUM_LIKES = {10_000, 100_000, 1_000_000};
+    private static final int ROWS_PER_INSERT = 1000;
+
+    public static void main(String[] args) throws SQLException {
+        MySQLController mySQLController = new MySQLController();
+        try (Connection connection = mySQLController.getConnectionPool().getConnection()) {
+            deleteBenchmarkRows(connection);
+            insertUsersAndPosts(connection);
+            int insertedLikes = 0;
+            for (int numLikes : NUM_LIKES) {
+                insertLikes(connection, insertedLikes, numLikes);
+                insertedLikes = numLikes;
+
+                // Warm up once so that class loading and JIT are not part of the measurement
+                loadLikes(mySQLController.getAllPosts());
+                long start = System.nanoTime();
+                int loadedLikes = loadLikes(mySQLController.getAllPosts());
+                long elapsed = System.nanoTime() - start;
+
+                System.out.printf("%,9d likes (%,d loaded): %,7d ms, %,5d ns per like%n",
+                        numLikes, loadedLikes, elapsed / 1_000_000, elapsed / numLikes);
+            }
+            deleteBenchmarkRows(connection);
+        }
+    }
+
+    /**
+     * getAllPosts reads the likes of the posts the first time they are needed, so they are read here.
+     * @return the number of likes of the posts.
+     */
+    static int loadLikes(Post[] posts) {
+        int likes = 0;
+        for (Post post : posts) {
+            likes += post.getLikedUsers().size();
+        }
+        return likes;
+    }
+
+    static void insertUsersAndPosts(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO `recipes` (`recipe_id`, `title`) VALUES ('bench-recipe', 'Benchmark')");
+        }
+        insertRows(connection, "INSERT INTO `user_info` (`user_id`, `username`, `password`, `bio`) VALUES ",
+                "(?,?,'password','')", 0, NUM_USERS, (statement, index, i) -> {
+                    statement.setString(index, "bench-user-" + i);
+                    statement.setString(index + 1, "bench-user-" + i);
+                });
+        Timestamp postedTime = Timestamp.valueOf(LocalDateTime.of(2021, 1, 1, 0, 0));
+        insertRows(connection, "INSERT INTO `posts` (`post_id`, `user_id`, `recipe_id`, `category`, " +
+                "`posted_time`) VALUES ", "(?,?,'bench-recipe','benchmark',?)", 0, NUM_POSTS,
+                (statement, index, i) -> {
+                    statement.setString(index, "bench-post-" + i);
+                    statement.setString(index + 1, "bench-user-" + (i % NUM_USERS));
+                    statement.setTimestamp(index + 2, postedTime);
+                });
+    }
+
+    static void insertLikes(Connection connection, int from, int to) throws SQLException {
+        insertRows(connection, "INSERT INTO `likes` (`user_id`, `post_id`, `category`) VALUES ",
+                "(?,?,'benchmark')", from, to, (statement, index, i) -> {
+                    // Every user likes a post at most once
+                    statement.setString(index, "bench-user-" + (i % NUM_USERS));
+                    statement.setString(index + 1, "bench-post-" + ((i / NUM_USERS) % NUM_POSTS));
+                });
+    }
+
+    private static void insertRows(Connection connection, String insert, String rowPlaceholders,
+                                   int from, int to, RowBinder binder) throws SQLException {
+        int parametersPerRow = rowPlaceholders.length() - rowPlaceholders.replace("?", "").length();
+        for (int start = from; start < to; start += ROWS_PER_INSERT) {
+            int rows = Math.min(ROWS_PER_INSERT, to - start);
+            String query = insert + String.join(",", Collections.nCopies(rows, rowPlaceholders));
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                for (int row = 0; row < rows; row++) {
+                    binder.bind(statement, row * parametersPerRow + 1, start + row);
+                }
+                statement.execute();
+            }
+        }
+    }
+
+    static void deleteBenchmarkRows(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM `likes` WHERE `category` = 'benchmark'");
+            statement.execute("DELETE FROM `posts` WHERE `category` = 'benchmark'");
+            statement.execute("DELETE FROM `recipes` WHERE `recipe_id` = 'bench-recipe'");
+            statement.execute("DELETE FROM `user_info` WHERE `user_id` LIKE 'bench-user-%'");
+        }
+    }
+
+    private interface RowBinder {
+        void bind(PreparedStatement statement, int firstParameter, int row) throws SQLException;
+    }
+}
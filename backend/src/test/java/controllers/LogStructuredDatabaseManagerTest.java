@@ -0,0 +1,158 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import use_cases.DatabaseSnapshot;
+import use_cases.FeedCursor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStructuredDatabaseManagerTest {
+    private static final LocalDateTime POSTED_TIME = LocalDateTime.of(2021, 12, 1, 12, 0);
+
+    @TempDir
+    Path directory;
+
+    private LogStructuredDatabaseManager databaseManager;
+    private User author;
+    private User liker;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.databaseManager = new LogStructuredDatabaseManager(this.directory);
+        this.author = new User("author", "123", "", UUID.randomUUID().toString());
+        this.liker = new User("liker", "123", "", UUID.randomUUID().toString());
+        this.databaseManager.addNewUser(this.author);
+        this.databaseManager.addNewUser(this.liker);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        this.databaseManager.close();
+    }
+
+    private Post createPost(LocalDateTime postedTime) {
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        ingredients.add(new CountableIngredient("Egg", 2));
+        ingredients.add(new MeasurableIngredient("Salt", 1.5f, "g"));
+        ArrayList<String> steps = new ArrayList<>();
+        steps.add("Boil the egg");
+        Recipe recipe = new Recipe("Boiled Egg", ingredients, steps, UUID.randomUUID().toString());
+        return new Post(this.author.getId(), postedTime, recipe, "Others", UUID.randomUUID().toString());
+    }
+
+    private void reopen() throws IOException {
+        this.databaseManager.close();
+        this.databaseManager = new LogStructuredDatabaseManager(this.directory);
+    }
+
+    @Test
+    void testAddNewPostSurvivesReopen() throws IOException {
+        Post post = this.createPost(POSTED_TIME);
+        post.addComment(new Comment("Looks good", this.liker.getId(), POSTED_TIME, UUID.randomUUID().toString()));
+        this.databaseManager.addNewPost(post);
+        this.databaseManager.likePost(post, this.liker);
+        this.reopen();
+
+        Post[] posts = this.databaseManager.getAllPosts();
+        assertEquals(1, posts.length);
+        assertEquals(post.getRecipe().getSteps(), posts[0].getRecipe().getSteps());
+        assertEquals("g", posts[0].getRecipe().getMeasurableIngredients().get(0).getIngredientMeasurementType());
+        assertEquals("Looks good", posts[0].getComments().get(0).getCommentText());
+        assertEquals("liker", posts[0].getLikedUsers().get(0).getUsername());
+        assertEquals(POSTED_TIME, posts[0].getTime());
+    }
+
+    @Test
+    void testAddNewPostIsAtomic() {
+        Post post = this.createPost(POSTED_TIME);
+        post.addComment(new Comment(null, this.liker.getId(), POSTED_TIME, UUID.randomUUID().toString()));
+        this.databaseManager.addNewPost(post);
+
+        assertFalse(this.databaseManager.postExistsInDB(post.getId()));
+    }
+
+    @Test
+    void testEditPost() {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        post.getRecipe().setTitle("Soft Boiled Egg");
+        this.databaseManager.editPost(post);
+
+        assertEquals("Soft Boiled Egg", this.databaseManager.getAllPosts()[0].getRecipe().getTitle());
+        assertEquals(1, this.databaseManager.getPostsPage(null, 10).length);
+    }
+
+    @Test
+    void testGetPostsPage() {
+        for (int i = 0; i < 5; i++) {
+            this.databaseManager.addNewPost(this.createPost(POSTED_TIME.plusHours(i % 3)));
+        }
+
+        ArrayList<Post> pages = new ArrayList<>();
+        FeedCursor cursor = null;
+        Post[] page;
+        do {
+            page = this.databaseManager.getPostsPage(cursor, 2);
+            for (Post post : page) {
+                pages.add(post);
+                cursor = FeedCursor.after(post);
+            }
+        } while (page.length > 0);
+
+        assertEquals(5, pages.size());
+        for (int i = 1; i < pages.size(); i++) {
+            Post previous = pages.get(i - 1);
+            Post post = pages.get(i);
+            assertTrue(previous.getTime().isAfter(post.getTime()) || (previous.getTime().equals(post.getTime())
+                    && previous.getId().compareTo(post.getId()) > 0));
+        }
+    }
+
+    @Test
+    void testDeleteUser() throws IOException {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        this.databaseManager.likePost(post, this.liker);
+        this.databaseManager.commentPost(post, new Comment("Nice", this.liker.getId(), POSTED_TIME,
+                UUID.randomUUID().toString()));
+        this.liker.addFollowing(this.author);
+        this.databaseManager.updateUser(this.liker);
+
+        this.databaseManager.deleteUser(this.liker);
+        this.reopen();
+        Post savedPost = this.databaseManager.getAllPosts()[0];
+        assertEquals(0, savedPost.getNumLikes());
+        assertEquals(0, savedPost.getComments().size());
+        DatabaseSnapshot snapshot = this.databaseManager.loadSnapshot();
+        assertEquals(1, snapshot.getUsers().length);
+        assertEquals(0, snapshot.getUser(this.author.getId()).getFollowers().size());
+        assertTrue(this.databaseManager.addNewUser(new User("liker", "456", "", UUID.randomUUID().toString())));
+    }
+
+    @Test
+    void testLoadSnapshotIsOneGraph() {
+        Post post = this.createPost(POSTED_TIME);
+        this.databaseManager.addNewPost(post);
+        this.databaseManager.likePost(post, this.liker);
+        this.liker.addFollowing(this.author);
+        this.databaseManager.updateUser(this.liker);
+
+        DatabaseSnapshot snapshot = this.databaseManager.loadSnapshot();
+        User author = snapshot.getUser(this.author.getId());
+        User liker = snapshot.getUser(this.liker.getId());
+        assertSame(snapshot.getPost(post.getId()), author.getPosts().get(0));
+        assertSame(liker, snapshot.getPost(post.getId()).getLikedUsers().get(0));
+        assertSame(liker, author.getFollowers().get(0));
+        assertEquals(1, liker.getLikeHistory().get("Others"));
+    }
+}
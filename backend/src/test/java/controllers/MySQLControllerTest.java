@@ -0,0 +1,302 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.Test;
+import use_cases.AsyncDatabaseManager;
+import use_cases.DatabaseSnapshot;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MySQLControllerTest {
+    private static final MySQLController mySQLController = new MySQLController();
+
+    private Post createSamplePost() {
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        ingredients.add(new CountableIngredient("Egg", 2));
+        ingredients.add(new MeasurableIngredient("Flour", 200, "g"));
+        ArrayList<String> steps = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            steps.add("Step " + i);
+        }
+        Recipe recipe = new Recipe("Batch Cake", ingredients, steps, UUID.randomUUID().toString());
+        return new Post("1", LocalDateTime.now().withNano(0), recipe, "Others", UUID.randomUUID().toString());
+    }
+
+    private Post findPost(String postId) {
+        for (Post post : mySQLController.getAllPosts()) {
+            if (post.getId().equals(postId)) {
+                return post;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void testAddNewPost() throws Exception {
+        Post post = this.createSamplePost();
+        post.addComment(new Comment("Looks good", "2", LocalDateTime.now().withNano(0),
+                UUID.randomUUID().toString()));
+        mySQLController.addNewPost(post);
+
+        Post savedPost = this.findPost(post.getId());
+        assertNotNull(savedPost);
+        assertEquals(post.getRecipe().getSteps(), savedPost.getRecipe().getSteps());
+        assertEquals(2, savedPost.getRecipe().getIngredients().size());
+        assertEquals(1, savedPost.getComments().size());
+        mySQLController.deletePost(post.getId());
+    }
+
+    @Test
+    void testAddNewPostIsAtomic() {
+        Post post = this.createSamplePost();
+        // A comment without text cannot be saved, so none of the post should be saved
+        post.addComment(new Comment(null, "2", LocalDateTime.now(), UUID.randomUUID().toString()));
+        mySQLController.addNewPost(post);
+
+        assertNull(this.findPost(post.getId()));
+        assertFalse(mySQLController.postExistsInDB(post.getId()));
+        assertThrows(DatabaseException.class, () -> mySQLController.getRecipe(post.getRecipe().getId()));
+    }
+
+    @Test
+    void testEditPost() throws Exception {
+        Post post = this.createSamplePost();
+        mySQLController.addNewPost(post);
+
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        ingredients.add(new CountableIngredient("Egg", 3));
+        ingredients.add(new CountableIngredient("Sugar", 1));
+        ArrayList<String> steps = new ArrayList<>(post.getRecipe().getSteps().subList(0, 10));
+        steps.set(4, "Changed step");
+        Recipe recipe = new Recipe("Edited Cake", ingredients, steps, post.getRecipe().getId());
+        Post editedPost = new Post(post.getAuthorId(), post.getTime(), recipe, "Others", post.getId());
+        mySQLController.editPost(editedPost);
+
+        Recipe savedRecipe = mySQLController.getRecipe(recipe.getId());
+        assertEquals("Edited Cake", savedRecipe.getTitle());
+        assertEquals(steps, savedRecipe.getSteps());
+        assertEquals(2, savedRecipe.getCountableIngredients().size());
+        assertEquals(0, savedRecipe.getMeasurableIngredients().size());
+        for (CountableIngredient ingredient : savedRecipe.getCountableIngredients()) {
+            assertEquals(ingredient.getIngredientName().equals("Egg") ? 3 : 1, ingredient.getIngredientNumber());
+        }
+        mySQLController.deletePost(post.getId());
+    }
+
+    @Test
+    void testStatementsAreClosed() {
+        ConnectionPool connectionPool = mySQLController.getConnectionPool();
+        long leakedStatements = connectionPool.getLeakedStatementCount();
+        long leakedResultSets = connectionPool.getLeakedResultSetCount();
+        Post post = this.createSamplePost();
+        mySQLController.addNewPost(post);
+        mySQLController.getAllPosts();
+        mySQLController.getPostsPage(null, 10);
+        mySQLController.getAllUsers();
+        mySQLController.editPost(post);
+        mySQLController.deletePost(post.getId());
+
+        assertEquals(0, connectionPool.getOpenStatementCount());
+        assertEquals(leakedStatements, connectionPool.getLeakedStatementCount());
+        assertEquals(leakedResultSets, connectionPool.getLeakedResultSetCount());
+    }
+
+    @Test
+    void testStreamAllPosts() {
+        HashMap<String, Post> posts = new HashMap<>();
+        for (Post post : mySQLController.getAllPosts()) {
+            // Loads the details of the post's group now, not while the stream is open
+            post.getRecipe();
+            posts.put(post.getId(), post);
+        }
+        ConnectionPool connectionPool = mySQLController.getConnectionPool();
+        int activeConnections = connectionPool.getActiveCount();
+
+        // A fetch size of 2 makes the posts be read over several fetches
+        try (Stream<Post> stream = mySQLController.streamAllPosts(2)) {
+            List<Post> streamedPosts = stream.collect(Collectors.toList());
+            assertEquals(posts.size(), streamedPosts.size());
+            for (Post streamedPost : streamedPosts) {
+                Post post = posts.get(streamedPost.getId());
+                assertEquals(post.getRecipe().getTitle(), streamedPost.getRecipe().getTitle());
+                assertEquals(post.getRecipe().getSteps(), streamedPost.getRecipe().getSteps());
+                assertEquals(post.getNumLikes(), streamedPost.getNumLikes());
+                assertEquals(post.getComments().size(), streamedPost.getComments().size());
+            }
+            // Reading the posts to the end gives the connection back
+            assertEquals(activeConnections, connectionPool.getActiveCount());
+        }
+    }
+
+    @Test
+    void testClosingStreamGivesBackConnection() {
+        ConnectionPool connectionPool = mySQLController.getConnectionPool();
+        int activeConnections = connectionPool.getActiveCount();
+        long leakedStatements = connectionPool.getLeakedStatementCount();
+
+        try (Stream<Post> stream = mySQLController.streamAllPosts(1)) {
+            assertTrue(stream.findFirst().isPresent());
+            assertEquals(activeConnections + 1, connectionPool.getActiveCount());
+        }
+        assertEquals(activeConnections, connectionPool.getActiveCount());
+        assertEquals(0, connectionPool.getOpenStatementCount());
+        assertEquals(leakedStatements, connectionPool.getLeakedStatementCount());
+    }
+
+    @Test
+    void testAsyncLookups() {
+        AsyncDatabaseManager async = mySQLController.async();
+        CompletableFuture<Post[]> posts = async.getAllPosts();
+        CompletableFuture<User[]> users = async.getAllUsers();
+
+        assertEquals(mySQLController.getAllPosts().length, posts.join().length);
+        assertEquals(mySQLController.getAllUsers().length, users.join().length);
+    }
+
+    @Test
+    void testClosingPoolStopsItsBackgroundWork() {
+        ConnectionPool connectionPool = MySQLController.createConnectionPool(
+                "jdbc:mysql://localhost:8889/foodstagram");
+        MySQLController poolController = new MySQLController(connectionPool);
+        ExecutorService executor = poolController.async().getExecutor();
+        UserPurger userPurger = MySQLController.getUserPurger(connectionPool);
+        assertNotNull(poolController.getChangeFeed());
+        assertSame(executor, poolController.async().getExecutor());
+
+        connectionPool.close();
+        assertTrue(executor.isShutdown());
+        // The pool is forgotten, so what is asked for it afterwards is new (and stopped right away)
+        assertNotSame(userPurger, MySQLController.getUserPurger(connectionPool));
+        assertTrue(poolController.async().getExecutor().isShutdown());
+    }
+
+    @Test
+    void testPostsPageIsLoadedLazily() {
+        User liker = new User("lazy-liker", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(liker);
+        Post post = this.createSamplePost();
+        post.addLike(liker);
+        mySQLController.addNewPost(post);
+
+        Post[] page = mySQLController.getPostsPage(null, 10);
+        Post pagePost = null;
+        for (Post other : page) {
+            assertFalse(other.isLoaded());
+            if (other.getId().equals(post.getId())) {
+                pagePost = other;
+            }
+        }
+        assertNotNull(pagePost);
+        assertEquals("Batch Cake", pagePost.getRecipeTitle());
+        assertEquals(1, pagePost.getNumLikes());
+        assertFalse(pagePost.isLoaded());
+
+        // The first post that needs its details loads those of the whole page
+        assertEquals(post.getRecipe().getSteps(), pagePost.getRecipe().getSteps());
+        for (Post other : page) {
+            assertTrue(other.isLoaded());
+        }
+        assertEquals(liker.getId(), pagePost.getLikedUsers().get(0).getId());
+        assertEquals(1, pagePost.getNumLikes());
+        mySQLController.deletePost(post.getId());
+    }
+
+    @Test
+    void testGetFeedCards() {
+        Post post = this.createSamplePost();
+        post.addComment(new Comment("Looks good", "2", LocalDateTime.now().withNano(0),
+                UUID.randomUUID().toString()));
+        mySQLController.addNewPost(post);
+
+        FeedCard[] cards = mySQLController.getFeedCards(List.of(UUID.randomUUID().toString(), post.getId()));
+        assertEquals(1, cards.length);
+        assertEquals(post.getId(), cards[0].getPostId());
+        assertEquals("1", cards[0].getAuthorId());
+        assertEquals("eric", cards[0].getAuthorUsername());
+        assertEquals("Batch Cake", cards[0].getRecipeTitle());
+        assertEquals("Others", cards[0].getCategory());
+        assertEquals(post.getTime(), cards[0].getPostedTime());
+        assertEquals(0, cards[0].getNumLikes());
+        assertEquals(1, cards[0].getNumComments());
+        mySQLController.deletePost(post.getId());
+    }
+
+    @Test
+    void testUpdateUserKeepsPostCounters() {
+        User author = new User("counted-author", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(author);
+        Post post = this.createSamplePost();
+        Post likedPost = new Post(author.getId(), post.getTime(), post.getRecipe(), "Others", post.getId());
+        likedPost.addLike(new User("shawn", "1234", "", "2"));
+        mySQLController.addNewPost(likedPost);
+        author.addPost(likedPost);
+        Post newPost = new Post(author.getId(), post.getTime(), this.createSamplePost().getRecipe(), "Others",
+                UUID.randomUUID().toString());
+        author.addPost(newPost);
+
+        // Following someone saves the user again, with all of their posts
+        assertTrue(mySQLController.updateUser(author));
+        FeedCard[] cards = mySQLController.getFeedCards(List.of(likedPost.getId(), newPost.getId()));
+        assertEquals(2, cards.length);
+        assertEquals(1, cards[0].getNumLikes());
+        assertEquals(0, cards[1].getNumLikes());
+
+        author.getPosts().remove(newPost);
+        assertTrue(mySQLController.updateUser(author));
+        assertFalse(mySQLController.postExistsInDB(newPost.getId()));
+        assertEquals(1, mySQLController.getFeedCards(List.of(likedPost.getId()))[0].getNumLikes());
+        mySQLController.deletePost(likedPost.getId());
+        mySQLController.deleteUser(author);
+    }
+
+    @Test
+    void testLikesOfAUserShareOneUserRef() {
+        HashMap<String, UserRef> likers = new HashMap<>();
+        int likes = 0;
+        for (Post post : mySQLController.getAllPosts()) {
+            for (UserRef liker : post.getLikedUsers()) {
+                assertFalse(liker instanceof User);
+                assertSame(likers.computeIfAbsent(liker.getId(), id -> liker), liker);
+                likes++;
+            }
+        }
+        assertTrue(likes > 0);
+    }
+
+    @Test
+    void testLoadSnapshotIsOneGraph() {
+        DatabaseSnapshot snapshot = mySQLController.loadSnapshot();
+        int likes = 0;
+        for (Post post : snapshot.getPosts()) {
+            for (UserRef liker : post.getLikedUsers()) {
+                assertSame(snapshot.getUser(liker.getId()), liker);
+                likes++;
+            }
+            User author = snapshot.getUser(post.getAuthorId());
+            if (author != null) {
+                assertTrue(author.getPosts().stream().anyMatch(authorPost -> authorPost == post));
+            }
+        }
+        int follows = 0;
+        for (User user : snapshot.getUsers()) {
+            for (UserRef follower : user.getFollowers()) {
+                assertSame(snapshot.getUser(follower.getId()), follower);
+                assertTrue(snapshot.getUser(follower.getId()).getFollowing().contains(user));
+                follows++;
+            }
+        }
+        assertTrue(likes > 0);
+        assertTrue(follows > 0);
+        assertEquals(snapshot.getUsers().length, mySQLController.getAllUsers().length);
+    }
+}
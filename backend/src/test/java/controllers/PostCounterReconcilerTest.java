@@ -0,0 +1,133 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostCounterReconcilerTest {
+    private static MySQLController mySQLController;
+    private static User liker;
+
+    @BeforeAll
+    static void setUp() {
+        // Saves likes and comments right away, so the counters can be read straight after
+        mySQLController = new MySQLController(new MySQLController().getConnectionPool());
+        liker = new User("counter-liker", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(liker);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mySQLController.deleteUser(liker);
+    }
+
+    private Post createPost() {
+        Recipe recipe = new Recipe("Counted Cake", new ArrayList<>(), new ArrayList<>(),
+                UUID.randomUUID().toString());
+        Post post = new Post(liker.getId(), LocalDateTime.now().withNano(0), recipe, "Others",
+                UUID.randomUUID().toString());
+        mySQLController.addNewPost(post);
+        return post;
+    }
+
+    private int[] readCounts(Post post) throws SQLException {
+        try (Connection connection = mySQLController.getConnectionPool().getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(
+                     "SELECT `like_count`, `comment_count` FROM `posts` WHERE `post_id` = ?")) {
+            preparedStmt.setString(1, post.getId());
+            try (ResultSet countsResult = preparedStmt.executeQuery()) {
+                assertTrue(countsResult.next());
+                return new int[]{countsResult.getInt("like_count"), countsResult.getInt("comment_count")};
+            }
+        }
+    }
+
+    @Test
+    void testCountersFollowLikesAndComments() throws SQLException {
+        Post post = this.createPost();
+        mySQLController.likePost(post, liker);
+        mySQLController.commentPost(post, new Comment("Looks good", liker.getId(), LocalDateTime.now(),
+                UUID.randomUUID().toString()));
+        mySQLController.commentPost(post, new Comment("Again", liker.getId(), LocalDateTime.now(),
+                UUID.randomUUID().toString()));
+        assertArrayEquals(new int[]{1, 2}, this.readCounts(post));
+
+        Post mostLiked = null;
+        for (Post other : mySQLController.getMostLikedPosts(Integer.MAX_VALUE)) {
+            if (other.getId().equals(post.getId())) {
+                mostLiked = other;
+            }
+        }
+        assertNotNull(mostLiked);
+        assertEquals(1, mostLiked.getNumLikes());
+        assertEquals(2, mostLiked.getNumComments());
+        // The likes themselves are only read when needed
+        assertFalse(mostLiked.isLoaded());
+        assertEquals(1, mostLiked.getLikedUsers().size());
+        assertEquals(1, mostLiked.getNumLikes());
+        assertEquals(2, mostLiked.getNumComments());
+
+        mySQLController.deletePost(post.getId());
+    }
+
+    @Test
+    void testDeletedUsersAreNotCounted() throws SQLException, InterruptedException {
+        Post post = this.createPost();
+        User deleted = new User("counter-deleted", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(deleted);
+        mySQLController.likePost(post, liker);
+        mySQLController.likePost(post, deleted);
+        mySQLController.commentPost(post, new Comment("Bye", deleted.getId(), LocalDateTime.now(),
+                UUID.randomUUID().toString()));
+        assertArrayEquals(new int[]{2, 1}, this.readCounts(post));
+
+        // Their likes and comments stop counting with the tombstone, before they are purged
+        mySQLController.deleteUser(deleted);
+        assertArrayEquals(new int[]{1, 0}, this.readCounts(post));
+        FeedCard card = mySQLController.getFeedCards(List.of(post.getId()))[0];
+        assertEquals(1, card.getNumLikes());
+        assertEquals(0, card.getNumComments());
+        new PostCounterReconciler(mySQLController.getConnectionPool(), 0).reconcile();
+        assertArrayEquals(new int[]{1, 0}, this.readCounts(post));
+
+        // Nor are they taken away a second time when they are purged
+        try (UserPurger purger = new UserPurger(mySQLController.getConnectionPool(), 500, 0, 0)) {
+            purger.purge();
+        }
+        assertArrayEquals(new int[]{1, 0}, this.readCounts(post));
+
+        mySQLController.deletePost(post.getId());
+    }
+
+    @Test
+    void testReconcileCorrectsDrift() throws SQLException {
+        Post post = this.createPost();
+        mySQLController.likePost(post, liker);
+        try (Connection connection = mySQLController.getConnectionPool().getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(
+                     "UPDATE `posts` SET `like_count` = 7, `comment_count` = 3 WHERE `post_id` = ?")) {
+            preparedStmt.setString(1, post.getId());
+            preparedStmt.executeUpdate();
+        }
+
+        PostCounterReconciler reconciler = new PostCounterReconciler(mySQLController.getConnectionPool(), 0);
+        assertEquals(1, reconciler.reconcile());
+        assertArrayEquals(new int[]{1, 0}, this.readCounts(post));
+        assertEquals(0, reconciler.reconcile());
+        assertEquals(1, reconciler.getCorrectedCount());
+
+        mySQLController.deletePost(post.getId());
+    }
+}
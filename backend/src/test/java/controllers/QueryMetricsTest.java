@@ -0,0 +1,74 @@
+package controllers;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryMetricsTest {
+
+    @Test
+    void testNormalize() {
+        assertEquals("SELECT * FROM `posts` WHERE `post_id` IN (...) LIMIT ?",
+                QueryMetrics.normalize("SELECT * FROM `posts`\n    WHERE `post_id` IN (?,?, ?) LIMIT 1000"));
+        assertEquals("SELECT * FROM `user_info` WHERE `username` = ? AND `bio` = ?",
+                QueryMetrics.normalize("SELECT * FROM `user_info` WHERE `username` = 'it''s' AND `bio` = 'a\\\\'"));
+        assertEquals("INSERT INTO `likes_v1` (`user_id`) VALUES (...)",
+                QueryMetrics.normalize("INSERT INTO `likes_v1` (`user_id`) VALUES (?), (?),(?)"));
+    }
+
+    @Test
+    void testSameQueryIsCountedOnce() {
+        QueryMetrics queryMetrics = new QueryMetrics(-1, null);
+        queryMetrics.statement("SELECT 1 FROM `recipes` WHERE `recipe_id` IN (?)").record(1000, false);
+        queryMetrics.statement("SELECT 2 FROM `recipes` WHERE `recipe_id` IN (?,?)").record(1000, true);
+        Map<String, QueryMetrics.Stats> stats = queryMetrics.getStatementStats();
+        assertEquals(1, stats.size());
+        assertEquals(2, stats.get("SELECT ? FROM `recipes` WHERE `recipe_id` IN (...)").getCount());
+        assertEquals(1, stats.get("SELECT ? FROM `recipes` WHERE `recipe_id` IN (...)").getErrorCount());
+    }
+
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1_000_000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMaxMillis());
+        assertEquals(50, histogram.getPercentileMillis(0.5), 50 * 0.2);
+        assertEquals(99, histogram.getPercentileMillis(0.99), 99 * 0.2);
+        assertEquals(100, histogram.getPercentileMillis(1), 0.001);
+        assertEquals(0, new LatencyHistogram().getPercentileMillis(0.5));
+    }
+
+    @Test
+    void testBuckets() {
+        for (long micros = 0; micros < 100_000; micros += 7) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(micros <= LatencyHistogram.upperBoundOf(bucket));
+            assertTrue(bucket == 0 || micros > LatencyHistogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    void testSlowQueryLog() {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        QueryMetrics queryMetrics = new QueryMetrics(10, new PrintStream(log, true));
+        String sql = "SELECT * FROM `posts` WHERE `post_id` = ?";
+        queryMetrics.recordStatement(queryMetrics.statement(sql), sql, Map.of(1, "p1"), 5_000_000, false);
+        assertEquals("", log.toString());
+        queryMetrics.recordStatement(queryMetrics.statement(sql), sql, Map.of(1, "p2"), 25_000_000, false);
+        assertEquals("Slow query (25.0 ms): " + sql + " with parameters ['p2']", log.toString().trim());
+
+        String dump = queryMetrics.dump();
+        assertTrue(dump.contains(sql));
+        assertTrue(dump.contains("Slow query (25.0 ms)"));
+        queryMetrics.reset();
+        assertTrue(queryMetrics.getStatementStats().isEmpty());
+        assertTrue(queryMetrics.getSlowQueries().isEmpty());
+    }
+}
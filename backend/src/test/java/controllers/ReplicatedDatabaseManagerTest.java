@@ -0,0 +1,137 @@
+package controllers;
+
+import entities.User;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Uses a second database on the development server, foodstagram_replica, as a replica of foodstagram.
+ * Replication is done by hand, by copying every table, so the tests decide how far behind the replica is.
+ */
+class ReplicatedDatabaseManagerTest {
+    private static final String REPLICA_URL = "jdbc:mysql://localhost:8889/foodstagram_replica";
+    private static final String[] TABLES = {"user_info", "follows", "posts", "recipes", "recipes_steps",
+            "recipe_ingredients", "likes", "comments", "change_log", "user_tombstones"};
+
+    private static MySQLController primary;
+    private static ConnectionPool replicaPool;
+    private static ReplicaRouter router;
+
+    @BeforeAll
+    static void setUp() throws SQLException {
+        primary = new MySQLController(new MySQLController().getConnectionPool());
+        try (Connection connection = primary.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE DATABASE IF NOT EXISTS `foodstagram_replica`");
+            for (String table : TABLES) {
+                statement.execute("DROP TABLE IF EXISTS `foodstagram_replica`.`" + table + "`");
+                statement.execute("CREATE TABLE `foodstagram_replica`.`" + table + "` LIKE `" + table + "`");
+            }
+        }
+        replicate();
+        replicaPool = MySQLController.createConnectionPool(REPLICA_URL);
+        router = new ReplicaRouter(primary, List.of(MySQLController.forReplica(replicaPool)), 0);
+    }
+
+    @AfterAll
+    static void tearDown() throws SQLException {
+        router.close();
+        replicaPool.close();
+        try (Connection connection = primary.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP DATABASE `foodstagram_replica`");
+        }
+    }
+
+    /**
+     * Brings the replica up to date with the primary.
+     */
+    private static void replicate() throws SQLException {
+        try (Connection connection = primary.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String table : TABLES) {
+                statement.execute("DELETE FROM `foodstagram_replica`.`" + table + "`");
+                statement.execute("INSERT INTO `foodstagram_replica`.`" + table + "` SELECT * FROM `" + table + "`");
+            }
+        }
+        if (router != null) {
+            router.pollPositions();
+        }
+    }
+
+    private static boolean containsUser(User[] users, User user) {
+        for (User other : users) {
+            if (other.sameUser(user)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    void testReadsGoToReplica() throws SQLException {
+        replicate();
+        ReplicatedDatabaseManager session = new ReplicatedDatabaseManager(router, 1000);
+        long replicaReads = router.getReplicaReadCount();
+
+        session.getAllUsers();
+        session.getAllPosts();
+        session.getPostsPage(null, 10);
+        assertEquals(replicaReads + 3, router.getReplicaReadCount());
+    }
+
+    @Test
+    void testSessionReadsItsOwnWrites() throws SQLException {
+        replicate();
+        ReplicatedDatabaseManager session = new ReplicatedDatabaseManager(router, 60_000);
+        ReplicatedDatabaseManager otherSession = new ReplicatedDatabaseManager(router, 60_000);
+        User user = new User("replica-user", "123", "", UUID.randomUUID().toString());
+        assertTrue(session.addNewUser(user));
+        router.pollPositions();
+
+        // The replica does not have the new user yet, so this session reads from the primary
+        long primaryReads = router.getPrimaryReadCount();
+        assertTrue(containsUser(session.getAllUsers(), user));
+        assertTrue(containsUser(session.getAllUsers(), user));
+        assertEquals(primaryReads + 2, router.getPrimaryReadCount());
+        // The other session can tolerate the replica being behind
+        assertFalse(containsUser(otherSession.getAllUsers(), user));
+
+        replicate();
+        long replicaReads = router.getReplicaReadCount();
+        assertTrue(containsUser(session.getAllUsers(), user));
+        assertEquals(replicaReads + 1, router.getReplicaReadCount());
+        session.deleteUser(user);
+    }
+
+    @Test
+    void testLagTolerance() throws Exception {
+        replicate();
+        ReplicatedDatabaseManager writer = new ReplicatedDatabaseManager(router, 0);
+        User user = new User("replica-lag", "123", "", UUID.randomUUID().toString());
+        writer.addNewUser(user);
+        router.pollPositions();
+        Thread.sleep(50);
+        assertTrue(router.getLagMillis(0) >= 50);
+
+        ReplicatedDatabaseManager strictSession = new ReplicatedDatabaseManager(router, 10);
+        ReplicatedDatabaseManager relaxedSession = new ReplicatedDatabaseManager(router, 60_000);
+        assertTrue(containsUser(strictSession.getAllUsers(), user));
+        assertFalse(containsUser(relaxedSession.getAllUsers(), user));
+        relaxedSession.setMaxLagMillis(0);
+        assertTrue(containsUser(relaxedSession.getAllUsers(), user));
+
+        replicate();
+        assertEquals(0, router.getLagMillis(0));
+        writer.deleteUser(user);
+    }
+}
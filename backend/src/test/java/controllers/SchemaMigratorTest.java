@@ -0,0 +1,34 @@
+package controllers;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+    private static final MySQLController mySQLController = new MySQLController();
+
+    @Test
+    void testSchemaIsUpToDate() throws Exception {
+        SchemaMigrator schemaMigrator = new SchemaMigrator(mySQLController.getConnectionPool());
+        assertEquals(SchemaMigrator.getLatestVersion(), schemaMigrator.getCurrentVersion());
+        assertEquals(0, schemaMigrator.migrate());
+    }
+
+    @Test
+    void testLikesHavePrimaryKey() throws SQLException {
+        try (Connection connection = mySQLController.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet keysResult = statement.executeQuery("SHOW KEYS FROM `likes` WHERE `Key_name` = 'PRIMARY'")) {
+            int keyColumns = 0;
+            while (keysResult.next()) {
+                keyColumns++;
+            }
+            assertEquals(2, keyColumns);
+        }
+    }
+}
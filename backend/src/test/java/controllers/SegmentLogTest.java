@@ -0,0 +1,138 @@
+package controllers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentLogTest {
+    private static final int SEGMENT_SIZE = 1024;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] value) {
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testReopenRecoversKeys() throws IOException {
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            log.write(new SegmentLog.Batch().put("a", bytes("1")).put("b", bytes("2")));
+            log.write(new SegmentLog.Batch().delete("a").put("c", bytes("3")));
+        }
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertNull(log.get("a"));
+            assertEquals("2", string(log.get("b")));
+            assertEquals("3", string(log.get("c")));
+            assertEquals(List.of("b", "c"), List.copyOf(log.keySet("")));
+        }
+    }
+
+    @Test
+    void testTornFrameIsDropped() throws IOException {
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            log.write(new SegmentLog.Batch().put("a", bytes("1")));
+            log.write(new SegmentLog.Batch().put("b", bytes("2")).put("c", bytes("3")));
+        }
+        // Damage the last byte of the second frame, as if the app stopped while writing it
+        Path segment = this.segmentFiles().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+            channel.read(contents, 0);
+            int last = contents.capacity() - 1;
+            while (contents.get(last) == 0) {
+                last--;
+            }
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (contents.get(last) + 1)}), last);
+        }
+
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertEquals("1", string(log.get("a")));
+            assertNull(log.get("b"));
+            assertNull(log.get("c"));
+            log.write(new SegmentLog.Batch().put("d", bytes("4")));
+        }
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertEquals(List.of("a", "d"), List.copyOf(log.keySet("")));
+        }
+    }
+
+    @Test
+    void testSealedSegmentsLoadFromFooters() throws IOException {
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            for (int i = 0; i < 100; i++) {
+                log.write(new SegmentLog.Batch().put("key" + i, bytes("value" + i)));
+            }
+            assertTrue(log.getSegmentCount() > 1);
+        }
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertEquals(100, log.getKeyCount());
+            for (int i = 0; i < 100; i++) {
+                assertEquals("value" + i, string(log.get("key" + i)));
+            }
+        }
+    }
+
+    @Test
+    void testCompactionKeepsLatestValues() throws IOException {
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < 20; i++) {
+                    log.write(new SegmentLog.Batch().put("key" + i, bytes(round + "-" + i)));
+                }
+            }
+            log.write(new SegmentLog.Batch().delete("key0"));
+            // The compactor may already have run in the background as segments were sealed
+            log.compact();
+            assertTrue(log.getCompactionCount() > 0);
+            // The 19 values left fit in one segment, next to the one being written to
+            assertEquals(2, log.getSegmentCount());
+            assertEquals(2, this.segmentFiles().size());
+            for (int i = 1; i < 20; i++) {
+                assertEquals("9-" + i, string(log.get("key" + i)));
+            }
+            assertNull(log.get("key0"));
+            log.write(new SegmentLog.Batch().put("key1", bytes("10-1")));
+        }
+        assertEquals(0, Files.list(this.directory).filter(file -> file.toString().endsWith(".tmp")).count());
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertEquals(19, log.getKeyCount());
+            assertEquals("10-1", string(log.get("key1")));
+            assertEquals("9-2", string(log.get("key2")));
+            assertNull(log.get("key0"));
+        }
+    }
+
+    @Test
+    void testOneSegmentLogPerDirectory() throws IOException {
+        try (SegmentLog log = new SegmentLog(this.directory, SEGMENT_SIZE)) {
+            assertThrows(IOException.class, () -> new SegmentLog(this.directory, SEGMENT_SIZE));
+            // The log that holds the directory carries on
+            log.write(new SegmentLog.Batch().put("key1", bytes("1-1")));
+            assertEquals("1-1", string(log.get("key1")));
+        }
+    }
+}
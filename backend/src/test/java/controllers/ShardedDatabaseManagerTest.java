@@ -0,0 +1,265 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import use_cases.DatabaseManager;
+import use_cases.FeedCursor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedDatabaseManagerTest {
+    private static final LocalDateTime POSTED_TIME = LocalDateTime.of(2021, 12, 1, 12, 0);
+    private static final int SHARDS = 3;
+    private static final int USERS = 12;
+
+    private List<InMemoryDatabaseManager> shards;
+    private ShardedDatabaseManager databaseManager;
+    private List<User> users;
+
+    @BeforeEach
+    void setUp() {
+        this.shards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            this.shards.add(new InMemoryDatabaseManager());
+        }
+        this.databaseManager = new ShardedDatabaseManager(this.shards);
+        this.users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            User user = new User("user" + i, "123", "", UUID.randomUUID().toString());
+            assertTrue(this.databaseManager.addNewUser(user));
+            this.users.add(user);
+        }
+    }
+
+    private Post createPost(User author, LocalDateTime postedTime) {
+        Recipe recipe = new Recipe("Toast", new ArrayList<>(), new ArrayList<>(), UUID.randomUUID().toString());
+        return new Post(author.getId(), postedTime, recipe, "Others", UUID.randomUUID().toString());
+    }
+
+    /**
+     * Adds a post by every user, each posted a minute after the last, and returns them newest first.
+     */
+    private List<Post> addPosts() {
+        List<Post> posts = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            Post post = this.createPost(this.users.get(i), POSTED_TIME.plusMinutes(i));
+            this.databaseManager.addNewPost(post);
+            posts.add(0, post);
+        }
+        return posts;
+    }
+
+    private static List<String> ids(Post[] posts) {
+        return Arrays.stream(posts).map(Post::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void testUsersAreOwnedByOneShard() {
+        User[] users = this.databaseManager.getAllUsers();
+        assertEquals(USERS, users.length);
+        Set<String> userIds = new HashSet<>();
+        for (User user : users) {
+            assertTrue(userIds.add(user.getId()));
+        }
+        // Every shard has a copy of every user
+        for (InMemoryDatabaseManager shard : this.shards) {
+            assertEquals(USERS, shard.getAllUsers().length);
+        }
+
+        User sameUsername = new User("user0", "456", "", UUID.randomUUID().toString());
+        assertFalse(this.databaseManager.addNewUser(sameUsername));
+        assertEquals(USERS, this.databaseManager.getAllUsers().length);
+    }
+
+    @Test
+    void testPostsAreSavedOnTheirAuthorsShard() {
+        this.addPosts();
+        int total = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            for (Post post : this.shards.get(i).getAllPosts()) {
+                assertEquals(i, this.databaseManager.shardOf(post.getAuthorId()));
+                total++;
+            }
+        }
+        assertEquals(USERS, total);
+    }
+
+    @Test
+    void testGetAllPostsIsMerged() {
+        List<Post> posts = this.addPosts();
+        assertEquals(ids(posts.toArray(new Post[0])), ids(this.databaseManager.getAllPosts()));
+        try (Stream<Post> stream = this.databaseManager.streamAllPosts()) {
+            assertEquals(new HashSet<>(ids(posts.toArray(new Post[0]))),
+                    stream.map(Post::getId).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    void testStreamAllPostsReadsOneShardAtATime() {
+        int postsPerShard = 100_000;
+        long[] produced = new long[SHARDS];
+        boolean[] opened = new boolean[SHARDS];
+        boolean[] closed = new boolean[SHARDS];
+        List<InMemoryDatabaseManager> streamingShards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            int shard = i;
+            Post post = this.createPost(this.users.get(0), POSTED_TIME);
+            streamingShards.add(new InMemoryDatabaseManager() {
+                @Override
+                public Stream<Post> streamAllPosts() {
+                    opened[shard] = true;
+                    return Stream.generate(() -> {
+                        produced[shard]++;
+                        return post;
+                    }).limit(postsPerShard).onClose(() -> closed[shard] = true);
+                }
+            });
+        }
+        ShardedDatabaseManager streaming = new ShardedDatabaseManager(streamingShards);
+
+        try (Stream<Post> stream = streaming.streamAllPosts()) {
+            Iterator<Post> posts = stream.iterator();
+            assertNotNull(posts.next());
+            // Only what was read has been made, and the other shards are not opened yet
+            assertTrue(produced[0] < postsPerShard);
+            assertFalse(opened[1]);
+
+            long read = 1;
+            while (posts.hasNext()) {
+                posts.next();
+                read++;
+                if (read == postsPerShard + 1) {
+                    assertTrue(closed[0]);
+                    assertFalse(opened[2]);
+                }
+            }
+            assertEquals((long) SHARDS * postsPerShard, read);
+        }
+        for (int i = 0; i < SHARDS; i++) {
+            assertTrue(closed[i]);
+        }
+    }
+
+    @Test
+    void testClosingStreamClosesTheOpenShard() {
+        boolean[] closed = new boolean[SHARDS];
+        List<InMemoryDatabaseManager> streamingShards = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            int shard = i;
+            Post post = this.createPost(this.users.get(0), POSTED_TIME);
+            streamingShards.add(new InMemoryDatabaseManager() {
+                @Override
+                public Stream<Post> streamAllPosts() {
+                    return Stream.of(post, post).onClose(() -> closed[shard] = true);
+                }
+            });
+        }
+        ShardedDatabaseManager streaming = new ShardedDatabaseManager(streamingShards);
+
+        Stream<Post> stream = streaming.streamAllPosts();
+        Iterator<Post> posts = stream.iterator();
+        posts.next();
+        posts.next();
+        posts.next();
+        stream.close();
+        assertTrue(closed[0]);
+        assertTrue(closed[1]);
+        assertFalse(closed[2]);
+    }
+
+    @Test
+    void testGetPostsPage() {
+        List<Post> posts = this.addPosts();
+        // Posts at the same time are ordered by ID across shards too
+        for (int i = 0; i < 4; i++) {
+            Post post = this.createPost(this.users.get(i), POSTED_TIME.minusDays(1));
+            this.databaseManager.addNewPost(post);
+            posts.add(post);
+        }
+        posts.subList(USERS, posts.size()).sort((a, b) -> b.getId().compareTo(a.getId()));
+
+        List<String> paged = new ArrayList<>();
+        FeedCursor cursor = null;
+        Post[] page;
+        do {
+            page = this.databaseManager.getPostsPage(cursor, 5);
+            assertTrue(page.length <= 5);
+            paged.addAll(ids(page));
+            if (page.length > 0) {
+                cursor = FeedCursor.after(page[page.length - 1]);
+            }
+        } while (page.length == 5);
+        assertEquals(ids(posts.toArray(new Post[0])), paged);
+    }
+
+    @Test
+    void testLikesAndCommentsAcrossShards() {
+        List<Post> posts = this.addPosts();
+        Post popular = posts.get(USERS - 1);
+        for (User user : this.users) {
+            this.databaseManager.likePost(popular, user);
+        }
+        this.databaseManager.likePost(posts.get(0), this.users.get(1));
+        User commenter = this.users.stream()
+                .filter(user -> this.databaseManager.shardOf(user.getId())
+                        != this.databaseManager.shardOf(popular.getAuthorId()))
+                .findFirst().orElseThrow();
+        this.databaseManager.commentPost(popular, new Comment("Nice", commenter.getId(), POSTED_TIME,
+                UUID.randomUUID().toString()));
+
+        Post[] mostLiked = this.databaseManager.getMostLikedPosts(2);
+        assertEquals(List.of(popular.getId(), posts.get(0).getId()), ids(mostLiked));
+        assertEquals(USERS, mostLiked[0].getNumLikes());
+        assertEquals(1, mostLiked[0].getNumComments());
+    }
+
+    @Test
+    void testGetFeedCards() {
+        List<Post> posts = this.addPosts();
+        List<String> postIds = List.of(posts.get(3).getId(), posts.get(0).getId(), posts.get(7).getId());
+        FeedCard[] cards = this.databaseManager.getFeedCards(postIds);
+        assertEquals(postIds, Arrays.stream(cards).map(FeedCard::getPostId).collect(Collectors.toList()));
+        // Each card has the username of its author, found on the shard of the post
+        assertEquals(this.users.get(USERS - 4).getUsername(), cards[0].getAuthorUsername());
+        assertEquals("Toast", cards[0].getRecipeTitle());
+    }
+
+    @Test
+    void testDeleteUserAndPost() {
+        List<Post> posts = this.addPosts();
+        this.databaseManager.deletePost(posts.get(0).getId());
+        assertEquals(USERS - 1, this.databaseManager.getAllPosts().length);
+
+        User deleted = this.users.get(5);
+        assertTrue(this.databaseManager.deleteUser(deleted));
+        assertEquals(USERS - 1, this.databaseManager.getAllUsers().length);
+        for (DatabaseManager shard : this.shards) {
+            assertTrue(Arrays.stream(shard.getAllUsers()).noneMatch(user -> user.getId().equals(deleted.getId())));
+        }
+        assertTrue(Arrays.stream(this.databaseManager.getAllPosts())
+                .noneMatch(post -> post.getAuthorId().equals(deleted.getId())));
+    }
+
+    @Test
+    void testMergeTakesTheFirstPosts() {
+        Post a = this.createPost(this.users.get(0), POSTED_TIME.plusMinutes(3));
+        Post b = this.createPost(this.users.get(0), POSTED_TIME.plusMinutes(2));
+        Post c = this.createPost(this.users.get(0), POSTED_TIME.plusMinutes(1));
+        List<Post[]> sorted = List.of(new Post[]{a, c}, new Post[0], new Post[]{b});
+        Post[] merged = ShardedDatabaseManager.merge(sorted,
+                (p1, p2) -> p2.getTime().compareTo(p1.getTime()), 2);
+        assertArrayEquals(new Post[]{a, b}, merged);
+    }
+}
@@ -0,0 +1,74 @@
+package controllers;
+
+import use_cases.DatabaseSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * Measures how long it takes to read a snapshot file of 1M posts and link it into a DatabaseSnapshot,
+ * which is what a SnapshotStore does at the start of the app before it catches up with the database.
+ * It needs no database: the rows are made up in memory. Run it with a heap of at least 4GB.
+ */
+public class SnapshotColdStartBenchmark {
+    private static final int NUM_USERS = 100_000;
+    private static final int NUM_POSTS = 1_000_000;
+    private static final int LIKES_PER_POST = 2;
+    private static final int FOLLOWS_PER_USER = 10;
+    private static final String[] CATEGORIES = {"Breakfast", "Lunch", "Dinner", "Dessert", "Others"};
+
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("foodstagram-snapshot", ".bin");
+        SnapshotFile.write(createTables(), file);
+        System.out.printf("%,d posts: %,d MB snapshot file%n", NUM_POSTS, Files.size(file) / 1_000_000);
+
+        for (int run = 0; run < 3; run++) {
+            System.gc();
+            long start = System.nanoTime();
+            SnapshotTables tables = SnapshotFile.read(file);
+            long read = System.nanoTime();
+            DatabaseSnapshot snapshot = tables.link();
+            long linked = System.nanoTime();
+            System.out.printf("run %d: read %,5d ms, link %,5d ms, %,d users and %,d posts%n", run,
+                    (read - start) / 1_000_000, (linked - read) / 1_000_000,
+                    snapshot.getUsers().length, snapshot.getPosts().length);
+        }
+        Files.delete(file);
+    }
+
+    private static SnapshotTables createTables() {
+        SnapshotTables tables = new SnapshotTables();
+        tables.changeSequence = 1;
+        tables.capturedTime = LocalDateTime.of(2021, 12, 1, 0, 0);
+        for (int i = 0; i < NUM_USERS; i++) {
+            SnapshotTables.UserRow user = new SnapshotTables.UserRow("bench-user-" + i, "user" + i,
+                    "password", "");
+            for (int j = 1; j <= FOLLOWS_PER_USER; j++) {
+                user.followerIds.add("bench-user-" + ((i + j * 7919) % NUM_USERS));
+            }
+            tables.users.put(user.id, user);
+        }
+        for (int i = 0; i < NUM_POSTS; i++) {
+            String category = CATEGORIES[i % CATEGORIES.length];
+            SnapshotTables.PostRow post = new SnapshotTables.PostRow("bench-post-" + i,
+                    "bench-user-" + (i % NUM_USERS), "bench-recipe-" + i, category,
+                    tables.capturedTime.minusMinutes(i));
+            post.recipe = new SnapshotTables.RecipeRow("Recipe " + i);
+            post.recipe.steps.add("Prepare the ingredients");
+            post.recipe.steps.add("Cook for " + (i % 60) + " minutes");
+            post.recipe.ingredients.add(new SnapshotTables.IngredientRow("Egg", 2, 0, null));
+            post.recipe.ingredients.add(new SnapshotTables.IngredientRow("Flour", 0, 200, "g"));
+            if (i % 4 == 0) {
+                post.comments.add(new SnapshotTables.CommentRow("bench-comment-" + i,
+                        "bench-user-" + ((i + 1) % NUM_USERS), post.postedTime, "Looks good"));
+            }
+            for (int j = 1; j <= LIKES_PER_POST; j++) {
+                post.addLike("bench-user-" + ((i + j * 104729) % NUM_USERS), category);
+            }
+            tables.posts.put(post.id, post);
+        }
+        return tables;
+    }
+}
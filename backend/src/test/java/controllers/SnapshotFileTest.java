@@ -0,0 +1,118 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import use_cases.DatabaseSnapshot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotFileTest {
+    private static final LocalDateTime POSTED_TIME = LocalDateTime.of(2021, 12, 1, 12, 0, 30);
+
+    @TempDir
+    Path directory;
+
+    private SnapshotTables createTables() {
+        SnapshotTables tables = new SnapshotTables();
+        tables.changeSequence = 42;
+        tables.capturedTime = POSTED_TIME.plusDays(1);
+        SnapshotTables.UserRow author = new SnapshotTables.UserRow("u1", "author", "123",
+                "Bio with \u00fcn\u00efc\u00f6d\u00e9");
+        SnapshotTables.UserRow liker = new SnapshotTables.UserRow("u2", "liker", "456", "");
+        author.followerIds.add("u2");
+        tables.users.put(author.id, author);
+        tables.users.put(liker.id, liker);
+
+        SnapshotTables.PostRow post = new SnapshotTables.PostRow("p1", "u1", "r1", new String("Others"), POSTED_TIME);
+        post.recipe = new SnapshotTables.RecipeRow("Boiled Egg");
+        post.recipe.steps.add("Boil water");
+        post.recipe.steps.add("Boil the egg");
+        post.recipe.ingredients.add(new SnapshotTables.IngredientRow("Egg", 2, 0, null));
+        post.recipe.ingredients.add(new SnapshotTables.IngredientRow("Salt", 0, 1.5f, "g"));
+        post.comments.add(new SnapshotTables.CommentRow("c1", "u2", POSTED_TIME.plusMinutes(5), "Looks good"));
+        post.addLike("u2", new String("Others"));
+        tables.posts.put(post.id, post);
+        // A post without a time or a recipe is kept in the file, but left out of the graph
+        tables.posts.put("p2", new SnapshotTables.PostRow("p2", "u2", "r2", new String("Others"), null));
+        return tables;
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        Path file = this.directory.resolve("snapshot.bin");
+        SnapshotFile.write(this.createTables(), file);
+        SnapshotTables tables = SnapshotFile.read(file);
+
+        assertEquals(42, tables.changeSequence);
+        assertEquals(POSTED_TIME.plusDays(1), tables.capturedTime);
+        assertEquals(2, tables.posts.size());
+        assertNull(tables.posts.get("p2").postedTime);
+        assertNull(tables.posts.get("p2").recipe);
+
+        DatabaseSnapshot snapshot = tables.link();
+        User author = snapshot.getUser("u1");
+        User liker = snapshot.getUser("u2");
+        assertEquals("Bio with \u00fcn\u00efc\u00f6d\u00e9", author.getBio());
+        assertSame(liker, author.getFollowers().get(0));
+        assertSame(author, liker.getFollowing().get(0));
+
+        assertEquals(1, snapshot.getPosts().length);
+        Post post = snapshot.getPost("p1");
+        assertSame(post, author.getPosts().get(0));
+        assertEquals(POSTED_TIME, post.getTime());
+        assertEquals("Boiled Egg", post.getRecipe().getTitle());
+        assertEquals(2, post.getRecipe().getSteps().size());
+        assertEquals(1, post.getRecipe().getCountableIngredients().size());
+        assertEquals(1.5f, post.getRecipe().getMeasurableIngredients().get(0).getIngredientAmount());
+        assertEquals("Looks good", post.getComments().get(0).getCommentText());
+        assertSame(liker, post.getLikedUsers().get(0));
+        assertEquals(1, liker.getLikeHistory().get("Others"));
+    }
+
+    @Test
+    void testPasswordsAreNotSaved() throws IOException {
+        Path file = this.directory.resolve("snapshot.bin");
+        SnapshotFile.write(this.createTables(), file);
+
+        String contents = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        assertTrue(contents.contains("author"));
+        assertFalse(contents.contains("123"));
+        assertNull(SnapshotFile.read(file).users.get("u1").password);
+        if (file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(file));
+        }
+    }
+
+    @Test
+    void testStringsAreDecodedOnce() throws IOException {
+        Path file = this.directory.resolve("snapshot.bin");
+        SnapshotFile.write(this.createTables(), file);
+        SnapshotTables tables = SnapshotFile.read(file);
+
+        SnapshotTables.PostRow post = tables.posts.get("p1");
+        assertSame(post.category, tables.posts.get("p2").category);
+        assertSame(post.category, post.likeCategories.get(0));
+        assertSame(tables.users.get("u2").id, post.likerIds.get(0));
+    }
+
+    @Test
+    void testDamagedFileIsRejected() throws IOException {
+        Path file = this.directory.resolve("snapshot.bin");
+        SnapshotFile.write(this.createTables(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+    }
+}
@@ -0,0 +1,126 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import use_cases.DatabaseSnapshot;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotStoreTest {
+    private static final MySQLController mySQLController =
+            new MySQLController(new MySQLController().getConnectionPool());
+
+    @TempDir
+    Path directory;
+
+    private Post createPost(User author) {
+        ArrayList<Ingredient> ingredients = new ArrayList<>();
+        ingredients.add(new CountableIngredient("Egg", 2));
+        ArrayList<String> steps = new ArrayList<>();
+        steps.add("Boil the egg");
+        Recipe recipe = new Recipe("Boiled Egg", ingredients, steps, UUID.randomUUID().toString());
+        return new Post(author.getId(), LocalDateTime.now().withNano(0), recipe, "Others",
+                UUID.randomUUID().toString());
+    }
+
+    /**
+     * Checks that a snapshot from a SnapshotStore has the same users, posts, likes and follows as one read
+     * from the database.
+     */
+    private void assertSameAsDatabase(DatabaseSnapshot snapshot) {
+        DatabaseSnapshot expected = mySQLController.loadSnapshot();
+        assertEquals(expected.getUsers().length, snapshot.getUsers().length);
+        assertEquals(expected.getPosts().length, snapshot.getPosts().length);
+        for (User expectedUser : expected.getUsers()) {
+            User user = snapshot.getUser(expectedUser.getId());
+            assertNotNull(user);
+            assertEquals(expectedUser.getUsername(), user.getUsername());
+            assertEquals(expectedUser.getPassword(), user.getPassword());
+            assertEquals(expectedUser.getBio(), user.getBio());
+            assertEquals(expectedUser.getFollowers().size(), user.getFollowers().size());
+            assertEquals(expectedUser.getFollowing().size(), user.getFollowing().size());
+            assertEquals(expectedUser.getLikeHistory(), user.getLikeHistory());
+        }
+        for (Post expectedPost : expected.getPosts()) {
+            Post post = snapshot.getPost(expectedPost.getId());
+            assertNotNull(post);
+            assertEquals(expectedPost.getTime(), post.getTime());
+            assertEquals(expectedPost.getRecipe().getTitle(), post.getRecipe().getTitle());
+            assertEquals(expectedPost.getRecipe().getSteps(), post.getRecipe().getSteps());
+            assertEquals(expectedPost.getNumLikes(), post.getNumLikes());
+            assertEquals(expectedPost.getComments().size(), post.getComments().size());
+        }
+    }
+
+    @Test
+    void testColdStartFromFile() throws Exception {
+        Path file = this.directory.resolve("snapshot.bin");
+        SnapshotStore store = new SnapshotStore(mySQLController.getConnectionPool(), file, 0);
+        store.write();
+        assertTrue(Files.exists(file));
+        assertEquals(1, store.getFullLoadCount());
+
+        SnapshotStore restartedStore = new SnapshotStore(mySQLController.getConnectionPool(), file, 0);
+        this.assertSameAsDatabase(restartedStore.load());
+        assertEquals(0, restartedStore.getFullLoadCount());
+    }
+
+    @Test
+    void testDamagedFileIsReadAgain() throws Exception {
+        Path file = this.directory.resolve("snapshot.bin");
+        Files.write(file, new byte[]{1, 2, 3});
+        SnapshotStore store = new SnapshotStore(mySQLController.getConnectionPool(), file, 0);
+
+        this.assertSameAsDatabase(store.load());
+        assertEquals(1, store.getFullLoadCount());
+        store.close();
+        assertEquals(store.load().getPosts().length, SnapshotFile.read(file).link().getPosts().length);
+    }
+
+    @Test
+    void testCatchUp() throws Exception {
+        Path file = this.directory.resolve("snapshot.bin");
+        SnapshotStore store = new SnapshotStore(mySQLController.getConnectionPool(), file, 0);
+        DatabaseSnapshot before = store.load();
+
+        User author = new User("snapshot-author", "123", "", UUID.randomUUID().toString());
+        User liker = new User("snapshot-liker", "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(author);
+        mySQLController.addNewUser(liker);
+        mySQLController.startFollowingDB(author, liker);
+        Post post = this.createPost(author);
+        mySQLController.addNewPost(post);
+        mySQLController.likePost(post, liker);
+        mySQLController.commentPost(post, new Comment("Looks good", liker.getId(), LocalDateTime.now().withNano(0),
+                UUID.randomUUID().toString()));
+        Post editedPost = new Post(author.getId(), post.getTime(), new Recipe("Soft Boiled Egg",
+                post.getRecipe().getIngredients(), post.getRecipe().getSteps(), post.getRecipe().getId()),
+                "Others", post.getId());
+        mySQLController.editPost(editedPost);
+
+        DatabaseSnapshot after = store.load();
+        assertEquals(1, store.getFullLoadCount());
+        assertTrue(store.getCaughtUpCount() > 0);
+        assertEquals(before.getPosts().length + 1, after.getPosts().length);
+        assertEquals("Soft Boiled Egg", after.getPost(post.getId()).getRecipe().getTitle());
+        assertSame(after.getUser(liker.getId()), after.getPost(post.getId()).getLikedUsers().get(0));
+        assertSame(after.getUser(liker.getId()), after.getUser(author.getId()).getFollowers().get(0));
+        this.assertSameAsDatabase(after);
+
+        mySQLController.deletePost(post.getId());
+        mySQLController.deleteUser(author);
+        mySQLController.deleteUser(liker);
+        DatabaseSnapshot deleted = store.load();
+        assertNull(deleted.getPost(post.getId()));
+        assertNull(deleted.getUser(author.getId()));
+        this.assertSameAsDatabase(deleted);
+        assertEquals(1, store.getFullLoadCount());
+    }
+}
@@ -0,0 +1,111 @@
+package controllers;
+
+import entities.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserPurgerTest {
+    private static MySQLController mySQLController;
+
+    @BeforeAll
+    static void setUp() {
+        // Saves likes and comments right away, so they can be counted straight after
+        mySQLController = new MySQLController(new MySQLController().getConnectionPool());
+    }
+
+    private User createUser(String username) {
+        User user = new User(username, "123", "", UUID.randomUUID().toString());
+        mySQLController.addNewUser(user);
+        return user;
+    }
+
+    private Post createPost(User author) {
+        Recipe recipe = new Recipe("Purged Pie", new ArrayList<>(), new ArrayList<>(), UUID.randomUUID().toString());
+        Post post = new Post(author.getId(), LocalDateTime.now().withNano(0), recipe, "Others",
+                UUID.randomUUID().toString());
+        mySQLController.addNewPost(post);
+        return post;
+    }
+
+    private int count(String query, String id) throws SQLException {
+        try (Connection connection = mySQLController.getConnectionPool().getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(query)) {
+            preparedStmt.setString(1, id);
+            try (ResultSet countResult = preparedStmt.executeQuery()) {
+                countResult.next();
+                return countResult.getInt(1);
+            }
+        }
+    }
+
+    private static boolean containsPost(Post[] posts, Post post) {
+        return Arrays.stream(posts).anyMatch(other -> other.getId().equals(post.getId()));
+    }
+
+    @Test
+    void testDeletedUserVanishesAtOnce() throws SQLException {
+        User author = this.createUser("purged-author");
+        Post post = this.createPost(author);
+        try (Connection connection = mySQLController.getConnectionPool().getConnection();
+             PreparedStatement preparedStmt = connection.prepareStatement(
+                     "INSERT INTO `user_tombstones` (`user_id`) VALUES (?)")) {
+            preparedStmt.setString(1, author.getId());
+            preparedStmt.execute();
+        }
+
+        // The posts row is still there, but no longer read
+        assertEquals(1, this.count("SELECT COUNT(*) FROM `posts` WHERE `post_id` = ?", post.getId()));
+        assertFalse(containsPost(mySQLController.getAllPosts(), post));
+        assertFalse(containsPost(mySQLController.getPostsPage(null, 1000), post));
+        assertFalse(containsPost(mySQLController.getMostLikedPosts(1000), post));
+        assertFalse(mySQLController.streamAllPosts().anyMatch(other -> other.getId().equals(post.getId())));
+
+        mySQLController.deleteUser(author);
+    }
+
+    @Test
+    void testPurgeRemovesRowsInChunks() throws Exception {
+        User author = this.createUser("purged-author");
+        User fan = this.createUser("purged-fan");
+        Post[] posts = {this.createPost(author), this.createPost(author), this.createPost(author)};
+        Post fanPost = this.createPost(fan);
+        for (Post post : posts) {
+            mySQLController.likePost(post, fan);
+            mySQLController.commentPost(post, new Comment("Yum", fan.getId(), LocalDateTime.now().withNano(0),
+                    UUID.randomUUID().toString()));
+        }
+        mySQLController.likePost(fanPost, author);
+        mySQLController.startFollowingDB(fan, author);
+        mySQLController.startFollowingDB(author, fan);
+
+        assertTrue(mySQLController.deleteUser(author));
+        assertFalse(Arrays.stream(mySQLController.getAllUsers()).anyMatch(user -> user.sameUser(author)));
+        assertFalse(containsPost(mySQLController.getAllPosts(), posts[0]));
+
+        try (UserPurger purger = new UserPurger(mySQLController.getConnectionPool(), 2, 0, 0)) {
+            purger.purge();
+        }
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `posts` WHERE `user_id` = ?", author.getId()));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `likes` WHERE `user_id` = ?", author.getId()));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `likes` WHERE `user_id` = ?", fan.getId()));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `comments` WHERE `user_id` = ?", fan.getId()));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `follows` WHERE `user_id` = ?", author.getId()));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `follows` WHERE `follower_id` = ?", author.getId()));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM `user_tombstones` WHERE `user_id` = ?", author.getId()));
+        assertEquals(0, this.count("SELECT `like_count` FROM `posts` WHERE `post_id` = ?", fanPost.getId()));
+        assertTrue(containsPost(mySQLController.getAllPosts(), fanPost));
+
+        mySQLController.deleteUser(fan);
+    }
+}
@@ -0,0 +1,59 @@
+package controllers;
+
+import entities.Post;
+import entities.User;
+import entities.UserRef;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Measures how much heap each like takes once the posts read by getAllPosts have loaded it, and how much it would take
+ * if every like kept a full copy of the User that made it.
+ * Run it against a development database with a large heap (for example -Xmx2g): it adds the same
+ * benchmark rows as LikesLoadingBenchmark and deletes them again when it is done.
+ */
+public class UserRefMemoryBenchmark {
+    private static final int NUM_LIKES = 1_000_000;
+
+    public static void main(String[] args) throws SQLException {
+        MySQLController mySQLController = new MySQLController();
+        try (Connection connection = mySQLController.getConnectionPool().getConnection()) {
+            LikesLoadingBenchmark.deleteBenchmarkRows(connection);
+            LikesLoadingBenchmark.insertUsersAndPosts(connection);
+            LikesLoadingBenchmark.insertLikes(connection, 0, NUM_LIKES);
+
+            long before = usedHeap();
+            Post[] posts = mySQLController.getAllPosts();
+            int likes = LikesLoadingBenchmark.loadLikes(posts);
+            long loaded = usedHeap() - before;
+
+            // The users as getAllPosts used to load them: a new User, with its own password, per like
+            before = usedHeap();
+            ArrayList<User> copies = new ArrayList<>(likes);
+            for (Post post : posts) {
+                for (UserRef liker : post.getLikedUsers()) {
+                    copies.add(new User(new String(liker.getUsername()), new String("password"), new String(""),
+                            new String(liker.getId())));
+                }
+            }
+            long copied = usedHeap() - before;
+            long likers = copies.stream().map(User::getId).distinct().count();
+
+            System.out.printf("%,d likes by %,d users in %,d posts%n", likes, likers, posts.length);
+            System.out.printf("Loaded posts: %,d KB, %,d bytes per like%n", loaded / 1024, loaded / likes);
+            System.out.printf("A User per like would add: %,d KB, %,d bytes per like%n",
+                    copied / 1024, copied / likes);
+            LikesLoadingBenchmark.deleteBenchmarkRows(connection);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -91,4 +91,46 @@ public class PostTest {
     void testGetTime() {
         assertSame(post.getTime(), dateTime);
     }
+
+    @Test
+    void testSetInteractionCounts() {
+        Post counted = new Post("123", dateTime, post.getRecipe(), "Italian", "3");
+        counted.setInteractionCounts(5, 2);
+        assertEquals(5, counted.getNumLikes());
+        assertEquals(2, counted.getNumComments());
+        assertTrue(counted.getLikedUsers().isEmpty());
+
+        counted.addLike(new User("liker", "123", "", "4"));
+        counted.addComment(new Comment("Looks good", "4", dateTime, "5"));
+        assertEquals(6, counted.getNumLikes());
+        assertEquals(3, counted.getNumComments());
+    }
+
+    @Test
+    void testFailedLoadLeavesPostUnloaded() {
+        Post lazy = new Post("123", dateTime, new Recipe("Pasta", new ArrayList<>(), new ArrayList<>(), "1"),
+                "Italian", "3");
+        lazy.setInteractionCounts(1, 0);
+        int[] attempts = {0};
+        LazyPostGroup.loadLazily(List.of(lazy), posts -> {
+            attempts[0]++;
+            if (attempts[0] == 1) {
+                throw new IllegalStateException("The database is down");
+            }
+            for (Post loaded : posts) {
+                loaded.setDetails(post.getRecipe(), new ArrayList<>(List.of(new UserRef("4", "liker"))),
+                        new ArrayList<>());
+            }
+        });
+
+        // The title-only recipe is never given out as if it were the whole recipe
+        assertThrows(IllegalStateException.class, lazy::getRecipe);
+        assertFalse(lazy.isLoaded());
+        assertEquals(1, lazy.getNumLikes());
+
+        assertEquals(1, lazy.getRecipe().getSteps().size());
+        assertTrue(lazy.isLoaded());
+        assertEquals(1, lazy.getNumLikes());
+        assertEquals(2, attempts[0]);
+    }
 }
@@ -0,0 +1,32 @@
+package entities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserRefTest {
+    private final User user = new User("alex", "111", "hi", "10");
+
+    @Test
+    void testSameUser() {
+        assertTrue(new UserRef("10", "alex").sameUser(user));
+        assertFalse(new UserRef("11", "alex").sameUser(user));
+    }
+
+    @Test
+    void testEqualsUser() {
+        UserRef ref = new UserRef("10", "alex");
+        assertEquals(ref, user);
+        assertEquals(user, ref);
+        assertEquals(ref.hashCode(), user.hashCode());
+    }
+
+    @Test
+    void testContainsUser() {
+        ArrayList<UserRef> likedUsers = new ArrayList<>();
+        likedUsers.add(new UserRef("10", "alex"));
+        assertTrue(likedUsers.contains(user));
+    }
+}
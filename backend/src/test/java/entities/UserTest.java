@@ -42,7 +42,7 @@ public class UserTest {
     @Test
     void testGetFollowers() {
         User john_jones = new User("john_jones", "123", "" ,UUID.randomUUID().toString());
-        ArrayList<User> followers = new ArrayList<>();
+        ArrayList<UserRef> followers = new ArrayList<>();
         followers.add(john_jones);
         this.user.setFollowers(followers);
         assert this.user.getFollowers().equals(followers);
@@ -51,7 +51,7 @@ public class UserTest {
     @Test
     void testGetFollowing() {
         User john_jones = new User("john_jones", "123", "" ,UUID.randomUUID().toString());
-        ArrayList<User> following = new ArrayList<>();
+        ArrayList<UserRef> following = new ArrayList<>();
         following.add(john_jones);
         this.user.setFollowing(following);
         assert this.user.getFollowing().equals(following);
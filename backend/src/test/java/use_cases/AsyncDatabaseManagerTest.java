@@ -0,0 +1,95 @@
+package use_cases;
+
+import controllers.InMemoryDatabaseManager;
+import entities.Post;
+import entities.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncDatabaseManagerTest {
+
+    /**
+     * An InMemoryDatabaseManager whose reads wait for each other, and that counts how many run at the same time.
+     */
+    private static class WaitingDatabaseManager extends InMemoryDatabaseManager {
+        private final CountDownLatch readsStarted;
+        private final AtomicInteger runningReads = new AtomicInteger();
+        private final AtomicInteger maxRunningReads = new AtomicInteger();
+
+        WaitingDatabaseManager(int reads) {
+            this.readsStarted = new CountDownLatch(reads);
+        }
+
+        private void read() {
+            this.maxRunningReads.accumulateAndGet(this.runningReads.incrementAndGet(), Math::max);
+            this.readsStarted.countDown();
+            try {
+                this.readsStarted.await(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.runningReads.decrementAndGet();
+        }
+
+        @Override
+        public Post[] getAllPosts() {
+            this.read();
+            return super.getAllPosts();
+        }
+
+        @Override
+        public User[] getAllUsers() {
+            this.read();
+            return super.getAllUsers();
+        }
+    }
+
+    @Test
+    void testLookupsOverlap() {
+        WaitingDatabaseManager databaseManager = new WaitingDatabaseManager(2);
+        User user = new User("async", "123", "", UUID.randomUUID().toString());
+        databaseManager.addNewUser(user);
+        AsyncDatabaseManager async = new AsyncDatabaseManager(databaseManager,
+                AsyncDatabaseManager.newExecutor("async-test", 2));
+
+        CompletableFuture<User[]> users = async.getAllUsers();
+        CompletableFuture<Post[]> posts = async.getAllPosts();
+        assertEquals(1, users.join().length);
+        assertEquals(0, posts.join().length);
+        assertEquals(2, databaseManager.maxRunningReads.get());
+    }
+
+    @Test
+    void testConcurrencyIsBounded() {
+        WaitingDatabaseManager databaseManager = new WaitingDatabaseManager(10);
+        ExecutorService executor = AsyncDatabaseManager.newExecutor("async-test", 3);
+        AsyncDatabaseManager async = new AsyncDatabaseManager(databaseManager, executor);
+
+        CompletableFuture<?>[] reads = new CompletableFuture<?>[10];
+        for (int i = 0; i < reads.length; i++) {
+            reads[i] = async.getAllUsers();
+        }
+        CompletableFuture.allOf(reads).join();
+        assertEquals(3, databaseManager.maxRunningReads.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void testWritesComplete() {
+        InMemoryDatabaseManager databaseManager = new InMemoryDatabaseManager();
+        AsyncDatabaseManager async = databaseManager.async();
+        User user = new User("async", "123", "", UUID.randomUUID().toString());
+
+        assertTrue(async.addNewUser(user).join());
+        assertFalse(async.addNewUser(new User("async", "456", "", UUID.randomUUID().toString())).join());
+        assertEquals(0, async.deleteUser(user).thenCompose(deleted -> async.getAllUsers()).join().length);
+    }
+}